@@ -0,0 +1,44 @@
+package warehouse.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the warehouse benchmarks, writing the results as JSON so they can be compared across releases.
+ *
+ * Accepts the same arguments as the JMH command line, for example a regular expression to select benchmarks
+ * or {@code -rff} to choose the results file.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * File where results are written when no {@code -rff} argument is given.
+     */
+    private static final String DEFAULT_RESULT = "target/jmh-result.json";
+
+    /**
+     * Run the benchmarks selected by the program arguments.
+     *
+     * @param args JMH command line arguments
+     *
+     * @throws Exception if the arguments are not valid or the benchmarks cannot be run
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+        // Results as JSON by default
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result(DEFAULT_RESULT);
+        }
+
+        new Runner(options.build()).run();
+    }
+}
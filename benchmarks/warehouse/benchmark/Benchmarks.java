@@ -0,0 +1,23 @@
+package warehouse.benchmark;
+
+import warehouse.event.EventBus;
+import warehouse.event.EventLevel;
+import warehouse.event.EventSink;
+
+/**
+ * Common setup of the warehouse benchmarks.
+ */
+final class Benchmarks {
+
+    /**
+     * This class only has static methods, so it cannot be instantiated.
+     */
+    private Benchmarks() {}
+
+    /**
+     * Discard every event of the warehouse, so benchmarks measure the model and not the console.
+     */
+    static void silenceEvents() {
+        EventBus.setDefault(new EventBus(EventBus.DEFAULT_CAPACITY, EventLevel.OFF, EventSink.NONE));
+    }
+}
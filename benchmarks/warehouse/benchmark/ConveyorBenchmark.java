@@ -0,0 +1,120 @@
+package warehouse.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.pieces.Piece;
+import warehouse.storage.PieceStorage;
+
+/**
+ * Throughput of adding and unloading pieces of a conveyor shared by a growing number of threads.
+ *
+ * Each operation adds a piece and unloads a piece, so the conveyor never grows.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConveyorBenchmark {
+
+    /**
+     * Conveyor mode: the default conveyor guarded by its monitor, or the concurrent lock-free conveyor.
+     */
+    @Param({ "default", "concurrent" })
+    public String mode;
+
+    /**
+     * The conveyor shared by every thread.
+     */
+    private Conveyor conveyor;
+
+    /**
+     * The piece added by every operation.
+     */
+    private Piece piece;
+
+    /**
+     * Create the conveyor and the piece.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Benchmarks.silenceEvents();
+
+        Position position = Position.of(3, 2);
+        conveyor = mode.equals("concurrent") ? new Conveyor(position, 1 << 16) : new Conveyor(position);
+
+        piece = Piece.newBuilder().withReference(1).shouldStoreAt(new PieceStorage("ROUND", Position.of(0, 1)))
+                .round().build();
+    }
+
+    /**
+     * Add a piece and unload a piece.
+     *
+     * @return the unloaded piece
+     */
+    private Piece addAndUnload() {
+        conveyor.add(piece);
+        return conveyor.unloadPieceFromPickingPoint();
+    }
+
+    /**
+     * One thread.
+     *
+     * @return the unloaded piece
+     */
+    @Benchmark
+    @Threads(1)
+    public Piece threads1() {
+        return addAndUnload();
+    }
+
+    /**
+     * Two contending threads.
+     *
+     * @return the unloaded piece
+     */
+    @Benchmark
+    @Threads(2)
+    public Piece threads2() {
+        return addAndUnload();
+    }
+
+    /**
+     * Four contending threads.
+     *
+     * @return the unloaded piece
+     */
+    @Benchmark
+    @Threads(4)
+    public Piece threads4() {
+        return addAndUnload();
+    }
+
+    /**
+     * As many contending threads as available processors.
+     *
+     * @return the unloaded piece
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Piece threadsMax() {
+        return addAndUnload();
+    }
+}
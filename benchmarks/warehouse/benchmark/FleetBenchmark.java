@@ -0,0 +1,151 @@
+package warehouse.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.fleet.FleetScheduler;
+import warehouse.fleet.VehicleTask;
+import warehouse.pieces.factory.CylindricalPieceFactory;
+import warehouse.pieces.factory.RandomPieceFactory;
+import warehouse.pieces.factory.RoundPieceFactory;
+import warehouse.pieces.factory.SquarePieceFactory;
+import warehouse.storage.PieceStorage;
+import warehouse.vehicle.AGVS;
+import warehouse.vehicle.CannotMoveException;
+
+/**
+ * Time to move every piece of some conveyors to their storage with fleets of different sizes.
+ *
+ * Each vehicle consumes its own conveyor with a fixed share of the pieces. Vehicles sharing a conveyor
+ * take pieces until it is empty, so in a large fleet the fastest vehicles would take more pieces than
+ * their battery can move and the run would fail.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FleetBenchmark {
+
+    /**
+     * Pieces on the conveyor of each vehicle, few enough for a vehicle to store all of them with a full battery.
+     */
+    private static final int PIECES_PER_VEHICLE = 3;
+
+    /**
+     * Number of vehicles of the fleet.
+     */
+    @Param({ "1", "10", "100", "1000" })
+    public int fleetSize;
+
+    /**
+     * Number of pieces each vehicle carries at the same time.
+     */
+    @Param({ "1", "3" })
+    public int capacity;
+
+    /**
+     * Scheduler running the fleet.
+     */
+    @Param({ "virtual", "pool", "cooperative" })
+    public String scheduler;
+
+    /**
+     * The conveyor of each vehicle, full of its pieces.
+     */
+    private List<Conveyor> conveyors;
+
+    /**
+     * The fleet of vehicles at their initial position.
+     */
+    private List<AGVS> fleet;
+
+    /**
+     * Discard the warehouse events.
+     */
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        Benchmarks.silenceEvents();
+    }
+
+    /**
+     * Create a new warehouse with a new fleet and a full conveyor for each vehicle before each run.
+     */
+    @Setup(Level.Invocation)
+    public void setUp() {
+        RandomPieceFactory factory = new RandomPieceFactory(
+                new CylindricalPieceFactory(new PieceStorage("CYLINDRICAL", Position.of(0, 1))),
+                new SquarePieceFactory(new PieceStorage("SQUARE", Position.of(0, 2))),
+                new RoundPieceFactory(new PieceStorage("ROUND", Position.of(0, 3))));
+
+        conveyors = new ArrayList<>(fleetSize);
+        fleet = new ArrayList<>(fleetSize);
+        for (int i = 1; i <= fleetSize; i++) {
+            Conveyor conveyor = new Conveyor(Position.of(3, 2), PIECES_PER_VEHICLE);
+            for (int j = 0; j < PIECES_PER_VEHICLE; j++) {
+                conveyor.add(factory.create());
+            }
+            conveyors.add(conveyor);
+
+            fleet.add(new AGVS(i, Position.of(3, 3), capacity));
+        }
+    }
+
+    /**
+     * Move every piece of the conveyors to its storage.
+     *
+     * @return the number of pieces left in the conveyors
+     *
+     * @throws InterruptedException if interrupted while waiting for the fleet
+     * @throws CannotMoveException if some vehicle runs out of battery
+     */
+    @Benchmark
+    public int consume() throws InterruptedException, CannotMoveException {
+        FleetScheduler fleetScheduler;
+        switch (scheduler) {
+            case "pool":
+                fleetScheduler = FleetScheduler.fixedPool(Runtime.getRuntime().availableProcessors());
+                break;
+            case "cooperative":
+                fleetScheduler = FleetScheduler.cooperative(1);
+                break;
+            default:
+                fleetScheduler = FleetScheduler.virtualThreads();
+        }
+
+        // Each vehicle only takes the pieces of its own conveyor
+        List<VehicleTask> tasks = new ArrayList<>(fleetSize);
+        for (int i = 0; i < fleetSize; i++) {
+            AGVS agvs = fleet.get(i);
+            Conveyor conveyor = conveyors.get(i);
+
+            tasks.add(() -> agvs.step(conveyor));
+        }
+
+        fleetScheduler.start(tasks);
+        fleetScheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        int left = 0;
+        for (Conveyor conveyor : conveyors) {
+            left += conveyor.getSize();
+        }
+        return left;
+    }
+}
@@ -0,0 +1,188 @@
+package warehouse.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.fleet.FleetScheduler;
+import warehouse.fleet.VehicleTask;
+import warehouse.pieces.factory.CylindricalPieceFactory;
+import warehouse.pieces.factory.RandomPieceFactory;
+import warehouse.pieces.factory.RoundPieceFactory;
+import warehouse.pieces.factory.SquarePieceFactory;
+import warehouse.snapshot.Journal;
+import warehouse.storage.PieceStorage;
+import warehouse.vehicle.AGVS;
+import warehouse.vehicle.CannotMoveException;
+
+/**
+ * Time to move every piece of some conveyors to their storage without a journal, and with a synchronous
+ * or an asynchronous journal, showing how much of the delivery throughput durability costs.
+ *
+ * Like in {@code FleetBenchmark}, each vehicle consumes its own conveyor with a fixed share of the pieces,
+ * so no vehicle takes more pieces than its battery can move.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JournalBenchmark {
+
+    /**
+     * Pieces on the conveyor of each vehicle, few enough for a vehicle to store all of them with a full battery.
+     */
+    private static final int PIECES_PER_VEHICLE = 3;
+
+    /**
+     * Number of vehicles of the fleet.
+     */
+    @Param({ "10", "100" })
+    public int fleetSize;
+
+    /**
+     * Journal of the changes: none, sync or async.
+     */
+    @Param({ "none", "sync", "async" })
+    public String journal;
+
+    /**
+     * Directory of the journal files.
+     */
+    private Path directory;
+
+    /**
+     * The journal of the run, or null without journal.
+     */
+    private Journal runJournal;
+
+    /**
+     * The conveyor of each vehicle, full of its pieces.
+     */
+    private List<Conveyor> conveyors;
+
+    /**
+     * The fleet of vehicles at their initial position.
+     */
+    private List<AGVS> fleet;
+
+    /**
+     * Discard the warehouse events and create the directory of the journal.
+     *
+     * @throws IOException if the directory cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        Benchmarks.silenceEvents();
+
+        directory = Files.createTempDirectory("journal-benchmark");
+    }
+
+    /**
+     * Create a new warehouse with a new fleet, a full conveyor for each vehicle and an empty journal before each run.
+     *
+     * @throws IOException if the journal cannot be created
+     */
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        List<PieceStorage> storages = List.of(
+                new PieceStorage("CYLINDRICAL", Position.of(0, 1)),
+                new PieceStorage("SQUARE", Position.of(0, 2)),
+                new PieceStorage("ROUND", Position.of(0, 3)));
+
+        RandomPieceFactory factory = new RandomPieceFactory(
+                new CylindricalPieceFactory(storages.get(0)),
+                new SquarePieceFactory(storages.get(1)),
+                new RoundPieceFactory(storages.get(2)));
+
+        conveyors = new ArrayList<>(fleetSize);
+        fleet = new ArrayList<>(fleetSize);
+        for (int i = 1; i <= fleetSize; i++) {
+            Conveyor conveyor = new Conveyor(Position.of(3, 2), PIECES_PER_VEHICLE);
+            for (int j = 0; j < PIECES_PER_VEHICLE; j++) {
+                conveyor.add(factory.create());
+            }
+            conveyors.add(conveyor);
+
+            fleet.add(new AGVS(i, Position.of(3, 3), 1));
+        }
+
+        if (journal.equals("none")) {
+            runJournal = null;
+        } else {
+            Path path = directory.resolve("warehouse.journal");
+            Files.deleteIfExists(path);
+            runJournal = new Journal(path, 0, journal.equals("sync"));
+        }
+
+        for (Conveyor conveyor : conveyors) {
+            conveyor.setJournal(runJournal);
+        }
+        for (PieceStorage storage : storages) {
+            storage.setJournal(runJournal);
+        }
+    }
+
+    /**
+     * Close the journal of the run.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        if (runJournal != null) {
+            runJournal.close();
+        }
+    }
+
+    /**
+     * Move every piece of the conveyors to its storage.
+     *
+     * @return the number of pieces left in the conveyors
+     *
+     * @throws InterruptedException if interrupted while waiting for the fleet
+     * @throws CannotMoveException if some vehicle runs out of battery
+     */
+    @Benchmark
+    public int consume() throws InterruptedException, CannotMoveException {
+        FleetScheduler fleetScheduler = FleetScheduler.virtualThreads();
+
+        // Each vehicle only takes the pieces of its own conveyor
+        List<VehicleTask> tasks = new ArrayList<>(fleetSize);
+        for (int i = 0; i < fleetSize; i++) {
+            AGVS agvs = fleet.get(i);
+            Conveyor conveyor = conveyors.get(i);
+
+            tasks.add(() -> agvs.step(conveyor));
+        }
+
+        fleetScheduler.start(tasks);
+        fleetScheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        int left = 0;
+        for (Conveyor conveyor : conveyors) {
+            left += conveyor.getSize();
+        }
+        return left;
+    }
+}
@@ -0,0 +1,115 @@
+package warehouse.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import warehouse.Color;
+import warehouse.Position;
+import warehouse.pieces.Piece;
+import warehouse.pieces.builder.PieceBuilder;
+import warehouse.pieces.compact.CompactPiece;
+import warehouse.pieces.factory.CylindricalPieceFactory;
+import warehouse.pieces.factory.RandomPieceFactory;
+import warehouse.pieces.factory.RoundPieceFactory;
+import warehouse.pieces.factory.SquarePieceFactory;
+import warehouse.storage.PieceStorage;
+
+/**
+ * Cost of creating random pieces and of computing the price of pieces painted many times.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PieceBenchmark {
+
+    /**
+     * Number of color decorators wrapping the piece whose price is computed.
+     */
+    @Param({ "0", "1", "4", "16", "64" })
+    public int colors;
+
+    /**
+     * Factory of random pieces.
+     */
+    private RandomPieceFactory factory;
+
+    /**
+     * A piece decorated with {@code colors} color decorators.
+     */
+    private Piece coloredPiece;
+
+    /**
+     * The same piece as {@code coloredPiece} backed by its code.
+     */
+    private Piece compactPiece;
+
+    /**
+     * Create the factory and the decorated piece.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Benchmarks.silenceEvents();
+
+        PieceStorage storage = new PieceStorage("ROUND", Position.of(0, 1));
+
+        factory = new RandomPieceFactory(
+                new CylindricalPieceFactory(new PieceStorage("CYLINDRICAL", Position.of(0, 1))),
+                new SquarePieceFactory(new PieceStorage("SQUARE", Position.of(0, 2))),
+                new RoundPieceFactory(storage));
+
+        PieceBuilder.LastStep<? extends Piece> builder = Piece.newBuilder().withReference(1).shouldStoreAt(storage).round();
+
+        Color[] palette = Color.values();
+        for (int i = 0; i < colors; i++) {
+            builder = builder.paint(palette[i % palette.length]);
+        }
+
+        coloredPiece = builder.build();
+        compactPiece = CompactPiece.of(coloredPiece);
+    }
+
+    /**
+     * Create a random piece.
+     *
+     * @return the new piece
+     */
+    @Benchmark
+    public Piece create() {
+        return factory.create();
+    }
+
+    /**
+     * Compute the price of a piece with a chain of color decorators.
+     *
+     * @return the price of the piece
+     */
+    @Benchmark
+    public int price() {
+        return coloredPiece.getPrice();
+    }
+
+    /**
+     * Compute the price of the same piece from its code.
+     *
+     * @return the price of the piece
+     */
+    @Benchmark
+    public int compactPrice() {
+        return compactPiece.getPrice();
+    }
+}
@@ -0,0 +1,69 @@
+package warehouse.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import warehouse.Position;
+import warehouse.pieces.factory.CylindricalPieceFactory;
+import warehouse.pieces.factory.RandomPieceFactory;
+import warehouse.storage.PieceStorage;
+
+/**
+ * Cost of computing the total price of storages of different sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+
+    /**
+     * Number of pieces in the storage.
+     */
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    /**
+     * The storage full of pieces.
+     */
+    private PieceStorage storage;
+
+    /**
+     * Fill the storage with random pieces.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Benchmarks.silenceEvents();
+
+        storage = new PieceStorage("CYLINDRICAL", Position.of(0, 1));
+
+        RandomPieceFactory factory = new RandomPieceFactory(new CylindricalPieceFactory(storage));
+        for (int i = 0; i < size; i++) {
+            storage.store(factory.create());
+        }
+    }
+
+    /**
+     * Compute the total price of the storage.
+     *
+     * @return the total price
+     */
+    @Benchmark
+    public long totalPrice() {
+        return storage.getTotalPrice();
+    }
+}
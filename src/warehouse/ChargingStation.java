@@ -0,0 +1,212 @@
+package warehouse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A charging station where electric vehicles recharge their battery.
+ *
+ * A station has a limited number of slots, so only that many vehicles can charge at the same time.
+ * Slots are taken and freed with atomic operations, so vehicles in different threads never lock each other.
+ * Only vehicles waiting for a free slot take a lock, and they are woken up when a slot is freed.
+ */
+public class ChargingStation implements Positionable {
+
+    /**
+     * Charge in mAh given to a vehicle at each step if no charge is given.
+     */
+    public static final int DEFAULT_CHARGE_PER_STEP = 500;
+
+    /**
+     * The position of this charging station.
+     */
+    private final Position position;
+
+    /**
+     * Number of vehicles that can charge at the same time.
+     */
+    private final int slots;
+
+    /**
+     * Charge in mAh given to a vehicle at each step.
+     */
+    private final int chargePerStep;
+
+    /**
+     * Number of slots in use.
+     */
+    private final AtomicInteger occupied = new AtomicInteger();
+
+    /**
+     * Lock held by vehicles waiting for a free slot.
+     */
+    private final ReentrantLock slotLock = new ReentrantLock();
+
+    /**
+     * Condition signalled when a slot is freed.
+     */
+    private final Condition slotFreed = slotLock.newCondition();
+
+    /**
+     * Number of vehicles waiting for a free slot, so freeing a slot only takes the lock when someone is waiting.
+     */
+    private final AtomicInteger waitingVehicles = new AtomicInteger();
+
+    /**
+     * Create a charging station giving {@code DEFAULT_CHARGE_PER_STEP} mAh at each step.
+     *
+     * @param position the position of this charging station
+     * @param slots the number of vehicles that can charge at the same time
+     *
+     * @throws IllegalArgumentException if slots is not positive
+     */
+    public ChargingStation(Position position, int slots) throws IllegalArgumentException {
+        this(position, slots, DEFAULT_CHARGE_PER_STEP);
+    }
+
+    /**
+     * Create a charging station.
+     *
+     * @param position the position of this charging station
+     * @param slots the number of vehicles that can charge at the same time
+     * @param chargePerStep the charge in mAh given to a vehicle at each step
+     *
+     * @throws IllegalArgumentException if slots or chargePerStep are not positive
+     */
+    public ChargingStation(Position position, int slots, int chargePerStep) throws IllegalArgumentException {
+        if (slots <= 0) {
+            throw new IllegalArgumentException("Invalid number of slots: " + slots);
+        }
+        if (chargePerStep <= 0) {
+            throw new IllegalArgumentException("Invalid charge per step: " + chargePerStep);
+        }
+
+        this.position = position;
+        this.slots = slots;
+        this.chargePerStep = chargePerStep;
+    }
+
+    /**
+     * Retrieves the position of this charging station.
+     *
+     * @return the position of this charging station
+     */
+    @Override
+    public Position getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the number of vehicles that can charge at the same time.
+     *
+     * @return the number of slots of this station
+     */
+    public int getSlots() {
+        return slots;
+    }
+
+    /**
+     * Get the number of slots not in use.
+     *
+     * @return the number of vehicles that could start charging now
+     */
+    public int getFreeSlots() {
+        return slots - occupied.get();
+    }
+
+    /**
+     * Get the charge given to a vehicle at each step.
+     *
+     * @return the charge in mAh of a step
+     */
+    public int getChargePerStep() {
+        return chargePerStep;
+    }
+
+    /**
+     * Take a slot of this station, if there is a free one.
+     *
+     * @return true if a slot has been taken, false if every slot is in use
+     */
+    public boolean tryOccupy() {
+        while (true) {
+            int current = occupied.get();
+
+            if (current >= slots) {
+                return false;
+            }
+            if (occupied.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take a slot of this station, waiting up to a timeout until a vehicle frees one if every slot is in use.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if a slot has been taken, false if every slot was still in use after the timeout
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for a slot
+     */
+    public boolean occupy(long timeout, TimeUnit unit) throws InterruptedException {
+        if (tryOccupy()) {
+            return true;
+        }
+
+        long nanos = unit.toNanos(timeout);
+
+        slotLock.lockInterruptibly();
+        try {
+            // Announce the wait before trying again, so a vehicle freeing a slot after the failed try signals this one
+            waitingVehicles.incrementAndGet();
+            try {
+                while (!tryOccupy()) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = slotFreed.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                waitingVehicles.decrementAndGet();
+            }
+        } finally {
+            slotLock.unlock();
+        }
+    }
+
+    /**
+     * Free a slot taken with {@code tryOccupy} or {@code occupy}, waking up a vehicle waiting for it.
+     *
+     * @throws IllegalStateException if no slot is in use
+     */
+    public void release() throws IllegalStateException {
+        if (occupied.getAndDecrement() <= 0) {
+            occupied.incrementAndGet();
+            throw new IllegalStateException("No slot is in use");
+        }
+
+        if (waitingVehicles.get() > 0) {
+            slotLock.lock();
+            try {
+                slotFreed.signal();
+            } finally {
+                slotLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Get a String representation of this charging station.
+     *
+     * @return a String representation of this charging station with its position and free slots
+     */
+    @Override
+    public String toString() {
+        return "Charging station at " + position + " (" + getFreeSlots() + "/" + slots + " free)";
+    }
+}
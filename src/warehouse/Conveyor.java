@@ -1,15 +1,41 @@
 package warehouse;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import warehouse.concurrent.RingBuffer;
+import warehouse.event.EventBus;
+import warehouse.event.EventType;
+import warehouse.metrics.ConveyorMetrics;
+import warehouse.metrics.Metrics;
 import warehouse.pieces.Piece;
+import warehouse.snapshot.Journal;
 
 /**
  * A conveyor that moves pieces to a picking point.
  *
  * Thanks to a presence detector this conveyor moves forward when there is no piece in the picking point,
  * so the first piece in this conveyor always stays in the picking point.
+ *
+ * A conveyor can be created in two modes:
+ * <ul>
+ * <li>The default mode keeps the pieces in an unbounded list and a separate picking point,
+ * guarded by the monitor of this conveyor.</li>
+ * <li>The concurrent mode keeps the pieces in a bounded lock-free ring buffer whose head is the picking point,
+ * so many producers and vehicles can add and unload pieces at the same time without locking.</li>
+ * </ul>
+ *
+ * A concurrent conveyor is full when it holds as many pieces as its capacity. Producers feeding it
+ * while vehicles unload it can wait for room with {@code put}, give up after a while with {@code offer},
+ * or not wait at all with {@code tryAdd}. Only waiting producers take a lock, and the time they wait
+ * for a full belt is measured as the stall time of this conveyor.
  */
 public class Conveyor {
 
@@ -23,6 +49,51 @@ public class Conveyor {
      */
     private Queue<Piece> pieces;
 
+    /**
+     * Whether this conveyor uses a lock-free queue where the first piece is at the picking point.
+     */
+    private final boolean concurrent;
+
+    /**
+     * Maximum number of pieces in this conveyor.
+     */
+    private final int capacity;
+
+    /**
+     * Lock held by producers waiting for room in a full conveyor.
+     */
+    private final ReentrantLock spaceLock = new ReentrantLock();
+
+    /**
+     * Condition signalled when a piece is unloaded and there may be room for a waiting producer.
+     */
+    private final Condition notFull = spaceLock.newCondition();
+
+    /**
+     * Number of producers waiting for room, so unloading only takes the lock when someone is waiting.
+     */
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+
+    /**
+     * Total time in nanoseconds producers have waited for room in this conveyor.
+     */
+    private final LongAdder stallTime = new LongAdder();
+
+    /**
+     * Number of times a producer has found this conveyor full and waited.
+     */
+    private final LongAdder stallCount = new LongAdder();
+
+    /**
+     * Metrics of this conveyor, or null if metrics are disabled.
+     */
+    private final ConveyorMetrics metrics;
+
+    /**
+     * Journal recording the pieces added and unloaded, or null if changes are not journaled.
+     */
+    private volatile Journal journal;
+
     /**
      * Create a new conveyor.
      * @param pickingPointPosition the picking point position where pieces must be unloaded
@@ -34,6 +105,65 @@ public class Conveyor {
         // Create a list for the rest of pieces in this conveyor
         // LinkedList implements the Java interface Queue
         pieces = new LinkedList<>();
+
+        concurrent = false;
+        capacity = Integer.MAX_VALUE;
+
+        metrics = registerMetrics();
+    }
+
+    /**
+     * Create a new concurrent conveyor with a limited capacity.
+     *
+     * Pieces are kept in a lock-free ring buffer and the first piece of the buffer is the one at the picking point,
+     * so adding and unloading pieces is safe from many threads without an external lock.
+     *
+     * @param pickingPointPosition the picking point position where pieces must be unloaded
+     * @param capacity the maximum number of pieces this conveyor can hold, rounded up to a power of two of at least two
+     *
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public Conveyor(Position pickingPointPosition, int capacity) throws IllegalArgumentException {
+        pickingPoint = new PickingPoint(pickingPointPosition);
+
+        // RingBuffer implements the Java interface Queue
+        RingBuffer<Piece> buffer = new RingBuffer<>(capacity);
+        pieces = buffer;
+
+        concurrent = true;
+        this.capacity = buffer.capacity();
+
+        metrics = registerMetrics();
+    }
+
+    /**
+     * Register the metrics of this conveyor, if metrics are enabled.
+     *
+     * @return the metrics of this conveyor, or null if metrics are disabled
+     */
+    private ConveyorMetrics registerMetrics() {
+        if (!Metrics.isEnabled()) {
+            return null;
+        }
+        return Metrics.register("Conveyor", "Conveyor " + getPickingPointPosition(), new ConveyorMetrics(this));
+    }
+
+    /**
+     * Checks if this conveyor is in concurrent mode.
+     *
+     * @return true if this conveyor uses a lock-free queue, false if it uses its own monitor
+     */
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Get the maximum number of pieces this conveyor can hold.
+     *
+     * @return the capacity of this conveyor, or {@code Integer.MAX_VALUE} if it is not concurrent
+     */
+    public int getCapacity() {
+        return capacity;
     }
 
     /**
@@ -43,37 +173,270 @@ public class Conveyor {
      * moves forward to ensure the added piece is at the picking point.
      *
      * @param piece the piece to add
+     *
+     * @throws IllegalStateException if this conveyor is concurrent and it is full
      */
-    public void add(Piece piece) {
-        // Append the piece to the queue of pieces waiting to be loaded into the picking point
-        pieces.add(piece);
+    public void add(Piece piece) throws IllegalStateException {
+        if (concurrent) {
+            // The head of the ring buffer is the picking point, so there is no need to move forward
+            pieces.add(piece);
 
-        System.out.println(piece + " added to the conveyor");
+            EventBus.getDefault().publish(EventType.PIECE_ADDED, this, piece);
+            journalAdded(piece);
+            return;
+        }
 
-        // Move forward if there is no piece in the picking point
-        if (pickingPointIsEmpty()) {
-            moveForward();
+        synchronized (this) {
+            // Append the piece to the queue of pieces waiting to be loaded into the picking point
+            pieces.add(piece);
+
+            EventBus.getDefault().publish(EventType.PIECE_ADDED, this, piece);
+
+            // Move forward if there is no piece in the picking point
+            if (pickingPoint.isEmpty()) {
+                moveForward();
+            }
+        }
+
+        // Records are appended without holding the lock, so vehicles are not blocked by the journal
+        journalAdded(piece);
+    }
+
+    /**
+     * Adds a piece to this conveyor if there is room for it, without waiting.
+     *
+     * @param piece the piece to add
+     * @return true if the piece has been added, false if this conveyor is full
+     */
+    public boolean tryAdd(Piece piece) {
+        if (concurrent) {
+            if (!pieces.offer(piece)) {
+                return false;
+            }
+
+            EventBus.getDefault().publish(EventType.PIECE_ADDED, this, piece);
+            journalAdded(piece);
+            return true;
+        }
+
+        // The default mode is unbounded, so there is always room
+        add(piece);
+        return true;
+    }
+
+    /**
+     * Adds a piece to this conveyor, waiting until a vehicle unloads a piece if this conveyor is full.
+     *
+     * @param piece the piece to add
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for room
+     */
+    public void put(Piece piece) throws InterruptedException {
+        if (!tryAdd(piece)) {
+            awaitRoom(piece, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Adds a piece to this conveyor, waiting up to a timeout until a vehicle unloads a piece if this conveyor is full.
+     *
+     * @param piece the piece to add
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the piece has been added, false if this conveyor was still full after the timeout
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for room
+     */
+    public boolean offer(Piece piece, long timeout, TimeUnit unit) throws InterruptedException {
+        return tryAdd(piece) || awaitRoom(piece, unit.toNanos(timeout));
+    }
+
+    /**
+     * Wait until a piece fits in this full conveyor and add it, adding the time waited to the stall time.
+     *
+     * A producer is only counted as stalled when it actually waits, not when its retry finds room at once.
+     *
+     * @param piece the piece to add
+     * @param nanos the maximum time to wait in nanoseconds
+     * @return true if the piece has been added, false if the time is over
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for room
+     */
+    private boolean awaitRoom(Piece piece, long nanos) throws InterruptedException {
+        boolean stalled = false;
+        long start = 0;
+
+        spaceLock.lockInterruptibly();
+        try {
+            // Announce the wait before trying again, so a vehicle unloading after the failed try signals this producer
+            waitingProducers.incrementAndGet();
+            try {
+                while (!tryAdd(piece)) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+
+                    if (!stalled) {
+                        stalled = true;
+                        start = System.nanoTime();
+
+                        EventBus.getDefault().publish(EventType.CONVEYOR_FULL, this, piece, getPickingPointPosition(),
+                                getSize());
+                    }
+
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                waitingProducers.decrementAndGet();
+            }
+        } finally {
+            spaceLock.unlock();
+
+            if (stalled) {
+                stallCount.increment();
+                stallTime.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Wake up the producers waiting for room, if there is any.
+     */
+    private void signalRoom() {
+        if (waitingProducers.get() > 0) {
+            spaceLock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                spaceLock.unlock();
+            }
         }
     }
 
+    /**
+     * Get the total time producers have waited because this conveyor was full.
+     *
+     * @return the stall time in nanoseconds
+     */
+    public long getStallTime() {
+        return stallTime.sum();
+    }
+
+    /**
+     * Get the number of times a producer has found this conveyor full and waited for room.
+     *
+     * @return the number of stalls
+     */
+    public long getStallCount() {
+        return stallCount.sum();
+    }
+
     /**
      * Retrieves and removes the first piece of this conveyor, located at the picking point.
      *
      * After removing the piece from the picking point this conveyor is moved forward.
      *
+     * This method is safe to call from many vehicles at the same time,
+     * only one of them will get each piece.
+     *
      * @return the piece removed from the picking point, if there is one, or null otherwise
      */
     public Piece unloadPieceFromPickingPoint() {
-        // Unload the current piece from the picking point
-        Piece piece = pickingPoint.unload();
+        if (concurrent) {
+            // Claim the first piece of the ring buffer, null if another vehicle was faster
+            Piece piece = pieces.poll();
+
+            if (piece != null) {
+                signalRoom();
+
+                if (metrics != null) {
+                    metrics.unloaded();
+                }
+
+                EventBus bus = EventBus.getDefault();
+                bus.publish(EventType.PIECE_UNLOADED, this, piece);
+                bus.publish(EventType.CONVEYOR_SIZE, this, getPickingPointPosition(), getSize());
+
+                journalUnloaded(piece);
+            }
+
+            return piece;
+        }
 
-        moveForward();
-        
-        System.out.println("There are " + getSize() + " pieces remaining in the conveyor");
+        // Measure the wait for the lock only with metrics, so the clock is not read otherwise
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        // Lock this conveyor until the piece is unloaded
+        // to ensure no other vehicle (in another thread) unloads the same piece
+        Piece piece;
+        synchronized (this) {
+            if (metrics != null) {
+                metrics.lockWaited(System.nanoTime() - start);
+            }
+
+            if (pickingPoint.isEmpty()) {
+                return null;
+            }
+
+            // Unload the current piece from the picking point
+            piece = pickingPoint.unload();
+
+            if (metrics != null) {
+                metrics.unloaded();
+            }
+
+            EventBus bus = EventBus.getDefault();
+            bus.publish(EventType.PIECE_UNLOADED, this, piece);
+
+            moveForward();
+
+            bus.publish(EventType.CONVEYOR_SIZE, this, getPickingPointPosition(), getSize());
+        }
+
+        // Records are appended without holding the lock, so other vehicles are not blocked by the journal
+        journalUnloaded(piece);
 
         return piece;
     }
 
+    /**
+     * Record every piece added to and unloaded from this conveyor in a journal, so the changes
+     * after the last snapshot can be recovered.
+     *
+     * Records are appended without holding the lock of this conveyor, and they never wait for the disk,
+     * they become durable with the next group commit of the journal.
+     *
+     * @param journal the journal, or null to stop recording changes
+     */
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Append the record of an added piece to the journal, if there is one.
+     *
+     * @param piece the added piece
+     */
+    private void journalAdded(Piece piece) {
+        Journal journal = this.journal;
+        if (journal != null) {
+            journal.added(this, piece);
+        }
+    }
+
+    /**
+     * Append the record of an unloaded piece to the journal, if there is one.
+     *
+     * @param piece the unloaded piece
+     */
+    private void journalUnloaded(Piece piece) {
+        Journal journal = this.journal;
+        if (journal != null) {
+            journal.unloaded(this, piece);
+        }
+    }
+
     /**
      * Moves this conveyor forward, providing a piece into the picking point.
      */
@@ -86,7 +449,7 @@ public class Conveyor {
             // Load the piece into the picking point
             pickingPoint.load(piece);
 
-            System.out.println("Conveyor moves forward");
+            EventBus.getDefault().publish(EventType.CONVEYOR_MOVED, this, null);
         }
     }
 
@@ -103,22 +466,52 @@ public class Conveyor {
      * @return true if there is no piece in the picking point, false otherwise
      */
     public boolean pickingPointIsEmpty() {
+        if (concurrent) {
+            return pieces.isEmpty();
+        }
         return pickingPoint.isEmpty();
     }
 
+    /**
+     * Get the pieces of this conveyor without unloading them.
+     *
+     * @return a copy of the pieces in this conveyor, starting with the piece at the picking point
+     */
+    public List<Piece> getPieces() {
+        if (concurrent) {
+            return new ArrayList<>(pieces);
+        }
+
+        synchronized (this) {
+            List<Piece> copy = new ArrayList<>(getSize());
+            if (!pickingPoint.isEmpty()) {
+                copy.add(pickingPoint.getPiece());
+            }
+            copy.addAll(pieces);
+            return copy;
+        }
+    }
+
     /**
      * Number of pieces in this conveyor
      * @return the number of pieces in this conveyor
      */
     public int getSize() {
-        // Pieces in queue
-        int size = pieces.size();
-
-        // Picking point piece
-        if (!pickingPointIsEmpty()) {
-            size += 1;
+        if (concurrent) {
+            // Pieces in the ring buffer, including the one at the picking point
+            return pieces.size();
         }
 
-        return size;
+        synchronized (this) {
+            // Pieces in queue
+            int size = pieces.size();
+
+            // Picking point piece
+            if (!pickingPoint.isEmpty()) {
+                size += 1;
+            }
+
+            return size;
+        }
     }
 }
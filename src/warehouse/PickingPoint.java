@@ -1,5 +1,7 @@
 package warehouse;
 
+import warehouse.event.EventBus;
+import warehouse.event.EventType;
 import warehouse.pieces.Piece;
 
 /**
@@ -44,11 +46,14 @@ public class PickingPoint implements Positionable {
     public void load(Piece piece) {
         this.piece = piece;
 
-        System.out.println(piece + " loaded into the picking point");
+        EventBus.getDefault().publish(EventType.PIECE_LOADED, this, piece);
     }
 
     /**
      * Retrieves and removes the piece in this picking point.
+     *
+     * The conveyor of this picking point publishes the unloaded piece, so every unload has the conveyor as source.
+     *
      * @return the piece in this picking point, if there is one, or null otherwise
      */
     public Piece unload() {
@@ -57,8 +62,14 @@ public class PickingPoint implements Positionable {
         // Remove the piece from this picking point
         this.piece = null;
 
-        System.out.println(piece + " removed from the picking point");
+        return piece;
+    }
 
+    /**
+     * Get the piece in this picking point without unloading it.
+     * @return the piece in this picking point, if there is one, or null otherwise
+     */
+    public Piece getPiece() {
         return piece;
     }
 
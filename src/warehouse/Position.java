@@ -2,22 +2,45 @@ package warehouse;
 
 /**
  * Position with coordinates x (horizontal axis) and y (vertical axis)
+ *
+ * Positions are immutable, so the same instance can be shared by every vehicle, map and table.
+ * Positions of the usual warehouse grid are cached: {@code Position.of} returns the same instance each time
+ * instead of creating a new one at each step of a vehicle.
+ *
+ * A position can also be packed in a long, so it can be used as the key of primitive collections
+ * without creating any object.
  */
-public class Position {
+public final class Position {
+
+    /**
+     * Number of cached positions along each axis, starting at 0.
+     */
+    private static final int CACHE_SIZE = 128;
+
+    /**
+     * Cached positions, at index {@code y * CACHE_SIZE + x}, created the first time they are used.
+     *
+     * Two threads can create the same cached position at the same time. That is harmless:
+     * positions are immutable and equal, only one of them stays in the cache.
+     */
+    private static final Position[] CACHE = new Position[CACHE_SIZE * CACHE_SIZE];
 
     /**
      * Coordinate x
      */
-    private int x;
+    private final int x;
 
 
     /**
      * Coordinate y
      */
-    private int y;
+    private final int y;
 
     /**
      * Create a new position (x, y)
+     *
+     * {@code Position.of} should be preferred, it doesn't create a new position for the cells of the usual grid.
+     *
      * @param x the horizontal coordinate
      * @param y the vertical coordinate
      */
@@ -33,6 +56,60 @@ public class Position {
         this(0, 0);
     }
 
+    /**
+     * Get the position (x, y), cached if it is in the usual grid.
+     *
+     * @param x the horizontal coordinate
+     * @param y the vertical coordinate
+     * @return the position (x, y)
+     */
+    public static Position of(int x, int y) {
+        if (x < 0 || x >= CACHE_SIZE || y < 0 || y >= CACHE_SIZE) {
+            return new Position(x, y);
+        }
+
+        int index = y * CACHE_SIZE + x;
+        Position position = CACHE[index];
+
+        if (position == null) {
+            position = new Position(x, y);
+            CACHE[index] = position;
+        }
+        return position;
+    }
+
+    /**
+     * Get the position packed in a long.
+     *
+     * @param packed a position packed with {@code pack}
+     * @return the packed position
+     */
+    public static Position unpack(long packed) {
+        return of((int) (packed >> 32), (int) packed);
+    }
+
+    /**
+     * Pack this position in a long, with x in the highest 32 bits and y in the lowest 32 bits.
+     *
+     * Different positions are always packed in different values.
+     *
+     * @return this position packed in a long
+     */
+    public long pack() {
+        return pack(x, y);
+    }
+
+    /**
+     * Pack a position in a long without creating it.
+     *
+     * @param x the horizontal coordinate
+     * @param y the vertical coordinate
+     * @return the position (x, y) packed in a long
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
     /**
      * Get the horizontal coordinate.
      * @return the x coordinate
@@ -50,12 +127,40 @@ public class Position {
     }
 
     /**
-     * Checks if this position is equal to another position
+     * Get the Manhattan distance to another position, the number of steps between them without obstacles.
+     *
      * @param other the another position
-     * @return if this position is equal to other position
+     * @return the sum of the horizontal and vertical distances
      */
-    public boolean equals(Position other) {
-        return this.x == other.x && this.y == other.y;
+    public int distance(Position other) {
+        return Math.abs(x - other.x) + Math.abs(y - other.y);
+    }
+
+    /**
+     * Checks if this position is equal to another object
+     * @param other the another object
+     * @return if other is a position with the same coordinates
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Position)) {
+            return false;
+        }
+
+        Position position = (Position) other;
+        return this.x == position.x && this.y == position.y;
+    }
+
+    /**
+     * Get a hash code of this position, consistent with equals.
+     * @return a hash code of the coordinates
+     */
+    @Override
+    public int hashCode() {
+        return 31 * x + y;
     }
 
     /**
@@ -1,37 +1,53 @@
 package warehouse;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import warehouse.pieces.factory.CylindricalPieceFactory;
-import warehouse.pieces.factory.RandomPieceFactory;
-import warehouse.pieces.factory.RoundPieceFactory;
-import warehouse.pieces.factory.SquarePieceFactory;
+import warehouse.event.EventBus;
+import warehouse.fleet.Dispatcher;
+import warehouse.fleet.FleetScheduler;
+import warehouse.fleet.PieceProducer;
+import warehouse.scenario.Scenario;
 import warehouse.storage.PieceStorage;
-import warehouse.storage.Storage;
 import warehouse.vehicle.AGVS;
 import warehouse.vehicle.CannotMoveException;
 
 public class Warehouse {
 
     /**
-     * Number of random pieces to add to the conveyor.
+     * Scenario used when no scenario file is given: three kind of storage bins for three kind of pieces,
+     * a small map with a rack in the middle, two conveyor lines with room for a few pieces, so the producer waits
+     * when the vehicles fall behind, a charging station with a single slot, and three vehicles carrying two pieces.
      */
-    private static final int NUMBER_OF_PIECES = 10;
-
-    /**
-     * Number of AGVS that will be moving pieces from the conveyor to their storages.
-     */
-    private static final int NUMBER_OF_VEHICLES = 3;
+    private static final String DEFAULT_SCENARIO = String.join("\n",
+            "map 4 4",
+            "block 2 2",
+            "storage CYLINDRICAL 0 1",
+            "storage SQUARE 0 2",
+            "storage ROUND 0 3",
+            "charging 1 0 1",
+            "conveyor 3 2 2",
+            "conveyor 3 0 2",
+            "fleet 3 3 3 2",
+            "pieces 10");
 
     /**
      * Move pieces in a warehouse from the picking point to their storage using many
      * Automated Guided Vehicle System (AGVS) vehicles.
      *
-     * Creates three kind of storage bins for three kind of pieces, then adds some
-     * random pieces to a conveyor that receives those pieces and unloads them to a
-     * picking point, finally adds some AGVS that can load pieces from the picking
-     * point and move them to their storage.
+     * Loads a scenario with the storage bins of each kind of piece and a map of the warehouse floor, and some
+     * AGVS that can load pieces from the picking points of some conveyors and move them to their storage,
+     * while a producer adds random pieces to the conveyors, waiting whenever a conveyor is full.
+     *
+     * The scenario is read from the file given as the first argument, or a small built-in scenario is used.
+     * If some piece of the workload is not delivered the number of pieces left is reported,
+     * and the program exits with status 1.
+     *
+     * Running with {@code -Dwarehouse.metrics=true} publishes the metrics of the vehicles, conveyors and storages
+     * as MBeans, so they can be watched with JConsole while the vehicles move.
      * 
      * Each AGVS moves asynchronously in its own thread, so one AGVS can move one piece
      * at a time but many AGVS can move different pieces at the same time.
@@ -40,104 +56,107 @@ public class Warehouse {
      * because of this and the randomness of the pieces creation process
      * different executions of the program will have different results.
      * 
-     * @param args program arguments, not used
+     * @param args program arguments, optionally the path of a scenario file
+     * 
+     * @throws IOException if the scenario file cannot be read or is not valid
+     * @throws InterruptedException if the main thread is interrupted while vehicles are moving
      */
-    public static void main(String[] args) {
-        // Create storage bins for each kind of piece
-        PieceStorage cylindricalStorage = new PieceStorage("CYLINDRICAL", new Position(0, 1));
-        PieceStorage squareStorage = new PieceStorage("SQUARE", new Position(0, 2));
-        PieceStorage roundStorage = new PieceStorage("ROUND", new Position(0, 3));
-
-        // Create a random piece factory to create pieces with random type and colors
-        RandomPieceFactory randomPieceFactory = new RandomPieceFactory(
-                new CylindricalPieceFactory(cylindricalStorage),
-                new SquarePieceFactory(squareStorage),
-                new RoundPieceFactory(roundStorage));
-
-        // Create the conveyor with a picking point position
-        Conveyor conveyor = new Conveyor(new Position(3, 2));
-
-        // Create some random pieces, adding them to the conveyor
-        for (int i = 0; i < NUMBER_OF_PIECES; i++) {
-            conveyor.add(randomPieceFactory.create());
-        }
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Create the storage bins, conveyors, charging stations, map and vehicles of the scenario
+        Scenario scenario = args.length > 0
+                ? Scenario.load(Path.of(args[0]))
+                : Scenario.read(new StringReader(DEFAULT_SCENARIO));
+
+        // Precompute the routes to the storages, the charging stations and the picking points
+        scenario.precomputeRoutes();
 
-        System.out.println("Picking point is at " + conveyor.getPickingPointPosition());
+        // Pieces of the picking points are assigned to the nearest idle vehicle, each vehicle homed to a line
+        // Vehicles never accept pieces that would leave them without battery to reach a charging station
+        Dispatcher dispatcher = scenario.newDispatcher();
 
-        // Create a storage of automated vehicles
-        Storage<AGVS> vehicleStorage = new Storage<>(new Position(3, 3));
+        // Events are printed asynchronously, wait for them before printing to the console
+        EventBus events = EventBus.getDefault();
+        events.flush();
 
-        // Add some AGVS to the vehicle storage
-        for (int i = 1; i <= NUMBER_OF_VEHICLES; i++) {
-            vehicleStorage.store(new AGVS(i, vehicleStorage.getPosition()));
+        for (Conveyor conveyor : scenario.getConveyors()) {
+            System.out.println("Picking point is at " + conveyor.getPickingPointPosition());
         }
 
+        // Create random pieces while the vehicles work, adding them to the conveyors in turns
+        // The dispatcher is closed after the last piece, so vehicles stop when the conveyors are empty
+        PieceProducer producer = new PieceProducer(dispatcher, scenario.pieces());
+        Thread producerThread = producer.start();
+
         // Start the main task of moving pieces from the picking point to their storages
-        consume(vehicleStorage, conveyor);
+        CannotMoveException failure = null;
+        try {
+            consume(scenario.getFleet(), dispatcher);
+        } catch (CannotMoveException e) {
+            failure = e;
+        }
+
+        // If vehicles stopped early the producer may still wait for room, it is not needed anymore
+        producerThread.interrupt();
+        producerThread.join();
+
+        // Wait until every event of the vehicles is printed
+        events.close();
+
+        if (failure != null) {
+            // If some AGVS runs out of battery then we show a red message to the console
+            // Note that this can make a piece to not be stored because the vehicle stops
+            // halfway with a piece loaded
+            System.err.println(failure.getMessage());
+
+            for (Throwable other : failure.getSuppressed()) {
+                System.err.println(other.getMessage());
+            }
+        }
 
         // Print final status, showing where each piece has been stored
-        System.out.println(roundStorage);
-        System.out.println(squareStorage);
-        System.out.println(cylindricalStorage);
+        int stored = 0;
+        for (PieceStorage storage : scenario.getStorages()) {
+            System.out.println(storage);
+            stored += storage.getSize();
+        }
+
+        // A run that leaves pieces behind has failed, even if every vehicle stopped normally
+        int undelivered = scenario.getPieceCount() - stored;
+        if (undelivered > 0) {
+            System.err.println(undelivered + " of " + scenario.getPieceCount() + " pieces have not been delivered, "
+                    + dispatcher.getUndeliverable().size() + " of them out of range of a full battery");
+            System.exit(1);
+        }
     }
 
     /**
      * Use available vehicles to move pieces from the picking point to their storages.
      * 
      * Each vehicle can move independently to the others, so each vehicle works
-     * asynchronously in its own thread.
+     * asynchronously in its own virtual thread, scheduled by a fleet scheduler.
+     * Idle vehicles wait until the dispatcher assigns them a piece.
      * 
      * Information about the process will be printed to the console.
      * Note that printing order is indeterminate due to the asynchronous execution.
      * 
-     * This method waits until all threads are terminated.
+     * This method waits until all vehicles are finished.
+     * 
+     * @param fleet          the available AGVS vehicles
+     * @param dispatcher     the dispatcher assigning to the available vehicles the pieces
+     *                       of the picking point that they will pick and move
      * 
-     * @param vehicleStorage storage with available AGVS vehicles
-     * @param conveyor       the conveyor providing to a picking point the pieces
-     *                       that the available vehicles will pick and move
+     * @throws InterruptedException if the current thread is interrupted while waiting for the vehicles
+     * @throws CannotMoveException if some AGVS runs out of battery, other AGVS that could not move
+     *                             are included as suppressed exceptions
      */
-    private static void consume(Storage<AGVS> vehicleStorage, Conveyor conveyor) {
-        // A list to store different running threads
-        List<Thread> threads = new ArrayList<>();
-
-        // Create a new thread for each vehicle available
-        while (!vehicleStorage.isEmpty()) {
-            // Retrieve the next AGVS from the vehicle storage
-            AGVS agvs = vehicleStorage.remove();
-
-            /*
-             * Create a new thread for an asynchronous execution allowing multiple AGVS to
-             * move at the same time.
-             *
-             * A lambda function without parameters is provided to the thread to run when
-             * the thread start method is called.
-             */
-            Thread task = new Thread(() -> {
-                try {
-                    // Move pieces to their storage position using the AGVS
-                    agvs.consume(conveyor);
-                } catch (CannotMoveException e) {
-                    // If the AGVS runs out of battery then we show a red message to the console
-                    // Note that this can make a piece to not be stored because the vehicle stops
-                    // halfway with a piece loaded
-                    System.err.println(e.getMessage());
-                }
-            });
-
-            // Start the thread, calling the lambda function defined above that starts moving the AGVS
-            task.start();
-
-            // Add the thread to the list so we can reference it later to wait until it finishes
-            threads.add(task);
-        }
+    private static void consume(List<AGVS> fleet, Dispatcher dispatcher)
+            throws InterruptedException, CannotMoveException {
+        // Run each vehicle in its own virtual thread, allowing multiple AGVS to move at the same time
+        FleetScheduler scheduler = FleetScheduler.virtualThreads();
 
-        // Wait for threads to finish
-        threads.forEach(t -> {
-            try {
-                t.join(); // wait until thread t has finished
-            } catch (InterruptedException e) {
-                e.printStackTrace(); // should not happen
-            }
-        });
+        scheduler.start(fleet, dispatcher);
+
+        // Wait for every vehicle to finish
+        scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
     }
 }
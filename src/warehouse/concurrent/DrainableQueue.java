@@ -0,0 +1,20 @@
+package warehouse.concurrent;
+
+import java.util.Collection;
+import java.util.Queue;
+
+/**
+ * A thread-safe queue that can remove all its elements at once, locking each of its parts only once.
+ *
+ * @param <E> generic type of the elements in this queue
+ */
+public interface DrainableQueue<E> extends Queue<E> {
+
+    /**
+     * Removes all the elements of this queue and adds them to a collection.
+     *
+     * @param target the collection where the elements are added
+     * @return the number of elements moved
+     */
+    int drainTo(Collection<? super E> target);
+}
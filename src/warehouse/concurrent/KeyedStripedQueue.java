@@ -0,0 +1,606 @@
+package warehouse.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * An unbounded thread-safe queue split in stripes, where elements can also be found and removed by an int key.
+ *
+ * Unlike {@code StripedQueue}, the stripe of each element is chosen by its key, so the element with a key is
+ * always looked for in a single stripe. Each stripe keeps its elements in slots of primitive arrays, linked
+ * in insertion order by the indexes of the next and previous slots, and a hash table of open addressing
+ * from keys to slots. Finding, adding and removing an element by its key takes constant time and creates
+ * no object, whatever the number of elements, except when the arrays of a stripe grow.
+ *
+ * Many elements can have the same key, then the one stored first is found first.
+ * Polling takes elements starting with the stripe of the current thread, each stripe is first in first out,
+ * but the queue as a whole is not.
+ *
+ * This queue does not accept null elements, because null is returned by {@code poll} when the queue is empty.
+ *
+ * @param <E> generic type of the elements in this queue
+ */
+public class KeyedStripedQueue<E> extends AbstractQueue<E> implements DrainableQueue<E> {
+
+    /**
+     * Initial number of slots of each stripe.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The function giving the key of each element.
+     */
+    private final ToIntFunction<? super E> key;
+
+    /**
+     * The stripes of this queue, each one used as its own lock.
+     */
+    private final List<Stripe<E>> stripes;
+
+    /**
+     * Number of stripes minus one, used to compute stripe indexes with a bitwise and instead of a modulo.
+     */
+    private final int mask;
+
+    /**
+     * Number of bits of the stripe index, the hash of a key is rotated by them before indexing a hash table.
+     */
+    private final int stripeBits;
+
+    /**
+     * Number of elements in this queue, using a counter that does not become a point of contention itself.
+     */
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Create an empty queue with a stripe for each available processor.
+     *
+     * @param key the function giving the key of each element
+     */
+    public KeyedStripedQueue(ToIntFunction<? super E> key) {
+        this(Runtime.getRuntime().availableProcessors(), key);
+    }
+
+    /**
+     * Create an empty queue.
+     *
+     * @param stripes the minimum number of stripes, rounded up to a power of two
+     * @param key the function giving the key of each element
+     *
+     * @throws IllegalArgumentException if the number of stripes is not positive
+     */
+    public KeyedStripedQueue(int stripes, ToIntFunction<? super E> key) throws IllegalArgumentException {
+        if (stripes <= 0 || stripes > (1 << 16)) {
+            throw new IllegalArgumentException("Invalid number of stripes: " + stripes);
+        }
+
+        // Round up to a power of two
+        int count = Integer.highestOneBit(stripes);
+        if (count < stripes) {
+            count <<= 1;
+        }
+
+        this.key = key;
+        this.stripes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            this.stripes.add(new Stripe<>());
+        }
+        mask = count - 1;
+        stripeBits = Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Hash of a key, with its bits spread so consecutive keys go to different stripes and buckets.
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Stripe of the elements with a hash.
+     *
+     * @param hash the hash of the key of the elements
+     * @return the stripe keeping them
+     */
+    private Stripe<E> stripe(int hash) {
+        return stripes.get(hash & mask);
+    }
+
+    /**
+     * Hash of a key used in the hash table of its stripe, without the bits that chose the stripe.
+     *
+     * @param hash the hash of the key
+     * @return the hash for the table
+     */
+    private int tableHash(int hash) {
+        return Integer.rotateRight(hash, stripeBits);
+    }
+
+    /**
+     * Index of the stripe used first by the current thread when polling.
+     *
+     * @return a stripe index derived from the identifier of the current thread
+     */
+    private int stripeIndex() {
+        // Spread the bits of consecutive thread identifiers
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32) & mask;
+    }
+
+    /**
+     * Inserts an element into the stripe of its key.
+     *
+     * @param element the element to add
+     * @return always true, because this queue is unbounded
+     *
+     * @throws NullPointerException if element is null
+     */
+    @Override
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        int elementKey = key.applyAsInt(element);
+        int hash = hash(elementKey);
+
+        Stripe<E> stripe = stripe(hash);
+        synchronized (stripe) {
+            stripe.add(element, elementKey, tableHash(hash));
+        }
+        size.increment();
+
+        return true;
+    }
+
+    /**
+     * Checks if this queue has an element with a key.
+     *
+     * @param elementKey the key
+     * @return true if some element has that key, false otherwise
+     */
+    public boolean containsKey(int elementKey) {
+        int hash = hash(elementKey);
+
+        Stripe<E> stripe = stripe(hash);
+        synchronized (stripe) {
+            return stripe.find(elementKey, tableHash(hash)) >= 0;
+        }
+    }
+
+    /**
+     * Retrieves and removes an element with a key, the first one stored if there are many.
+     *
+     * @param elementKey the key
+     * @return the removed element, or null if no element has that key
+     */
+    public E removeKey(int elementKey) {
+        int hash = hash(elementKey);
+        int tableHash = tableHash(hash);
+
+        E element;
+        Stripe<E> stripe = stripe(hash);
+        synchronized (stripe) {
+            int bucket = stripe.find(elementKey, tableHash);
+            if (bucket < 0) {
+                return null;
+            }
+            element = stripe.removeBucket(bucket);
+        }
+        size.decrement();
+
+        return element;
+    }
+
+    /**
+     * Retrieves and removes an element, starting with the stripe of the current thread
+     * and trying the other stripes if that one is empty.
+     *
+     * Removing an element takes constant time.
+     *
+     * @return an element of this queue, or null if this queue is empty
+     */
+    @Override
+    public E poll() {
+        int start = stripeIndex();
+
+        for (int i = 0; i <= mask; i++) {
+            Stripe<E> stripe = stripes.get((start + i) & mask);
+
+            E element;
+            synchronized (stripe) {
+                element = stripe.size == 0 ? null : stripe.removeBucket(stripe.bucketOf(stripe.head));
+            }
+
+            if (element != null) {
+                size.decrement();
+                return element;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Retrieves, but does not remove, the element that {@code poll} would return.
+     *
+     * @return an element of this queue, or null if this queue is empty
+     */
+    @Override
+    public E peek() {
+        int start = stripeIndex();
+
+        for (int i = 0; i <= mask; i++) {
+            Stripe<E> stripe = stripes.get((start + i) & mask);
+
+            synchronized (stripe) {
+                if (stripe.size > 0) {
+                    return stripe.element(stripe.head);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes all the elements of this queue and adds them to a collection, locking each stripe only once.
+     *
+     * @param target the collection where the elements are added
+     * @return the number of elements moved
+     */
+    @Override
+    public int drainTo(Collection<? super E> target) {
+        int count = 0;
+
+        for (Stripe<E> stripe : stripes) {
+            int drained;
+            synchronized (stripe) {
+                drained = stripe.size;
+                stripe.copyTo(target);
+                stripe.clear();
+            }
+            size.add(-drained);
+            count += drained;
+        }
+
+        return count;
+    }
+
+    /**
+     * Number of elements in this queue.
+     *
+     * With concurrent threads this is an estimate of the size at the time of the call.
+     *
+     * @return the number of elements in this queue
+     */
+    @Override
+    public int size() {
+        return (int) Math.max(0, size.sum());
+    }
+
+    /**
+     * Checks if this queue is empty.
+     *
+     * @return true if this queue has no elements, false otherwise
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements of this queue, stripe by stripe.
+     *
+     * The iterator does not support removal.
+     *
+     * @return an iterator over the elements in this queue
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>(size());
+
+        for (Stripe<E> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.copyTo(snapshot);
+            }
+        }
+
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    /**
+     * A stripe of the queue: slots of elements linked in insertion order, and a hash table from keys to slots.
+     *
+     * Every method must be called with the monitor of the stripe held.
+     *
+     * @param <E> generic type of the elements
+     */
+    private static final class Stripe<E> {
+
+        /**
+         * Value of a link to no slot.
+         */
+        private static final int NONE = -1;
+
+        /**
+         * Element of each slot, null if the slot is free.
+         */
+        private Object[] elements = new Object[INITIAL_CAPACITY];
+
+        /**
+         * Key of the element of each slot.
+         */
+        private int[] keys = new int[INITIAL_CAPACITY];
+
+        /**
+         * Table hash of the key of each slot, kept so the table can be rebuilt without the hash function.
+         */
+        private int[] hashes = new int[INITIAL_CAPACITY];
+
+        /**
+         * Next slot in insertion order of each slot, or the next free slot of a free slot.
+         */
+        private int[] next = new int[INITIAL_CAPACITY];
+
+        /**
+         * Previous slot in insertion order of each slot.
+         */
+        private int[] previous = new int[INITIAL_CAPACITY];
+
+        /**
+         * Hash table of open addressing with linear probing, holding each slot plus one, or 0 in empty buckets.
+         */
+        private int[] table = new int[INITIAL_CAPACITY * 2];
+
+        /**
+         * Slot of the first element stored.
+         */
+        private int head = NONE;
+
+        /**
+         * Slot of the last element stored.
+         */
+        private int tail = NONE;
+
+        /**
+         * First free slot of the chain of free slots.
+         */
+        private int free = NONE;
+
+        /**
+         * Number of slots ever used.
+         */
+        private int used;
+
+        /**
+         * Number of elements.
+         */
+        private int size;
+
+        /**
+         * Get the element of a slot.
+         *
+         * @param slot the slot
+         * @return the element
+         */
+        @SuppressWarnings("unchecked")
+        private E element(int slot) {
+            return (E) elements[slot];
+        }
+
+        /**
+         * Add an element after the last one.
+         *
+         * @param element the element
+         * @param key the key of the element
+         * @param hash the table hash of the key
+         */
+        private void add(E element, int key, int hash) {
+            int slot;
+            if (free != NONE) {
+                slot = free;
+                free = next[slot];
+            } else {
+                if (used == elements.length) {
+                    grow();
+                }
+                slot = used++;
+            }
+
+            elements[slot] = element;
+            keys[slot] = key;
+            hashes[slot] = hash;
+
+            // Link the slot after the last one
+            next[slot] = NONE;
+            previous[slot] = tail;
+            if (tail == NONE) {
+                head = slot;
+            } else {
+                next[tail] = slot;
+            }
+            tail = slot;
+
+            insert(slot, hash);
+            size++;
+        }
+
+        /**
+         * Find the bucket of the first element stored with a key.
+         *
+         * @param key the key
+         * @param hash the table hash of the key
+         * @return the bucket of the element, or -1 if no element has that key
+         */
+        private int find(int key, int hash) {
+            int tableMask = table.length - 1;
+
+            // Elements with the same key are found in insertion order, because later ones probe further
+            for (int bucket = hash & tableMask; table[bucket] != 0; bucket = (bucket + 1) & tableMask) {
+                if (keys[table[bucket] - 1] == key) {
+                    return bucket;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Find the bucket of a slot.
+         *
+         * @param slot the slot of an element
+         * @return the bucket of the slot
+         */
+        private int bucketOf(int slot) {
+            int tableMask = table.length - 1;
+
+            int bucket = hashes[slot] & tableMask;
+            while (table[bucket] != slot + 1) {
+                bucket = (bucket + 1) & tableMask;
+            }
+            return bucket;
+        }
+
+        /**
+         * Remove the element of a bucket.
+         *
+         * @param bucket the bucket of the element
+         * @return the removed element
+         */
+        private E removeBucket(int bucket) {
+            int slot = table[bucket] - 1;
+            E element = element(slot);
+
+            delete(bucket);
+
+            // Unlink the slot and add it to the free slots
+            if (previous[slot] == NONE) {
+                head = next[slot];
+            } else {
+                next[previous[slot]] = next[slot];
+            }
+            if (next[slot] == NONE) {
+                tail = previous[slot];
+            } else {
+                previous[next[slot]] = previous[slot];
+            }
+
+            elements[slot] = null;
+            next[slot] = free;
+            free = slot;
+            size--;
+
+            return element;
+        }
+
+        /**
+         * Add a slot to the hash table, growing it if it becomes half full.
+         *
+         * @param slot the slot
+         * @param hash the table hash of the key of its element
+         */
+        private void insert(int slot, int hash) {
+            if ((size + 1) * 2 > table.length) {
+                rehash(table.length * 2);
+            }
+
+            int tableMask = table.length - 1;
+            int bucket = hash & tableMask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & tableMask;
+            }
+            table[bucket] = slot + 1;
+        }
+
+        /**
+         * Empty a bucket of the hash table, moving back the next slots of its probe sequence,
+         * so every slot can still be found without marks of deleted buckets.
+         *
+         * @param bucket the bucket
+         */
+        private void delete(int bucket) {
+            int tableMask = table.length - 1;
+            int hole = bucket;
+
+            for (int i = (bucket + 1) & tableMask; table[i] != 0; i = (i + 1) & tableMask) {
+                int ideal = hashes[table[i] - 1] & tableMask;
+
+                // Move the slot to the hole if the hole is between its ideal bucket and its bucket
+                if (((i - ideal) & tableMask) >= ((i - hole) & tableMask)) {
+                    table[hole] = table[i];
+                    hole = i;
+                }
+            }
+            table[hole] = 0;
+        }
+
+        /**
+         * Grow the arrays of slots.
+         */
+        private void grow() {
+            int capacity = elements.length * 2;
+            elements = Arrays.copyOf(elements, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+
+        /**
+         * Build the hash table again with another size.
+         *
+         * @param capacity the number of buckets, a power of two
+         */
+        private void rehash(int capacity) {
+            table = new int[capacity];
+            int tableMask = capacity - 1;
+
+            for (int slot = head; slot != NONE; slot = next[slot]) {
+                int bucket = hashes[slot] & tableMask;
+                while (table[bucket] != 0) {
+                    bucket = (bucket + 1) & tableMask;
+                }
+                table[bucket] = slot + 1;
+            }
+        }
+
+        /**
+         * Add every element to a collection, in insertion order.
+         *
+         * @param target the collection
+         */
+        private void copyTo(Collection<? super E> target) {
+            for (int slot = head; slot != NONE; slot = next[slot]) {
+                target.add(element(slot));
+            }
+        }
+
+        /**
+         * Remove every element, giving back the memory of the arrays.
+         */
+        private void clear() {
+            elements = new Object[INITIAL_CAPACITY];
+            keys = new int[INITIAL_CAPACITY];
+            hashes = new int[INITIAL_CAPACITY];
+            next = new int[INITIAL_CAPACITY];
+            previous = new int[INITIAL_CAPACITY];
+            table = new int[INITIAL_CAPACITY * 2];
+            head = NONE;
+            tail = NONE;
+            free = NONE;
+            used = 0;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package warehouse.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue that can be used by multiple producers and multiple consumers at the same time.
+ *
+ * Elements are kept in a fixed array used as a ring. Each slot of the ring has a sequence number that tells
+ * producers and consumers whose turn it is to use that slot, so threads only compete with a compare-and-set
+ * on the head or the tail counter instead of locking the whole queue.
+ *
+ * This queue does not accept null elements, because null is returned by {@code poll} when the queue is empty.
+ *
+ * @param <E> generic type of the elements in this queue
+ */
+public class RingBuffer<E> extends AbstractQueue<E> {
+
+    /**
+     * Slots of the ring where elements are stored.
+     */
+    private final AtomicReferenceArray<E> elements;
+
+    /**
+     * Sequence number of each slot.
+     *
+     * A slot with a sequence equal to the tail is free for the next producer,
+     * and a slot with a sequence equal to the head plus one has an element ready for the next consumer.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Number of slots minus one, used to compute slot indexes with a bitwise and instead of a modulo.
+     */
+    private final int mask;
+
+    /**
+     * Sequence of the next element to poll.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Sequence of the next element to offer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Create an empty ring buffer.
+     *
+     * The actual capacity is rounded up to the next power of two, and it is at least two.
+     * A single slot cannot tell a full ring from an empty one, because its sequence after an offer
+     * is the sequence the next producer expects.
+     *
+     * @param capacity the minimum number of elements this queue can hold
+     *
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public RingBuffer(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        // Round up to a power of two, with at least two slots
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        slots = Math.max(slots, 2);
+
+        elements = new AtomicReferenceArray<>(slots);
+        sequences = new AtomicLongArray(slots);
+        mask = slots - 1;
+
+        // Initially every slot is free for the producer whose tail sequence matches the slot index
+        for (int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Maximum number of elements this queue can hold.
+     *
+     * @return the capacity of this queue
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Inserts an element at the tail of this queue if there is free space.
+     *
+     * @param element the element to add
+     * @return true if the element was added, false if this queue is full
+     *
+     * @throws NullPointerException if element is null
+     */
+    @Override
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        long position = tail.get();
+        int index;
+
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                // The slot is free, try to claim it moving the tail forward
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still has an element one lap behind, so the queue is full
+                return false;
+            } else {
+                // Another producer claimed this slot, try again with the new tail
+                position = tail.get();
+            }
+        }
+
+        elements.set(index, element);
+
+        // Publish the element to the consumers
+        sequences.set(index, position + 1);
+
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the element at the head of this queue.
+     *
+     * @return the head of this queue, or null if this queue is empty
+     */
+    @Override
+    public E poll() {
+        long position = head.get();
+        int index;
+
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                // The slot has a published element, try to claim it moving the head forward
+                if (head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                // The slot has not been published yet, so the queue is empty
+                return null;
+            } else {
+                // Another consumer claimed this slot, try again with the new head
+                position = head.get();
+            }
+        }
+
+        E element = elements.get(index);
+        elements.set(index, null);
+
+        // Free the slot for the producer of the next lap
+        sequences.set(index, position + mask + 1);
+
+        return element;
+    }
+
+    /**
+     * Retrieves, but does not remove, the element at the head of this queue.
+     *
+     * With concurrent consumers the returned element may already have been polled by another thread.
+     *
+     * @return the head of this queue, or null if this queue is empty
+     */
+    @Override
+    public E peek() {
+        long position = head.get();
+        int index = (int) (position & mask);
+
+        if (sequences.get(index) == position + 1) {
+            return elements.get(index);
+        }
+        return null;
+    }
+
+    /**
+     * Number of elements in this queue.
+     *
+     * With concurrent producers or consumers this is an estimate of the size at the time of the call.
+     *
+     * @return the number of elements in this queue
+     */
+    @Override
+    public int size() {
+        // Read the head first so a concurrent poll cannot make the size negative
+        long head = this.head.get();
+        long tail = this.tail.get();
+
+        return (int) Math.max(0, Math.min(capacity(), tail - head));
+    }
+
+    /**
+     * Checks if this queue is empty.
+     *
+     * @return true if this queue has no elements, false otherwise
+     */
+    @Override
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements in this queue, from head to tail.
+     *
+     * The snapshot is only exact when no other thread is modifying this queue,
+     * and the iterator does not support removal.
+     *
+     * @return an iterator over the elements in this queue
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>(size());
+
+        long tail = this.tail.get();
+        for (long position = head.get(); position < tail; position++) {
+            E element = elements.get((int) (position & mask));
+            if (element != null) {
+                snapshot.add(element);
+            }
+        }
+
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+}
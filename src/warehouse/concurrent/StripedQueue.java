@@ -0,0 +1,249 @@
+package warehouse.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An unbounded thread-safe queue split in stripes, each one guarded by its own lock.
+ *
+ * Each thread adds and polls elements starting at its own stripe, so many threads adding elements at the same time
+ * rarely wait for each other. The price to pay is that elements are not retrieved in insertion order
+ * across different threads: each stripe is first in first out, but the queue as a whole is not.
+ *
+ * This queue does not accept null elements, because null is returned by {@code poll} when the queue is empty.
+ *
+ * @param <E> generic type of the elements in this queue
+ */
+public class StripedQueue<E> extends AbstractQueue<E> implements DrainableQueue<E> {
+
+    /**
+     * The stripes of this queue, each one used as its own lock.
+     */
+    private final List<ArrayDeque<E>> stripes;
+
+    /**
+     * Number of stripes minus one, used to compute stripe indexes with a bitwise and instead of a modulo.
+     */
+    private final int mask;
+
+    /**
+     * Number of elements in this queue, using a counter that does not become a point of contention itself.
+     */
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Create an empty queue with a stripe for each available processor.
+     */
+    public StripedQueue() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create an empty queue.
+     *
+     * @param stripes the minimum number of stripes, rounded up to a power of two
+     *
+     * @throws IllegalArgumentException if the number of stripes is not positive
+     */
+    public StripedQueue(int stripes) throws IllegalArgumentException {
+        if (stripes <= 0 || stripes > (1 << 16)) {
+            throw new IllegalArgumentException("Invalid number of stripes: " + stripes);
+        }
+
+        // Round up to a power of two
+        int count = Integer.highestOneBit(stripes);
+        if (count < stripes) {
+            count <<= 1;
+        }
+
+        this.stripes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            this.stripes.add(new ArrayDeque<>());
+        }
+        mask = count - 1;
+    }
+
+    /**
+     * Index of the stripe used first by the current thread.
+     *
+     * @return a stripe index derived from the identifier of the current thread
+     */
+    private int stripeIndex() {
+        // Spread the bits of consecutive thread identifiers
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32) & mask;
+    }
+
+    /**
+     * Inserts an element into the stripe of the current thread.
+     *
+     * @param element the element to add
+     * @return always true, because this queue is unbounded
+     *
+     * @throws NullPointerException if element is null
+     */
+    @Override
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        ArrayDeque<E> stripe = stripes.get(stripeIndex());
+        synchronized (stripe) {
+            stripe.addLast(element);
+        }
+        size.increment();
+
+        return true;
+    }
+
+    /**
+     * Inserts all the elements of a collection into the same stripe, locking it only once.
+     *
+     * @param elements the elements to add
+     * @return true if this queue changed
+     *
+     * @throws NullPointerException if some element is null
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> elements) {
+        if (elements.contains(null)) {
+            throw new NullPointerException();
+        }
+        if (elements.isEmpty()) {
+            return false;
+        }
+
+        ArrayDeque<E> stripe = stripes.get(stripeIndex());
+        synchronized (stripe) {
+            stripe.addAll(elements);
+        }
+        size.add(elements.size());
+
+        return true;
+    }
+
+    /**
+     * Retrieves and removes an element, starting with the stripe of the current thread
+     * and trying the other stripes if that one is empty.
+     *
+     * Removing an element takes constant time.
+     *
+     * @return an element of this queue, or null if this queue is empty
+     */
+    @Override
+    public E poll() {
+        int start = stripeIndex();
+
+        for (int i = 0; i <= mask; i++) {
+            ArrayDeque<E> stripe = stripes.get((start + i) & mask);
+
+            E element;
+            synchronized (stripe) {
+                element = stripe.pollFirst();
+            }
+
+            if (element != null) {
+                size.decrement();
+                return element;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Retrieves, but does not remove, the element that {@code poll} would return.
+     *
+     * @return an element of this queue, or null if this queue is empty
+     */
+    @Override
+    public E peek() {
+        int start = stripeIndex();
+
+        for (int i = 0; i <= mask; i++) {
+            ArrayDeque<E> stripe = stripes.get((start + i) & mask);
+
+            synchronized (stripe) {
+                E element = stripe.peekFirst();
+                if (element != null) {
+                    return element;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes all the elements of this queue and adds them to a collection, locking each stripe only once.
+     *
+     * @param target the collection where the elements are added
+     * @return the number of elements moved
+     */
+    @Override
+    public int drainTo(Collection<? super E> target) {
+        int count = 0;
+
+        for (ArrayDeque<E> stripe : stripes) {
+            int drained;
+            synchronized (stripe) {
+                drained = stripe.size();
+                target.addAll(stripe);
+                stripe.clear();
+            }
+            size.add(-drained);
+            count += drained;
+        }
+
+        return count;
+    }
+
+    /**
+     * Number of elements in this queue.
+     *
+     * With concurrent threads this is an estimate of the size at the time of the call.
+     *
+     * @return the number of elements in this queue
+     */
+    @Override
+    public int size() {
+        return (int) Math.max(0, size.sum());
+    }
+
+    /**
+     * Checks if this queue is empty.
+     *
+     * @return true if this queue has no elements, false otherwise
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements of this queue, stripe by stripe.
+     *
+     * The iterator does not support removal.
+     *
+     * @return an iterator over the elements in this queue
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>(size());
+
+        for (ArrayDeque<E> stripe : stripes) {
+            synchronized (stripe) {
+                snapshot.addAll(stripe);
+            }
+        }
+
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+}
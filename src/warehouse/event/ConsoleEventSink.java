@@ -0,0 +1,67 @@
+package warehouse.event;
+
+import java.io.PrintStream;
+
+/**
+ * An event sink that prints each event message in a line of the console.
+ */
+public class ConsoleEventSink implements EventSink {
+
+    /**
+     * Number of buffered characters after which the messages are printed without waiting for a flush,
+     * so a long batch of events under load doesn't make the buffer grow without bound.
+     */
+    private static final int MAX_BUFFER = 64 * 1024;
+
+    /**
+     * Buffer of messages not printed yet.
+     */
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * The console stream.
+     */
+    private final PrintStream out;
+
+    /**
+     * Create an event sink that prints to the standard output.
+     */
+    public ConsoleEventSink() {
+        this(System.out);
+    }
+
+    /**
+     * Create an event sink that prints to a stream.
+     *
+     * @param out the stream to print to
+     */
+    public ConsoleEventSink(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Append the message of an event to the buffer, printing the buffer if it is full.
+     *
+     * @param event the event to print
+     */
+    @Override
+    public void accept(Event event) {
+        buffer.append(event).append(System.lineSeparator());
+
+        if (buffer.length() >= MAX_BUFFER) {
+            flush();
+        }
+    }
+
+    /**
+     * Print every buffered message at once, taking the lock of the console only once.
+     */
+    @Override
+    public void flush() {
+        if (buffer.length() > 0) {
+            out.print(buffer);
+            out.flush();
+            buffer.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package warehouse.event;
+
+import warehouse.Position;
+import warehouse.vehicle.Vehicle;
+
+/**
+ * Something that happened in the warehouse.
+ *
+ * Events are preallocated slots of the ring buffer of an {@code EventBus} that are reused for every event,
+ * so publishing an event does not create new objects. That's why sinks must not keep a reference to an event
+ * after their {@code accept} method returns.
+ */
+public final class Event {
+
+    /**
+     * Sequence number of this event in its event bus.
+     */
+    private long sequence;
+
+    /**
+     * Time when this event happened, from {@code System.nanoTime}.
+     */
+    private long time;
+
+    /**
+     * Type of this event.
+     */
+    private EventType type;
+
+    /**
+     * The object that caused this event, like a vehicle or a conveyor.
+     */
+    private Object source;
+
+    /**
+     * The object affected by this event, like a piece.
+     */
+    private Object subject;
+
+    /**
+     * The position where this event happened, if any.
+     */
+    private Position position;
+
+    /**
+     * A number related to this event, like the remaining battery of a vehicle or the size of a conveyor.
+     */
+    private int value;
+
+    /**
+     * Events are only created by the event bus, so this constructor is package-private.
+     */
+    Event() {}
+
+    /**
+     * Fill this event slot with the data of a new event.
+     *
+     * @param sequence the sequence number of the event
+     * @param type the type of the event
+     * @param source the object that caused the event
+     * @param subject the object affected by the event
+     * @param position the position where the event happened
+     * @param value a number related to the event
+     */
+    void set(long sequence, EventType type, Object source, Object subject, Position position, int value) {
+        this.sequence = sequence;
+        this.time = System.nanoTime();
+        this.type = type;
+        this.source = source;
+        this.subject = subject;
+        this.position = position;
+        this.value = value;
+    }
+
+    /**
+     * Clear the references of this event slot so published objects can be garbage collected.
+     */
+    void clear() {
+        type = null;
+        source = null;
+        subject = null;
+        position = null;
+    }
+
+    /**
+     * Get the sequence number of this event in its event bus.
+     *
+     * @return the sequence number of this event
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the time when this event happened.
+     *
+     * @return the time of this event, from {@code System.nanoTime}
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the type of this event.
+     *
+     * @return the type of this event
+     */
+    public EventType getType() {
+        return type;
+    }
+
+    /**
+     * Get the object that caused this event.
+     *
+     * @return the source of this event
+     */
+    public Object getSource() {
+        return source;
+    }
+
+    /**
+     * Get the object affected by this event.
+     *
+     * @return the subject of this event, or null if there is none
+     */
+    public Object getSubject() {
+        return subject;
+    }
+
+    /**
+     * Get the position where this event happened.
+     *
+     * @return the position of this event, or null if there is none
+     */
+    public Position getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the number related to this event.
+     *
+     * @return the value of this event
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Get a message describing this event.
+     *
+     * @return a human readable message for this event
+     */
+    @Override
+    public String toString() {
+        switch (type) {
+            case PIECE_ADDED:
+                return subject + " added to the conveyor";
+            case PIECE_LOADED:
+                return subject + " loaded into the picking point";
+            case PIECE_UNLOADED:
+                return subject + " removed from the picking point";
+            case CONVEYOR_MOVED:
+                return "Conveyor moves forward";
+            case CONVEYOR_SIZE:
+                return "There are " + value + " pieces remaining in the conveyor";
+            case CONVEYOR_FULL:
+                return "Conveyor at " + position + " is full with " + value + " pieces, waiting to add " + subject;
+            case PIECE_ASSIGNED:
+                return vehicle() + ": assigned " + subject + " from " + position;
+            case PIECE_UNDELIVERABLE:
+                return value < 0
+                        ? subject + " from " + position + " cannot reach its storage or a charging station"
+                        : subject + " from " + position + " needs " + value + " steps to be delivered, "
+                                + "more than any vehicle can move with a full battery";
+            case VEHICLE_LOADED:
+                return vehicle() + ": load " + subject + ", should be stored at " + position;
+            case VEHICLE_MOVED:
+                return vehicle() + ": moves to " + position;
+            case VEHICLE_WAITING:
+                return vehicle() + ": is at " + position;
+            case PIECE_STORED:
+                return subject + " stored at " + position;
+            case VEHICLE_CHARGING:
+                return vehicle() + ": charging at " + position;
+            case VEHICLE_CHARGED:
+                return vehicle() + ": charged at " + position;
+            case BATTERY_DEPLETED:
+                return vehicle() + " has run out of battery!";
+            default:
+                return type + " " + source;
+        }
+    }
+
+    /**
+     * Describe the vehicle source of this event with its battery at the time of the event.
+     *
+     * @return the name of the vehicle with its remaining battery percentage
+     */
+    private String vehicle() {
+        String name = source instanceof Vehicle ? ((Vehicle) source).getName() : String.valueOf(source);
+        return name + " (" + value + "%)";
+    }
+}
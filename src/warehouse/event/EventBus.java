@@ -0,0 +1,312 @@
+package warehouse.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import warehouse.Position;
+
+/**
+ * Publishes warehouse events to a sink from a background thread.
+ *
+ * Events are written into a ring of preallocated event slots, so publishing an event does not create objects
+ * and only costs a few atomic operations. A single consumer thread takes the events in order and gives them
+ * to the sink, so the threads moving vehicles never wait for the console or a file.
+ *
+ * Events with a level below the level of the bus are discarded before touching the ring.
+ * If the ring is full then publishers wait until the consumer frees a slot.
+ */
+public class EventBus implements AutoCloseable {
+
+    /**
+     * Default number of event slots.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /**
+     * Time the consumer sleeps when there are no events.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * The event bus used by the warehouse components.
+     */
+    private static volatile EventBus defaultBus;
+
+    /**
+     * Preallocated event slots.
+     */
+    private final Event[] events;
+
+    /**
+     * Sequence number of each slot.
+     *
+     * A slot with a sequence equal to a claimed sequence is free for that publisher,
+     * and a slot with a sequence equal to the head plus one has an event ready for the consumer.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Number of slots minus one, used to compute slot indexes with a bitwise and instead of a modulo.
+     */
+    private final int mask;
+
+    /**
+     * Sequence of the next event to publish.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Sequence of the next event to consume.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Where events are sent.
+     */
+    private final EventSink sink;
+
+    /**
+     * Minimum level of the events to publish.
+     */
+    private volatile EventLevel level;
+
+    /**
+     * Whether the consumer thread should keep running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Thread taking the events from the ring and sending them to the sink.
+     */
+    private final Thread consumer;
+
+    /**
+     * Create an event bus with a background consumer thread.
+     *
+     * @param capacity the minimum number of event slots, rounded up to a power of two of at least two
+     * @param level the minimum level of the events to publish
+     * @param sink where events are sent
+     *
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public EventBus(int capacity, EventLevel level, EventSink sink) throws IllegalArgumentException {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        // Round up to a power of two, a single slot would be free again for the next publisher once published
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        slots = Math.max(slots, 2);
+
+        events = new Event[slots];
+        sequences = new AtomicLongArray(slots);
+        mask = slots - 1;
+
+        for (int i = 0; i < slots; i++) {
+            events[i] = new Event();
+            sequences.set(i, i);
+        }
+
+        this.level = level;
+        this.sink = sink;
+
+        consumer = new Thread(this::consume, "event-bus");
+        consumer.setDaemon(true); // do not prevent the program from ending
+        consumer.start();
+    }
+
+    /**
+     * Get the event bus used by the warehouse components.
+     *
+     * If no event bus has been set then a bus printing {@code INFO} events to the console is created.
+     *
+     * @return the default event bus
+     */
+    public static EventBus getDefault() {
+        EventBus bus = defaultBus;
+        if (bus == null) {
+            synchronized (EventBus.class) {
+                bus = defaultBus;
+                if (bus == null) {
+                    bus = new EventBus(DEFAULT_CAPACITY, EventLevel.INFO, new ConsoleEventSink());
+                    defaultBus = bus;
+                }
+            }
+        }
+        return bus;
+    }
+
+    /**
+     * Set the event bus used by the warehouse components.
+     *
+     * The previous default bus is not closed.
+     *
+     * @param bus the new default event bus
+     */
+    public static void setDefault(EventBus bus) {
+        defaultBus = bus;
+    }
+
+    /**
+     * Get the minimum level of the events to publish.
+     *
+     * @return the level of this bus
+     */
+    public EventLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Set the minimum level of the events to publish.
+     *
+     * @param level the new level of this bus
+     */
+    public void setLevel(EventLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Checks if events of a type would be published.
+     *
+     * @param type the type of the events
+     * @return true if the events of that type are published, false if they are discarded
+     */
+    public boolean isEnabled(EventType type) {
+        return type.getLevel().isAtLeast(level);
+    }
+
+    /**
+     * Publish an event with a subject.
+     *
+     * @param type the type of the event
+     * @param source the object that caused the event
+     * @param subject the object affected by the event
+     */
+    public void publish(EventType type, Object source, Object subject) {
+        publish(type, source, subject, null, 0);
+    }
+
+    /**
+     * Publish an event with a position and a value.
+     *
+     * @param type the type of the event
+     * @param source the object that caused the event
+     * @param position the position where the event happened
+     * @param value a number related to the event
+     */
+    public void publish(EventType type, Object source, Position position, int value) {
+        publish(type, source, null, position, value);
+    }
+
+    /**
+     * Publish an event.
+     *
+     * The event is discarded if its level is below the level of this bus.
+     * The objects of the event are converted to text later in the consumer thread,
+     * so they should not change after being published.
+     *
+     * @param type the type of the event
+     * @param source the object that caused the event
+     * @param subject the object affected by the event
+     * @param position the position where the event happened
+     * @param value a number related to the event
+     */
+    public void publish(EventType type, Object source, Object subject, Position position, int value) {
+        if (!isEnabled(type) || !running) {
+            return;
+        }
+
+        // Claim the next sequence
+        long sequence = tail.getAndIncrement();
+        int index = (int) (sequence & mask);
+
+        // Wait until the consumer has freed the slot of this sequence
+        while (sequences.get(index) != sequence) {
+            Thread.onSpinWait();
+        }
+
+        events[index].set(sequence, type, source, subject, position, value);
+
+        // Publish the event to the consumer
+        sequences.set(index, sequence + 1);
+    }
+
+    /**
+     * Wait until every event published before this call has been sent to the sink, then flush the sink.
+     */
+    public void flush() {
+        long target = tail.get();
+
+        while (head.get() < target && consumer.isAlive()) {
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+    }
+
+    /**
+     * Send every published event to the sink, stop the consumer thread and close the sink.
+     */
+    @Override
+    public void close() {
+        flush();
+
+        running = false;
+        LockSupport.unpark(consumer);
+
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        sink.close();
+    }
+
+    /**
+     * Loop of the consumer thread, taking published events in order and sending them to the sink.
+     *
+     * The sink is flushed each time there are no more events waiting.
+     */
+    private void consume() {
+        long sequence = head.get();
+
+        while (running || sequence < tail.get()) {
+            int index = (int) (sequence & mask);
+
+            if (sequences.get(index) == sequence + 1) {
+                Event event = events[index];
+
+                try {
+                    sink.accept(event);
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // a failing sink should not stop the bus
+                }
+                event.clear();
+
+                // Free the slot for the publisher of the next lap
+                sequences.set(index, sequence + mask + 1);
+
+                sequence++;
+            } else {
+                // No more events waiting
+                sink.flush();
+                head.set(sequence);
+
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+
+            // Let waiting flushes know the progress from time to time
+            if ((sequence & 0xFF) == 0) {
+                head.set(sequence);
+            }
+        }
+
+        sink.flush();
+        head.set(sequence);
+    }
+}
@@ -0,0 +1,28 @@
+package warehouse.event;
+
+/**
+ * Importance of an event, used to filter which events are published.
+ */
+public enum EventLevel {
+    // Detailed events, like every move of a vehicle
+    DEBUG,
+
+    // Main events of the process, like pieces loaded and stored
+    INFO,
+
+    // Problems, like vehicles running out of battery
+    WARN,
+
+    // No event is published with this level
+    OFF;
+
+    /**
+     * Checks if events of this level should be published with a minimum level.
+     *
+     * @param minimum the minimum level to publish
+     * @return true if this level is at least the minimum level, false otherwise
+     */
+    public boolean isAtLeast(EventLevel minimum) {
+        return this.compareTo(minimum) >= 0;
+    }
+}
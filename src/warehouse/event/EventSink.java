@@ -0,0 +1,36 @@
+package warehouse.event;
+
+/**
+ * A destination for the events published in an event bus.
+ *
+ * Sinks are called from the single consumer thread of the event bus, so they don't need to be thread-safe.
+ */
+public interface EventSink {
+
+    /**
+     * A sink that ignores every event.
+     */
+    EventSink NONE = event -> {};
+
+    /**
+     * Receive an event.
+     *
+     * The event is reused after this method returns, so it must not be referenced later.
+     *
+     * @param event the event to receive
+     */
+    void accept(Event event);
+
+    /**
+     * Write any buffered event.
+     *
+     * Called when there are no more events waiting in the event bus.
+     */
+    default void flush() {}
+
+    /**
+     * Release any resource used by this sink.
+     */
+    default void close() {}
+
+}
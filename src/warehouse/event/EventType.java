@@ -0,0 +1,74 @@
+package warehouse.event;
+
+/**
+ * Types of events happening in the warehouse, with their level.
+ */
+public enum EventType {
+    // A piece has been added to the conveyor
+    PIECE_ADDED (EventLevel.INFO),
+
+    // A piece has been loaded into the picking point
+    PIECE_LOADED (EventLevel.INFO),
+
+    // A piece has been removed from the picking point
+    PIECE_UNLOADED (EventLevel.INFO),
+
+    // The conveyor has moved forward
+    CONVEYOR_MOVED (EventLevel.DEBUG),
+
+    // Number of pieces remaining in the conveyor after an unload
+    CONVEYOR_SIZE (EventLevel.INFO),
+
+    // A producer has found the conveyor full and waits for room
+    CONVEYOR_FULL (EventLevel.DEBUG),
+
+    // A dispatcher has assigned a piece of the picking point to an idle vehicle
+    PIECE_ASSIGNED (EventLevel.DEBUG),
+
+    // A dispatcher has set aside a piece no vehicle can deliver even with a full battery
+    PIECE_UNDELIVERABLE (EventLevel.WARN),
+
+    // A vehicle has loaded a piece from the picking point
+    VEHICLE_LOADED (EventLevel.INFO),
+
+    // A vehicle has moved one position
+    VEHICLE_MOVED (EventLevel.INFO),
+
+    // A vehicle has not moved because it is at its target
+    VEHICLE_WAITING (EventLevel.DEBUG),
+
+    // An object has been stored in a storage
+    PIECE_STORED (EventLevel.INFO),
+
+    // A vehicle has started charging at a charging station
+    VEHICLE_CHARGING (EventLevel.INFO),
+
+    // A vehicle has finished charging
+    VEHICLE_CHARGED (EventLevel.INFO),
+
+    // A vehicle has run out of battery
+    BATTERY_DEPLETED (EventLevel.WARN);
+
+    /**
+     * Level of the events of this type.
+     */
+    private final EventLevel level;
+
+    /**
+     * Create a new event type.
+     *
+     * @param level the level of the events of this type
+     */
+    private EventType(EventLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Get the level of the events of this type.
+     *
+     * @return the level of the events of this type
+     */
+    public EventLevel getLevel() {
+        return level;
+    }
+}
@@ -0,0 +1,78 @@
+package warehouse.event;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An event sink that writes each event in a line of a text file, with its sequence and time.
+ */
+public class FileEventSink implements EventSink {
+
+    /**
+     * Buffered writer of the file.
+     */
+    private final BufferedWriter writer;
+
+    /**
+     * Create an event sink writing to a file, replacing the file if it already exists.
+     *
+     * @param path the path of the file
+     *
+     * @throws UncheckedIOException if the file cannot be opened
+     */
+    public FileEventSink(Path path) throws UncheckedIOException {
+        try {
+            writer = Files.newBufferedWriter(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write an event as a line with its sequence, time, type and message.
+     *
+     * @param event the event to write
+     *
+     * @throws UncheckedIOException if the event cannot be written
+     */
+    @Override
+    public void accept(Event event) throws UncheckedIOException {
+        try {
+            writer.write(event.getSequence() + "\t" + event.getTime() + "\t" + event.getType() + "\t" + event);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the buffered lines to the file.
+     *
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public void flush() throws UncheckedIOException {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws UncheckedIOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws UncheckedIOException {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
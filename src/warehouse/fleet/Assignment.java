@@ -0,0 +1,147 @@
+package warehouse.fleet;
+
+import java.util.Collections;
+import java.util.List;
+
+import warehouse.ChargingStation;
+import warehouse.Position;
+import warehouse.pieces.Piece;
+
+/**
+ * Work a dispatcher has assigned to a vehicle: either some pieces waiting at the picking point
+ * of one of the conveyor lines, or a charging station where the vehicle should recharge its battery.
+ */
+public final class Assignment {
+
+    /**
+     * An assignment without pieces, given to a vehicle that has no more work.
+     */
+    public static final Assignment NONE = new Assignment(-1, null, Collections.emptyList(), 0);
+
+    /**
+     * Index of the conveyor line of the pieces.
+     */
+    private final int line;
+
+    /**
+     * Position of the picking point where the pieces should be loaded.
+     */
+    private final Position pickingPoint;
+
+    /**
+     * The assigned pieces, already unloaded from the conveyor.
+     */
+    private final List<Piece> pieces;
+
+    /**
+     * The charging station where the vehicle should go, or null if the vehicle has pieces to move.
+     */
+    private final ChargingStation station;
+
+    /**
+     * Steps the vehicle can move besides its route and still reach a charging station with its battery.
+     */
+    private final int spare;
+
+    /**
+     * Create an assignment.
+     *
+     * Assignments are only created by the dispatcher, so this constructor is package-private.
+     *
+     * @param line the index of the conveyor line of the pieces
+     * @param pickingPoint the position of the picking point where the pieces should be loaded
+     * @param pieces the assigned pieces
+     * @param spare the steps the vehicle can move besides its route
+     */
+    Assignment(int line, Position pickingPoint, List<Piece> pieces, int spare) {
+        this.line = line;
+        this.pickingPoint = pickingPoint;
+        this.pieces = Collections.unmodifiableList(pieces);
+        this.spare = spare;
+
+        station = null;
+    }
+
+    /**
+     * Create an assignment to recharge at a charging station.
+     *
+     * Assignments are only created by the dispatcher, so this constructor is package-private.
+     *
+     * @param station the charging station where the vehicle should go
+     * @param spare the steps the vehicle can move besides its route to the station
+     */
+    Assignment(ChargingStation station, int spare) {
+        this.line = -1;
+        this.pickingPoint = null;
+        this.pieces = Collections.emptyList();
+        this.station = station;
+        this.spare = spare;
+    }
+
+    /**
+     * Get the index of the conveyor line of the assigned pieces.
+     *
+     * @return the line of the pieces, or -1 if there are no pieces
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Get the position of the picking point where the pieces should be loaded.
+     *
+     * @return the picking point position, or null if there are no pieces
+     */
+    public Position getPickingPointPosition() {
+        return pickingPoint;
+    }
+
+    /**
+     * Get the assigned pieces.
+     *
+     * @return the pieces assigned to the vehicle
+     */
+    public List<Piece> getPieces() {
+        return pieces;
+    }
+
+    /**
+     * Get the charging station where the vehicle should recharge.
+     *
+     * @return the charging station, or null if this assignment is not a charge
+     */
+    public ChargingStation getChargingStation() {
+        return station;
+    }
+
+    /**
+     * Get the steps the vehicle can move besides the route of this assignment, like going around other vehicles,
+     * and still have enough battery to reach a charging station at the end.
+     *
+     * The route of the pieces goes from the position of the vehicle to the picking point and then
+     * to their storages in the order planned by the dispatcher, ending at the last storage.
+     *
+     * @return the spare steps, or 0 if there is no route
+     */
+    public int getSpareSteps() {
+        return spare;
+    }
+
+    /**
+     * Checks if this assignment is to recharge at a charging station.
+     *
+     * @return true if the vehicle should go to a charging station, false otherwise
+     */
+    public boolean isCharge() {
+        return station != null;
+    }
+
+    /**
+     * Checks if this assignment has no pieces.
+     *
+     * @return true if there are no pieces to move, false otherwise
+     */
+    public boolean isEmpty() {
+        return pieces.isEmpty();
+    }
+}
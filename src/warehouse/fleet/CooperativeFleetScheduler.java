@@ -0,0 +1,84 @@
+package warehouse.fleet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A fleet scheduler where each thread advances many vehicles, one step of each vehicle at a time.
+ *
+ * Vehicles are split between the threads in a round robin fashion and each thread loops over its vehicles
+ * until all of them are finished, so no thread is needed per vehicle.
+ */
+class CooperativeFleetScheduler extends FleetScheduler {
+
+    /**
+     * The number of threads sharing the vehicles.
+     */
+    private final int numberOfThreads;
+
+    /**
+     * Threads running the vehicle tasks.
+     */
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * Create a new cooperative fleet scheduler.
+     *
+     * @param numberOfThreads the number of threads sharing the vehicles
+     *
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    CooperativeFleetScheduler(int numberOfThreads) throws IllegalArgumentException {
+        if (numberOfThreads <= 0) {
+            throw new IllegalArgumentException("Invalid number of threads: " + numberOfThreads);
+        }
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * Split the tasks between the threads and start the threads.
+     *
+     * @param tasks the tasks to run
+     */
+    @Override
+    protected void launch(List<VehicleTask> tasks) {
+        int count = Math.min(numberOfThreads, Math.max(1, tasks.size()));
+
+        for (int t = 0; t < count; t++) {
+            // Each thread takes one task of every count tasks
+            List<VehicleTask> own = new ArrayList<>();
+            for (int i = t; i < tasks.size(); i++) {
+                if (i % count == t) {
+                    own.add(tasks.get(i));
+                }
+            }
+
+            Thread thread = new Thread(() -> runAll(own), "agvs-cooperative-" + (t + 1));
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Loop over some tasks doing one step of each one, removing the finished tasks, until all of them are finished.
+     *
+     * @param tasks the tasks to run
+     */
+    private void runAll(List<VehicleTask> tasks) {
+        while (!tasks.isEmpty()) {
+            Iterator<VehicleTask> iterator = tasks.iterator();
+            while (iterator.hasNext()) {
+                if (!runStep(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Nothing to release, each thread ends when its tasks are finished.
+     */
+    @Override
+    protected void shutdown() {}
+}
@@ -0,0 +1,948 @@
+package warehouse.fleet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import warehouse.ChargingStation;
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.event.EventBus;
+import warehouse.event.EventType;
+import warehouse.map.TourPlanner;
+import warehouse.map.WarehouseMap;
+import warehouse.metrics.LockMetrics;
+import warehouse.metrics.Metrics;
+import warehouse.pieces.Piece;
+import warehouse.vehicle.AGVS;
+
+/**
+ * Assigns the pieces of the picking points of some conveyor lines to the idle vehicles.
+ *
+ * Instead of every vehicle driving back to a picking point and racing for the next piece,
+ * an idle vehicle asks the dispatcher for a task and waits until it gets one. Each time a vehicle becomes idle
+ * or a piece is added, the dispatcher matches all the idle vehicles with the waiting pieces at once:
+ * every piece, in the order of its conveyor, goes to the nearest idle vehicle with room for it and enough battery
+ * to reach the picking point and then visit the storages of all its pieces, preferring the vehicle with more battery
+ * between vehicles at the same distance. So a vehicle with capacity for many pieces is filled up
+ * before the next vehicle gets any piece.
+ *
+ * Each vehicle is homed to a line and gets the pieces of its line first. Idle vehicles left without pieces
+ * steal work from the other lines, starting with the line with the deepest backlog, so no vehicle sits idle
+ * while another line floods. The pieces of a task always come from a single line.
+ *
+ * With charging stations the dispatcher is aware of the energy of the vehicles: a vehicle only gets pieces
+ * if after storing them it still has enough battery to reach a charging station, so it never runs out of battery
+ * in the middle of a route with pieces on board. Idle vehicles go to charge when their battery is below
+ * a threshold, or when they don't have enough battery for any of the waiting pieces. A vehicle with a full battery
+ * that still cannot move any waiting piece goes to the charging station nearest to their picking point,
+ * or keeps waiting for the next pieces if it is already there.
+ *
+ * Each assignment tells the vehicle how many spare steps its battery has besides the planned route,
+ * so a vehicle only goes around the vehicles in its way while it can still reach a charging station.
+ *
+ * A piece no vehicle could deliver even starting with a full battery from the charging station nearest
+ * to its picking point is set aside instead of blocking the pieces after it, and reported with
+ * {@code getUndeliverable} and a {@code PIECE_UNDELIVERABLE} event.
+ *
+ * Only the dispatcher unloads the picking points, so pieces should be added through {@code add} or {@code put},
+ * otherwise idle vehicles are not woken up for them.
+ */
+public class Dispatcher {
+
+    /**
+     * Battery percentage below which an idle vehicle is sent to charge, if no threshold is given.
+     */
+    public static final int DEFAULT_CHARGE_THRESHOLD = 25;
+
+    /**
+     * The conveyor lines, each one with its own queue of waiting pieces.
+     */
+    private final List<Line> lines;
+
+    /**
+     * Map of the warehouse floor used to measure travel distances, or null to use the Manhattan distance.
+     */
+    private final WarehouseMap map;
+
+    /**
+     * Plans the routes of the vehicles through the storages of their pieces.
+     */
+    private final TourPlanner planner;
+
+    /**
+     * Lock guarding the idle vehicles, the homes and the waiting pieces.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Metrics of the waits for the lock, or null if metrics are disabled.
+     */
+    private final LockMetrics lockMetrics;
+
+    /**
+     * Idle vehicles waiting for a task, in the order they became idle.
+     */
+    private final List<Request> idle = new ArrayList<>();
+
+    /**
+     * Line of each vehicle.
+     */
+    private final Map<AGVS, Line> homes = new IdentityHashMap<>();
+
+    /**
+     * Most steps any vehicle of this dispatcher can move with a full battery.
+     */
+    private int range;
+
+    /**
+     * Pieces no vehicle could deliver with a full battery, in the order they were set aside.
+     */
+    private final List<Piece> undeliverable = new ArrayList<>();
+
+    /**
+     * Charging stations where the vehicles can recharge.
+     */
+    private final List<ChargingStation> stations = new ArrayList<>();
+
+    /**
+     * Battery percentage below which an idle vehicle is sent to charge.
+     */
+    private int chargeThreshold = DEFAULT_CHARGE_THRESHOLD;
+
+    /**
+     * Whether no more pieces will be added.
+     */
+    private boolean closed;
+
+    /**
+     * Create a dispatcher of a single conveyor measuring travel distances without obstacles.
+     *
+     * @param conveyor the conveyor providing the pieces
+     */
+    public Dispatcher(Conveyor conveyor) {
+        this(conveyor, null);
+    }
+
+    /**
+     * Create a dispatcher of a single conveyor measuring travel distances over the routes of a map.
+     *
+     * @param conveyor the conveyor providing the pieces
+     * @param map the map of the warehouse floor, or null to use the Manhattan distance
+     */
+    public Dispatcher(Conveyor conveyor, WarehouseMap map) {
+        this(List.of(conveyor), map);
+    }
+
+    /**
+     * Create a dispatcher of many conveyor lines measuring travel distances over the routes of a map.
+     *
+     * @param conveyors the conveyors providing the pieces, the index of each one is its line
+     * @param map the map of the warehouse floor, or null to use the Manhattan distance
+     *
+     * @throws IllegalArgumentException if there are no conveyors
+     */
+    public Dispatcher(List<Conveyor> conveyors, WarehouseMap map) throws IllegalArgumentException {
+        if (conveyors.isEmpty()) {
+            throw new IllegalArgumentException("A dispatcher needs some conveyor");
+        }
+
+        lines = new ArrayList<>(conveyors.size());
+        for (int i = 0; i < conveyors.size(); i++) {
+            lines.add(new Line(i, conveyors.get(i)));
+        }
+
+        this.map = map;
+
+        planner = new TourPlanner(map);
+
+        lockMetrics = Metrics.isEnabled() ? Metrics.register("Lock", "Dispatcher", new LockMetrics()) : null;
+    }
+
+    /**
+     * Acquire the lock of this dispatcher, measuring the wait if metrics are enabled.
+     */
+    private void acquire() {
+        if (lockMetrics == null) {
+            lock.lock();
+            return;
+        }
+
+        long start = System.nanoTime();
+        lock.lock();
+        lockMetrics.acquired(System.nanoTime() - start);
+    }
+
+    /**
+     * Number of conveyor lines of this dispatcher.
+     *
+     * @return the number of lines
+     */
+    public int getLineCount() {
+        return lines.size();
+    }
+
+    /**
+     * Position of the picking point of a line.
+     *
+     * @param line the index of the line
+     * @return the picking point position of the conveyor of the line
+     *
+     * @throws IndexOutOfBoundsException if there is no such line
+     */
+    public Position getPickingPointPosition(int line) throws IndexOutOfBoundsException {
+        return lines.get(line).conveyor.getPickingPointPosition();
+    }
+
+    /**
+     * Home a vehicle to a line, so it gets the pieces of that line before the pieces of other lines.
+     *
+     * Vehicles that are not homed to any line are homed to the line with the nearest picking point
+     * the first time they ask for a task.
+     *
+     * @param vehicle the vehicle
+     * @param line the index of the line
+     *
+     * @throws IndexOutOfBoundsException if there is no such line
+     */
+    public void setHome(AGVS vehicle, int line) throws IndexOutOfBoundsException {
+        acquire();
+        try {
+            homes.put(vehicle, lines.get(line));
+            range = Math.max(range, vehicle.getMaxBattery() / vehicle.getMoveBatteryConsumption());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a charging station where idle vehicles can be sent to recharge.
+     *
+     * @param station the charging station
+     */
+    public void addChargingStation(ChargingStation station) {
+        acquire();
+        try {
+            stations.add(station);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set the battery percentage below which an idle vehicle is sent to charge.
+     *
+     * @param threshold the percentage of battery, from 0 to 100
+     *
+     * @throws IllegalArgumentException if threshold is not a percentage
+     */
+    public void setChargeThreshold(int threshold) throws IllegalArgumentException {
+        if (threshold < 0 || threshold > 100) {
+            throw new IllegalArgumentException("Invalid charge threshold: " + threshold);
+        }
+
+        acquire();
+        try {
+            chargeThreshold = threshold;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a piece to the conveyor of the first line, assigning it to an idle vehicle if there is one.
+     *
+     * @param piece the piece to add
+     *
+     * @throws IllegalStateException if this dispatcher is closed or the conveyor is full
+     */
+    public void add(Piece piece) throws IllegalStateException {
+        add(0, piece);
+    }
+
+    /**
+     * Adds a piece to the conveyor of a line, assigning it to an idle vehicle if there is one.
+     *
+     * @param line the index of the line
+     * @param piece the piece to add
+     *
+     * @throws IllegalStateException if this dispatcher is closed or the conveyor is full
+     * @throws IndexOutOfBoundsException if there is no such line
+     */
+    public void add(int line, Piece piece) throws IllegalStateException, IndexOutOfBoundsException {
+        acquire();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Dispatcher is closed");
+            }
+
+            lines.get(line).conveyor.add(piece);
+
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a piece to the conveyor of a line, waiting while the conveyor is full,
+     * and then assigns it to an idle vehicle if there is one.
+     *
+     * Room is only made when the dispatcher unloads pieces for the vehicles, so this dispatcher is not locked
+     * while waiting. A producer adding pieces with this method should finish before calling {@code close}.
+     *
+     * @param line the index of the line
+     * @param piece the piece to add
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for room
+     * @throws IllegalStateException if this dispatcher is closed
+     * @throws IndexOutOfBoundsException if there is no such line
+     */
+    public void put(int line, Piece piece) throws InterruptedException, IllegalStateException, IndexOutOfBoundsException {
+        Conveyor conveyor = lines.get(line).conveyor;
+
+        acquire();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Dispatcher is closed");
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        conveyor.put(piece);
+
+        acquire();
+        try {
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Let the vehicles know that no more pieces will be added.
+     *
+     * Vehicles keep taking the pieces already in the conveyors, and then {@code take} returns an empty assignment.
+     */
+    public void close() {
+        acquire();
+        try {
+            closed = true;
+
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until some pieces of a line are assigned to an idle vehicle, as many as its capacity at most,
+     * or the vehicle is sent to a charging station.
+     *
+     * The pieces have already been unloaded from the picking point, so they belong to the vehicle,
+     * which should go to the picking point of the assignment to load them.
+     *
+     * @param vehicle the idle vehicle, without any piece loaded
+     * @return the pieces assigned to the vehicle or the charging station where it should go,
+     *         or {@code Assignment.NONE} once this dispatcher is closed and there are no more pieces,
+     *         or none of the pieces left can ever be moved by the vehicle
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public Assignment take(AGVS vehicle) throws InterruptedException {
+        acquire();
+        try {
+            Request request = new Request(vehicle, home(vehicle), lock.newCondition());
+            idle.add(request);
+
+            dispatch();
+
+            while (!request.done) {
+                try {
+                    request.assigned.await();
+                } catch (InterruptedException e) {
+                    if (!request.done) {
+                        idle.remove(request);
+                        throw e;
+                    }
+                    // The pieces were assigned at the same time, keep them so they are not lost
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (request.station != null) {
+                return new Assignment(request.station, request.spare);
+            }
+            if (request.line == null) {
+                return Assignment.NONE;
+            }
+            return new Assignment(request.line.index, request.line.conveyor.getPickingPointPosition(),
+                    request.pieces, request.spare);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of vehicles waiting for a task.
+     *
+     * @return the number of idle vehicles
+     */
+    public int getIdleCount() {
+        acquire();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the pieces set aside because no vehicle could deliver them even with a full battery.
+     *
+     * These pieces are no longer in any line, so a closed dispatcher can be drained while they are left.
+     *
+     * @return a copy of the undeliverable pieces, in the order they were set aside
+     */
+    public List<Piece> getUndeliverable() {
+        acquire();
+        try {
+            return new ArrayList<>(undeliverable);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of pieces of a line not assigned to any vehicle yet.
+     *
+     * @param line the index of the line
+     * @return the pieces waiting in the conveyor of the line or already unloaded from its picking point
+     *
+     * @throws IndexOutOfBoundsException if there is no such line
+     */
+    public int getBacklog(int line) throws IndexOutOfBoundsException {
+        acquire();
+        try {
+            return lines.get(line).backlog();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the line of a vehicle, homing it to the line with the nearest picking point if it has no line yet.
+     *
+     * Must be called holding the lock.
+     *
+     * @param vehicle the vehicle
+     * @return the home line of the vehicle
+     */
+    private Line home(AGVS vehicle) {
+        Line home = homes.get(vehicle);
+
+        if (home == null) {
+            int best = Integer.MAX_VALUE;
+            for (Line line : lines) {
+                int distance = distance(vehicle.getPosition(), line.conveyor.getPickingPointPosition());
+                if (distance >= 0 && distance < best) {
+                    best = distance;
+                    home = line;
+                }
+            }
+            if (home == null) {
+                home = lines.get(0);
+            }
+            homes.put(vehicle, home);
+            range = Math.max(range, vehicle.getMaxBattery() / vehicle.getMoveBatteryConsumption());
+        }
+        return home;
+    }
+
+    /**
+     * Match the idle vehicles with the waiting pieces, waking up each vehicle that gets some pieces.
+     *
+     * Must be called holding the lock.
+     */
+    private void dispatch() {
+        // Being idle with a low battery is the best moment to charge, unless there is no more work
+        Iterator<Request> low = idle.iterator();
+        while (low.hasNext() && !(closed && isDrained())) {
+            Request request = low.next();
+
+            if (request.vehicle.getRemainingBattery() < chargeThreshold && charge(request)) {
+                low.remove();
+                assign(request);
+            }
+        }
+
+        // Claim from each picking point as many pieces as the idle vehicles can carry
+        int room = 0;
+        for (Request request : idle) {
+            room += request.vehicle.getCapacity();
+        }
+
+        for (Line line : lines) {
+            line.claim(room);
+        }
+
+        if (!idle.isEmpty()) {
+            // Each line serves the vehicles homed to it first
+            List<Request> candidates = new ArrayList<>(idle.size());
+            for (Line line : lines) {
+                if (!line.pending.isEmpty()) {
+                    candidates.clear();
+                    for (Request request : idle) {
+                        if (request.home == line) {
+                            candidates.add(request);
+                        }
+                    }
+                    match(line, candidates);
+                }
+            }
+
+            // Then the vehicles left without pieces steal from the lines with the deepest backlog
+            List<Line> backlogged = new ArrayList<>(lines.size());
+            for (Line line : lines) {
+                if (!line.pending.isEmpty()) {
+                    backlogged.add(line);
+                }
+            }
+            backlogged.sort(Comparator.comparingInt(Line::backlog).reversed());
+
+            for (Line line : backlogged) {
+                candidates.clear();
+                for (Request request : idle) {
+                    if (request.line == null) {
+                        candidates.add(request);
+                    }
+                }
+                if (candidates.isEmpty()) {
+                    break;
+                }
+                match(line, candidates);
+            }
+
+            // Pieces left that no vehicle could ever deliver would wait forever in front of the others
+            Line waiting = null;
+            for (Line line : lines) {
+                setAsideUndeliverable(line);
+                if (waiting == null && !line.pending.isEmpty()) {
+                    waiting = line;
+                }
+            }
+
+            Iterator<Request> requests = idle.iterator();
+            while (requests.hasNext()) {
+                Request request = requests.next();
+
+                // Vehicles without pieces while some piece is waiting cannot move any of them, so they go
+                // to charge, or closer to the waiting pieces if their battery is full. Otherwise they wait
+                // for the next pieces, and they stop once no more pieces can come
+                if (request.line != null
+                        || (waiting != null && (charge(request) || approach(request, waiting) || closed))) {
+                    requests.remove();
+                    assign(request);
+                }
+            }
+        }
+
+        if (closed && isDrained()) {
+            // No more pieces to assign
+            for (Request request : idle) {
+                assign(request);
+            }
+            idle.clear();
+        }
+    }
+
+    /**
+     * Give the waiting pieces of a line to some idle vehicles, nearest vehicles to the picking point first.
+     *
+     * Must be called holding the lock.
+     *
+     * @param line the line of the pieces
+     * @param candidates the idle vehicles that can take pieces of the line
+     */
+    private void match(Line line, List<Request> candidates) {
+        Position pickingPoint = line.conveyor.getPickingPointPosition();
+
+        // Nearest vehicles to the picking point first, then the ones with more battery
+        for (Request request : candidates) {
+            request.distance = distance(request.vehicle.getPosition(), pickingPoint);
+        }
+        candidates.sort(Comparator.<Request>comparingInt(r -> r.distance)
+                .thenComparing(r -> r.vehicle.getCurrentBattery(), Comparator.reverseOrder()));
+
+        Iterator<Piece> pieces = line.pending.iterator();
+        while (pieces.hasNext()) {
+            Piece piece = pieces.next();
+
+            for (Request request : candidates) {
+                if (canCarry(request, piece, pickingPoint)) {
+                    request.line = line;
+                    request.pieces.add(piece);
+                    pieces.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the vehicle of a request to the best charging station it can reach,
+     * the nearest one, or the one with more free slots between stations at the same distance.
+     *
+     * Must be called holding the lock.
+     *
+     * @param request the request of an idle vehicle
+     * @return true if the vehicle should go to a charging station, false if its battery is full
+     *         or it cannot reach any station
+     */
+    private boolean charge(Request request) {
+        AGVS vehicle = request.vehicle;
+
+        if (vehicle.getCurrentBattery() >= vehicle.getMaxBattery()) {
+            return false;
+        }
+
+        ChargingStation best = null;
+        int bestDistance = Integer.MAX_VALUE;
+
+        for (ChargingStation station : stations) {
+            int distance = distance(vehicle.getPosition(), station.getPosition());
+
+            if (distance < 0 || !vehicle.hasEnoughBattery(distance * vehicle.getMoveBatteryConsumption())) {
+                continue;
+            }
+            if (distance < bestDistance
+                    || (distance == bestDistance && station.getFreeSlots() > best.getFreeSlots())) {
+                best = station;
+                bestDistance = distance;
+            }
+        }
+
+        request.station = best;
+        request.spare = vehicle.getCurrentBattery() / vehicle.getMoveBatteryConsumption() - bestDistance;
+        return best != null;
+    }
+
+    /**
+     * Send the vehicle of a request with a full battery to the charging station nearest to the picking point
+     * of a line, the best place to start any delivery from that line.
+     *
+     * Must be called holding the lock.
+     *
+     * @param request the request of an idle vehicle
+     * @param line the line with the waiting pieces
+     * @return true if the vehicle should go to the station, false if its battery is not full,
+     *         it is already at the station or it cannot reach any station
+     */
+    private boolean approach(Request request, Line line) {
+        AGVS vehicle = request.vehicle;
+
+        if (vehicle.getCurrentBattery() < vehicle.getMaxBattery()) {
+            return false;
+        }
+
+        Position pickingPoint = line.conveyor.getPickingPointPosition();
+        ChargingStation best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        int bestTrip = 0;
+
+        for (ChargingStation station : stations) {
+            int distance = distance(station.getPosition(), pickingPoint);
+            int trip = distance(vehicle.getPosition(), station.getPosition());
+
+            if (distance < 0 || distance >= bestDistance || trip < 0
+                    || !vehicle.hasEnoughBattery(trip * vehicle.getMoveBatteryConsumption())) {
+                continue;
+            }
+            best = station;
+            bestDistance = distance;
+            bestTrip = trip;
+        }
+
+        if (best == null || best.getPosition().equals(vehicle.getPosition())) {
+            return false;
+        }
+        request.station = best;
+        request.spare = vehicle.getCurrentBattery() / vehicle.getMoveBatteryConsumption() - bestTrip;
+        return true;
+    }
+
+    /**
+     * Set aside the waiting pieces of a line that no vehicle could deliver even with a full battery,
+     * starting from the charging station nearest to the picking point and ending at the charging station
+     * nearest to the storage of the piece.
+     *
+     * Must be called holding the lock.
+     *
+     * @param line the line with the waiting pieces
+     */
+    private void setAsideUndeliverable(Line line) {
+        if (line.pending.isEmpty()) {
+            return;
+        }
+
+        Position pickingPoint = line.conveyor.getPickingPointPosition();
+        int approach = toNearestStation(pickingPoint);
+
+        Iterator<Piece> pieces = line.pending.iterator();
+        while (pieces.hasNext()) {
+            Piece piece = pieces.next();
+            Position storage = piece.getStoragePosition();
+
+            int delivery = distance(pickingPoint, storage);
+            int reserve = toNearestStation(storage);
+            int steps = approach < 0 || delivery < 0 || reserve < 0
+                    ? Integer.MAX_VALUE
+                    : approach + delivery + reserve;
+
+            if (steps > range) {
+                pieces.remove();
+                undeliverable.add(piece);
+
+                EventBus.getDefault().publish(EventType.PIECE_UNDELIVERABLE, this, piece, pickingPoint,
+                        steps == Integer.MAX_VALUE ? -1 : steps);
+            }
+        }
+    }
+
+    /**
+     * Number of steps from a position to the nearest charging station.
+     *
+     * @param from the position
+     * @return the steps to the nearest station, 0 if there are no stations,
+     *         or -1 if no station can be reached
+     */
+    private int toNearestStation(Position from) {
+        if (stations.isEmpty()) {
+            return 0;
+        }
+
+        int nearest = -1;
+        for (ChargingStation station : stations) {
+            int distance = distance(from, station.getPosition());
+
+            if (distance >= 0 && (nearest < 0 || distance < nearest)) {
+                nearest = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Checks if every line has no more pieces.
+     *
+     * @return true if no piece is waiting in any conveyor or queue, false otherwise
+     */
+    private boolean isDrained() {
+        for (Line line : lines) {
+            if (!line.pending.isEmpty() || !line.conveyor.pickingPointIsEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a vehicle has room for one more piece and enough battery to reach the picking point,
+     * visit the storages of all its pieces and then reach a charging station, if there is any.
+     * If it can, the spare steps of the request are set for the route with the new piece.
+     *
+     * @param request the request of the vehicle, with the pieces already assigned in this dispatch
+     * @param piece the piece to add
+     * @param pickingPoint the position of the picking point
+     * @return true if the vehicle can move the piece with its other pieces, false otherwise
+     */
+    private boolean canCarry(Request request, Piece piece, Position pickingPoint) {
+        AGVS vehicle = request.vehicle;
+
+        if (request.distance < 0 || request.pieces.size() >= vehicle.getCapacity()) {
+            return false;
+        }
+
+        List<Position> storages = new ArrayList<>(request.pieces.size() + 1);
+        for (Piece assigned : request.pieces) {
+            storages.add(assigned.getStoragePosition());
+        }
+        storages.add(piece.getStoragePosition());
+
+        List<Position> route = planner.plan(pickingPoint, storages, null);
+
+        int delivery = planner.length(pickingPoint, route, null);
+        if (delivery < 0) {
+            return false;
+        }
+
+        // Keep enough battery to reach a charging station after the last storage
+        int reserve = toNearestStation(route.get(route.size() - 1));
+        if (reserve < 0) {
+            return false;
+        }
+
+        int steps = request.distance + delivery + reserve;
+        if (!vehicle.hasEnoughBattery(steps * vehicle.getMoveBatteryConsumption())) {
+            return false;
+        }
+
+        // Battery left for going around other vehicles, set again with each piece added to the route
+        request.spare = vehicle.getCurrentBattery() / vehicle.getMoveBatteryConsumption() - steps;
+        return true;
+    }
+
+    /**
+     * Give the pieces of a request to its waiting vehicle and wake it up.
+     *
+     * @param request the request of the vehicle, without pieces if the vehicle should charge or has no more work
+     */
+    private void assign(Request request) {
+        request.done = true;
+        request.assigned.signal();
+
+        for (Piece piece : request.pieces) {
+            EventBus.getDefault().publish(EventType.PIECE_ASSIGNED, request.vehicle, piece,
+                    request.vehicle.getPosition(), request.vehicle.getRemainingBattery());
+        }
+    }
+
+    /**
+     * Number of steps between two positions.
+     *
+     * @param from the starting position
+     * @param target the target position
+     * @return the steps of a shortest route, or -1 if the target cannot be reached
+     */
+    private int distance(Position from, Position target) {
+        return map != null ? map.distance(from, target) : from.distance(target);
+    }
+
+    /**
+     * A conveyor line with the pieces unloaded from its picking point that no vehicle could take yet.
+     */
+    private static class Line {
+
+        /**
+         * Index of this line in the dispatcher.
+         */
+        private final int index;
+
+        /**
+         * The conveyor of this line.
+         */
+        private final Conveyor conveyor;
+
+        /**
+         * Pieces unloaded from the picking point waiting for a vehicle, in conveyor order.
+         */
+        private final Deque<Piece> pending = new ArrayDeque<>();
+
+        /**
+         * Create a line.
+         *
+         * @param index the index of this line in the dispatcher
+         * @param conveyor the conveyor of this line
+         */
+        private Line(int index, Conveyor conveyor) {
+            this.index = index;
+            this.conveyor = conveyor;
+        }
+
+        /**
+         * Unload pieces from the picking point until some pieces are waiting or the conveyor is empty.
+         *
+         * @param count the number of waiting pieces wanted
+         */
+        private void claim(int count) {
+            while (pending.size() < count) {
+                Piece piece = conveyor.unloadPieceFromPickingPoint();
+                if (piece == null) {
+                    break;
+                }
+                pending.add(piece);
+            }
+        }
+
+        /**
+         * Number of pieces of this line not assigned to any vehicle yet.
+         *
+         * @return the waiting pieces plus the pieces in the conveyor
+         */
+        private int backlog() {
+            return pending.size() + conveyor.getSize();
+        }
+    }
+
+    /**
+     * An idle vehicle waiting for a task.
+     */
+    private static class Request {
+
+        /**
+         * The waiting vehicle.
+         */
+        private final AGVS vehicle;
+
+        /**
+         * The home line of the vehicle.
+         */
+        private final Line home;
+
+        /**
+         * Signalled when the request is done.
+         */
+        private final Condition assigned;
+
+        /**
+         * Steps from the vehicle to the picking point of the line being matched.
+         */
+        private int distance;
+
+        /**
+         * The line of the assigned pieces, or null if no piece has been assigned yet.
+         */
+        private Line line;
+
+        /**
+         * The pieces assigned to the vehicle.
+         */
+        private final List<Piece> pieces = new ArrayList<>();
+
+        /**
+         * The charging station where the vehicle should recharge, or null if it should not charge.
+         */
+        private ChargingStation station;
+
+        /**
+         * Steps the vehicle can move besides the route to its pieces or its charging station.
+         */
+        private int spare;
+
+        /**
+         * Whether the vehicle has got an answer, either some pieces or none.
+         */
+        private boolean done;
+
+        /**
+         * Create a request of an idle vehicle.
+         *
+         * @param vehicle the waiting vehicle
+         * @param home the home line of the vehicle
+         * @param assigned the condition signalled when the request is done
+         */
+        private Request(AGVS vehicle, Line home, Condition assigned) {
+            this.vehicle = vehicle;
+            this.home = home;
+            this.assigned = assigned;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package warehouse.fleet;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * A fleet scheduler that submits the vehicle tasks to an executor service.
+ *
+ * Each submission runs a slice of steps of a vehicle and then submits the vehicle again,
+ * so a pool with fewer threads than vehicles still moves every vehicle.
+ */
+class ExecutorFleetScheduler extends FleetScheduler {
+
+    /**
+     * Steps a vehicle does before giving its thread to another vehicle in a fixed pool.
+     */
+    static final int STEPS_PER_SLICE = 64;
+
+    /**
+     * Creates the executor service when this scheduler is started.
+     */
+    private final Supplier<ExecutorService> executorFactory;
+
+    /**
+     * Maximum number of steps of each submission.
+     */
+    private final int stepsPerSlice;
+
+    /**
+     * The executor service running the vehicle tasks.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Create a new fleet scheduler using an executor service.
+     *
+     * @param executorFactory creates the executor service when this scheduler is started
+     * @param stepsPerSlice maximum number of steps of each submission
+     */
+    ExecutorFleetScheduler(Supplier<ExecutorService> executorFactory, int stepsPerSlice) {
+        this.executorFactory = executorFactory;
+        this.stepsPerSlice = stepsPerSlice;
+    }
+
+    /**
+     * Submit each task to a new executor service.
+     *
+     * @param tasks the tasks to run
+     */
+    @Override
+    protected void launch(List<VehicleTask> tasks) {
+        executor = executorFactory.get();
+
+        for (VehicleTask task : tasks) {
+            submit(task);
+        }
+    }
+
+    /**
+     * Submit a slice of steps of a task, submitting the task again if it is not finished at the end of the slice.
+     *
+     * @param task the task to run
+     */
+    private void submit(VehicleTask task) {
+        executor.execute(() -> {
+            for (int i = 0; i < stepsPerSlice; i++) {
+                if (!runStep(task)) {
+                    return;
+                }
+            }
+            submit(task);
+        });
+    }
+
+    /**
+     * Shut down the executor service, all tasks are already finished.
+     */
+    @Override
+    protected void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,281 @@
+package warehouse.fleet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import warehouse.Conveyor;
+import warehouse.vehicle.AGVS;
+import warehouse.vehicle.CannotMoveException;
+
+/**
+ * Runs the tasks of a fleet of vehicles until all of them are finished.
+ *
+ * Different schedulers decide which threads run the steps of each vehicle:
+ * <ul>
+ * <li>{@code fixedPool} shares a fixed number of platform threads between all vehicles.</li>
+ * <li>{@code virtualThreads} runs each vehicle in its own virtual thread.</li>
+ * <li>{@code cooperative} advances many vehicles one step at a time from the same thread.</li>
+ * </ul>
+ *
+ * A scheduler can only be started once. A vehicle that cannot move stops its task, but the other vehicles
+ * keep working, and the exception is thrown to the caller of {@code awaitTermination}.
+ */
+public abstract class FleetScheduler {
+
+    /**
+     * Whether vehicle tasks should keep doing steps.
+     */
+    private volatile boolean running;
+
+    /**
+     * Whether this scheduler has already been started.
+     */
+    private boolean started;
+
+    /**
+     * Count of vehicle tasks not finished yet.
+     */
+    private CountDownLatch remaining;
+
+    /**
+     * Exceptions and errors thrown by the vehicle tasks, in the order they happened.
+     */
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Create a scheduler that shares a fixed number of platform threads between all vehicles.
+     *
+     * Each vehicle runs a slice of steps before giving its thread to the next vehicle,
+     * so every vehicle makes progress even when there are more vehicles than threads.
+     *
+     * @param threads the number of threads of the pool
+     * @return a new fleet scheduler
+     */
+    public static FleetScheduler fixedPool(int threads) {
+        return new ExecutorFleetScheduler(() -> Executors.newFixedThreadPool(threads, namedThreads("agvs-worker-")),
+                ExecutorFleetScheduler.STEPS_PER_SLICE);
+    }
+
+    /**
+     * Create a scheduler that runs each vehicle in its own virtual thread.
+     *
+     * Virtual threads are cheap, so thousands of vehicles can run at the same time.
+     * If the Java runtime does not support virtual threads then a cached pool of platform threads is used instead.
+     *
+     * @return a new fleet scheduler
+     */
+    public static FleetScheduler virtualThreads() {
+        return new ExecutorFleetScheduler(FleetScheduler::newVirtualThreadExecutor, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create a scheduler where each thread advances many vehicles, one step of each vehicle at a time.
+     *
+     * @param threads the number of threads sharing the vehicles
+     * @return a new fleet scheduler
+     */
+    public static FleetScheduler cooperative(int threads) {
+        return new CooperativeFleetScheduler(threads);
+    }
+
+    /**
+     * Start a fleet of vehicles moving pieces from the picking point of a conveyor to their storages.
+     *
+     * @param fleet the vehicles to start
+     * @param conveyor the conveyor providing pieces to the vehicles
+     *
+     * @throws IllegalStateException if this scheduler has already been started
+     */
+    public void start(Collection<AGVS> fleet, Conveyor conveyor) throws IllegalStateException {
+        List<VehicleTask> tasks = new ArrayList<>(fleet.size());
+
+        for (AGVS agvs : fleet) {
+            tasks.add(() -> agvs.step(conveyor));
+        }
+
+        start(tasks);
+    }
+
+    /**
+     * Start a fleet of vehicles moving the pieces assigned by a dispatcher to their storages.
+     *
+     * Idle vehicles block their thread until they get a piece, so each vehicle needs its own thread:
+     * a {@code cooperative} scheduler would stop every vehicle of a thread while one of them is waiting.
+     *
+     * @param fleet the vehicles to start
+     * @param dispatcher the dispatcher assigning the pieces to the vehicles
+     *
+     * @throws IllegalStateException if this scheduler has already been started
+     */
+    public void start(Collection<AGVS> fleet, Dispatcher dispatcher) throws IllegalStateException {
+        List<VehicleTask> tasks = new ArrayList<>(fleet.size());
+
+        for (AGVS agvs : fleet) {
+            tasks.add(() -> agvs.step(dispatcher));
+        }
+
+        start(tasks);
+    }
+
+    /**
+     * Start running some vehicle tasks.
+     *
+     * @param tasks the tasks to run until finished
+     *
+     * @throws IllegalStateException if this scheduler has already been started
+     */
+    public synchronized void start(Collection<? extends VehicleTask> tasks) throws IllegalStateException {
+        if (started) {
+            throw new IllegalStateException("Fleet scheduler already started");
+        }
+        started = true;
+        running = true;
+        remaining = new CountDownLatch(tasks.size());
+
+        launch(new ArrayList<>(tasks));
+    }
+
+    /**
+     * Stop gracefully every vehicle task, letting each vehicle finish its current step.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Checks if the vehicle tasks of this scheduler are still running.
+     *
+     * @return true if this scheduler has been started, not stopped and some task is not finished yet
+     */
+    public boolean isRunning() {
+        return running && remaining != null && remaining.getCount() > 0;
+    }
+
+    /**
+     * Wait until all vehicle tasks are finished or stopped.
+     *
+     * If some vehicle could not move then its exception is thrown, with the exceptions of other vehicles
+     * added as suppressed exceptions.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if all tasks are finished, false if the timeout elapsed before
+     *
+     * @throws IllegalStateException if this scheduler has not been started
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @throws CannotMoveException if some vehicle could not move
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws IllegalStateException, InterruptedException, CannotMoveException {
+        if (remaining == null) {
+            throw new IllegalStateException("Fleet scheduler not started");
+        }
+
+        if (!remaining.await(timeout, unit)) {
+            return false;
+        }
+
+        running = false;
+        shutdown();
+
+        throwFailures();
+
+        return true;
+    }
+
+    /**
+     * Throw the first failure of the vehicle tasks, if any, with the other failures as suppressed exceptions.
+     *
+     * @throws CannotMoveException if the first failure is a vehicle that could not move
+     */
+    private void throwFailures() throws CannotMoveException {
+        Throwable first = failures.poll();
+        if (first == null) {
+            return;
+        }
+
+        for (Throwable other : failures) {
+            first.addSuppressed(other);
+        }
+
+        if (first instanceof CannotMoveException) {
+            throw (CannotMoveException) first;
+        }
+        if (first instanceof Error) {
+            throw (Error) first;
+        }
+        throw (RuntimeException) first;
+    }
+
+    /**
+     * Run one step of a vehicle task.
+     *
+     * When the task is finished, stopped or fails then it is counted as finished, even if it throws an error,
+     * so the threads waiting for the fleet are never blocked forever. Errors are thrown by {@code awaitTermination}
+     * like the other failures, and the other tasks of the same thread keep running.
+     *
+     * @param task the task to advance
+     * @return true if the task should be stepped again, false if the task is finished
+     */
+    protected final boolean runStep(VehicleTask task) {
+        boolean again = false;
+        try {
+            again = running && task.step();
+        } catch (CannotMoveException | RuntimeException | Error e) {
+            failures.add(e);
+        } finally {
+            if (!again) {
+                remaining.countDown();
+            }
+        }
+        return again;
+    }
+
+    /**
+     * Start running the tasks, calling {@code runStep} for each step.
+     *
+     * @param tasks the tasks to run
+     */
+    protected abstract void launch(List<VehicleTask> tasks);
+
+    /**
+     * Release the threads used by this scheduler once every task is finished.
+     */
+    protected abstract void shutdown();
+
+    /**
+     * Create a factory of platform threads named with a prefix and a sequential number.
+     *
+     * @param prefix the prefix of the thread names
+     * @return a new thread factory
+     */
+    static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + count.incrementAndGet());
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task.
+     *
+     * Virtual threads are looked up by reflection, so this code also runs on Java versions without them,
+     * falling back to a cached pool of platform threads.
+     *
+     * @return a new executor service
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(namedThreads("agvs-"));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package warehouse.fleet;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import warehouse.pieces.Piece;
+
+/**
+ * A producer feeding the conveyor lines of a dispatcher with pieces while the fleet moves them.
+ *
+ * Like a live inbound line, pieces are added one by one in the lines in turns, and the producer waits
+ * whenever the conveyor of a line is full, so it never gets ahead of the vehicles by more than the conveyor capacity.
+ * When there are no more pieces the dispatcher is closed, so vehicles stop once the conveyors are empty.
+ */
+public class PieceProducer implements Runnable {
+
+    /**
+     * Dispatcher of the conveyor lines being fed.
+     */
+    private final Dispatcher dispatcher;
+
+    /**
+     * Pieces still to add, created only when they are added.
+     */
+    private final Iterator<Piece> pieces;
+
+    /**
+     * Number of pieces added, written only by the producer thread.
+     */
+    private volatile long produced;
+
+    /**
+     * Create a producer.
+     *
+     * @param dispatcher the dispatcher of the conveyor lines to feed
+     * @param pieces the pieces to add, usually a lazy stream of a piece factory
+     */
+    public PieceProducer(Dispatcher dispatcher, Stream<Piece> pieces) {
+        this.dispatcher = dispatcher;
+        this.pieces = pieces.iterator();
+    }
+
+    /**
+     * Start this producer in a new thread.
+     *
+     * @return the producer thread, which can be joined to wait until every piece is added
+     */
+    public Thread start() {
+        Thread thread = new Thread(this, "piece-producer");
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Add every piece to the lines in turns, waiting while a conveyor is full, and then close the dispatcher.
+     *
+     * If the thread is interrupted the remaining pieces are not added, but the dispatcher is still closed.
+     */
+    @Override
+    public void run() {
+        int lines = dispatcher.getLineCount();
+
+        try {
+            for (long i = 0; pieces.hasNext(); i++) {
+                dispatcher.put((int) (i % lines), pieces.next());
+                produced = i + 1;
+            }
+        } catch (InterruptedException e) {
+            // Keep the interrupted status so the owner of the thread knows why it stopped
+            Thread.currentThread().interrupt();
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    /**
+     * Get the number of pieces added so far.
+     *
+     * @return the number of pieces added to the conveyors
+     */
+    public long getProducedCount() {
+        return produced;
+    }
+}
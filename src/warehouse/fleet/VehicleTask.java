@@ -0,0 +1,20 @@
+package warehouse.fleet;
+
+import warehouse.vehicle.CannotMoveException;
+
+/**
+ * The work of a vehicle split into small steps, so a scheduler can decide which thread runs each step.
+ */
+@FunctionalInterface
+public interface VehicleTask {
+
+    /**
+     * Advance the work of the vehicle one step.
+     *
+     * @return true if a step has been done and there may be more steps to do, false if the work is finished
+     *
+     * @throws CannotMoveException if the vehicle cannot move to do the step
+     */
+    boolean step() throws CannotMoveException;
+
+}
@@ -0,0 +1,213 @@
+package warehouse.map;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+import warehouse.Position;
+
+/**
+ * Reservations of the cells of a warehouse map for the next ticks of time, so vehicles don't collide.
+ *
+ * A vehicle claims a cell for a tick before stepping into it. Claims are lock-free: each pair of cell and tick
+ * is a slot updated with a compare-and-set, so vehicles in different threads never block each other
+ * and there cannot be deadlocks.
+ *
+ * Each cell has a slot for each of the next {@code horizon} ticks, reused in a circular way. A slot holding
+ * a tick that has already passed is free again, so reservations expire without any cleaning.
+ */
+public class ReservationTable {
+
+    /**
+     * Default duration of a tick in nanoseconds when the wall clock is used.
+     */
+    public static final long DEFAULT_TICK_NANOS = 1_000_000;
+
+    /**
+     * Default number of ticks that can be reserved in advance.
+     */
+    public static final int DEFAULT_HORIZON = 8;
+
+    /**
+     * Value of the owner of a slot without reservation.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Number of bits of a slot holding the vehicle identifier, the rest of the bits hold the tick.
+     */
+    private static final int VEHICLE_BITS = 24;
+
+    /**
+     * Mask of the vehicle identifier bits.
+     */
+    private static final long VEHICLE_MASK = (1L << VEHICLE_BITS) - 1;
+
+    /**
+     * The map whose cells are reserved.
+     */
+    private final WarehouseMap map;
+
+    /**
+     * Number of ticks that can be reserved in advance.
+     */
+    private final int horizon;
+
+    /**
+     * Source of the current tick.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Reservation of each pair of cell and tick, at index {@code cell * horizon + tick % horizon}.
+     *
+     * Each slot holds the tick plus one in the highest bits and the vehicle identifier in the lowest bits,
+     * or 0 if the slot has never been reserved.
+     */
+    private final AtomicLongArray slots;
+
+    /**
+     * Create a reservation table with ticks of the wall clock.
+     *
+     * @param map the map whose cells are reserved
+     */
+    public ReservationTable(WarehouseMap map) {
+        this(map, DEFAULT_HORIZON, () -> System.nanoTime() / DEFAULT_TICK_NANOS);
+    }
+
+    /**
+     * Create a reservation table.
+     *
+     * @param map the map whose cells are reserved
+     * @param horizon the number of ticks that can be reserved in advance
+     * @param clock the source of the current tick, which never goes back
+     *
+     * @throws IllegalArgumentException if horizon is less than 2
+     */
+    public ReservationTable(WarehouseMap map, int horizon, LongSupplier clock) throws IllegalArgumentException {
+        if (horizon < 2) {
+            throw new IllegalArgumentException("Invalid horizon: " + horizon);
+        }
+
+        this.map = map;
+        this.horizon = horizon;
+        this.clock = clock;
+
+        slots = new AtomicLongArray(map.getWidth() * map.getHeight() * horizon);
+    }
+
+    /**
+     * Get the map whose cells are reserved.
+     *
+     * @return the map of this table
+     */
+    public WarehouseMap getMap() {
+        return map;
+    }
+
+    /**
+     * Get the current tick.
+     *
+     * @return the current tick
+     */
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Reserve a cell for a vehicle during a tick.
+     *
+     * @param position the position of the cell
+     * @param tick the tick to reserve, from the current tick to the current tick plus the horizon minus one
+     * @param vehicle the identifier of the vehicle
+     * @return true if the cell is reserved for the vehicle, false if it is reserved for another vehicle
+     *         or the tick cannot be reserved
+     *
+     * @throws IllegalArgumentException if the position is outside the map or the vehicle identifier is not valid
+     */
+    public boolean claim(Position position, long tick, int vehicle) throws IllegalArgumentException {
+        if (vehicle < 0 || vehicle > VEHICLE_MASK) {
+            throw new IllegalArgumentException("Invalid vehicle identifier: " + vehicle);
+        }
+        if (tick < 0 || tick >= now() + horizon) {
+            return false;
+        }
+
+        int index = index(position, tick);
+        long reservation = ((tick + 1) << VEHICLE_BITS) | vehicle;
+
+        while (true) {
+            long current = slots.get(index);
+            long currentTick = tick(current);
+
+            if (currentTick == tick) {
+                // Already reserved for this tick, maybe by the same vehicle
+                return current == reservation;
+            }
+            if (currentTick > tick) {
+                // The slot is already used by a later tick
+                return false;
+            }
+
+            // The slot holds an expired reservation, so it is free
+            if (slots.compareAndSet(index, current, reservation)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Cancel the reservation of a cell for a vehicle during a tick.
+     *
+     * Nothing happens if the cell is not reserved for that vehicle during that tick.
+     *
+     * @param position the position of the cell
+     * @param tick the reserved tick
+     * @param vehicle the identifier of the vehicle
+     *
+     * @throws IllegalArgumentException if the position is outside the map
+     */
+    public void release(Position position, long tick, int vehicle) throws IllegalArgumentException {
+        slots.compareAndSet(index(position, tick), ((tick + 1) << VEHICLE_BITS) | vehicle, 0);
+    }
+
+    /**
+     * Get the vehicle that has reserved a cell during a tick.
+     *
+     * @param position the position of the cell
+     * @param tick the tick
+     * @return the identifier of the vehicle, or {@code NONE} if the cell is free during that tick
+     *
+     * @throws IllegalArgumentException if the position is outside the map
+     */
+    public int owner(Position position, long tick) throws IllegalArgumentException {
+        long current = slots.get(index(position, tick));
+
+        if (tick(current) != tick || current == 0) {
+            return NONE;
+        }
+        return (int) (current & VEHICLE_MASK);
+    }
+
+    /**
+     * Index of the slot of a cell and a tick.
+     *
+     * @param position the position of the cell
+     * @param tick the tick
+     * @return the index of the slot
+     *
+     * @throws IllegalArgumentException if the position is outside the map
+     */
+    private int index(Position position, long tick) throws IllegalArgumentException {
+        return map.cell(position.getX(), position.getY()) * horizon + (int) (tick % horizon);
+    }
+
+    /**
+     * Get the tick of a slot value.
+     *
+     * @param slot the value of a slot
+     * @return the reserved tick, or -1 if the slot has never been reserved
+     */
+    private static long tick(long slot) {
+        return (slot >>> VEHICLE_BITS) - 1;
+    }
+}
@@ -0,0 +1,110 @@
+package warehouse.map;
+
+import java.util.Arrays;
+
+/**
+ * Shortest distances and next steps from every cell of a map to a target cell.
+ *
+ * The table is computed once with a breadth first search starting at the target,
+ * so afterwards the next step of a route to the target is a single array lookup.
+ */
+class RoutingTable {
+
+    /**
+     * Value of the cells that cannot reach the target.
+     */
+    static final int UNREACHABLE = -1;
+
+    /**
+     * Target cell of this table.
+     */
+    private final int target;
+
+    /**
+     * Number of steps from each cell to the target, or {@code UNREACHABLE}.
+     */
+    private final int[] distances;
+
+    /**
+     * Next cell of the shortest route from each cell to the target, or {@code UNREACHABLE}.
+     */
+    private final int[] nextCells;
+
+    /**
+     * Compute the routing table of a target cell.
+     *
+     * @param map the map where routes are computed
+     * @param target the target cell
+     */
+    RoutingTable(WarehouseMap map, int target) {
+        this.target = target;
+
+        int cells = map.getWidth() * map.getHeight();
+        distances = new int[cells];
+        nextCells = new int[cells];
+        Arrays.fill(distances, UNREACHABLE);
+        Arrays.fill(nextCells, UNREACHABLE);
+
+        // A blocked target cannot be reached from anywhere
+        if (map.isBlocked(target)) {
+            return;
+        }
+
+        // Breadth first search from the target, every step has the same cost
+        int[] queue = new int[cells];
+        int head = 0, tail = 0;
+
+        distances[target] = 0;
+        nextCells[target] = target;
+        queue[tail++] = target;
+
+        int[] neighbours = new int[WarehouseMap.MAX_NEIGHBOURS];
+
+        while (head < tail) {
+            int cell = queue[head++];
+
+            int count = map.neighbours(cell, neighbours);
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbours[i];
+
+                if (distances[neighbour] == UNREACHABLE) {
+                    distances[neighbour] = distances[cell] + 1;
+
+                    // Going back the way the search came is a shortest route to the target
+                    nextCells[neighbour] = cell;
+
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the target cell of this table.
+     *
+     * @return the target cell
+     */
+    int getTarget() {
+        return target;
+    }
+
+    /**
+     * Get the number of steps from a cell to the target.
+     *
+     * @param cell the starting cell
+     * @return the number of steps, or {@code UNREACHABLE}
+     */
+    int distance(int cell) {
+        return distances[cell];
+    }
+
+    /**
+     * Get the next cell of a shortest route from a cell to the target.
+     *
+     * @param cell the current cell
+     * @return the next cell, the same cell if it is the target, or {@code UNREACHABLE}
+     */
+    int next(int cell) {
+        return nextCells[cell];
+    }
+}
@@ -0,0 +1,218 @@
+package warehouse.map;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import warehouse.Position;
+
+/**
+ * Plans the order to visit many stops, like the storages of the pieces loaded into a vehicle.
+ *
+ * A first route is built going each time to the nearest stop not visited yet, and then it is improved
+ * with the 2-opt heuristic: a part of the route is reversed whenever that makes the route shorter,
+ * until no reversal improves it. The result is not always the shortest route, but it is close to it
+ * and it is found in a few microseconds for the usual number of stops of a vehicle.
+ *
+ * Distances are the steps of the routes of a warehouse map, or the Manhattan distance without a map.
+ */
+public class TourPlanner {
+
+    /**
+     * Distance used for stops that cannot be reached, large enough to never be chosen but without overflowing.
+     */
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+
+    /**
+     * Map of the warehouse floor used to measure distances, or null to use the Manhattan distance.
+     */
+    private final WarehouseMap map;
+
+    /**
+     * Create a planner measuring distances over the routes of a map.
+     *
+     * @param map the map of the warehouse floor, or null to use the Manhattan distance
+     */
+    public TourPlanner(WarehouseMap map) {
+        this.map = map;
+    }
+
+    /**
+     * Plan the order to visit some stops.
+     *
+     * @param start the position where the route starts
+     * @param stops the positions to visit, repeated positions are visited once
+     * @param end the position where the route must finish after the stops, or null if the route ends at the last stop
+     * @return the stops in the order to visit them, without the start and the end
+     */
+    public List<Position> plan(Position start, Collection<Position> stops, Position end) {
+        List<Position> unique = new ArrayList<>(stops.size());
+        for (Position stop : stops) {
+            if (!unique.contains(stop)) {
+                unique.add(stop);
+            }
+        }
+
+        int n = unique.size();
+        if (n <= 1) {
+            return unique;
+        }
+
+        // Points of the route: the start at 0, the stops from 1 to n, and the end at n + 1 if any
+        int points = end != null ? n + 2 : n + 1;
+        Position[] positions = new Position[points];
+        positions[0] = start;
+        for (int i = 0; i < n; i++) {
+            positions[i + 1] = unique.get(i);
+        }
+        if (end != null) {
+            positions[n + 1] = end;
+        }
+
+        int[][] distances = new int[points][points];
+        for (int i = 0; i < points; i++) {
+            for (int j = i + 1; j < points; j++) {
+                // Routes of the grid are the same in both directions
+                distances[i][j] = distances[j][i] = distance(positions[i], positions[j]);
+            }
+        }
+
+        int[] route = nearestNeighbour(distances, n, points);
+        improve(distances, route, n);
+
+        List<Position> planned = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++) {
+            planned.add(positions[route[i]]);
+        }
+        return planned;
+    }
+
+    /**
+     * Get the number of steps to follow a route.
+     *
+     * @param start the position where the route starts
+     * @param route the stops in the order to visit them
+     * @param end the position where the route finishes after the stops, or null if it ends at the last stop
+     * @return the number of steps, or -1 if some stop cannot be reached
+     */
+    public int length(Position start, List<Position> route, Position end) {
+        int steps = 0;
+        Position from = start;
+
+        for (Position stop : route) {
+            int distance = distance(from, stop);
+            if (distance >= UNREACHABLE) {
+                return -1;
+            }
+            steps += distance;
+            from = stop;
+        }
+
+        if (end != null) {
+            int distance = distance(from, end);
+            if (distance >= UNREACHABLE) {
+                return -1;
+            }
+            steps += distance;
+        }
+
+        return steps;
+    }
+
+    /**
+     * Build a route going each time to the nearest stop not visited yet.
+     *
+     * @param distances the distances between every pair of points
+     * @param n the number of stops
+     * @param points the number of points, including the start and the end
+     * @return the points in route order, starting with the start and finishing with the end if any
+     */
+    private static int[] nearestNeighbour(int[][] distances, int n, int points) {
+        int[] route = new int[points];
+        boolean[] visited = new boolean[n + 1];
+
+        int current = 0;
+        for (int i = 1; i <= n; i++) {
+            int nearest = -1;
+            for (int stop = 1; stop <= n; stop++) {
+                if (!visited[stop] && (nearest < 0 || distances[current][stop] < distances[current][nearest])) {
+                    nearest = stop;
+                }
+            }
+            visited[nearest] = true;
+            route[i] = nearest;
+            current = nearest;
+        }
+
+        if (points > n + 1) {
+            route[n + 1] = n + 1;
+        }
+        return route;
+    }
+
+    /**
+     * Improve a route reversing the parts of it that make it shorter, keeping the start and the end in place.
+     *
+     * @param distances the distances between every pair of points
+     * @param route the points in route order, changed in place
+     * @param n the number of stops
+     */
+    private static void improve(int[][] distances, int[] route, int n) {
+        boolean improved = true;
+
+        while (improved) {
+            improved = false;
+
+            for (int i = 1; i < n; i++) {
+                for (int j = i + 1; j <= n; j++) {
+                    int before = route[i - 1];
+                    int first = route[i];
+                    int last = route[j];
+
+                    int delta = distances[before][last] - distances[before][first];
+                    if (j + 1 < route.length) {
+                        // Without an end, reversing up to the last stop only changes the first edge
+                        int after = route[j + 1];
+                        delta += distances[first][after] - distances[last][after];
+                    }
+
+                    if (delta < 0) {
+                        reverse(route, i, j);
+                        improved = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reverse a part of a route.
+     *
+     * @param route the points in route order
+     * @param from the index of the first point to reverse
+     * @param to the index of the last point to reverse
+     */
+    private static void reverse(int[] route, int from, int to) {
+        while (from < to) {
+            int point = route[from];
+            route[from++] = route[to];
+            route[to--] = point;
+        }
+    }
+
+    /**
+     * Number of steps between two positions.
+     *
+     * @param from the starting position
+     * @param target the target position
+     * @return the steps of a shortest route, or {@code UNREACHABLE} if the target cannot be reached
+     */
+    private int distance(Position from, Position target) {
+        if (map == null) {
+            return from.distance(target);
+        }
+
+        int distance = map.distance(from, target);
+        return distance < 0 ? UNREACHABLE : distance;
+    }
+}
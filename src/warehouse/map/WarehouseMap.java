@@ -0,0 +1,413 @@
+package warehouse.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import warehouse.Position;
+import warehouse.Positionable;
+
+/**
+ * A grid map of the warehouse floor, with cells blocked by racks, walls or other obstacles.
+ *
+ * Cells go from (0, 0) to (width - 1, height - 1) and a vehicle can move from a cell to the cell
+ * above, below, at the right or at the left if it is not blocked.
+ *
+ * Routes between any two cells are found with the A* search algorithm. For the fixed targets of the warehouse,
+ * like the storages and the picking point, the distances and next steps from every cell are precomputed
+ * so vehicles going to those targets find their next step with a single lookup.
+ */
+public class WarehouseMap {
+
+    /**
+     * Maximum number of neighbours of a cell.
+     */
+    static final int MAX_NEIGHBOURS = 4;
+
+    /**
+     * Number of horizontal cells.
+     */
+    private final int width;
+
+    /**
+     * Number of vertical cells.
+     */
+    private final int height;
+
+    /**
+     * Whether each cell is blocked.
+     */
+    private final boolean[] blocked;
+
+    /**
+     * Routing tables of the precomputed targets, indexed by target cell, or null for the other cells.
+     *
+     * Indexing by cell avoids boxing the cell and hashing it at each lookup.
+     */
+    private final AtomicReferenceArray<RoutingTable> tables;
+
+    /**
+     * Create a map without obstacles.
+     *
+     * @param width the number of horizontal cells
+     * @param height the number of vertical cells
+     *
+     * @throws IllegalArgumentException if width or height are not positive
+     */
+    public WarehouseMap(int width, int height) throws IllegalArgumentException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid map size: " + width + "x" + height);
+        }
+
+        this.width = width;
+        this.height = height;
+
+        blocked = new boolean[width * height];
+        tables = new AtomicReferenceArray<>(width * height);
+    }
+
+    /**
+     * Get the number of horizontal cells.
+     *
+     * @return the width of this map
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the number of vertical cells.
+     *
+     * @return the height of this map
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Checks if a position is inside this map.
+     *
+     * @param x the horizontal coordinate
+     * @param y the vertical coordinate
+     * @return true if the position is a cell of this map, false otherwise
+     */
+    public boolean contains(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * Block a cell, so vehicles cannot go through it.
+     *
+     * Routing tables already computed are discarded.
+     *
+     * @param x the horizontal coordinate
+     * @param y the vertical coordinate
+     *
+     * @throws IllegalArgumentException if the position is outside this map
+     */
+    public void block(int x, int y) throws IllegalArgumentException {
+        blocked[cell(x, y)] = true;
+
+        discardTables();
+    }
+
+    /**
+     * Block a rectangle of cells, like a rack or a wall.
+     *
+     * Routing tables already computed are discarded once for the whole rectangle.
+     *
+     * @param x1 the horizontal coordinate of a corner
+     * @param y1 the vertical coordinate of a corner
+     * @param x2 the horizontal coordinate of the opposite corner
+     * @param y2 the vertical coordinate of the opposite corner
+     *
+     * @throws IllegalArgumentException if some position is outside this map
+     */
+    public void block(int x1, int y1, int x2, int y2) throws IllegalArgumentException {
+        // Check both corners first, so nothing is blocked if the rectangle is not inside this map
+        cell(x1, y1);
+        cell(x2, y2);
+
+        for (int y = Math.min(y1, y2); y <= Math.max(y1, y2); y++) {
+            for (int x = Math.min(x1, x2); x <= Math.max(x1, x2); x++) {
+                blocked[cell(x, y)] = true;
+            }
+        }
+
+        discardTables();
+    }
+
+    /**
+     * Discard every routing table computed, because some cell has been blocked.
+     */
+    private void discardTables() {
+        for (int cell = 0; cell < tables.length(); cell++) {
+            tables.set(cell, null);
+        }
+    }
+
+    /**
+     * Checks if a position is blocked.
+     *
+     * Positions outside this map are considered blocked.
+     *
+     * @param position the position to check
+     * @return true if vehicles cannot go through the position, false otherwise
+     */
+    public boolean isBlocked(Position position) {
+        return !contains(position.getX(), position.getY()) || blocked[cell(position.getX(), position.getY())];
+    }
+
+    /**
+     * Checks if a cell is blocked.
+     *
+     * @param cell the index of the cell
+     * @return true if vehicles cannot go through the cell, false otherwise
+     */
+    boolean isBlocked(int cell) {
+        return blocked[cell];
+    }
+
+    /**
+     * Precompute the routes from every cell to some targets, like the storages and the picking point.
+     *
+     * @param targets the objects whose position is a target of the vehicles
+     *
+     * @throws IllegalArgumentException if the position of some target is outside this map
+     */
+    public void precompute(Collection<? extends Positionable> targets) throws IllegalArgumentException {
+        for (Positionable target : targets) {
+            precompute(target.getPosition());
+        }
+    }
+
+    /**
+     * Precompute the routes from every cell to a target.
+     *
+     * @param target the target position
+     *
+     * @throws IllegalArgumentException if the target is outside this map
+     */
+    public void precompute(Position target) throws IllegalArgumentException {
+        int cell = cell(target.getX(), target.getY());
+
+        if (tables.get(cell) == null) {
+            tables.compareAndSet(cell, null, new RoutingTable(this, cell));
+        }
+    }
+
+    /**
+     * Get the next position of a shortest route between two positions.
+     *
+     * If the target has been precomputed this is a table lookup, otherwise a route is searched.
+     *
+     * @param from the current position
+     * @param target the target position
+     * @return the next position, the same position if it is the target, or null if the target cannot be reached
+     */
+    public Position nextStep(Position from, Position target) {
+        if (from.equals(target)) {
+            return from;
+        }
+        if (!contains(from.getX(), from.getY()) || !contains(target.getX(), target.getY())) {
+            return null;
+        }
+
+        RoutingTable table = tables.get(cell(target.getX(), target.getY()));
+
+        if (table != null) {
+            int next = table.next(cell(from.getX(), from.getY()));
+            return next == RoutingTable.UNREACHABLE ? null : position(next);
+        }
+
+        List<Position> route = route(from, target);
+        return route.isEmpty() ? null : route.get(1);
+    }
+
+    /**
+     * Get the number of steps of a shortest route between two positions.
+     *
+     * @param from the starting position
+     * @param target the target position
+     * @return the number of steps, or -1 if the target cannot be reached
+     */
+    public int distance(Position from, Position target) {
+        if (!contains(from.getX(), from.getY()) || !contains(target.getX(), target.getY())) {
+            return -1;
+        }
+
+        RoutingTable table = tables.get(cell(target.getX(), target.getY()));
+
+        if (table != null) {
+            return table.distance(cell(from.getX(), from.getY()));
+        }
+
+        return route(from, target).size() - 1;
+    }
+
+    /**
+     * Search a shortest route between two positions with the A* algorithm,
+     * using the Manhattan distance as the estimate of the remaining steps.
+     *
+     * @param from the starting position
+     * @param target the target position
+     * @return the positions of the route, including both ends, or an empty list if the target cannot be reached
+     */
+    public List<Position> route(Position from, Position target) {
+        if (isBlocked(from) || isBlocked(target)) {
+            return Collections.emptyList();
+        }
+
+        int start = cell(from.getX(), from.getY());
+        int goal = cell(target.getX(), target.getY());
+
+        // Steps from the start to each cell, and the previous cell of the best route found
+        int[] steps = new int[blocked.length];
+        int[] previous = new int[blocked.length];
+        Arrays.fill(steps, Integer.MAX_VALUE);
+
+        // Cells to explore ordered by estimated total steps, packed with the cell in a long
+        PriorityQueue<Long> open = new PriorityQueue<>();
+
+        steps[start] = 0;
+        previous[start] = start;
+        open.add(((long) estimate(start, goal) << 32) | start);
+
+        int[] neighbours = new int[MAX_NEIGHBOURS];
+
+        while (!open.isEmpty()) {
+            long entry = open.poll();
+            int cell = (int) entry;
+
+            if (cell == goal) {
+                return path(previous, start, goal);
+            }
+
+            // Skip outdated entries of cells already reached with fewer steps
+            if ((int) (entry >>> 32) > steps[cell] + estimate(cell, goal)) {
+                continue;
+            }
+
+            int count = neighbours(cell, neighbours);
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbours[i];
+                int candidate = steps[cell] + 1;
+
+                if (candidate < steps[neighbour]) {
+                    steps[neighbour] = candidate;
+                    previous[neighbour] = cell;
+                    open.add(((long) (candidate + estimate(neighbour, goal)) << 32) | neighbour);
+                }
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    /**
+     * Build the route to a cell following the previous cells back to the start.
+     *
+     * @param previous the previous cell of each cell
+     * @param start the starting cell
+     * @param goal the target cell
+     * @return the positions of the route from start to goal
+     */
+    private List<Position> path(int[] previous, int start, int goal) {
+        List<Position> route = new ArrayList<>();
+
+        for (int cell = goal; cell != start; cell = previous[cell]) {
+            route.add(position(cell));
+        }
+        route.add(position(start));
+
+        Collections.reverse(route);
+        return route;
+    }
+
+    /**
+     * Manhattan distance between two cells, which is never more than the actual steps between them.
+     *
+     * @param cell the first cell
+     * @param goal the second cell
+     * @return the Manhattan distance between the cells
+     */
+    private int estimate(int cell, int goal) {
+        return Math.abs(cell % width - goal % width) + Math.abs(cell / width - goal / width);
+    }
+
+    /**
+     * Get the positions not blocked next to a position, in the order up, down, right and left.
+     *
+     * @param position the position
+     * @return the positions a vehicle can move to from the position
+     *
+     * @throws IllegalArgumentException if the position is outside this map
+     */
+    public List<Position> neighbours(Position position) throws IllegalArgumentException {
+        int[] cells = new int[MAX_NEIGHBOURS];
+        int count = neighbours(cell(position.getX(), position.getY()), cells);
+
+        List<Position> neighbours = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            neighbours.add(position(cells[i]));
+        }
+        return neighbours;
+    }
+
+    /**
+     * Get the cells not blocked next to a cell, in the order up, down, right and left.
+     *
+     * @param cell the cell
+     * @param neighbours array where neighbour cells are written
+     * @return the number of neighbour cells
+     */
+    int neighbours(int cell, int[] neighbours) {
+        int x = cell % width, y = cell / width;
+        int count = 0;
+
+        if (y + 1 < height && !blocked[cell + width]) {
+            neighbours[count++] = cell + width; // up
+        }
+        if (y > 0 && !blocked[cell - width]) {
+            neighbours[count++] = cell - width; // down
+        }
+        if (x + 1 < width && !blocked[cell + 1]) {
+            neighbours[count++] = cell + 1; // right
+        }
+        if (x > 0 && !blocked[cell - 1]) {
+            neighbours[count++] = cell - 1; // left
+        }
+
+        return count;
+    }
+
+    /**
+     * Index of a cell in the arrays of this map.
+     *
+     * @param x the horizontal coordinate
+     * @param y the vertical coordinate
+     * @return the index of the cell
+     *
+     * @throws IllegalArgumentException if the position is outside this map
+     */
+    int cell(int x, int y) throws IllegalArgumentException {
+        if (!contains(x, y)) {
+            throw new IllegalArgumentException("Position (" + x + ", " + y + ") is outside the map");
+        }
+        return y * width + x;
+    }
+
+    /**
+     * Position of a cell.
+     *
+     * @param cell the index of the cell
+     * @return the position of the cell
+     */
+    Position position(int cell) {
+        return Position.of(cell % width, cell / width);
+    }
+}
@@ -0,0 +1,149 @@
+package warehouse.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import warehouse.Conveyor;
+
+/**
+ * Metrics of a conveyor: queue depth, unload rate, full belt stalls and waits for the lock of the picking point.
+ *
+ * The lock of the picking point is only used by conveyors in the default mode,
+ * concurrent conveyors never record lock waits.
+ */
+public class ConveyorMetrics implements ConveyorMetricsMBean {
+
+    /**
+     * The conveyor measured, to read its depth and stalls.
+     */
+    private final Conveyor conveyor;
+
+    /**
+     * Time when these metrics were created, from {@code System.nanoTime}.
+     */
+    private final long created = System.nanoTime();
+
+    /**
+     * Number of pieces unloaded.
+     */
+    private final LongAdder unloads = new LongAdder();
+
+    /**
+     * Times waiting for the lock of the picking point.
+     */
+    private final Histogram lockWaits = new Histogram();
+
+    /**
+     * Create the metrics of a conveyor.
+     *
+     * @param conveyor the conveyor measured
+     */
+    public ConveyorMetrics(Conveyor conveyor) {
+        this.conveyor = conveyor;
+    }
+
+    /**
+     * Record a piece unloaded from the picking point.
+     */
+    public void unloaded() {
+        unloads.increment();
+    }
+
+    /**
+     * Record a wait for the lock of the picking point.
+     *
+     * @param nanos the time waited
+     */
+    public void lockWaited(long nanos) {
+        lockWaits.record(nanos);
+    }
+
+    /**
+     * Get the number of pieces in the conveyor.
+     *
+     * @return the queue depth
+     */
+    @Override
+    public int getDepth() {
+        return conveyor.getSize();
+    }
+
+    /**
+     * Get the maximum number of pieces of the conveyor.
+     *
+     * @return the capacity
+     */
+    @Override
+    public int getCapacity() {
+        return conveyor.getCapacity();
+    }
+
+    /**
+     * Get the number of pieces unloaded from the picking point.
+     *
+     * @return the number of unloads
+     */
+    @Override
+    public long getUnloads() {
+        return unloads.sum();
+    }
+
+    /**
+     * Get the average number of pieces unloaded each second since these metrics were created.
+     *
+     * @return the unload rate in pieces per second
+     */
+    @Override
+    public double getUnloadRate() {
+        return Rates.perSecond(unloads.sum(), created);
+    }
+
+    /**
+     * Get the total time producers have waited because the conveyor was full.
+     *
+     * @return the stall time in nanoseconds
+     */
+    @Override
+    public long getStallTime() {
+        return conveyor.getStallTime();
+    }
+
+    /**
+     * Get the number of times a producer has waited because the conveyor was full.
+     *
+     * @return the number of stalls
+     */
+    @Override
+    public long getStalls() {
+        return conveyor.getStallCount();
+    }
+
+    /**
+     * Get the total time vehicles have waited for the lock of the picking point.
+     *
+     * @return the lock wait time in nanoseconds
+     */
+    @Override
+    public long getLockWaitTime() {
+        return lockWaits.getSum();
+    }
+
+    /**
+     * Get the 99th percentile of the time a vehicle waits for the lock of the picking point.
+     *
+     * @return the approximate 99th percentile in nanoseconds
+     */
+    @Override
+    public long getLockWaitP99() {
+        return lockWaits.getPercentile(99);
+    }
+
+    /**
+     * Get the longest time a vehicle has waited for the lock of the picking point.
+     *
+     * @return the maximum lock wait in nanoseconds
+     */
+    @Override
+    public long getLockWaitMax() {
+        return lockWaits.getMax();
+    }
+}
@@ -0,0 +1,72 @@
+package warehouse.metrics;
+
+/**
+ * Management interface of the metrics of a conveyor.
+ *
+ * Times are in nanoseconds.
+ */
+public interface ConveyorMetricsMBean {
+
+    /**
+     * Get the number of pieces in the conveyor.
+     *
+     * @return the queue depth
+     */
+    int getDepth();
+
+    /**
+     * Get the maximum number of pieces of the conveyor.
+     *
+     * @return the capacity
+     */
+    int getCapacity();
+
+    /**
+     * Get the number of pieces unloaded from the picking point.
+     *
+     * @return the number of unloads
+     */
+    long getUnloads();
+
+    /**
+     * Get the average number of pieces unloaded each second since the metrics were created.
+     *
+     * @return the unload rate in pieces per second
+     */
+    double getUnloadRate();
+
+    /**
+     * Get the total time producers have waited because the conveyor was full.
+     *
+     * @return the stall time
+     */
+    long getStallTime();
+
+    /**
+     * Get the number of times a producer has waited because the conveyor was full.
+     *
+     * @return the number of stalls
+     */
+    long getStalls();
+
+    /**
+     * Get the total time vehicles have waited for the lock of the picking point.
+     *
+     * @return the lock wait time
+     */
+    long getLockWaitTime();
+
+    /**
+     * Get the 99th percentile of the time a vehicle waits for the lock of the picking point.
+     *
+     * @return the approximate 99th percentile of the lock waits
+     */
+    long getLockWaitP99();
+
+    /**
+     * Get the longest time a vehicle has waited for the lock of the picking point.
+     *
+     * @return the maximum lock wait
+     */
+    long getLockWaitMax();
+}
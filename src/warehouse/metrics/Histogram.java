@@ -0,0 +1,133 @@
+package warehouse.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds, safe to record from many threads.
+ *
+ * Each value is counted in the bucket of its power of two, so recording is a few atomic increments
+ * and never allocates. Percentiles are approximated by the upper bound of their bucket,
+ * so they are never lower than the actual value and at most twice it.
+ */
+public class Histogram {
+
+    /**
+     * Number of buckets, one for each power of two a long value can have.
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * Number of values in each bucket, where bucket 0 holds 0 and bucket i the values from 2^(i-1) to 2^i - 1.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of values recorded.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sum of the values recorded.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Largest value recorded.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos the duration in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Get the number of values recorded.
+     *
+     * @return the count of values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the sum of the values recorded.
+     *
+     * @return the total duration in nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Get the mean of the values recorded.
+     *
+     * @return the mean duration in nanoseconds, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Get the largest value recorded.
+     *
+     * @return the maximum duration in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get an approximation of a percentile of the values recorded.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the upper bound of the bucket of the percentile in nanoseconds, never above the maximum,
+     *         or 0 if nothing has been recorded
+     *
+     * @throws IllegalArgumentException if percentile is not between 0 and 100
+     */
+    public long getPercentile(double percentile) throws IllegalArgumentException {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        // Number of values up to the percentile, at least the first one
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long upper = (1L << i) - 1;
+                return Math.min(upper, getMax());
+            }
+        }
+        return getMax();
+    }
+}
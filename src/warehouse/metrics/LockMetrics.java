@@ -0,0 +1,71 @@
+package warehouse.metrics;
+
+/**
+ * Metrics of a contended lock: how long threads wait to acquire it.
+ */
+public class LockMetrics implements LockMetricsMBean {
+
+    /**
+     * Times waiting for the lock.
+     */
+    private final Histogram waits = new Histogram();
+
+    /**
+     * Record an acquisition of the lock.
+     *
+     * @param nanos the time waited to acquire it
+     */
+    public void acquired(long nanos) {
+        waits.record(nanos);
+    }
+
+    /**
+     * Get the number of times the lock has been acquired.
+     *
+     * @return the number of acquisitions
+     */
+    @Override
+    public long getAcquisitions() {
+        return waits.getCount();
+    }
+
+    /**
+     * Get the total time threads have waited for the lock.
+     *
+     * @return the wait time in nanoseconds
+     */
+    @Override
+    public long getWaitTime() {
+        return waits.getSum();
+    }
+
+    /**
+     * Get the median time a thread waits for the lock.
+     *
+     * @return the approximate median in nanoseconds
+     */
+    @Override
+    public long getWaitP50() {
+        return waits.getPercentile(50);
+    }
+
+    /**
+     * Get the 99th percentile of the time a thread waits for the lock.
+     *
+     * @return the approximate 99th percentile in nanoseconds
+     */
+    @Override
+    public long getWaitP99() {
+        return waits.getPercentile(99);
+    }
+
+    /**
+     * Get the longest time a thread has waited for the lock.
+     *
+     * @return the maximum wait in nanoseconds
+     */
+    @Override
+    public long getWaitMax() {
+        return waits.getMax();
+    }
+}
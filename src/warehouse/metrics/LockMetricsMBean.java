@@ -0,0 +1,44 @@
+package warehouse.metrics;
+
+/**
+ * Management interface of the metrics of a contended lock.
+ *
+ * Times are in nanoseconds.
+ */
+public interface LockMetricsMBean {
+
+    /**
+     * Get the number of times the lock has been acquired.
+     *
+     * @return the number of acquisitions
+     */
+    long getAcquisitions();
+
+    /**
+     * Get the total time threads have waited for the lock.
+     *
+     * @return the wait time
+     */
+    long getWaitTime();
+
+    /**
+     * Get the median time a thread waits for the lock.
+     *
+     * @return the approximate median wait
+     */
+    long getWaitP50();
+
+    /**
+     * Get the 99th percentile of the time a thread waits for the lock.
+     *
+     * @return the approximate 99th percentile wait
+     */
+    long getWaitP99();
+
+    /**
+     * Get the longest time a thread has waited for the lock.
+     *
+     * @return the maximum wait
+     */
+    long getWaitMax();
+}
@@ -0,0 +1,170 @@
+package warehouse.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the metrics of the warehouse, published as MBeans in the platform MBean server.
+ *
+ * Metrics are disabled unless the system property {@code warehouse.metrics} is true or {@code setEnabled} is called.
+ * Components check once, when they are created, whether metrics are enabled: without metrics they keep
+ * a null metrics object, so their hot paths only do a null check and never allocate or read the clock.
+ *
+ * Every MBean is registered in the {@code warehouse} domain with its type and name,
+ * like {@code warehouse:type=Vehicle,name="AGVS 1"}, so it can be seen with JConsole or any JMX client.
+ * A component with the name of a registered one replaces its MBean, so copies of the warehouse, like the ones
+ * restored from a snapshot or replayed from a trace next to the live warehouse, should be created
+ * while the metrics of their thread are suspended with {@code suspend}.
+ */
+public final class Metrics {
+
+    /**
+     * Domain of the names of every MBean of the warehouse.
+     */
+    public static final String DOMAIN = "warehouse";
+
+    /**
+     * Whether components created from now on record metrics.
+     */
+    private static volatile boolean enabled = Boolean.getBoolean("warehouse.metrics");
+
+    /**
+     * Names of the MBeans registered, so they can be unregistered.
+     */
+    private static final Set<ObjectName> registered = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether the metrics of the components created by each thread are suspended.
+     */
+    private static final ThreadLocal<Boolean> suspended = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /**
+     * This class only has static methods, so it cannot be instantiated.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Checks if components created now by the current thread should record metrics.
+     *
+     * @return true if metrics are enabled and not suspended in the current thread, false otherwise
+     */
+    public static boolean isEnabled() {
+        return enabled && !suspended.get();
+    }
+
+    /**
+     * Suspend the metrics of the components created by the current thread until the suspension is closed,
+     * so they do not replace the MBeans of the components with the same names.
+     *
+     * <pre>
+     * Metrics.Suspension suspension = Metrics.suspend();
+     * try {
+     *     state = Snapshot.read(path);
+     * } finally {
+     *     suspension.close();
+     * }
+     * </pre>
+     *
+     * @return the suspension, to be closed in the same thread
+     */
+    public static Suspension suspend() {
+        Suspension suspension = new Suspension(suspended.get());
+        suspended.set(Boolean.TRUE);
+        return suspension;
+    }
+
+    /**
+     * Enable or disable the metrics of the components created from now on.
+     *
+     * Components already created keep recording metrics, or not, as they did.
+     *
+     * @param enabled true to record metrics, false otherwise
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Register an MBean, replacing any MBean registered before with the same type and name.
+     *
+     * @param <T> the type of the MBean
+     * @param type the type of the component, like Vehicle or Conveyor
+     * @param name the name of the component
+     * @param mbean the MBean with the metrics of the component
+     * @return the registered MBean
+     *
+     * @throws IllegalStateException if the MBean cannot be registered
+     */
+    public static <T> T register(String type, String name, T mbean) throws IllegalStateException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+
+            try {
+                server.registerMBean(mbean, objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                // A new component with the same name replaces the old one, like a vehicle of a new run
+                server.unregisterMBean(objectName);
+                server.registerMBean(mbean, objectName);
+            }
+
+            registered.add(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register the metrics of " + type + " " + name, e);
+        }
+
+        return mbean;
+    }
+
+    /**
+     * Unregister every MBean registered with {@code register}.
+     */
+    public static void unregisterAll() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName objectName : registered) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                // Already unregistered by someone else, nothing to do
+            }
+            registered.remove(objectName);
+        }
+    }
+
+    /**
+     * Metrics suspended in a thread, resumed when it is closed.
+     */
+    public static final class Suspension implements AutoCloseable {
+
+        /**
+         * Whether the metrics were already suspended before, so nested suspensions do not resume them.
+         */
+        private final boolean previous;
+
+        /**
+         * Create a suspension.
+         *
+         * @param previous whether the metrics were already suspended
+         */
+        private Suspension(boolean previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * Resume the metrics of the components created by the current thread, unless they were already suspended.
+         */
+        @Override
+        public void close() {
+            suspended.set(previous);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package warehouse.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helper to compute the rates of the metrics.
+ */
+final class Rates {
+
+    /**
+     * This class only has static methods, so it cannot be instantiated.
+     */
+    private Rates() {
+    }
+
+    /**
+     * Get the average number of events each second since a moment.
+     *
+     * @param count the number of events
+     * @param since the moment when counting started, from {@code System.nanoTime}
+     * @return the events per second
+     */
+    static double perSecond(long count, long since) {
+        long elapsed = System.nanoTime() - since;
+        return elapsed <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+}
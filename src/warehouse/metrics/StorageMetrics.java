@@ -0,0 +1,72 @@
+package warehouse.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import warehouse.storage.Storage;
+
+/**
+ * Metrics of a storage of pieces: its size and the rate pieces are stored.
+ */
+public class StorageMetrics implements StorageMetricsMBean {
+
+    /**
+     * The storage measured, to read its size.
+     */
+    private final Storage<?> storage;
+
+    /**
+     * Time when these metrics were created, from {@code System.nanoTime}.
+     */
+    private final long created = System.nanoTime();
+
+    /**
+     * Number of pieces stored.
+     */
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Create the metrics of a storage.
+     *
+     * @param storage the storage measured
+     */
+    public StorageMetrics(Storage<?> storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Record a piece stored.
+     */
+    public void stored() {
+        stores.increment();
+    }
+
+    /**
+     * Get the number of pieces in the storage.
+     *
+     * @return the number of pieces
+     */
+    @Override
+    public int getSize() {
+        return storage.getSize();
+    }
+
+    /**
+     * Get the number of pieces stored since these metrics were created.
+     *
+     * @return the number of stores
+     */
+    @Override
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * Get the average number of pieces stored each second since these metrics were created.
+     *
+     * @return the store rate in pieces per second
+     */
+    @Override
+    public double getStoreRate() {
+        return Rates.perSecond(stores.sum(), created);
+    }
+}
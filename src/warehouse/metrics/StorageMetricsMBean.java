@@ -0,0 +1,28 @@
+package warehouse.metrics;
+
+/**
+ * Management interface of the metrics of a storage of pieces.
+ */
+public interface StorageMetricsMBean {
+
+    /**
+     * Get the number of pieces in the storage.
+     *
+     * @return the number of pieces
+     */
+    int getSize();
+
+    /**
+     * Get the number of pieces stored since the metrics were created.
+     *
+     * @return the number of stores
+     */
+    long getStores();
+
+    /**
+     * Get the average number of pieces stored each second since the metrics were created.
+     *
+     * @return the store rate in pieces per second
+     */
+    double getStoreRate();
+}
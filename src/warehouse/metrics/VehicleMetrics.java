@@ -0,0 +1,184 @@
+package warehouse.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Metrics of a vehicle: moves, pieces delivered, battery drained, and time waiting for work versus doing it.
+ */
+public class VehicleMetrics implements VehicleMetricsMBean {
+
+    /**
+     * Source of the remaining battery of the vehicle.
+     */
+    private final IntSupplier battery;
+
+    /**
+     * Number of moves.
+     */
+    private final LongAdder moves = new LongAdder();
+
+    /**
+     * Number of pieces stored.
+     */
+    private final LongAdder delivered = new LongAdder();
+
+    /**
+     * Battery drained in mAh.
+     */
+    private final LongAdder drained = new LongAdder();
+
+    /**
+     * Times waiting for work.
+     */
+    private final Histogram idle = new Histogram();
+
+    /**
+     * Times from getting some work until asking for more.
+     */
+    private final Histogram tasks = new Histogram();
+
+    /**
+     * Create the metrics of a vehicle.
+     *
+     * @param battery the source of the remaining battery of the vehicle
+     */
+    public VehicleMetrics(IntSupplier battery) {
+        this.battery = battery;
+    }
+
+    /**
+     * Record a move of the vehicle.
+     *
+     * @param consumption the battery drained by the move
+     */
+    public void moved(int consumption) {
+        moves.increment();
+        drained.add(consumption);
+    }
+
+    /**
+     * Record a piece stored by the vehicle.
+     */
+    public void delivered() {
+        delivered.increment();
+    }
+
+    /**
+     * Record a wait for work.
+     *
+     * @param nanos the time waited
+     */
+    public void idle(long nanos) {
+        idle.record(nanos);
+    }
+
+    /**
+     * Record a task done, from getting the work until asking for more.
+     *
+     * @param nanos the time of the task
+     */
+    public void travelled(long nanos) {
+        tasks.record(nanos);
+    }
+
+    /**
+     * Get the number of moves of the vehicle.
+     *
+     * @return the number of moves
+     */
+    @Override
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    /**
+     * Get the number of pieces the vehicle has stored in their storages.
+     *
+     * @return the number of pieces delivered
+     */
+    @Override
+    public long getPiecesDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * Get the battery drained by the moves of the vehicle.
+     *
+     * @return the battery drained in mAh
+     */
+    @Override
+    public long getBatteryDrained() {
+        return drained.sum();
+    }
+
+    /**
+     * Get the remaining battery of the vehicle.
+     *
+     * @return the battery in mAh
+     */
+    @Override
+    public int getBattery() {
+        return battery.getAsInt();
+    }
+
+    /**
+     * Get the total time the vehicle has waited for work.
+     *
+     * @return the idle time in nanoseconds
+     */
+    @Override
+    public long getIdleTime() {
+        return idle.getSum();
+    }
+
+    /**
+     * Get the total time the vehicle has spent doing its tasks.
+     *
+     * @return the travelling time in nanoseconds
+     */
+    @Override
+    public long getTravellingTime() {
+        return tasks.getSum();
+    }
+
+    /**
+     * Get the number of tasks the vehicle has done.
+     *
+     * @return the number of tasks
+     */
+    @Override
+    public long getTasks() {
+        return tasks.getCount();
+    }
+
+    /**
+     * Get the 99th percentile of the time the vehicle waits for work.
+     *
+     * @return the approximate 99th percentile in nanoseconds
+     */
+    @Override
+    public long getIdleTimeP99() {
+        return idle.getPercentile(99);
+    }
+
+    /**
+     * Get the median time of a task of the vehicle.
+     *
+     * @return the approximate median in nanoseconds
+     */
+    @Override
+    public long getTaskTimeP50() {
+        return tasks.getPercentile(50);
+    }
+
+    /**
+     * Get the 99th percentile of the time of a task of the vehicle.
+     *
+     * @return the approximate 99th percentile in nanoseconds
+     */
+    @Override
+    public long getTaskTimeP99() {
+        return tasks.getPercentile(99);
+    }
+}
@@ -0,0 +1,79 @@
+package warehouse.metrics;
+
+/**
+ * Management interface of the metrics of a vehicle.
+ *
+ * Times are in nanoseconds.
+ */
+public interface VehicleMetricsMBean {
+
+    /**
+     * Get the number of moves of the vehicle.
+     *
+     * @return the number of moves
+     */
+    long getMoves();
+
+    /**
+     * Get the number of pieces the vehicle has stored in their storages.
+     *
+     * @return the number of pieces delivered
+     */
+    long getPiecesDelivered();
+
+    /**
+     * Get the battery drained by the moves of the vehicle.
+     *
+     * @return the battery drained in mAh
+     */
+    long getBatteryDrained();
+
+    /**
+     * Get the remaining battery of the vehicle.
+     *
+     * @return the battery in mAh
+     */
+    int getBattery();
+
+    /**
+     * Get the total time the vehicle has waited for work.
+     *
+     * @return the idle time
+     */
+    long getIdleTime();
+
+    /**
+     * Get the total time the vehicle has spent doing its tasks, from getting the work until asking for more.
+     *
+     * @return the travelling time
+     */
+    long getTravellingTime();
+
+    /**
+     * Get the number of tasks the vehicle has done.
+     *
+     * @return the number of tasks
+     */
+    long getTasks();
+
+    /**
+     * Get the 99th percentile of the time the vehicle waits for work.
+     *
+     * @return the approximate 99th percentile of the idle times
+     */
+    long getIdleTimeP99();
+
+    /**
+     * Get the median time of a task of the vehicle.
+     *
+     * @return the approximate median of the task times
+     */
+    long getTaskTimeP50();
+
+    /**
+     * Get the 99th percentile of the time of a task of the vehicle.
+     *
+     * @return the approximate 99th percentile of the task times
+     */
+    long getTaskTimeP99();
+}
@@ -44,6 +44,18 @@ public class ColoredPiece extends PieceDecorator {
         return decoratedPiece.getPrice() + color.getPrice();
     }
     
+    /**
+     * Checks if this piece is painted with a color,
+     * either the color of this decorator or a color of the decorated piece.
+     * 
+     * @param color the color to check
+     * @return true if this piece is painted with the color, false otherwise
+     */
+    @Override
+    public boolean hasColor(Color color) {
+        return this.color == color || decoratedPiece.hasColor(color);
+    }
+
     /**
      * Get a String representation of this colored piece.
      * 
@@ -24,7 +24,17 @@ public class CylindricalPiece extends Piece {
      */
     @Override
     public int getPrice() {
-        return 20;
+        return Shape.CYLINDRICAL.getPrice();
+    }
+
+    /**
+     * Get the shape of this cylindrical piece.
+     * 
+     * @return the cylindrical shape
+     */
+    @Override
+    public Shape getShape() {
+        return Shape.CYLINDRICAL;
     }
     
 }
@@ -1,5 +1,6 @@
 package warehouse.pieces;
 
+import warehouse.Color;
 import warehouse.Position;
 import warehouse.Priceable;
 import warehouse.pieces.builder.PieceBuilder;
@@ -57,6 +58,42 @@ public abstract class Piece implements Priceable {
         return PieceBuilder.newBuilder();
     }
 
+    /**
+     * Get the shape of this piece.
+     * 
+     * @return the shape of this piece
+     */
+    public abstract Shape getShape();
+
+    /**
+     * Checks if this piece is painted with a color.
+     * 
+     * @param color the color to check
+     * @return true if this piece is painted with the color, false otherwise
+     */
+    public boolean hasColor(Color color) {
+        // Pieces are not painted unless they are decorated with colors
+        return false;
+    }
+
+    /**
+     * Get the reference of this piece.
+     * 
+     * @return the reference of this piece
+     */
+    public int getReference() {
+        return reference;
+    }
+
+    /**
+     * Retrieve the storage where this piece should be stored.
+     * 
+     * @return the storage of this piece
+     */
+    public Storage<Piece> getStorage() {
+        return storage;
+    }
+
     /**
      * Retrieve where this piece should be stored.
      * 
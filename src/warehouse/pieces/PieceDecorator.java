@@ -1,5 +1,7 @@
 package warehouse.pieces;
 
+import warehouse.Color;
+
 /**
  * An abstract piece decorator that uses Decorator pattern to composite pieces.
  */
@@ -24,6 +26,15 @@ public abstract class PieceDecorator extends Piece {
         this.decoratedPiece = piece;
     }
 
+    /**
+     * Get the decorated piece.
+     * 
+     * @return the piece this decorator wraps
+     */
+    public Piece getDecoratedPiece() {
+        return decoratedPiece;
+    }
+
     /**
      * Get the price of the decorated piece.
      * 
@@ -33,5 +44,26 @@ public abstract class PieceDecorator extends Piece {
     public int getPrice() {
         return decoratedPiece.getPrice();
     }
+
+    /**
+     * Get the shape of the decorated piece.
+     * 
+     * @return the shape of the decorated piece
+     */
+    @Override
+    public Shape getShape() {
+        return decoratedPiece.getShape();
+    }
+
+    /**
+     * Checks if the decorated piece is painted with a color.
+     * 
+     * @param color the color to check
+     * @return true if the decorated piece is painted with the color, false otherwise
+     */
+    @Override
+    public boolean hasColor(Color color) {
+        return decoratedPiece.hasColor(color);
+    }
     
 }
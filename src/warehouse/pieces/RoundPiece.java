@@ -25,6 +25,16 @@ public class RoundPiece extends Piece {
      */
     @Override
     public int getPrice() {
-        return 10;
+        return Shape.ROUND.getPrice();
+    }
+
+    /**
+     * Get the shape of this round piece.
+     * 
+     * @return the round shape
+     */
+    @Override
+    public Shape getShape() {
+        return Shape.ROUND;
     }
 }
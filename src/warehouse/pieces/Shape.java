@@ -0,0 +1,38 @@
+package warehouse.pieces;
+
+import warehouse.Priceable;
+
+/**
+ * Shapes of pieces with a price.
+ */
+public enum Shape implements Priceable {
+    ROUND (10),
+    SQUARE (5),
+    CYLINDRICAL (20);
+
+    /**
+     * Price of a piece of this shape without colors
+     */
+    private int price;
+
+    /**
+     * Create a new Shape.
+     * 
+     * This constructor is private because can only be used in this enum.
+     * 
+     * @param price the price of a piece of this shape without colors
+     */
+    private Shape(int price) {
+        this.price = price;
+    }
+
+    /**
+     * Get the price of a piece of this shape without colors.
+     * 
+     * @return the price of this shape
+     */
+    @Override
+    public int getPrice() {
+        return this.price;
+    }
+}
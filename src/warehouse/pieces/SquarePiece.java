@@ -25,6 +25,16 @@ public class SquarePiece extends Piece {
      */
     @Override
     public int getPrice() {
-        return 5;
+        return Shape.SQUARE.getPrice();
+    }
+
+    /**
+     * Get the shape of this square piece.
+     * 
+     * @return the square shape
+     */
+    @Override
+    public Shape getShape() {
+        return Shape.SQUARE;
     }
 }
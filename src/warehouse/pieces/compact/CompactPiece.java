@@ -0,0 +1,115 @@
+package warehouse.pieces.compact;
+
+import warehouse.Color;
+import warehouse.pieces.Piece;
+import warehouse.pieces.Shape;
+import warehouse.storage.Storage;
+
+/**
+ * A piece backed by its code, with its shape and all its colors in a single object.
+ *
+ * Works like a piece decorated with colors, but without a decorator object for each color
+ * and taking its price from a precomputed table.
+ */
+public class CompactPiece extends Piece {
+
+    /**
+     * Class names of the pieces of each shape, so this piece is described like the piece it stands for.
+     */
+    private static final String[] NAMES = new String[CompactPieces.SHAPES.length];
+
+    static {
+        for (Shape shape : CompactPieces.SHAPES) {
+            String name = shape.name();
+            NAMES[shape.ordinal()] = name.charAt(0) + name.substring(1).toLowerCase() + "Piece";
+        }
+    }
+
+    /**
+     * The code of this piece.
+     */
+    private final long code;
+
+    /**
+     * Create a piece from its code.
+     *
+     * @param code the code of this piece
+     * @param storage where this piece should be stored
+     */
+    public CompactPiece(long code, Storage<Piece> storage) {
+        super(CompactPieces.reference(code), storage);
+
+        this.code = code;
+    }
+
+    /**
+     * Create a compact copy of a piece, with the same reference, shape, colors and storage.
+     *
+     * @param piece the piece to copy
+     * @return a compact piece equivalent to the piece
+     */
+    public static CompactPiece of(Piece piece) {
+        if (piece instanceof CompactPiece) {
+            return (CompactPiece) piece;
+        }
+        return new CompactPiece(CompactPieces.encode(piece, 0), piece.getStorage());
+    }
+
+    /**
+     * Get the code of this piece.
+     *
+     * @return the code of this piece
+     */
+    public long getCode() {
+        return code;
+    }
+
+    /**
+     * Get the price of this piece, including its colors.
+     *
+     * @return the price of this piece
+     */
+    @Override
+    public int getPrice() {
+        return CompactPieces.price(code);
+    }
+
+    /**
+     * Get the shape of this piece.
+     *
+     * @return the shape of this piece
+     */
+    @Override
+    public Shape getShape() {
+        return CompactPieces.shape(code);
+    }
+
+    /**
+     * Checks if this piece is painted with a color.
+     *
+     * @param color the color to check
+     * @return true if this piece is painted with the color, false otherwise
+     */
+    @Override
+    public boolean hasColor(Color color) {
+        return CompactPieces.hasColor(code, color);
+    }
+
+    /**
+     * Get a String representation of this piece, like the one of a piece decorated with its colors.
+     *
+     * @return a String representation of this piece
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(NAMES[getShape().ordinal()]).append(" #").append(getReference());
+
+        for (Color color : CompactPieces.COLORS) {
+            if (hasColor(color)) {
+                builder.append(" (").append(color).append(')');
+            }
+        }
+
+        return builder.toString();
+    }
+}
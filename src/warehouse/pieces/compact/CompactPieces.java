@@ -0,0 +1,190 @@
+package warehouse.pieces.compact;
+
+import warehouse.Color;
+import warehouse.pieces.Piece;
+import warehouse.pieces.Shape;
+
+/**
+ * Encoding of a piece into a single long number.
+ *
+ * The bits of the code are, from the lowest to the highest:
+ * <ul>
+ * <li>32 bits for the reference of the piece.</li>
+ * <li>8 bits for the colors of the piece, one bit for each color ordinal.</li>
+ * <li>8 bits for the shape ordinal of the piece.</li>
+ * <li>16 bits for an identifier of the storage of the piece, given by the {@code PieceStore} holding the code.</li>
+ * </ul>
+ *
+ * Colors are kept as a set, so a piece painted twice with the same color is encoded as painted once
+ * and colors are decoded in the order they are declared.
+ *
+ * Prices are read from a table computed once for every combination of shape and colors,
+ * so computing the price of a code takes constant time.
+ */
+public final class CompactPieces {
+
+    /**
+     * Maximum number of different storages of a piece store.
+     */
+    public static final int MAX_STORAGES = 1 << 16;
+
+    /**
+     * Number of bits of each field.
+     */
+    private static final int REFERENCE_BITS = 32, COLOR_BITS = 8, SHAPE_BITS = 8;
+
+    /**
+     * Position of the lowest bit of each field.
+     */
+    private static final int COLOR_SHIFT = REFERENCE_BITS,
+            SHAPE_SHIFT = COLOR_SHIFT + COLOR_BITS,
+            STORAGE_SHIFT = SHAPE_SHIFT + SHAPE_BITS;
+
+    /**
+     * All the shapes, indexed by ordinal.
+     */
+    static final Shape[] SHAPES = Shape.values();
+
+    /**
+     * All the colors, indexed by ordinal.
+     */
+    static final Color[] COLORS = Color.values();
+
+    /**
+     * Price of each combination of shape and colors, indexed by the shape and colors bits of a code.
+     */
+    private static final int[] PRICES = new int[SHAPES.length << COLOR_BITS];
+
+    static {
+        if (COLORS.length > COLOR_BITS || SHAPES.length > (1 << SHAPE_BITS)) {
+            throw new IllegalStateException("Too many colors or shapes to encode pieces");
+        }
+
+        for (Shape shape : SHAPES) {
+            for (int colors = 0; colors < (1 << COLOR_BITS); colors++) {
+                int price = shape.getPrice();
+                for (Color color : COLORS) {
+                    if ((colors & (1 << color.ordinal())) != 0) {
+                        price += color.getPrice();
+                    }
+                }
+                PRICES[(shape.ordinal() << COLOR_BITS) | colors] = price;
+            }
+        }
+    }
+
+    /**
+     * This class only has static methods, so it cannot be instantiated.
+     */
+    private CompactPieces() {}
+
+    /**
+     * Encode the fields of a piece.
+     *
+     * @param shape the shape of the piece
+     * @param colors the color mask of the piece, with the bit of each color ordinal set
+     * @param reference the reference of the piece
+     * @param storageId the identifier of the storage of the piece
+     * @return the code of the piece
+     *
+     * @throws IllegalArgumentException if the colors or the storage identifier cannot be encoded
+     */
+    public static long encode(Shape shape, int colors, int reference, int storageId) throws IllegalArgumentException {
+        if ((colors >>> COLOR_BITS) != 0 || storageId < 0 || storageId >= MAX_STORAGES) {
+            throw new IllegalArgumentException("Cannot encode colors " + colors + " and storage " + storageId);
+        }
+
+        return (reference & 0xFFFFFFFFL)
+                | ((long) colors << COLOR_SHIFT)
+                | ((long) shape.ordinal() << SHAPE_SHIFT)
+                | ((long) storageId << STORAGE_SHIFT);
+    }
+
+    /**
+     * Encode a piece.
+     *
+     * @param piece the piece to encode
+     * @param storageId the identifier of the storage of the piece
+     * @return the code of the piece
+     */
+    public static long encode(Piece piece, int storageId) {
+        return encode(piece.getShape(), colorMask(piece), piece.getReference(), storageId);
+    }
+
+    /**
+     * Get the color mask of a piece.
+     *
+     * @param piece the piece
+     * @return a mask with the bit of each color ordinal the piece is painted with
+     */
+    public static int colorMask(Piece piece) {
+        int colors = 0;
+        for (Color color : COLORS) {
+            if (piece.hasColor(color)) {
+                colors |= 1 << color.ordinal();
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Get the reference of an encoded piece.
+     *
+     * @param code the code of the piece
+     * @return the reference of the piece
+     */
+    public static int reference(long code) {
+        return (int) code;
+    }
+
+    /**
+     * Get the color mask of an encoded piece.
+     *
+     * @param code the code of the piece
+     * @return a mask with the bit of each color ordinal the piece is painted with
+     */
+    public static int colors(long code) {
+        return (int) (code >>> COLOR_SHIFT) & ((1 << COLOR_BITS) - 1);
+    }
+
+    /**
+     * Checks if an encoded piece is painted with a color.
+     *
+     * @param code the code of the piece
+     * @param color the color to check
+     * @return true if the piece is painted with the color, false otherwise
+     */
+    public static boolean hasColor(long code, Color color) {
+        return (colors(code) & (1 << color.ordinal())) != 0;
+    }
+
+    /**
+     * Get the shape of an encoded piece.
+     *
+     * @param code the code of the piece
+     * @return the shape of the piece
+     */
+    public static Shape shape(long code) {
+        return SHAPES[(int) (code >>> SHAPE_SHIFT) & ((1 << SHAPE_BITS) - 1)];
+    }
+
+    /**
+     * Get the storage identifier of an encoded piece.
+     *
+     * @param code the code of the piece
+     * @return the identifier of the storage of the piece
+     */
+    public static int storageId(long code) {
+        return (int) (code >>> STORAGE_SHIFT);
+    }
+
+    /**
+     * Get the price of an encoded piece.
+     *
+     * @param code the code of the piece
+     * @return the price of the piece
+     */
+    public static int price(long code) {
+        return PRICES[(int) (code >>> COLOR_SHIFT) & ((1 << (COLOR_BITS + SHAPE_BITS)) - 1)];
+    }
+}
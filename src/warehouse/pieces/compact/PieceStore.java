@@ -0,0 +1,196 @@
+package warehouse.pieces.compact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import warehouse.pieces.Piece;
+import warehouse.storage.Storage;
+
+/**
+ * A compact collection of pieces, keeping the code of each piece in an array of long numbers.
+ *
+ * Storages are kept once in a table and each code holds the index of its storage in that table,
+ * so a piece takes 8 bytes instead of an object for the piece and another object for each color.
+ * Pieces are read back as {@code CompactPiece} views created on demand.
+ *
+ * This store is not thread-safe.
+ */
+public class PieceStore {
+
+    /**
+     * Initial number of codes of the array.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Code of each piece.
+     */
+    private long[] codes;
+
+    /**
+     * Number of pieces in this store.
+     */
+    private int size;
+
+    /**
+     * Storages of the pieces, indexed by storage identifier.
+     */
+    private final List<Storage<Piece>> storages = new ArrayList<>();
+
+    /**
+     * Identifier of each storage.
+     */
+    private final Map<Storage<Piece>, Integer> storageIds = new IdentityHashMap<>();
+
+    /**
+     * Create an empty piece store.
+     */
+    public PieceStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Create an empty piece store with room for some pieces.
+     *
+     * @param capacity the initial number of pieces this store can hold without growing
+     */
+    public PieceStore(int capacity) {
+        codes = new long[Math.max(1, capacity)];
+    }
+
+    /**
+     * Get the identifier of a storage in this store, adding the storage if it is new.
+     *
+     * @param storage the storage
+     * @return the identifier of the storage
+     *
+     * @throws IllegalStateException if this store already has the maximum number of storages
+     */
+    public int getStorageId(Storage<Piece> storage) throws IllegalStateException {
+        Integer id = storageIds.get(storage);
+
+        if (id == null) {
+            if (storages.size() == CompactPieces.MAX_STORAGES) {
+                throw new IllegalStateException("Too many storages");
+            }
+
+            id = storages.size();
+            storages.add(storage);
+            storageIds.put(storage, id);
+        }
+
+        return id;
+    }
+
+    /**
+     * Get the storage with an identifier in this store.
+     *
+     * @param storageId the identifier of the storage
+     * @return the storage with that identifier
+     */
+    public Storage<Piece> getStorage(int storageId) {
+        return storages.get(storageId);
+    }
+
+    /**
+     * Adds a piece to this store.
+     *
+     * @param piece the piece to add
+     * @return the index of the piece in this store
+     */
+    public int add(Piece piece) {
+        return add(CompactPieces.encode(piece, getStorageId(piece.getStorage())));
+    }
+
+    /**
+     * Adds an encoded piece to this store.
+     *
+     * @param code the code of the piece, with a storage identifier of this store
+     * @return the index of the piece in this store
+     */
+    public int add(long code) {
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, codes.length * 2);
+        }
+
+        codes[size] = code;
+        return size++;
+    }
+
+    /**
+     * Number of pieces in this store.
+     *
+     * @return the number of pieces in this store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the code of a piece.
+     *
+     * @param index the index of the piece
+     * @return the code of the piece
+     *
+     * @throws IndexOutOfBoundsException if there is no piece with that index
+     */
+    public long getCode(int index) throws IndexOutOfBoundsException {
+        return codes[checkIndex(index)];
+    }
+
+    /**
+     * Get the price of a piece without creating a view of the piece.
+     *
+     * @param index the index of the piece
+     * @return the price of the piece
+     *
+     * @throws IndexOutOfBoundsException if there is no piece with that index
+     */
+    public int getPrice(int index) throws IndexOutOfBoundsException {
+        return CompactPieces.price(getCode(index));
+    }
+
+    /**
+     * Get a piece of this store.
+     *
+     * @param index the index of the piece
+     * @return a new view of the piece
+     *
+     * @throws IndexOutOfBoundsException if there is no piece with that index
+     */
+    public Piece get(int index) throws IndexOutOfBoundsException {
+        long code = getCode(index);
+        return new CompactPiece(code, storages.get(CompactPieces.storageId(code)));
+    }
+
+    /**
+     * Calculate the total price of the pieces in this store.
+     *
+     * @return sum of prices of all the pieces in this store
+     */
+    public long getTotalPrice() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += CompactPieces.price(codes[i]);
+        }
+        return total;
+    }
+
+    /**
+     * Checks that an index is valid.
+     *
+     * @param index the index of a piece
+     * @return the same index
+     *
+     * @throws IndexOutOfBoundsException if there is no piece with that index
+     */
+    private int checkIndex(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return index;
+    }
+}
@@ -21,13 +21,14 @@ public class CylindricalPieceFactory extends PieceTypeFactory<CylindricalPiece>
     }
     
     /**
-     * Get a new piece builder with reference, storage and type cylindrical set.
+     * Set the type cylindrical in a piece builder with reference and storage already set.
      * 
-     * @return a new piece builder with reference, storage and type cylindrical set.
+     * @param builder the piece builder with reference and storage set
+     * @return the piece builder with reference, storage and type cylindrical set.
      */
     @Override
-    protected PieceBuilder.LastStep<CylindricalPiece> newBuilder() {
-        return newBuilderTypeStep().cylindrical();
+    protected PieceBuilder.LastStep<CylindricalPiece> withType(PieceBuilder.TypeStep builder) {
+        return builder.cylindrical();
     }
     
 }
@@ -1,5 +1,10 @@
 package warehouse.pieces.factory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 import warehouse.pieces.Piece;
 
 /**
@@ -14,4 +19,49 @@ public interface PieceFactory {
      */
     Piece create();
 
+    /**
+     * Create many pieces at once.
+     *
+     * @param count the number of pieces to create
+     * @return a list with the new pieces, in creation order
+     *
+     * @throws IllegalArgumentException if count is negative
+     */
+    default List<Piece> createBatch(int count) throws IllegalArgumentException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid number of pieces: " + count);
+        }
+
+        List<Piece> pieces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pieces.add(create());
+        }
+        return pieces;
+    }
+
+    /**
+     * Get an infinite stream of new pieces.
+     *
+     * Pieces are only created when the stream consumer requests them, so a consumer can take pieces
+     * as it can absorb them, like limiting the stream or feeding a conveyor one piece at a time.
+     * The stream can be made parallel, and then pieces are created in every thread.
+     *
+     * @return a lazy stream of pieces without end
+     */
+    default Stream<Piece> stream() {
+        return StreamSupport.stream(new PieceSpliterator(this), false);
+    }
+
+    /**
+     * Get a stream of a number of new pieces, created only when the stream consumer requests them.
+     *
+     * @param count the number of pieces of the stream
+     * @return a lazy stream of pieces
+     *
+     * @throws IllegalArgumentException if count is negative
+     */
+    default Stream<Piece> stream(long count) throws IllegalArgumentException {
+        return StreamSupport.stream(new PieceSpliterator(this, count), false);
+    }
+
 }
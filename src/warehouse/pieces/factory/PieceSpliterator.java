@@ -0,0 +1,159 @@
+package warehouse.pieces.factory;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import warehouse.pieces.Piece;
+
+/**
+ * A spliterator creating pieces with a piece factory only when they are requested.
+ *
+ * Splitting never creates any piece: it gives a part of the pieces still to create to another spliterator,
+ * so parallel streams create pieces in every thread. Traversing all the remaining pieces creates them
+ * in batches with {@code createBatch}, so piece factories can reserve references for many pieces at once.
+ *
+ * Pieces may be created in a different order than references were given, so the spliterator is not ordered.
+ */
+final class PieceSpliterator implements Spliterator<Piece> {
+
+    /**
+     * Number of pieces created at once when traversing, and growth of the pieces split from an infinite spliterator.
+     */
+    private static final int BATCH_UNIT = 1 << 10;
+
+    /**
+     * Maximum number of pieces split at once from an infinite spliterator.
+     */
+    private static final int MAX_BATCH = 1 << 25;
+
+    /**
+     * Piece factory creating the pieces.
+     */
+    private final PieceFactory factory;
+
+    /**
+     * True if there is no limit of pieces, false otherwise.
+     */
+    private final boolean infinite;
+
+    /**
+     * Number of pieces still to create if this spliterator is not infinite.
+     */
+    private long remaining;
+
+    /**
+     * Number of pieces split the last time from an infinite spliterator.
+     */
+    private int batch;
+
+    /**
+     * Create a spliterator creating pieces without limit.
+     *
+     * @param factory the piece factory creating the pieces
+     */
+    PieceSpliterator(PieceFactory factory) {
+        this.factory = factory;
+        this.infinite = true;
+        this.remaining = Long.MAX_VALUE;
+    }
+
+    /**
+     * Create a spliterator creating a number of pieces.
+     *
+     * @param factory the piece factory creating the pieces
+     * @param count the number of pieces to create
+     *
+     * @throws IllegalArgumentException if count is negative
+     */
+    PieceSpliterator(PieceFactory factory, long count) throws IllegalArgumentException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid number of pieces: " + count);
+        }
+
+        this.factory = factory;
+        this.infinite = false;
+        this.remaining = count;
+    }
+
+    /**
+     * Create the next piece, if there are pieces still to create.
+     *
+     * @param action the action receiving the piece
+     * @return true if a piece has been created, false if there are no more pieces
+     */
+    @Override
+    public boolean tryAdvance(Consumer<? super Piece> action) {
+        if (remaining <= 0) {
+            return false;
+        }
+
+        if (!infinite) {
+            remaining--;
+        }
+        action.accept(factory.create());
+        return true;
+    }
+
+    /**
+     * Create every remaining piece in batches.
+     *
+     * An infinite spliterator never returns from this method, unless the action throws an exception.
+     *
+     * @param action the action receiving the pieces
+     */
+    @Override
+    public void forEachRemaining(Consumer<? super Piece> action) {
+        while (remaining > 0) {
+            int count = (int) Math.min(remaining, BATCH_UNIT);
+
+            if (!infinite) {
+                remaining -= count;
+            }
+            factory.createBatch(count).forEach(action);
+        }
+    }
+
+    /**
+     * Give a part of the pieces still to create to another spliterator.
+     *
+     * A limited spliterator gives half of its pieces. An infinite one gives a batch of pieces,
+     * larger each time it is split, so the first parallel tasks start creating pieces soon.
+     *
+     * @return a spliterator creating part of the pieces, or null if there are too few to split
+     */
+    @Override
+    public Spliterator<Piece> trySplit() {
+        if (infinite) {
+            batch = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+            return new PieceSpliterator(factory, batch);
+        }
+
+        if (remaining <= 1) {
+            return null;
+        }
+
+        long half = remaining / 2;
+        remaining -= half;
+        return new PieceSpliterator(factory, half);
+    }
+
+    /**
+     * Get the number of pieces still to create.
+     *
+     * @return the remaining pieces, or {@code Long.MAX_VALUE} if there is no limit
+     */
+    @Override
+    public long estimateSize() {
+        return remaining;
+    }
+
+    /**
+     * Get the characteristics of this spliterator.
+     *
+     * @return non null, and sized if there is a limit of pieces
+     */
+    @Override
+    public int characteristics() {
+        return infinite ? NONNULL : NONNULL | SIZED | SUBSIZED;
+    }
+}
@@ -1,5 +1,9 @@
 package warehouse.pieces.factory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import warehouse.pieces.Piece;
 import warehouse.pieces.builder.PieceBuilder;
 import warehouse.storage.Storage;
@@ -8,6 +12,9 @@ import warehouse.storage.Storage;
  * A piece factory that creates pieces of a specific type (shape)
  * with an integer reference and a storage where the piece should be stored.
  *
+ * References are taken atomically, so several threads can create pieces with the same factory
+ * and every piece still gets a different reference.
+ *
  * @param <PieceType> a generic type standing for a subclass of Piece
  */
 public abstract class PieceTypeFactory<PieceType extends Piece> implements PieceFactory {
@@ -15,7 +22,7 @@ public abstract class PieceTypeFactory<PieceType extends Piece> implements Piece
     /**
      * The reference for the next Piece instance created.
      */
-    private int reference;
+    private final AtomicInteger reference;
 
     /**
      * The storage where every piece created with this piece factory should be stored.
@@ -32,7 +39,7 @@ public abstract class PieceTypeFactory<PieceType extends Piece> implements Piece
      * @param storage the storage where every piece created with this piece factory should be stored
      */
     protected PieceTypeFactory(Storage<Piece> storage) {
-        this.reference = 1;
+        this.reference = new AtomicInteger(1);
         this.storage = storage;
     }
 
@@ -46,22 +53,67 @@ public abstract class PieceTypeFactory<PieceType extends Piece> implements Piece
      * @return a piece builder to build a new piece
      */
     protected final PieceBuilder.TypeStep newBuilderTypeStep() { // This method cannot be override, so it's final.
-        int reference = this.reference; // current reference to assign for the new piece
-        
-        // Add 1 to the reference so the next created piece with this factory has a different reference
-        this.reference++;
-        
+        // Take the current reference and add 1 to it in a single atomic operation,
+        // so the next created piece with this factory has a different reference even in another thread
+        return newBuilderTypeStep(this.reference.getAndIncrement());
+    }
+
+    /**
+     * Get a builder with a reference reserved before with {@code reserveReferences} and the storage already set.
+     *
+     * @param reference the reference of the piece
+     * @return a piece builder to build a new piece
+     */
+    private PieceBuilder.TypeStep newBuilderTypeStep(int reference) {
         // create a new piece builder and set appropriate reference and storage
         return Piece.newBuilder().withReference(reference).shouldStoreAt(this.storage);
     }
-    
+
+    /**
+     * Reserve a range of consecutive references, so they can be given to pieces later, maybe in other threads,
+     * without contending for the reference of every piece.
+     *
+     * @param count the number of references to reserve
+     * @return the first reference of the range
+     *
+     * @throws IllegalArgumentException if count is negative
+     */
+    final int reserveReferences(int count) throws IllegalArgumentException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid number of references: " + count);
+        }
+
+        return this.reference.getAndAdd(count);
+    }
+
     /**
      * Children classes must implement this method,
-     * returning a new piece builder at the final step (where build() can be called to create the piece).
-     * 
+     * setting the type (shape) of the pieces created with this factory in a piece builder.
+     *
+     * @param builder a piece builder with reference and storage already set
+     * @return the piece builder at the final step (where build() can be called to create the piece)
+     */
+    protected abstract PieceBuilder.LastStep<PieceType> withType(PieceBuilder.TypeStep builder);
+
+    /**
+     * Get a new piece builder at the final step (where build() can be called to create the piece),
+     * with the next reference of this factory.
+     *
      * @return a new piece builder at the final step
      */
-    protected abstract PieceBuilder.LastStep<PieceType> newBuilder();
+    protected final PieceBuilder.LastStep<PieceType> newBuilder() {
+        return withType(newBuilderTypeStep());
+    }
+
+    /**
+     * Get a new piece builder at the final step with a reference reserved before with {@code reserveReferences}.
+     *
+     * @param reference the reference of the piece
+     * @return a new piece builder at the final step
+     */
+    final PieceBuilder.LastStep<PieceType> newBuilder(int reference) {
+        return withType(newBuilderTypeStep(reference));
+    }
 
     
     /**
@@ -77,4 +129,26 @@ public abstract class PieceTypeFactory<PieceType extends Piece> implements Piece
         return newBuilder().build();
     }
 
+    /**
+     * Create many pieces of shape PieceType at once.
+     *
+     * The references of all the pieces are reserved in a single operation,
+     * so they are consecutive even if other threads are creating pieces with this factory.
+     *
+     * @param count the number of pieces to create
+     * @return a list with the new pieces, in reference order
+     *
+     * @throws IllegalArgumentException if count is negative
+     */
+    @Override
+    public final List<Piece> createBatch(int count) throws IllegalArgumentException {
+        int first = reserveReferences(count);
+
+        List<Piece> pieces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pieces.add(newBuilder(first + i).build());
+        }
+        return pieces;
+    }
+
 }
@@ -1,8 +1,15 @@
 package warehouse.pieces.factory;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.Spliterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import warehouse.Color;
 import warehouse.pieces.Piece;
@@ -14,6 +21,14 @@ import warehouse.pieces.builder.PieceBuilder;
  * This piece factory also will provide pieces painted with some colors randomly.
  * 
  * Piece references and storages are provided by other piece factories.
+ *
+ * Pieces created one by one use the random generator of the calling thread, so many producer threads
+ * can create pieces at the same time without contending. Large batches can be created in parallel
+ * with {@code parallelCreate}, giving the same pieces for the same seed, and the same pieces can be created
+ * lazily one by one from a stream with a seed.
+ *
+ * Piece factories are picked with the same probability, unless they are given weights, so a workload
+ * can have more pieces of some types than others.
  */
 public class RandomPieceFactory implements PieceFactory {
     
@@ -21,11 +36,22 @@ public class RandomPieceFactory implements PieceFactory {
      * Piece factories to use randomly.
      */
     private PieceTypeFactory<?>[] pieceFactories;
+
+    /**
+     * Sum of the weights of each piece factory and the ones before it, or null if every piece factory
+     * has the same weight.
+     */
+    private final double[] cumulativeWeights;
     
     /**
-     * Random object to provide random values, like random numbers or booleans.
+     * Number of pieces created by each parallel task in {@code parallelCreate}.
+     */
+    private static final int BATCH_SIZE = 1 << 14;
+
+    /**
+     * All available colors to paint the pieces.
      */
-    private Random random = new Random();
+    private static final Color[] COLORS = Color.values();
     
     /**
      * Creates a new random piece factory that can create new pieces from other piece factories, selected randomly.
@@ -34,16 +60,77 @@ public class RandomPieceFactory implements PieceFactory {
      */
     public RandomPieceFactory(PieceTypeFactory<?>... pieceFactories) {
         this.pieceFactories = pieceFactories;
+        this.cumulativeWeights = null;
+    }
+
+    /**
+     * Creates a new random piece factory that picks each piece factory with a probability proportional to its weight.
+     *
+     * @param pieceFactories the piece factories that can be used by this random piece factory
+     * @param weights the weight of each piece factory, in the same order
+     *
+     * @throws IllegalArgumentException if there is not a weight for each piece factory,
+     *                                  or some weight is negative or all of them are zero
+     */
+    public RandomPieceFactory(List<? extends PieceTypeFactory<?>> pieceFactories, double[] weights)
+            throws IllegalArgumentException {
+        if (pieceFactories.size() != weights.length) {
+            throw new IllegalArgumentException("Invalid number of weights: " + weights.length);
+        }
+
+        this.pieceFactories = pieceFactories.toArray(new PieceTypeFactory<?>[0]);
+        this.cumulativeWeights = new double[weights.length];
+
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (!(weights[i] >= 0)) {
+                throw new IllegalArgumentException("Invalid weight: " + weights[i]);
+            }
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+
+        if (!(total > 0)) {
+            throw new IllegalArgumentException("Some piece factory must have a positive weight");
+        }
+    }
+
+    /**
+     * Pick randomly the index of a piece factory, following their weights.
+     *
+     * @param random the source of random values
+     * @return the index of the piece factory
+     */
+    private int pickFactory(RandomGenerator random) {
+        if (cumulativeWeights == null) {
+            return random.nextInt(pieceFactories.length);
+        }
+
+        // Find the first piece factory whose cumulative weight is above the random value,
+        // factories without weight have the same cumulative weight as the one before and are never found
+        double value = random.nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] > value) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
     }
     
     /**
      * Pick randomly a piece factory and get a new builder to create a piece using that piece factory
      * 
+     * @param random the source of random values
      * @return a new builder to create a piece
      */
-    private PieceBuilder.LastStep<?> getRandomPieceBuilder() {
+    private PieceBuilder.LastStep<?> getRandomPieceBuilder(RandomGenerator random) {
         // Pick a piece factory randomly
-        PieceTypeFactory<?> pieceFactory = pieceFactories[random.nextInt(pieceFactories.length)];
+        PieceTypeFactory<?> pieceFactory = pieceFactories[pickFactory(random)];
         return pieceFactory.newBuilder();
     }
     
@@ -52,14 +139,16 @@ public class RandomPieceFactory implements PieceFactory {
      * Pieces are painted with minimum 0 colors and maximum all available colors.
      * 
      * @param builder the builder that will create the piece
+     * @param random the source of random values
      * @return a builder using the provided builder with additional colors set
      */
-    private PieceBuilder.LastStep<?> paintRandomly(PieceBuilder.LastStep<?> builder) {
-        // Create a list with all available colors
-        List<Color> colors = new ArrayList<>(List.of(Color.values()));
+    private static PieceBuilder.LastStep<?> paintRandomly(PieceBuilder.LastStep<?> builder, RandomGenerator random) {
+        // Copy all available colors, the first ones are the colors not used yet
+        Color[] colors = COLORS.clone();
+        int available = colors.length;
         
         // max available colors
-        int maxColors = colors.size();
+        int maxColors = colors.length;
         
         // Paint (or not) the piece being created maxColors times
         for (int i = 0; i < maxColors; i++) {
@@ -67,11 +156,12 @@ public class RandomPieceFactory implements PieceFactory {
             boolean withColor = random.nextBoolean();
             
             if (withColor) {
-                // Select a randomly selected index from the list of available colors
-                int randomColorIndex = random.nextInt(colors.size());
+                // Select a randomly selected index from the available colors
+                int randomColorIndex = random.nextInt(available);
                 
-                // Retrieve the selected color and remove it from the list of available colors so next colors are different
-                Color color = colors.remove(randomColorIndex);
+                // Retrieve the selected color and replace it with the last available one so next colors are different
+                Color color = colors[randomColorIndex];
+                colors[randomColorIndex] = colors[--available];
                 
                 // Get the next builder with the selected color set
                 builder = builder.paint(color);
@@ -90,6 +180,228 @@ public class RandomPieceFactory implements PieceFactory {
      */
     @Override
     public Piece create() {
-        return paintRandomly(getRandomPieceBuilder()).build();
+        // Each thread has its own generator, so producer threads do not contend for it
+        RandomGenerator random = ThreadLocalRandom.current();
+        return paintRandomly(getRandomPieceBuilder(random), random).build();
+    }
+
+    /**
+     * Create many pieces in parallel, using every available processor.
+     *
+     * The pieces are split in batches, and every batch has its own generator seeded from the given seed
+     * in batch order, so the same seed always gives the same pieces whatever thread creates each batch.
+     * The references of each piece factory are reserved at once and then given in piece order,
+     * so they are the same references sequential calls to {@code create} would give with the same random choices.
+     *
+     * @param count the number of pieces to create
+     * @param seed the seed of the random choices
+     * @return the new pieces
+     *
+     * @throws IllegalArgumentException if count is negative
+     */
+    public List<Piece> parallelCreate(int count, long seed) throws IllegalArgumentException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid number of pieces: " + count);
+        }
+
+        int batches = (count + BATCH_SIZE - 1) / BATCH_SIZE;
+
+        // Seed of each batch, taken in order from a single generator so they only depend on the seed
+        SplittableRandom root = new SplittableRandom(seed);
+        long[] seeds = new long[batches];
+        for (int batch = 0; batch < batches; batch++) {
+            seeds[batch] = root.nextLong();
+        }
+
+        // Count the pieces of each batch created with each piece factory
+        int[][] references = new int[batches][pieceFactories.length];
+        IntStream.range(0, batches).parallel().forEach(batch -> {
+            SplittableRandom random = new SplittableRandom(seeds[batch]);
+
+            for (int i = batchStart(batch); i < batchEnd(batch, count); i++) {
+                int factory = pickFactory(random);
+                references[batch][factory]++;
+
+                skipColors(random);
+            }
+        });
+
+        // Reserve the references of each piece factory and find the first reference of every batch
+        for (int factory = 0; factory < pieceFactories.length; factory++) {
+            int total = 0;
+            for (int batch = 0; batch < batches; batch++) {
+                total += references[batch][factory];
+            }
+
+            int next = pieceFactories[factory].reserveReferences(total);
+            for (int batch = 0; batch < batches; batch++) {
+                int batchCount = references[batch][factory];
+                references[batch][factory] = next;
+                next += batchCount;
+            }
+        }
+
+        // Create the pieces repeating the random choices of each batch
+        Piece[] pieces = new Piece[count];
+        IntStream.range(0, batches).parallel().forEach(batch -> {
+            SplittableRandom random = new SplittableRandom(seeds[batch]);
+            int[] next = references[batch];
+
+            for (int i = batchStart(batch); i < batchEnd(batch, count); i++) {
+                int factory = pickFactory(random);
+                PieceBuilder.LastStep<?> builder = pieceFactories[factory].newBuilder(next[factory]++);
+
+                pieces[i] = paintRandomly(builder, random).build();
+            }
+        });
+
+        return Arrays.asList(pieces);
+    }
+
+    /**
+     * Get a stream of a number of new pieces, created only when the stream consumer requests them,
+     * with the random choices of a seed.
+     *
+     * The stream gives the same pieces as {@code parallelCreate} with the same count and seed, in the same order,
+     * if no other pieces are created by the piece factories while it is consumed. Pieces are created in order
+     * from a single generator for each batch, so the stream is sequential even if it is made parallel.
+     *
+     * @param count the number of pieces of the stream
+     * @param seed the seed of the random choices
+     * @return a lazy stream of pieces
+     *
+     * @throws IllegalArgumentException if count is negative
+     */
+    public Stream<Piece> stream(int count, long seed) throws IllegalArgumentException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid number of pieces: " + count);
+        }
+
+        return StreamSupport.stream(new SeededSpliterator(count, seed), false);
+    }
+
+    /**
+     * Draw the same random values {@code paintRandomly} would draw, without painting any piece.
+     *
+     * @param random the source of random values
+     */
+    private static void skipColors(RandomGenerator random) {
+        int available = COLORS.length;
+
+        for (int i = 0; i < COLORS.length; i++) {
+            if (random.nextBoolean()) {
+                random.nextInt(available--);
+            }
+        }
+    }
+
+    /**
+     * Get the index of the first piece of a batch.
+     *
+     * @param batch the index of the batch
+     * @return the index of its first piece
+     */
+    private static int batchStart(int batch) {
+        return batch * BATCH_SIZE;
+    }
+
+    /**
+     * Get the index after the last piece of a batch.
+     *
+     * @param batch the index of the batch
+     * @param count the total number of pieces
+     * @return the index after its last piece
+     */
+    private static int batchEnd(int batch, int count) {
+        return Math.min(count, batchStart(batch) + BATCH_SIZE);
+    }
+
+    /**
+     * A spliterator creating the pieces of {@code parallelCreate} one by one, only when they are requested.
+     */
+    private final class SeededSpliterator implements Spliterator<Piece> {
+
+        /**
+         * Generator of the seed of each batch, in batch order.
+         */
+        private final SplittableRandom root;
+
+        /**
+         * Number of pieces to create.
+         */
+        private final int count;
+
+        /**
+         * Number of pieces created.
+         */
+        private int created;
+
+        /**
+         * Generator of the random choices of the current batch.
+         */
+        private SplittableRandom random;
+
+        /**
+         * Create a spliterator creating a number of pieces.
+         *
+         * @param count the number of pieces to create
+         * @param seed the seed of the random choices
+         */
+        private SeededSpliterator(int count, long seed) {
+            this.root = new SplittableRandom(seed);
+            this.count = count;
+        }
+
+        /**
+         * Create the next piece, if there are pieces still to create.
+         *
+         * @param action the action receiving the piece
+         * @return true if a piece has been created, false if there are no more pieces
+         */
+        @Override
+        public boolean tryAdvance(Consumer<? super Piece> action) {
+            if (created == count) {
+                return false;
+            }
+
+            // Each batch has its own generator, seeded like the batches of parallelCreate
+            if (created % BATCH_SIZE == 0) {
+                random = new SplittableRandom(root.nextLong());
+            }
+            created++;
+
+            action.accept(paintRandomly(getRandomPieceBuilder(random), random).build());
+            return true;
+        }
+
+        /**
+         * Never split, the pieces depend on the ones created before them.
+         *
+         * @return null
+         */
+        @Override
+        public Spliterator<Piece> trySplit() {
+            return null;
+        }
+
+        /**
+         * Get the number of pieces still to create.
+         *
+         * @return the remaining pieces
+         */
+        @Override
+        public long estimateSize() {
+            return count - created;
+        }
+
+        /**
+         * Get the characteristics of this spliterator.
+         *
+         * @return ordered, non null and sized
+         */
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | SIZED;
+        }
     }
 }
@@ -21,13 +21,14 @@ public class RoundPieceFactory extends PieceTypeFactory<RoundPiece> {
     }
     
     /**
-     * Get a new piece builder with reference, storage and type round set.
+     * Set the type round in a piece builder with reference and storage already set.
      * 
-     * @return a new piece builder with reference, storage and type round set.
+     * @param builder the piece builder with reference and storage set
+     * @return the piece builder with reference, storage and type round set.
      */
     @Override
-    protected PieceBuilder.LastStep<RoundPiece> newBuilder() {
-        return newBuilderTypeStep().round();
+    protected PieceBuilder.LastStep<RoundPiece> withType(PieceBuilder.TypeStep builder) {
+        return builder.round();
     }
     
 }
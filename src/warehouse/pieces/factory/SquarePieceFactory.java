@@ -21,13 +21,14 @@ public class SquarePieceFactory extends PieceTypeFactory<SquarePiece> {
     }
     
     /**
-     * Get a new piece builder with reference, storage and type square set.
+     * Set the type square in a piece builder with reference and storage already set.
      * 
-     * @return a new piece builder with reference, storage and type square set.
+     * @param builder the piece builder with reference and storage set
+     * @return the piece builder with reference, storage and type square set.
      */
     @Override
-    protected PieceBuilder.LastStep<SquarePiece> newBuilder() {
-        return newBuilderTypeStep().square();
+    protected PieceBuilder.LastStep<SquarePiece> withType(PieceBuilder.TypeStep builder) {
+        return builder.square();
     }
     
 }
@@ -0,0 +1,320 @@
+package warehouse.scenario;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import warehouse.ChargingStation;
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.fleet.Dispatcher;
+import warehouse.map.ReservationTable;
+import warehouse.map.WarehouseMap;
+import warehouse.pieces.Piece;
+import warehouse.pieces.Shape;
+import warehouse.pieces.factory.RandomPieceFactory;
+import warehouse.storage.PieceStorage;
+import warehouse.vehicle.AGVS;
+
+/**
+ * A warehouse configuration read from a scenario file: the map of the floor, the storages of each piece type,
+ * the charging stations, the conveyors, the fleet of vehicles and the workload of pieces.
+ *
+ * A scenario file is a text file with a directive in each line, followed by its values separated by spaces.
+ * Everything after a {@code #} is a comment, and empty lines are ignored. The map must be the first directive,
+ * the other directives can be in any order and repeated:
+ *
+ * <pre>
+ * map WIDTH HEIGHT                       size of the grid of the warehouse floor
+ * block X Y [X2 Y2]                      a blocked cell, or a blocked rectangle between two corners
+ * storage SHAPE X Y [NAME]               a storage of the pieces of a shape, named after the shape by default
+ * storages SHAPE COUNT X Y DX DY         a row of storages of a shape, the next one DX and DY cells away,
+ *                                        named after the shape and their number in the row
+ * charging X Y SLOTS [CHARGE]            a charging station with some slots, charging CHARGE mAh each step
+ * conveyor X Y CAPACITY                  a concurrent conveyor with its picking point and its capacity
+ * fleet COUNT X Y CAPACITY               vehicles starting around a position, each one carrying CAPACITY pieces
+ * pieces COUNT                           number of pieces of the workload
+ * mix SHAPE WEIGHT                       weight of the pieces of a shape in the workload
+ * seed SEED                              seed of the random choices of the pieces
+ * </pre>
+ *
+ * Without any {@code mix} the pieces of every storage are equally likely. With a mix, the shapes not in the mix
+ * have no pieces, and the pieces of each shape are split evenly between the storages of the shape.
+ * Vehicles are numbered from 1 in the order of the file, and homed to each conveyor in turns. Each vehicle starts
+ * on its own cell, the free cell nearest to the position of its {@code fleet} directive without another vehicle.
+ * Every storage must be in range of a vehicle with a full battery from every picking point, starting at the charging
+ * station nearest to the picking point and ending at the charging station nearest to the storage.
+ *
+ * Loading a scenario only creates the objects of the warehouse: the pieces are created when they are requested,
+ * and the routes to the storages are precomputed with {@code precomputeRoutes}, so a scenario with a million pieces
+ * and a thousand vehicles loads in a fraction of a second.
+ */
+public class Scenario {
+
+    /**
+     * The map of the warehouse floor.
+     */
+    private final WarehouseMap map;
+
+    /**
+     * The reservations of the cells of the map, shared by every vehicle.
+     */
+    private final ReservationTable reservations;
+
+    /**
+     * The storages of pieces, in the order of the file.
+     */
+    private final List<PieceStorage> storages;
+
+    /**
+     * The storages of the pieces of each shape.
+     */
+    private final Map<Shape, List<PieceStorage>> shapeStorages;
+
+    /**
+     * The charging stations.
+     */
+    private final List<ChargingStation> chargingStations;
+
+    /**
+     * The conveyors, the index of each one is its line.
+     */
+    private final List<Conveyor> conveyors;
+
+    /**
+     * The vehicles, in the order of their identifier.
+     */
+    private final List<AGVS> fleet;
+
+    /**
+     * Piece factory creating the pieces of the workload.
+     */
+    private final RandomPieceFactory pieceFactory;
+
+    /**
+     * Number of pieces of the workload.
+     */
+    private final int pieceCount;
+
+    /**
+     * Seed of the pieces created in parallel.
+     */
+    private final long seed;
+
+    /**
+     * Create a scenario from the objects read from a scenario file.
+     *
+     * @param map the map of the warehouse floor
+     * @param reservations the reservations of the cells of the map
+     * @param storages the storages of pieces
+     * @param shapeStorages the storages of the pieces of each shape
+     * @param chargingStations the charging stations
+     * @param conveyors the conveyors
+     * @param fleet the vehicles
+     * @param pieceFactory the piece factory of the workload
+     * @param pieceCount the number of pieces of the workload
+     * @param seed the seed of the random choices of the pieces
+     */
+    Scenario(WarehouseMap map, ReservationTable reservations, List<PieceStorage> storages,
+            Map<Shape, List<PieceStorage>> shapeStorages, List<ChargingStation> chargingStations,
+            List<Conveyor> conveyors, List<AGVS> fleet, RandomPieceFactory pieceFactory, int pieceCount, long seed) {
+        this.map = map;
+        this.reservations = reservations;
+        this.storages = List.copyOf(storages);
+        this.shapeStorages = new EnumMap<>(Shape.class);
+        for (Map.Entry<Shape, List<PieceStorage>> entry : shapeStorages.entrySet()) {
+            this.shapeStorages.put(entry.getKey(), List.copyOf(entry.getValue()));
+        }
+        this.chargingStations = List.copyOf(chargingStations);
+        this.conveyors = List.copyOf(conveyors);
+        this.fleet = List.copyOf(fleet);
+        this.pieceFactory = pieceFactory;
+        this.pieceCount = pieceCount;
+        this.seed = seed;
+    }
+
+    /**
+     * Load a scenario file.
+     *
+     * @param path the path of the file
+     * @return the scenario
+     *
+     * @throws IOException if the file cannot be read or is not a valid scenario
+     */
+    public static Scenario load(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return new ScenarioParser().parse(reader);
+        }
+    }
+
+    /**
+     * Read a scenario, like a scenario embedded in the program.
+     *
+     * @param reader the reader of the text of the scenario, it is not closed
+     * @return the scenario
+     *
+     * @throws IOException if the text cannot be read or is not a valid scenario
+     */
+    public static Scenario read(Reader reader) throws IOException {
+        return new ScenarioParser().parse(new BufferedReader(reader));
+    }
+
+    /**
+     * Get the map of the warehouse floor.
+     *
+     * @return the map
+     */
+    public WarehouseMap getMap() {
+        return map;
+    }
+
+    /**
+     * Get the reservations of the cells of the map, shared by every vehicle of the fleet.
+     *
+     * @return the reservation table
+     */
+    public ReservationTable getReservations() {
+        return reservations;
+    }
+
+    /**
+     * Get the storages of pieces.
+     *
+     * @return an unmodifiable list of the storages, in the order of the file
+     */
+    public List<PieceStorage> getStorages() {
+        return storages;
+    }
+
+    /**
+     * Get the storages of the pieces of a shape.
+     *
+     * @param shape the shape of the pieces
+     * @return an unmodifiable list of the storages of the shape, in the order of the file
+     */
+    public List<PieceStorage> getStorages(Shape shape) {
+        return shapeStorages.getOrDefault(shape, List.of());
+    }
+
+    /**
+     * Get the charging stations.
+     *
+     * @return an unmodifiable list of the charging stations
+     */
+    public List<ChargingStation> getChargingStations() {
+        return chargingStations;
+    }
+
+    /**
+     * Get the conveyors bringing pieces into the warehouse.
+     *
+     * @return an unmodifiable list of the conveyors, the index of each one is its line
+     */
+    public List<Conveyor> getConveyors() {
+        return conveyors;
+    }
+
+    /**
+     * Get the vehicles of the fleet.
+     *
+     * @return an unmodifiable list of the vehicles, in the order of their identifier
+     */
+    public List<AGVS> getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Get the piece factory creating the pieces of the workload, following the mix of the scenario.
+     *
+     * @return the piece factory
+     */
+    public RandomPieceFactory getPieceFactory() {
+        return pieceFactory;
+    }
+
+    /**
+     * Get the number of pieces of the workload.
+     *
+     * @return the number of pieces
+     */
+    public int getPieceCount() {
+        return pieceCount;
+    }
+
+    /**
+     * Get the seed of the random choices of the pieces of the workload.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Precompute the routes to every storage, charging station and picking point of the scenario.
+     *
+     * Each target is computed in parallel, because routing tables of different targets are independent.
+     */
+    public void precomputeRoutes() {
+        List<Position> targets = new ArrayList<>(storages.size() + chargingStations.size() + conveyors.size());
+        for (PieceStorage storage : storages) {
+            targets.add(storage.getPosition());
+        }
+        for (ChargingStation station : chargingStations) {
+            targets.add(station.getPosition());
+        }
+        for (Conveyor conveyor : conveyors) {
+            targets.add(conveyor.getPickingPointPosition());
+        }
+
+        targets.parallelStream().distinct().forEach(map::precompute);
+    }
+
+    /**
+     * Create a dispatcher of the conveyors of the scenario, with every vehicle homed to a line in turns
+     * and every charging station added.
+     *
+     * A dispatcher is closed after its last piece, so a new one is needed for each run.
+     *
+     * @return a new dispatcher
+     */
+    public Dispatcher newDispatcher() {
+        Dispatcher dispatcher = new Dispatcher(conveyors, map);
+
+        for (ChargingStation station : chargingStations) {
+            dispatcher.addChargingStation(station);
+        }
+        for (int i = 0; i < fleet.size(); i++) {
+            dispatcher.setHome(fleet.get(i), i % conveyors.size());
+        }
+
+        return dispatcher;
+    }
+
+    /**
+     * Get a lazy stream with the pieces of the workload, created by the thread consuming the stream
+     * with the seed of the scenario, so they are the same pieces {@code createPieces} would give.
+     *
+     * @return a stream of {@code getPieceCount} new pieces
+     */
+    public Stream<Piece> pieces() {
+        return pieceFactory.stream(pieceCount, seed);
+    }
+
+    /**
+     * Create every piece of the workload in parallel, giving the same pieces for the seed of the scenario.
+     *
+     * @return a list with {@code getPieceCount} new pieces
+     */
+    public List<Piece> createPieces() {
+        return pieceFactory.parallelCreate(pieceCount, seed);
+    }
+}
@@ -0,0 +1,616 @@
+package warehouse.scenario;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import warehouse.ChargingStation;
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.map.ReservationTable;
+import warehouse.map.WarehouseMap;
+import warehouse.pieces.Shape;
+import warehouse.pieces.factory.CylindricalPieceFactory;
+import warehouse.pieces.factory.PieceTypeFactory;
+import warehouse.pieces.factory.RandomPieceFactory;
+import warehouse.pieces.factory.RoundPieceFactory;
+import warehouse.pieces.factory.SquarePieceFactory;
+import warehouse.storage.PieceStorage;
+import warehouse.vehicle.AGVS;
+
+/**
+ * Reads the directives of a scenario file, one line at a time, and builds the scenario at the end.
+ *
+ * Each storage gets its own piece type factory, so the references of the pieces of each storage
+ * start at 1 like in a warehouse with a single storage of each shape.
+ */
+final class ScenarioParser {
+
+    /**
+     * All the shapes, cached because {@code Shape.values()} creates a new array each time.
+     */
+    private static final Shape[] SHAPES = Shape.values();
+
+    /**
+     * Number of the line being read, starting at 1.
+     */
+    private int lineNumber;
+
+    /**
+     * The map of the warehouse floor, or null before the map directive.
+     */
+    private WarehouseMap map;
+
+    /**
+     * The reservations of the cells of the map, or null before the map directive.
+     */
+    private ReservationTable reservations;
+
+    /**
+     * The storages read so far.
+     */
+    private final List<PieceStorage> storages = new ArrayList<>();
+
+    /**
+     * The storages of each shape read so far.
+     */
+    private final Map<Shape, List<PieceStorage>> shapeStorages = new EnumMap<>(Shape.class);
+
+    /**
+     * The piece type factory of each storage of each shape.
+     */
+    private final Map<Shape, List<PieceTypeFactory<?>>> factories = new EnumMap<>(Shape.class);
+
+    /**
+     * The charging stations read so far.
+     */
+    private final List<ChargingStation> chargingStations = new ArrayList<>();
+
+    /**
+     * The conveyors read so far.
+     */
+    private final List<Conveyor> conveyors = new ArrayList<>();
+
+    /**
+     * The starting position of each vehicle read so far, in the order of their identifier.
+     */
+    private final List<Position> fleetPositions = new ArrayList<>();
+
+    /**
+     * The capacity of each vehicle read so far, in the order of their identifier.
+     */
+    private final List<Integer> fleetCapacities = new ArrayList<>();
+
+    /**
+     * Weight of each shape in the workload, empty if every storage is equally likely.
+     */
+    private final Map<Shape, Double> mix = new EnumMap<>(Shape.class);
+
+    /**
+     * Number of pieces of the workload.
+     */
+    private int pieceCount;
+
+    /**
+     * Seed of the random choices of the pieces.
+     */
+    private long seed;
+
+    /**
+     * Read every line of a scenario and build it.
+     *
+     * @param reader the reader of the text of the scenario
+     * @return the scenario
+     *
+     * @throws IOException if the text cannot be read or is not a valid scenario
+     */
+    Scenario parse(BufferedReader reader) throws IOException {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            try {
+                directive(line.split("\\s+"));
+            } catch (IllegalArgumentException e) {
+                throw invalid(e.getMessage());
+            }
+        }
+
+        lineNumber = 0;
+        try {
+            return build();
+        } catch (IllegalArgumentException e) {
+            throw invalid(e.getMessage());
+        }
+    }
+
+    /**
+     * Apply a directive of the scenario.
+     *
+     * @param tokens the name of the directive followed by its values
+     *
+     * @throws IOException if the directive is not valid
+     * @throws IllegalArgumentException if some value is not valid
+     */
+    private void directive(String[] tokens) throws IOException, IllegalArgumentException {
+        String name = tokens[0];
+
+        if (map == null && !name.equals("map")) {
+            throw invalid("The map must be the first directive");
+        }
+
+        switch (name) {
+            case "map":
+                values(tokens, 2, 2);
+                if (map != null) {
+                    throw invalid("The map is already defined");
+                }
+                map = new WarehouseMap(integer(tokens[1]), integer(tokens[2]));
+                reservations = new ReservationTable(map);
+                break;
+            case "block":
+                values(tokens, 2, 4);
+                if (tokens.length == 3) {
+                    map.block(integer(tokens[1]), integer(tokens[2]));
+                } else if (tokens.length == 5) {
+                    map.block(integer(tokens[1]), integer(tokens[2]), integer(tokens[3]), integer(tokens[4]));
+                } else {
+                    throw invalid("A block needs a cell or two corners");
+                }
+                break;
+            case "storage":
+                values(tokens, 3, 4);
+                Shape shape = shape(tokens[1]);
+                addStorage(shape, tokens.length > 4 ? tokens[4] : shape.name(), position(tokens[2], tokens[3]));
+                break;
+            case "storages":
+                values(tokens, 6, 6);
+                storageRow(shape(tokens[1]), count(tokens[2]), integer(tokens[3]), integer(tokens[4]),
+                        integer(tokens[5]), integer(tokens[6]));
+                break;
+            case "charging":
+                values(tokens, 3, 4);
+                Position station = position(tokens[1], tokens[2]);
+                chargingStations.add(tokens.length > 4
+                        ? new ChargingStation(station, integer(tokens[3]), integer(tokens[4]))
+                        : new ChargingStation(station, integer(tokens[3])));
+                break;
+            case "conveyor":
+                values(tokens, 3, 3);
+                conveyors.add(new Conveyor(position(tokens[1], tokens[2]), integer(tokens[3])));
+                break;
+            case "fleet":
+                values(tokens, 4, 4);
+                addFleet(count(tokens[1]), position(tokens[2], tokens[3]), integer(tokens[4]));
+                break;
+            case "pieces":
+                values(tokens, 1, 1);
+                pieceCount = count(tokens[1]);
+                break;
+            case "mix":
+                values(tokens, 2, 2);
+                double weight = Double.parseDouble(tokens[2]);
+                if (!(weight >= 0) || Double.isInfinite(weight)) {
+                    throw invalid("Invalid weight: " + tokens[2]);
+                }
+                mix.put(shape(tokens[1]), weight);
+                break;
+            case "seed":
+                values(tokens, 1, 1);
+                seed = Long.parseLong(tokens[1]);
+                break;
+            default:
+                throw invalid("Unknown directive: " + name);
+        }
+    }
+
+    /**
+     * Add a row of storages of a shape, named after the shape and their number in the row.
+     *
+     * @param shape the shape of the pieces of the storages
+     * @param count the number of storages
+     * @param x the horizontal coordinate of the first storage
+     * @param y the vertical coordinate of the first storage
+     * @param dx the horizontal distance between two storages of the row
+     * @param dy the vertical distance between two storages of the row
+     *
+     * @throws IOException if some storage is outside the map
+     */
+    private void storageRow(Shape shape, int count, int x, int y, int dx, int dy) throws IOException {
+        int number = shapeStorages.getOrDefault(shape, List.of()).size();
+
+        for (int i = 0; i < count; i++) {
+            int storageX = x + i * dx;
+            int storageY = y + i * dy;
+            if (!map.contains(storageX, storageY)) {
+                throw invalid("Storage (" + storageX + ", " + storageY + ") is outside the map");
+            }
+
+            addStorage(shape, shape.name() + "-" + (number + i + 1), Position.of(storageX, storageY));
+        }
+    }
+
+    /**
+     * Add a storage of a shape with its own piece type factory.
+     *
+     * @param shape the shape of the pieces of the storage
+     * @param name the name of the storage
+     * @param position the position of the storage
+     */
+    private void addStorage(Shape shape, String name, Position position) {
+        PieceStorage storage = new PieceStorage(name, position);
+        storages.add(storage);
+        shapeStorages.computeIfAbsent(shape, s -> new ArrayList<>()).add(storage);
+        factories.computeIfAbsent(shape, s -> new ArrayList<>()).add(factory(shape, storage));
+    }
+
+    /**
+     * Add some vehicles starting at a position, numbered after the vehicles already read.
+     *
+     * The vehicles are created by {@code build}, once every cell is blocked, so they can be spread
+     * over the free cells around the position.
+     *
+     * @param count the number of vehicles
+     * @param position the starting position of the vehicles
+     * @param capacity the number of pieces each vehicle can carry
+     *
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    private void addFleet(int count, Position position, int capacity) throws IllegalArgumentException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        for (int i = 0; i < count; i++) {
+            fleetPositions.add(position);
+            fleetCapacities.add(capacity);
+        }
+    }
+
+    /**
+     * Create every vehicle read, each one on its own cell.
+     *
+     * Each vehicle is placed on the free cell nearest to its starting position that has no other vehicle,
+     * so the vehicles of a {@code fleet} directive are spread around its position instead of stacked on it.
+     *
+     * @return the vehicles, in the order of their identifier
+     *
+     * @throws IOException if some starting position is blocked or there is no free cell left for a vehicle
+     */
+    private List<AGVS> createFleet() throws IOException {
+        List<AGVS> fleet = new ArrayList<>(fleetPositions.size());
+        Set<Position> occupied = new HashSet<>();
+
+        for (int i = 0; i < fleetPositions.size(); i++) {
+            int id = i + 1;
+            Position start = fleetPositions.get(i);
+            checkFree("Vehicle " + id, start);
+
+            Position position = nearestFree(start, occupied);
+            if (position == null) {
+                throw invalid("Vehicle " + id + " has no free cell left near " + start);
+            }
+            occupied.add(position);
+
+            fleet.add(new AGVS(id, position, reservations, fleetCapacities.get(i)));
+        }
+
+        return fleet;
+    }
+
+    /**
+     * Find the cell with no vehicle nearest to a position, moving only through cells not blocked.
+     *
+     * @param start the position to search from, which must not be blocked
+     * @param occupied the cells that already have a vehicle
+     * @return the nearest cell without a vehicle, or null if every reachable cell has a vehicle
+     */
+    private Position nearestFree(Position start, Set<Position> occupied) {
+        Set<Position> visited = new HashSet<>();
+        Queue<Position> pending = new ArrayDeque<>();
+        visited.add(start);
+        pending.add(start);
+
+        // Breadth first, so the first cell found is one of the nearest
+        while (!pending.isEmpty()) {
+            Position position = pending.remove();
+            if (!occupied.contains(position)) {
+                return position;
+            }
+
+            for (Position neighbour : map.neighbours(position)) {
+                if (visited.add(neighbour)) {
+                    pending.add(neighbour);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check every object read and build the scenario.
+     *
+     * @return the scenario
+     *
+     * @throws IOException if the scenario is not complete or some object is on a blocked cell
+     */
+    private Scenario build() throws IOException {
+        if (map == null) {
+            throw invalid("The scenario has no map");
+        }
+        if (storages.isEmpty()) {
+            throw invalid("The scenario has no storages");
+        }
+        if (conveyors.isEmpty()) {
+            throw invalid("The scenario has no conveyors");
+        }
+
+        // Blocks can come after the objects, so positions are checked once every cell is blocked
+        for (PieceStorage storage : storages) {
+            checkFree("Storage " + storage.getName(), storage.getPosition());
+        }
+        for (ChargingStation station : chargingStations) {
+            checkFree("Charging station", station.getPosition());
+        }
+        for (Conveyor conveyor : conveyors) {
+            checkFree("Picking point", conveyor.getPickingPointPosition());
+        }
+        checkRange();
+
+        // The vehicles are created last, once nothing else can make the scenario invalid
+        RandomPieceFactory pieceFactory = pieceFactory();
+        return new Scenario(map, reservations, storages, shapeStorages, chargingStations, conveyors, createFleet(),
+                pieceFactory, pieceCount, seed);
+    }
+
+    /**
+     * Create the piece factory of the workload, weighting the factory of each storage by the mix.
+     *
+     * @return the piece factory
+     *
+     * @throws IOException if the mix has no storage to create pieces for
+     */
+    private RandomPieceFactory pieceFactory() throws IOException {
+        List<PieceTypeFactory<?>> all = new ArrayList<>(storages.size());
+        for (Shape shape : SHAPES) {
+            all.addAll(factories.getOrDefault(shape, List.of()));
+        }
+
+        if (mix.isEmpty()) {
+            return new RandomPieceFactory(all.toArray(new PieceTypeFactory<?>[0]));
+        }
+
+        // The weight of each shape is split evenly between its storages
+        double[] weights = new double[all.size()];
+        double total = 0;
+        int i = 0;
+        for (Shape shape : SHAPES) {
+            List<PieceTypeFactory<?>> shapeFactories = factories.getOrDefault(shape, List.of());
+            double weight = mix.getOrDefault(shape, 0.0);
+
+            if (weight > 0 && shapeFactories.isEmpty()) {
+                throw invalid("The mix has pieces of shape " + shape + " but there is no storage for them");
+            }
+
+            for (int j = 0; j < shapeFactories.size(); j++) {
+                weights[i++] = weight / shapeFactories.size();
+            }
+            total += weight;
+        }
+
+        if (!(total > 0)) {
+            throw invalid("The mix has no pieces");
+        }
+        return new RandomPieceFactory(all, weights);
+    }
+
+    /**
+     * Check that an object of the scenario is on a cell vehicles can reach.
+     *
+     * @param what a description of the object
+     * @param position the position of the object
+     *
+     * @throws IOException if the position is blocked
+     */
+    private void checkFree(String what, Position position) throws IOException {
+        if (map.isBlocked(position)) {
+            throw invalid(what + " is on a blocked cell " + position);
+        }
+    }
+
+    /**
+     * Check that a vehicle with a full battery can deliver a piece to every storage from every picking point,
+     * starting at the charging station nearest to the picking point and ending at the charging station nearest
+     * to the storage, so the dispatcher never has to set aside the pieces of a storage.
+     *
+     * The routes to the picking points and the charging stations are precomputed, so each distance is a lookup.
+     *
+     * @throws IOException if some storage is too far from a picking point or a charging station
+     */
+    private void checkRange() throws IOException {
+        for (ChargingStation station : chargingStations) {
+            map.precompute(station.getPosition());
+        }
+
+        int[] approach = new int[conveyors.size()];
+        for (int i = 0; i < conveyors.size(); i++) {
+            Position pickingPoint = conveyors.get(i).getPickingPointPosition();
+            map.precompute(pickingPoint);
+            approach[i] = toNearestStation(pickingPoint);
+        }
+
+        for (PieceStorage storage : storages) {
+            int reserve = toNearestStation(storage.getPosition());
+
+            for (int i = 0; i < conveyors.size(); i++) {
+                Position pickingPoint = conveyors.get(i).getPickingPointPosition();
+                int delivery = map.distance(storage.getPosition(), pickingPoint);
+
+                if (approach[i] < 0 || delivery < 0 || reserve < 0) {
+                    throw invalid("Storage " + storage.getName() + " cannot be reached from the picking point "
+                            + pickingPoint + " and a charging station");
+                }
+
+                int steps = approach[i] + delivery + reserve;
+                if (steps > AGVS.RANGE) {
+                    throw invalid("Storage " + storage.getName() + " needs " + steps + " steps from the picking point "
+                            + pickingPoint + ", more than the " + AGVS.RANGE + " steps of a full battery");
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of steps from a position to the nearest charging station.
+     *
+     * @param from the position
+     * @return the steps to the nearest station, 0 if there are no stations,
+     *         or -1 if no station can be reached
+     */
+    private int toNearestStation(Position from) {
+        if (chargingStations.isEmpty()) {
+            return 0;
+        }
+
+        int nearest = -1;
+        for (ChargingStation station : chargingStations) {
+            int distance = map.distance(from, station.getPosition());
+
+            if (distance >= 0 && (nearest < 0 || distance < nearest)) {
+                nearest = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Create the piece type factory of a storage.
+     *
+     * @param shape the shape of the pieces of the storage
+     * @param storage the storage
+     * @return a new piece type factory creating pieces of the shape for the storage
+     */
+    private static PieceTypeFactory<?> factory(Shape shape, PieceStorage storage) {
+        switch (shape) {
+            case ROUND:
+                return new RoundPieceFactory(storage);
+            case SQUARE:
+                return new SquarePieceFactory(storage);
+            case CYLINDRICAL:
+                return new CylindricalPieceFactory(storage);
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+    }
+
+    /**
+     * Check the number of values of a directive.
+     *
+     * @param tokens the name of the directive followed by its values
+     * @param min the minimum number of values
+     * @param max the maximum number of values
+     *
+     * @throws IOException if the directive has too few or too many values
+     */
+    private void values(String[] tokens, int min, int max) throws IOException {
+        int count = tokens.length - 1;
+        if (count < min || count > max) {
+            throw invalid("Invalid number of values of " + tokens[0] + ": " + count);
+        }
+    }
+
+    /**
+     * Parse a position inside the map.
+     *
+     * @param x the horizontal coordinate
+     * @param y the vertical coordinate
+     * @return the position
+     *
+     * @throws IOException if the position is outside the map
+     */
+    private Position position(String x, String y) throws IOException {
+        int positionX = integer(x);
+        int positionY = integer(y);
+        if (!map.contains(positionX, positionY)) {
+            throw invalid("Position (" + positionX + ", " + positionY + ") is outside the map");
+        }
+        return Position.of(positionX, positionY);
+    }
+
+    /**
+     * Parse a number of objects.
+     *
+     * @param value the number
+     * @return the number of objects
+     *
+     * @throws IOException if the number is negative
+     */
+    private int count(String value) throws IOException {
+        int count = integer(value);
+        if (count < 0) {
+            throw invalid("Invalid count: " + value);
+        }
+        return count;
+    }
+
+    /**
+     * Parse a shape by its name.
+     *
+     * @param value the name of the shape, in any case
+     * @return the shape
+     *
+     * @throws IOException if there is no shape with the name
+     */
+    private Shape shape(String value) throws IOException {
+        for (Shape shape : SHAPES) {
+            if (shape.name().equalsIgnoreCase(value)) {
+                return shape;
+            }
+        }
+        throw invalid("Unknown shape: " + value);
+    }
+
+    /**
+     * Parse an integer value.
+     *
+     * @param value the integer
+     * @return the value
+     *
+     * @throws IOException if it is not an integer
+     */
+    private int integer(String value) throws IOException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalid("Invalid number: " + value);
+        }
+    }
+
+    /**
+     * Create the exception of an invalid scenario, with the line being read.
+     *
+     * @param message the reason the scenario is not valid
+     * @return the exception to throw
+     */
+    private IOException invalid(String message) {
+        if (lineNumber == 0) {
+            return new IOException("Invalid scenario: " + message);
+        }
+        return new IOException("Invalid scenario at line " + lineNumber + ": " + message);
+    }
+}
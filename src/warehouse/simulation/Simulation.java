@@ -0,0 +1,328 @@
+package warehouse.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import warehouse.Conveyor;
+import warehouse.fleet.VehicleTask;
+import warehouse.vehicle.AGVS;
+import warehouse.vehicle.CannotMoveException;
+
+/**
+ * A discrete-event simulation of the warehouse with a virtual clock.
+ *
+ * Instead of running each vehicle in its own thread and waiting real time at each move, every vehicle step
+ * is an event scheduled at a virtual time. Events are taken in time order from a priority queue and run
+ * in the calling thread, and the clock jumps straight to the time of the next event. Events at the same time
+ * run in the order they were scheduled, so the same model with the same pieces always gives the same result.
+ *
+ * The same {@code Conveyor}, {@code AGVS} and {@code Storage} objects of the threaded warehouse are used.
+ * A {@code ReservationTable} should use {@code clock()} as its source of ticks, so reservations follow
+ * the virtual time. A {@code Dispatcher} cannot be used, because its idle vehicles block the thread.
+ *
+ * The queue is a binary heap of primitive arrays, so scheduling an event does not create any object.
+ */
+public class Simulation {
+
+    /**
+     * Virtual time of a vehicle step.
+     */
+    public static final long STEP_TIME = 1;
+
+    /**
+     * Initial number of events the queue can hold before growing.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Current virtual time.
+     */
+    private long now;
+
+    /**
+     * Sequence number of the next event scheduled, used to run events at the same time in scheduling order.
+     */
+    private long sequence;
+
+    /**
+     * Number of event steps done.
+     */
+    private long steps;
+
+    /**
+     * Number of events in the queue.
+     */
+    private int size;
+
+    /**
+     * Time of each event of the heap.
+     */
+    private long[] times = new long[INITIAL_CAPACITY];
+
+    /**
+     * Scheduling sequence of each event of the heap.
+     */
+    private long[] sequences = new long[INITIAL_CAPACITY];
+
+    /**
+     * Time between the steps of each event of the heap.
+     */
+    private long[] periods = new long[INITIAL_CAPACITY];
+
+    /**
+     * Task of each event of the heap.
+     */
+    private VehicleTask[] tasks = new VehicleTask[INITIAL_CAPACITY];
+
+    /**
+     * Exceptions thrown by the tasks, in the order they happened.
+     */
+    private final List<Exception> failures = new ArrayList<>();
+
+    /**
+     * Get the current virtual time.
+     *
+     * @return the time of the event being run, or of the last event run
+     */
+    public long now() {
+        return now;
+    }
+
+    /**
+     * Get the virtual clock of this simulation, so it can be the source of ticks of a reservation table.
+     *
+     * @return a source of the current virtual time
+     */
+    public LongSupplier clock() {
+        return this::now;
+    }
+
+    /**
+     * Number of task steps run by this simulation.
+     *
+     * @return the number of steps done
+     */
+    public long getStepCount() {
+        return steps;
+    }
+
+    /**
+     * Number of events waiting to run.
+     *
+     * @return the number of scheduled events
+     */
+    public int getPendingCount() {
+        return size;
+    }
+
+    /**
+     * Schedule every vehicle of a fleet to move pieces from the picking point of a conveyor to their storages,
+     * one step every {@code STEP_TIME}.
+     *
+     * @param fleet the vehicles
+     * @param conveyor the conveyor providing pieces to the vehicles
+     */
+    public void addFleet(Collection<AGVS> fleet, Conveyor conveyor) {
+        for (AGVS agvs : fleet) {
+            schedule(0, STEP_TIME, () -> agvs.step(conveyor));
+        }
+    }
+
+    /**
+     * Schedule a task to do a step after a delay, and then another step every period while it is not finished.
+     *
+     * A task that must run only once can return false from its step.
+     *
+     * @param delay the virtual time until the first step
+     * @param period the virtual time between steps
+     * @param task the task to run
+     *
+     * @throws IllegalArgumentException if delay is negative or period is not positive
+     */
+    public void schedule(long delay, long period, VehicleTask task) throws IllegalArgumentException {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Invalid delay: " + delay);
+        }
+        if (period <= 0) {
+            throw new IllegalArgumentException("Invalid period: " + period);
+        }
+
+        push(now + delay, period, task);
+    }
+
+    /**
+     * Run every event until the queue is empty.
+     *
+     * @return the virtual time of the last event
+     *
+     * @throws CannotMoveException if some vehicle could not move, other failures are added as suppressed exceptions
+     */
+    public long run() throws CannotMoveException {
+        return run(Long.MAX_VALUE);
+    }
+
+    /**
+     * Run the events until the queue is empty or the next event is after a time.
+     *
+     * A task that cannot move stops, but the other tasks keep running,
+     * and the exception is thrown when this method finishes.
+     *
+     * @param until the last virtual time to run
+     * @return the virtual time of the last event run
+     *
+     * @throws CannotMoveException if some vehicle could not move, other failures are added as suppressed exceptions
+     */
+    public long run(long until) throws CannotMoveException {
+        while (size > 0 && times[0] <= until) {
+            long time = times[0];
+            long period = periods[0];
+            VehicleTask task = tasks[0];
+            pop();
+
+            now = time;
+            steps++;
+
+            try {
+                if (task.step()) {
+                    push(time + period, period, task);
+                }
+            } catch (CannotMoveException | RuntimeException e) {
+                failures.add(e);
+            }
+        }
+
+        throwFailures();
+
+        return now;
+    }
+
+    /**
+     * Throw the first failure of the tasks, if any, with the other failures as suppressed exceptions.
+     *
+     * @throws CannotMoveException if the first failure is a vehicle that could not move
+     */
+    private void throwFailures() throws CannotMoveException {
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        Exception first = failures.get(0);
+        for (int i = 1; i < failures.size(); i++) {
+            first.addSuppressed(failures.get(i));
+        }
+        failures.clear();
+
+        if (first instanceof CannotMoveException) {
+            throw (CannotMoveException) first;
+        }
+        throw (RuntimeException) first;
+    }
+
+    /**
+     * Add an event to the heap.
+     *
+     * @param time the virtual time of the event
+     * @param period the time between the steps of the task
+     * @param task the task of the event
+     */
+    private void push(long time, long period, VehicleTask task) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            sequences = Arrays.copyOf(sequences, capacity);
+            periods = Arrays.copyOf(periods, capacity);
+            tasks = Arrays.copyOf(tasks, capacity);
+        }
+
+        long order = sequence++;
+
+        // Move parents down until the place of the new event is found
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(time, order, times[parent], sequences[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        set(i, time, order, period, task);
+    }
+
+    /**
+     * Remove the first event of the heap.
+     */
+    private void pop() {
+        int last = --size;
+
+        long time = times[last];
+        long order = sequences[last];
+        long period = periods[last];
+        VehicleTask task = tasks[last];
+        tasks[last] = null;
+
+        if (last == 0) {
+            return;
+        }
+
+        // Move children up until the place of the last event is found
+        int i = 0;
+        int half = last >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+
+            if (right < last && before(times[right], sequences[right], times[child], sequences[child])) {
+                child = right;
+            }
+            if (!before(times[child], sequences[child], time, order)) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        set(i, time, order, period, task);
+    }
+
+    /**
+     * Checks if an event runs before another one.
+     *
+     * @param time the time of the first event
+     * @param order the sequence of the first event
+     * @param otherTime the time of the other event
+     * @param otherOrder the sequence of the other event
+     * @return true if the first event is earlier, or at the same time but scheduled before
+     */
+    private static boolean before(long time, long order, long otherTime, long otherOrder) {
+        return time < otherTime || (time == otherTime && order < otherOrder);
+    }
+
+    /**
+     * Copy an event of the heap to another place.
+     *
+     * @param from the index of the event
+     * @param to the index where the event is copied
+     */
+    private void move(int from, int to) {
+        set(to, times[from], sequences[from], periods[from], tasks[from]);
+    }
+
+    /**
+     * Write an event at a place of the heap.
+     *
+     * @param i the index of the place
+     * @param time the time of the event
+     * @param order the sequence of the event
+     * @param period the period of the task
+     * @param task the task of the event
+     */
+    private void set(int i, long time, long order, long period, VehicleTask task) {
+        times[i] = time;
+        sequences[i] = order;
+        periods[i] = period;
+        tasks[i] = task;
+    }
+}
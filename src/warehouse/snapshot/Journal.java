@@ -0,0 +1,783 @@
+package warehouse.snapshot;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import warehouse.Conveyor;
+import warehouse.pieces.Piece;
+import warehouse.pieces.compact.CompactPieces;
+import warehouse.storage.PieceStorage;
+import warehouse.storage.Storage;
+
+/**
+ * Append-only binary journal of the pieces stored in and removed from storages, and added to and unloaded
+ * from conveyors, so the changes made after the last snapshot are not lost.
+ *
+ * Storages and conveyors given a journal append a record for each change. Records are copied to a buffer
+ * shared by every thread, and a single writer thread writes the whole buffer through a {@code FileChannel}
+ * and forces it to disk, while a second buffer takes the next records. This is a group commit: every record
+ * appended while the previous buffer was being forced is made durable by the same fsync, so many vehicles
+ * storing pieces at the same time share each fsync instead of waiting for their own.
+ *
+ * A synchronous journal makes each piece stored in or removed from a storage wait until its record is durable,
+ * so a delivered piece is never lost. Records of conveyors never wait: they are forced by the same group commit
+ * as the next records, and records are durable in order, so once a delivery is durable the unloading of its
+ * piece is too. A single producer feeding the conveyors is not limited to one piece per fsync this way.
+ * An asynchronous journal never makes vehicles wait for the disk, records are forced right after
+ * in the background, so a crash can only lose the last group of changes.
+ *
+ * Each record has a sequence number, the number of records before it. A checkpoint writes a snapshot
+ * with the sequence of the next record and empties the journal, and recovery reads the snapshot and
+ * replays only the records after it, so a crash between both steps never applies a record twice.
+ *
+ * Records refer to pieces by their compact code, and to storages by an index defined by a storage record
+ * the first time each storage appears, like the table of a snapshot. Conveyors are identified by the
+ * position of their picking point.
+ */
+public class Journal implements Closeable {
+
+    /**
+     * Number identifying a journal file, the characters "WHJ1".
+     */
+    private static final int MAGIC = 0x57484A31;
+
+    /**
+     * Size of the header of the file: the magic number and the sequence of the first record.
+     */
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    /**
+     * Size of each of the two buffers of records.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Type of the record defining the index of a storage, with its name and position.
+     */
+    static final byte STORAGE = 1;
+
+    /**
+     * Type of the record of a piece stored in a storage.
+     */
+    static final byte STORE = 2;
+
+    /**
+     * Type of the record of a piece removed from a storage.
+     */
+    static final byte REMOVE = 3;
+
+    /**
+     * Type of the record of a piece added to a conveyor.
+     */
+    static final byte ADD = 4;
+
+    /**
+     * Type of the record of a piece unloaded from the picking point of a conveyor.
+     */
+    static final byte UNLOAD = 5;
+
+    /**
+     * Size of a record of a piece in a storage: its type, the storage index and the piece.
+     */
+    private static final int STORAGE_RECORD_SIZE = 1 + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    /**
+     * Size of a record of a piece in a conveyor: its type, the picking point position and the piece.
+     */
+    private static final int CONVEYOR_RECORD_SIZE = 1 + Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    /**
+     * Channel of the journal file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Whether each storage change waits until its record is durable.
+     */
+    private final boolean synchronous;
+
+    /**
+     * Lock guarding the buffers, the sequences and the storage indexes.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Condition signalled when records are appended or this journal is closed, waited by the writer thread.
+     */
+    private final Condition appended = lock.newCondition();
+
+    /**
+     * Condition signalled when records are durable, there is room in the buffer, a record has been appended
+     * during a checkpoint or a checkpoint has finished, waited by the changes and the checkpoints.
+     */
+    private final Condition committed = lock.newCondition();
+
+    /**
+     * Buffer taking the records appended.
+     */
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Buffer being written by the writer thread.
+     */
+    private ByteBuffer flushing = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Sequence of the next record appended.
+     */
+    private long sequence;
+
+    /**
+     * Sequence of the first record not yet durable.
+     */
+    private long durable;
+
+    /**
+     * Index of each storage with a storage record in the file.
+     */
+    private final Map<Storage<Piece>, Integer> storageIds = new IdentityHashMap<>();
+
+    /**
+     * Exception of the writer thread, if writing failed.
+     */
+    private IOException failure;
+
+    /**
+     * Whether this journal has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Whether a checkpoint is being taken, so no record can be appended until it finishes.
+     */
+    private boolean checkpointing;
+
+    /**
+     * Number of records being appended, which may still be waiting for room or to be durable.
+     */
+    private int appending;
+
+    /**
+     * Number of times records have been forced to disk.
+     */
+    private final LongAdder commitCount = new LongAdder();
+
+    /**
+     * Thread writing and forcing the records.
+     */
+    private final Thread writer;
+
+    /**
+     * Open a synchronous journal, appending to it if the file already has the records after a sequence.
+     *
+     * @param path the path of the file
+     * @param sequence the sequence of the next record, the journal sequence of the last snapshot
+     *
+     * @throws IOException if the file cannot be opened, it is not a journal or it starts after the sequence
+     */
+    public Journal(Path path, long sequence) throws IOException {
+        this(path, sequence, true);
+    }
+
+    /**
+     * Open a journal, appending to it if the file already has the records after a sequence.
+     *
+     * A file ending before the sequence only has records included in the last snapshot, so it is emptied.
+     * A file starting after the sequence has records the snapshot never saw, so it is not opened.
+     * A record cut by a crash at the end of the file is discarded.
+     *
+     * @param path the path of the file
+     * @param sequence the sequence of the next record, the journal sequence of the last snapshot
+     * @param synchronous true to make each storage change wait until its record is durable,
+     *                    false to force every record in the background
+     *
+     * @throws IOException if the file cannot be opened, it is not a journal or it starts after the sequence
+     * @throws IllegalArgumentException if sequence is negative
+     */
+    public Journal(Path path, long sequence, boolean synchronous) throws IOException, IllegalArgumentException {
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Invalid journal sequence: " + sequence);
+        }
+
+        long base = sequence;
+        long end = 0;
+        if (Files.exists(path) && Files.size(path) >= HEADER_SIZE) {
+            try (MappedInput in = new MappedInput(path)) {
+                if (in.getInt() != MAGIC) {
+                    throw new IOException(path + " is not a warehouse journal");
+                }
+                long first = in.getLong();
+                if (first > sequence) {
+                    // The records between the sequence and the first one would be lost, like in recover
+                    throw new IOException("Journal starts at record " + first + " but the snapshot ends at record "
+                            + sequence);
+                }
+                long last = first + scan(in, null);
+
+                if (sequence <= last) {
+                    base = last;
+                    end = in.position();
+                }
+            }
+        }
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.synchronous = synchronous;
+
+        try {
+            if (end == 0) {
+                reset(base);
+            } else {
+                // Discard a record cut by a crash, and every storage is defined again by the next records
+                channel.truncate(end);
+                channel.position(end);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        this.sequence = base;
+        this.durable = base;
+
+        writer = new Thread(this::write, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Check whether each storage change waits until its record is durable.
+     *
+     * @return true if this journal is synchronous, false if every record is forced in the background
+     */
+    public boolean isSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * Get the sequence of the next record.
+     *
+     * @return the number of records appended since the journal was first created
+     */
+    public long getSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of times records have been forced to disk.
+     *
+     * Comparing it with the number of records shows how many changes share each fsync.
+     *
+     * @return the number of group commits
+     */
+    public long getCommitCount() {
+        return commitCount.sum();
+    }
+
+    /**
+     * Append the record of a piece stored in a storage.
+     *
+     * @param storage the storage
+     * @param piece the stored piece
+     *
+     * @throws IllegalStateException if this journal is closed or it could not be written
+     */
+    public void stored(Storage<Piece> storage, Piece piece) throws IllegalStateException {
+        append(STORE, storage, 0, piece);
+    }
+
+    /**
+     * Append the record of a piece removed from a storage.
+     *
+     * @param storage the storage
+     * @param piece the removed piece
+     *
+     * @throws IllegalStateException if this journal is closed or it could not be written
+     */
+    public void removed(Storage<Piece> storage, Piece piece) throws IllegalStateException {
+        append(REMOVE, storage, 0, piece);
+    }
+
+    /**
+     * Append the record of a piece added to a conveyor.
+     *
+     * @param conveyor the conveyor
+     * @param piece the added piece
+     *
+     * @throws IllegalStateException if this journal is closed or it could not be written
+     */
+    public void added(Conveyor conveyor, Piece piece) throws IllegalStateException {
+        append(ADD, null, conveyor.getPickingPointPosition().pack(), piece);
+    }
+
+    /**
+     * Append the record of a piece unloaded from the picking point of a conveyor.
+     *
+     * @param conveyor the conveyor
+     * @param piece the unloaded piece
+     *
+     * @throws IllegalStateException if this journal is closed or it could not be written
+     */
+    public void unloaded(Conveyor conveyor, Piece piece) throws IllegalStateException {
+        append(UNLOAD, null, conveyor.getPickingPointPosition().pack(), piece);
+    }
+
+    /**
+     * Append a record, waiting until it is durable if it is a storage record and this journal is synchronous.
+     *
+     * A record is never appended while a checkpoint is taken, it waits for the checkpoint to finish and then
+     * goes after the new header, with the storages defined again.
+     *
+     * @param type the type of the record
+     * @param storage the storage of a storage record, or null for a conveyor record
+     * @param position the packed picking point position of a conveyor record
+     * @param piece the piece of the record
+     *
+     * @throws IllegalStateException if this journal is closed or it could not be written
+     */
+    private void append(byte type, Storage<Piece> storage, long position, Piece piece) throws IllegalStateException {
+        int order = Snapshot.paintOrder(piece);
+
+        long record;
+        lock.lock();
+        try {
+            while (checkpointing) {
+                checkOpen();
+                committed.awaitUninterruptibly();
+            }
+            checkOpen();
+            appending++;
+        } catch (IllegalStateException e) {
+            lock.unlock();
+            throw e;
+        }
+
+        try {
+            long code = CompactPieces.encode(piece, storageId(piece.getStorage()));
+
+            if (storage != null) {
+                int id = storageId(storage);
+                reserve(STORAGE_RECORD_SIZE);
+                active.put(type).putInt(id);
+            } else {
+                reserve(CONVEYOR_RECORD_SIZE);
+                active.put(type).putLong(position);
+            }
+            active.putLong(code).putInt(order);
+
+            record = sequence++;
+            appended.signal();
+
+            if (synchronous && storage != null) {
+                awaitDurable(record + 1);
+            }
+        } finally {
+            appending--;
+            if (appending == 0 && checkpointing) {
+                committed.signalAll();
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the index of a storage, appending a storage record the first time it appears.
+     *
+     * Must be called with the lock held.
+     *
+     * @param storage the storage
+     * @return the index of the storage in the records
+     *
+     * @throws IllegalStateException if this journal is closed or it could not be written
+     * @throws IllegalArgumentException if there are too many storages
+     */
+    private int storageId(Storage<Piece> storage) throws IllegalStateException, IllegalArgumentException {
+        Integer id = storageIds.get(storage);
+        if (id != null) {
+            return id;
+        }
+        if (storageIds.size() >= CompactPieces.MAX_STORAGES) {
+            throw new IllegalArgumentException("Too many storages for a journal: " + storageIds.size());
+        }
+
+        byte[] name = (storage instanceof PieceStorage ? ((PieceStorage) storage).getName() : "")
+                .getBytes(StandardCharsets.UTF_8);
+
+        reserve(1 + Integer.BYTES + Integer.BYTES + name.length + Long.BYTES);
+
+        int index = storageIds.size();
+        active.put(STORAGE).putInt(index).putInt(name.length).put(name).putLong(storage.getPosition().pack());
+        sequence++;
+        appended.signal();
+
+        storageIds.put(storage, index);
+        return index;
+    }
+
+    /**
+     * Wait until the active buffer has room for a record.
+     *
+     * Must be called with the lock held.
+     *
+     * @param size the size of the record
+     *
+     * @throws IllegalStateException if this journal is closed or it could not be written
+     * @throws IllegalArgumentException if the record does not fit in a buffer
+     */
+    private void reserve(int size) throws IllegalStateException, IllegalArgumentException {
+        if (size > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Journal record too large: " + size);
+        }
+
+        while (true) {
+            checkOpen();
+            if (active.remaining() >= size) {
+                return;
+            }
+            appended.signal();
+            committed.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Wait until every record before a sequence is durable.
+     *
+     * The thread interrupted status is kept, a change never gives up before its record is durable.
+     * Must be called with the lock held.
+     *
+     * @param end the sequence after the last record to wait for
+     *
+     * @throws IllegalStateException if this journal could not be written
+     */
+    private void awaitDurable(long end) throws IllegalStateException {
+        while (durable < end) {
+            if (failure != null) {
+                throw new IllegalStateException("Journal could not be written", failure);
+            }
+            committed.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Check that records can be appended.
+     *
+     * @throws IllegalStateException if this journal is closed or it could not be written
+     */
+    private void checkOpen() throws IllegalStateException {
+        if (failure != null) {
+            throw new IllegalStateException("Journal could not be written", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+
+    /**
+     * Write the appended records and force them to disk until this journal is closed, run by the writer thread.
+     *
+     * The buffers are swapped with the lock held, so the records appended during a write wait in the other buffer
+     * and are written and forced together by the next one.
+     */
+    private void write() {
+        while (true) {
+            long end;
+
+            lock.lock();
+            try {
+                while (active.position() == 0 && !closed) {
+                    appended.awaitUninterruptibly();
+                }
+                if (active.position() == 0) {
+                    return;
+                }
+
+                ByteBuffer full = active;
+                active = flushing;
+                flushing = full;
+                end = sequence;
+
+                // There is room again for threads waiting for it
+                committed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                flushing.flip();
+                while (flushing.hasRemaining()) {
+                    channel.write(flushing);
+                }
+                channel.force(false);
+                commitCount.increment();
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                flushing.clear();
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durable = end;
+                }
+                committed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if (error != null) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wait until every record appended is durable.
+     *
+     * @throws IOException if the records could not be written
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            awaitDurable(sequence);
+        } catch (IllegalStateException e) {
+            throw failure;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write a snapshot of a warehouse and empty this journal, so recovery starts from the snapshot.
+     *
+     * The snapshot is written to a temporary file and then moved to its path, so a crash never leaves
+     * a partial snapshot. The state must not change while the checkpoint is taken, like when every
+     * vehicle has stopped. Records appended meanwhile wait for the checkpoint to finish, and the records
+     * already being appended are made durable before the snapshot is written, so the emptied journal never
+     * has records of the old sequence or of storages it no longer defines.
+     *
+     * @param path the path of the snapshot file
+     * @param state the state of the warehouse
+     *
+     * @throws IOException if the snapshot or the journal cannot be written
+     * @throws IllegalArgumentException if the state cannot be written in a snapshot
+     */
+    public void checkpoint(Path path, WarehouseState state) throws IOException, IllegalArgumentException {
+        lock.lock();
+        try {
+            while (checkpointing) {
+                committed.awaitUninterruptibly();
+            }
+            checkpointing = true;
+
+            try {
+                // Records being appended may still wait for room in the buffer, or between a storage record
+                // and the record using it, and the waits release the lock
+                while (appending > 0) {
+                    checkOpen();
+                    committed.awaitUninterruptibly();
+                }
+                flush();
+
+                long next = sequence;
+                Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+                Snapshot.write(temporary, new WarehouseState(state.getStorages(), state.getConveyors(),
+                        state.getVehicles(), next));
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                // The writer thread is idle, every record is durable and no record can be appended
+                reset(next);
+            } catch (IllegalStateException e) {
+                throw failure != null ? failure : new IOException("Journal is closed", e);
+            } finally {
+                checkpointing = false;
+                committed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empty the journal file, so its next record has a sequence.
+     *
+     * @param next the sequence of the next record
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void reset(long next) throws IOException {
+        channel.truncate(0);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(next).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+        channel.position(HEADER_SIZE);
+
+        storageIds.clear();
+    }
+
+    /**
+     * Wait until every record appended is durable, stop the writer thread and close the file.
+     *
+     * @throws IOException if the records could not be written or the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        channel.close();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Recover the state of a warehouse from its last snapshot and the journal of the changes after it.
+     *
+     * Like {@code Snapshot.read}, the recovered components register their metrics unless {@code Metrics.suspend}
+     * is in effect.
+     *
+     * @param snapshot the path of the snapshot file, which may not exist if no checkpoint was taken
+     * @param journal the path of the journal file, which may not exist if nothing changed
+     * @param vehicles the factory creating the vehicles of the snapshot
+     * @return the recovered state, with the journal sequence to open the journal again
+     *
+     * @throws IOException if the files cannot be read or they are not valid
+     */
+    public static WarehouseState recover(Path snapshot, Path journal, VehicleFactory vehicles) throws IOException {
+        WarehouseState state = Files.exists(snapshot)
+                ? Snapshot.read(snapshot, vehicles)
+                : new WarehouseState(List.of(), List.of(), List.of());
+
+        if (!Files.exists(journal) || Files.size(journal) < HEADER_SIZE) {
+            return state;
+        }
+
+        try (MappedInput in = new MappedInput(journal)) {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(journal + " is not a warehouse journal");
+            }
+            long first = in.getLong();
+            if (first > state.getJournalSequence()) {
+                throw new IOException("Journal starts at record " + first + " but the snapshot ends at record "
+                        + state.getJournalSequence());
+            }
+
+            JournalReplay replay = new JournalReplay(state, first);
+            long count = scan(in, replay);
+            return replay.finish(first + count);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IOException("Invalid journal " + journal + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read the records of a journal until its end, or until a record cut by a crash.
+     *
+     * After returning, the position of the input is the end of the last complete record.
+     *
+     * @param in the journal file, after its header
+     * @param replay the replay receiving each record, or null to only count them
+     * @return the number of complete records
+     *
+     * @throws IOException if the file cannot be read or a record is not valid
+     */
+    private static long scan(MappedInput in, JournalReplay replay) throws IOException {
+        long count = 0;
+        long end = in.position();
+
+        try {
+            records:
+            while (end < in.size()) {
+                byte type = in.getByte();
+
+                switch (type) {
+                    case STORAGE:
+                        int index = in.getInt();
+                        String name = in.getString();
+                        long position = in.getLong();
+                        if (replay != null) {
+                            replay.storage(index, name, position);
+                        }
+                        break;
+                    case STORE:
+                    case REMOVE:
+                        int storage = in.getInt();
+                        long storedCode = in.getLong();
+                        int storedOrder = in.getInt();
+                        if (replay != null) {
+                            replay.storageChanged(type == STORE, storage, storedCode, storedOrder);
+                        }
+                        break;
+                    case ADD:
+                    case UNLOAD:
+                        long pickingPoint = in.getLong();
+                        long code = in.getLong();
+                        int order = in.getInt();
+                        if (replay != null) {
+                            replay.conveyorChanged(type == ADD, pickingPoint, code, order);
+                        }
+                        break;
+                    default:
+                        // The rest of the file was allocated but never written
+                        break records;
+                }
+
+                count++;
+                end = in.position();
+            }
+        } catch (EOFException e) {
+            // The last record was cut by a crash, it was never durable
+        }
+
+        in.seek(end);
+        return count;
+    }
+}
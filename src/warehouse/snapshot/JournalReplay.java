@@ -0,0 +1,469 @@
+package warehouse.snapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.pieces.Piece;
+import warehouse.pieces.compact.CompactPieces;
+import warehouse.storage.PieceStorage;
+import warehouse.storage.Storage;
+import warehouse.vehicle.AGVS;
+
+/**
+ * Applies the records of a journal on top of the state restored from a snapshot.
+ *
+ * A piece is identified by its storage, shape and reference, so a record can find the piece it changes
+ * even if the threads appended their records in a different order than they changed the storages
+ * and conveyors. Records are appended once a piece is visible to other threads, so a vehicle can unload,
+ * and even store, a piece before the producer appends its addition, and a piece can be removed from a storage
+ * before the record of its store. A removal or an unload of a piece that is not there yet cancels
+ * the late record of its store or addition. The changes are collected first and applied once at the end,
+ * so each storage and conveyor is rebuilt at most once however many records there are.
+ *
+ * Vehicles are not journaled: a piece unloaded from a conveyor but not yet stored was in a vehicle
+ * when the warehouse stopped, so it is put back at the front of its conveyor to be delivered again.
+ * A piece of a restored vehicle that was stored after the snapshot is taken out of the vehicle.
+ */
+final class JournalReplay {
+
+    /**
+     * The state restored from the snapshot.
+     */
+    private final WarehouseState state;
+
+    /**
+     * Sequence of the next record.
+     */
+    private long sequence;
+
+    /**
+     * The storages of the state and the new storages of the records.
+     */
+    private final List<PieceStorage> storages;
+
+    /**
+     * Storage of each index defined by the storage records read so far.
+     */
+    private final Map<Integer, PieceStorage> storageIds = new HashMap<>();
+
+    /**
+     * Pieces stored after the snapshot in each storage, by their key.
+     */
+    private final Map<PieceStorage, LinkedHashMap<PieceKey, Piece>> stored = new IdentityHashMap<>();
+
+    /**
+     * Pieces removed after the snapshot from the pieces each storage had in the snapshot.
+     */
+    private final Map<PieceStorage, Map<PieceKey, Integer>> removed = new IdentityHashMap<>();
+
+    /**
+     * Pieces each storage had in the snapshot, counted when a piece is first removed from the storage.
+     */
+    private final Map<PieceStorage, Map<PieceKey, Integer>> snapshotPieces = new IdentityHashMap<>();
+
+    /**
+     * Pieces removed from each storage before the record of their store.
+     */
+    private final Map<PieceStorage, Map<PieceKey, Integer>> removedEarly = new IdentityHashMap<>();
+
+    /**
+     * Conveyor of each picking point position.
+     */
+    private final Map<Long, Conveyor> conveyors = new LinkedHashMap<>();
+
+    /**
+     * Pieces of each conveyor changed after the snapshot, in their order, by the conveyor picking point position.
+     */
+    private final Map<Long, LinkedHashMap<PieceKey, Piece>> belts = new HashMap<>();
+
+    /**
+     * Pieces unloaded from each conveyor and not stored yet, by the conveyor picking point position.
+     */
+    private final Map<Long, LinkedHashMap<PieceKey, Piece>> unloaded = new HashMap<>();
+
+    /**
+     * Pieces unloaded from each conveyor before the record of their addition, by the conveyor picking point position.
+     */
+    private final Map<Long, Set<PieceKey>> unloadedEarly = new HashMap<>();
+
+    /**
+     * Restored vehicle carrying each piece of the snapshot.
+     */
+    private final Map<PieceKey, AGVS> carriers = new HashMap<>();
+
+    /**
+     * Pieces each restored vehicle no longer carries, because they have been stored.
+     */
+    private final Map<AGVS, Set<PieceKey>> delivered = new IdentityHashMap<>();
+
+    /**
+     * Prepare to replay the records of a journal.
+     *
+     * @param state the state restored from the snapshot
+     * @param first the sequence of the first record of the journal
+     */
+    JournalReplay(WarehouseState state, long first) {
+        this.state = state;
+        this.sequence = first;
+        this.storages = new ArrayList<>(state.getStorages());
+
+        for (Conveyor conveyor : state.getConveyors()) {
+            conveyors.put(conveyor.getPickingPointPosition().pack(), conveyor);
+        }
+
+        for (AGVS vehicle : state.getVehicles()) {
+            for (Piece piece : vehicle.getLoad()) {
+                carriers.put(PieceKey.of(piece), vehicle);
+            }
+        }
+    }
+
+    /**
+     * Define the storage of an index, finding it in the state by its name and position or creating it.
+     *
+     * Storage records are applied even before the snapshot, because later records use their indexes.
+     *
+     * @param index the index of the storage
+     * @param name the name of the storage
+     * @param packed the packed position of the storage
+     */
+    void storage(int index, String name, long packed) {
+        sequence++;
+
+        Position position = Position.unpack(packed);
+        for (PieceStorage storage : storages) {
+            if (storage.getName().equals(name) && storage.getPosition().equals(position)) {
+                storageIds.put(index, storage);
+                return;
+            }
+        }
+
+        PieceStorage storage = new PieceStorage(name, position);
+        storages.add(storage);
+        storageIds.put(index, storage);
+    }
+
+    /**
+     * Apply the record of a piece stored in or removed from a storage.
+     *
+     * @param store true if the piece was stored, false if it was removed
+     * @param index the index of the storage
+     * @param code the compact code of the piece
+     * @param order the order the colors of the piece were painted
+     *
+     * @throws IOException if the record is not valid
+     */
+    void storageChanged(boolean store, int index, long code, int order) throws IOException {
+        if (sequence++ < state.getJournalSequence()) {
+            return;
+        }
+
+        PieceStorage storage = storage(index);
+        Piece piece = piece(code, order);
+        PieceKey key = PieceKey.of(piece);
+
+        if (store) {
+            // A piece already removed is not stored again, but it is no longer carried either
+            if (!take(removedEarly.get(storage), key)) {
+                stored.computeIfAbsent(storage, s -> new LinkedHashMap<>()).put(key, piece);
+            }
+
+            // The piece is no longer in the vehicle that was carrying it
+            for (LinkedHashMap<PieceKey, Piece> pieces : unloaded.values()) {
+                if (pieces.remove(key) != null) {
+                    return;
+                }
+            }
+            AGVS vehicle = carriers.remove(key);
+            if (vehicle != null) {
+                delivered.computeIfAbsent(vehicle, v -> new HashSet<>()).add(key);
+            }
+            return;
+        }
+
+        LinkedHashMap<PieceKey, Piece> pieces = stored.get(storage);
+        if (pieces != null && pieces.remove(key) != null) {
+            return;
+        }
+
+        // A piece neither stored after the snapshot nor left in the snapshot has its store record later
+        Map<PieceKey, Integer> left = snapshotPieces.computeIfAbsent(storage, JournalReplay::count);
+        if (take(left, key)) {
+            removed.computeIfAbsent(storage, s -> new HashMap<>()).merge(key, 1, Integer::sum);
+        } else {
+            removedEarly.computeIfAbsent(storage, s -> new HashMap<>()).merge(key, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Apply the record of a piece added to or unloaded from a conveyor.
+     *
+     * @param add true if the piece was added, false if it was unloaded
+     * @param position the packed picking point position of the conveyor
+     * @param code the compact code of the piece
+     * @param order the order the colors of the piece were painted
+     *
+     * @throws IOException if the record is not valid
+     */
+    void conveyorChanged(boolean add, long position, long code, int order) throws IOException {
+        if (sequence++ < state.getJournalSequence()) {
+            return;
+        }
+
+        LinkedHashMap<PieceKey, Piece> belt = belt(position);
+        Piece piece = piece(code, order);
+        PieceKey key = PieceKey.of(piece);
+
+        if (add) {
+            // A piece already unloaded is not put back on the belt
+            Set<PieceKey> early = unloadedEarly.get(position);
+            if (early == null || !early.remove(key)) {
+                belt.put(key, piece);
+            }
+            return;
+        }
+
+        Piece unloadedPiece = belt.remove(key);
+        if (unloadedPiece == null) {
+            unloadedEarly.computeIfAbsent(position, p -> new HashSet<>()).add(key);
+        }
+        unloaded.computeIfAbsent(position, p -> new LinkedHashMap<>())
+                .put(key, unloadedPiece != null ? unloadedPiece : piece);
+    }
+
+    /**
+     * Apply every change collected and build the recovered state.
+     *
+     * @param next the sequence of the record after the last one of the journal
+     * @return the recovered state
+     */
+    WarehouseState finish(long next) {
+        for (Map.Entry<PieceStorage, Map<PieceKey, Integer>> entry : removed.entrySet()) {
+            PieceStorage storage = entry.getKey();
+            Map<PieceKey, Integer> keys = entry.getValue();
+
+            List<Piece> pieces = new ArrayList<>(storage.getSize());
+            storage.drainTo(pieces);
+            pieces.removeIf(piece -> take(keys, PieceKey.of(piece)));
+            storage.storeAll(pieces);
+        }
+
+        for (Map.Entry<PieceStorage, LinkedHashMap<PieceKey, Piece>> entry : stored.entrySet()) {
+            entry.getKey().storeAll(entry.getValue().values());
+        }
+
+        List<Conveyor> rebuilt = new ArrayList<>(conveyors.size());
+        for (Map.Entry<Long, Conveyor> entry : conveyors.entrySet()) {
+            LinkedHashMap<PieceKey, Piece> belt = belts.get(entry.getKey());
+            LinkedHashMap<PieceKey, Piece> pending = unloaded.get(entry.getKey());
+
+            if (belt == null && pending == null) {
+                rebuilt.add(entry.getValue());
+                continue;
+            }
+
+            // Pieces being carried go first, they were unloaded before the rest
+            List<Piece> pieces = new ArrayList<>();
+            if (pending != null) {
+                pieces.addAll(pending.values());
+            }
+            if (belt != null) {
+                pieces.addAll(belt.values());
+            }
+            rebuilt.add(rebuild(entry.getValue(), pieces));
+        }
+
+        for (Map.Entry<AGVS, Set<PieceKey>> entry : delivered.entrySet()) {
+            AGVS vehicle = entry.getKey();
+            Set<PieceKey> keys = entry.getValue();
+
+            List<Piece> load = new ArrayList<>(vehicle.getLoad());
+            load.removeIf(piece -> keys.contains(PieceKey.of(piece)));
+            vehicle.restore(vehicle.getCurrentBattery(), load);
+        }
+
+        return new WarehouseState(storages, rebuilt, state.getVehicles(), next);
+    }
+
+    /**
+     * Get the storage of an index.
+     *
+     * @param index the index of the storage
+     * @return the storage
+     *
+     * @throws IOException if no storage record defined the index
+     */
+    private PieceStorage storage(int index) throws IOException {
+        PieceStorage storage = storageIds.get(index);
+        if (storage == null) {
+            throw new IOException("Undefined storage in journal: " + index);
+        }
+        return storage;
+    }
+
+    /**
+     * Count the pieces of a storage by their key.
+     *
+     * @param storage the storage
+     * @return the number of pieces of each key
+     */
+    private static Map<PieceKey, Integer> count(PieceStorage storage) {
+        Map<PieceKey, Integer> counts = new HashMap<>();
+        for (Piece piece : storage.getObjects()) {
+            counts.merge(PieceKey.of(piece), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Take one piece of a key from some counts.
+     *
+     * @param counts the number of pieces of each key, or null if there are none
+     * @param key the key of the piece
+     * @return true if there was a piece of the key, false otherwise
+     */
+    private static boolean take(Map<PieceKey, Integer> counts, PieceKey key) {
+        if (counts == null) {
+            return false;
+        }
+
+        Integer count = counts.get(key);
+        if (count == null) {
+            return false;
+        }
+
+        if (count > 1) {
+            counts.put(key, count - 1);
+        } else {
+            counts.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Build a piece of a record.
+     *
+     * @param code the compact code of the piece
+     * @param order the order the colors of the piece were painted
+     * @return the piece
+     *
+     * @throws IOException if the piece is not valid
+     */
+    private Piece piece(long code, int order) throws IOException {
+        return Snapshot.buildPiece(code, order, storage(CompactPieces.storageId(code)));
+    }
+
+    /**
+     * Get the pieces of a conveyor, taking them from the restored conveyor the first time it changes.
+     *
+     * A conveyor not in the snapshot is created.
+     *
+     * @param position the packed picking point position of the conveyor
+     * @return the pieces of the conveyor by their key, in their order
+     */
+    private LinkedHashMap<PieceKey, Piece> belt(long position) {
+        return belts.computeIfAbsent(position, p -> {
+            Conveyor conveyor = conveyors.computeIfAbsent(p, q -> new Conveyor(Position.unpack(q)));
+
+            LinkedHashMap<PieceKey, Piece> pieces = new LinkedHashMap<>();
+            for (Piece piece : conveyor.getPieces()) {
+                pieces.put(PieceKey.of(piece), piece);
+            }
+            return pieces;
+        });
+    }
+
+    /**
+     * Create a conveyor like a restored one with other pieces.
+     *
+     * A concurrent conveyor grows if the pieces put back do not fit.
+     *
+     * @param conveyor the restored conveyor
+     * @param pieces the pieces of the new conveyor, in their order
+     * @return the new conveyor
+     */
+    private static Conveyor rebuild(Conveyor conveyor, List<Piece> pieces) {
+        Position position = conveyor.getPickingPointPosition();
+        Conveyor result = conveyor.isConcurrent()
+                ? new Conveyor(position, Math.max(conveyor.getCapacity(), pieces.size()))
+                : new Conveyor(position);
+
+        for (Piece piece : pieces) {
+            result.add(piece);
+        }
+        return result;
+    }
+
+    /**
+     * Identity of a piece in the records: its storage, shape and reference.
+     */
+    private static final class PieceKey {
+
+        /**
+         * The storage of the piece.
+         */
+        private final Storage<Piece> storage;
+
+        /**
+         * The compact code of the piece without colors and storage.
+         */
+        private final long code;
+
+        /**
+         * Create the key of a piece.
+         *
+         * @param storage the storage of the piece
+         * @param code the compact code of the piece without colors and storage
+         */
+        private PieceKey(Storage<Piece> storage, long code) {
+            this.storage = storage;
+            this.code = code;
+        }
+
+        /**
+         * Get the key of a piece.
+         *
+         * @param piece the piece
+         * @return its key
+         */
+        static PieceKey of(Piece piece) {
+            return new PieceKey(piece.getStorage(),
+                    CompactPieces.encode(piece.getShape(), 0, piece.getReference(), 0));
+        }
+
+        /**
+         * Check if another key identifies the same piece.
+         *
+         * @param other the other object
+         * @return true if it is a key with the same storage, shape and reference
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof PieceKey)) {
+                return false;
+            }
+            PieceKey key = (PieceKey) other;
+            return storage == key.storage && code == key.code;
+        }
+
+        /**
+         * Get the hash code of this key.
+         *
+         * @return a hash of the storage, shape and reference
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(storage), code);
+        }
+    }
+}
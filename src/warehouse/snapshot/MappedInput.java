@@ -0,0 +1,216 @@
+package warehouse.snapshot;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file through memory-mapped regions of a file channel, the counterpart of {@code MappedOutput}.
+ *
+ * The few values crossing the end of a region are read byte by byte through a small scratch buffer.
+ */
+final class MappedInput implements Closeable {
+
+    /**
+     * Channel of the file being read.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Total size of the file.
+     */
+    private final long size;
+
+    /**
+     * The region being read.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * Position in the file of the first byte of the region being read.
+     */
+    private long regionStart;
+
+    /**
+     * Buffer holding a value that crosses the end of a region.
+     */
+    private final ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES);
+
+    /**
+     * Open a file and map its first region.
+     *
+     * @param path the path of the file
+     *
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    MappedInput(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            this.size = channel.size();
+            map(0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map the region of the file starting at a position.
+     *
+     * @param start the position of the first byte of the region
+     *
+     * @throws IOException if the region cannot be mapped
+     */
+    private void map(long start) throws IOException {
+        regionStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MappedOutput.REGION_SIZE, size - start));
+    }
+
+    /**
+     * Map the next region, once the current one has been read.
+     *
+     * @throws IOException if the file ends
+     */
+    private void next() throws IOException {
+        long start = regionStart + buffer.capacity();
+        if (start >= size) {
+            throw new EOFException("Unexpected end of file at byte " + start);
+        }
+        map(start);
+    }
+
+    /**
+     * Read some bytes into the scratch buffer, crossing to the next region when the current one ends.
+     *
+     * @param bytes the number of bytes of the value
+     * @return the scratch buffer, ready to read the value
+     *
+     * @throws IOException if the file ends
+     */
+    private ByteBuffer fill(int bytes) throws IOException {
+        scratch.clear();
+        for (int i = 0; i < bytes; i++) {
+            if (!buffer.hasRemaining()) {
+                next();
+            }
+            scratch.put(buffer.get());
+        }
+        return scratch.flip();
+    }
+
+    /**
+     * Read a byte.
+     *
+     * @return the byte
+     *
+     * @throws IOException if the file ends
+     */
+    byte getByte() throws IOException {
+        if (!buffer.hasRemaining()) {
+            next();
+        }
+        return buffer.get();
+    }
+
+    /**
+     * Read an int.
+     *
+     * @return the int
+     *
+     * @throws IOException if the file ends
+     */
+    int getInt() throws IOException {
+        if (buffer.remaining() >= Integer.BYTES) {
+            return buffer.getInt();
+        }
+        return fill(Integer.BYTES).getInt();
+    }
+
+    /**
+     * Read a long.
+     *
+     * @return the long
+     *
+     * @throws IOException if the file ends
+     */
+    long getLong() throws IOException {
+        if (buffer.remaining() >= Long.BYTES) {
+            return buffer.getLong();
+        }
+        return fill(Long.BYTES).getLong();
+    }
+
+    /**
+     * Read a String written as its length and its UTF-8 bytes.
+     *
+     * @return the String
+     *
+     * @throws IOException if the file ends or the length is invalid
+     */
+    String getString() throws IOException {
+        int length = getInt();
+        if (length < 0 || length > size) {
+            throw new IOException("Invalid string length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            if (!buffer.hasRemaining()) {
+                next();
+            }
+
+            int count = Math.min(buffer.remaining(), length - offset);
+            buffer.get(bytes, offset, count);
+            offset += count;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the number of bytes read.
+     *
+     * @return the position in the file of the next byte
+     */
+    long position() {
+        return regionStart + buffer.position();
+    }
+
+    /**
+     * Continue reading at a position of the file.
+     *
+     * @param position the position of the next byte to read
+     *
+     * @throws IOException if the region cannot be mapped
+     */
+    void seek(long position) throws IOException {
+        map(position);
+    }
+
+    /**
+     * Get the size of the file.
+     *
+     * @return the number of bytes of the file
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+}
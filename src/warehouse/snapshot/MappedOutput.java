@@ -0,0 +1,219 @@
+package warehouse.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a file of a known size through memory-mapped regions of a file channel.
+ *
+ * Values are written straight into the page cache, without any intermediate buffer or system call per value.
+ * A file larger than a region is mapped one region after another, so any size can be written.
+ * The few values crossing the end of a region are written byte by byte through a small scratch buffer.
+ */
+final class MappedOutput implements Closeable {
+
+    /**
+     * Maximum size of a mapped region, well under the 2 GB limit of a mapped buffer.
+     */
+    static final long REGION_SIZE = 64L << 20;
+
+    /**
+     * Channel of the file being written.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Total size of the file.
+     */
+    private final long size;
+
+    /**
+     * The region being written.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * Position in the file of the first byte of the region being written.
+     */
+    private long regionStart;
+
+    /**
+     * Buffer holding a value that crosses the end of a region.
+     */
+    private final ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES);
+
+    /**
+     * Create a file, replacing any file with the same path, and map its first region.
+     *
+     * @param path the path of the file
+     * @param size the size of the file, every byte of it must be written
+     *
+     * @throws IOException if the file cannot be created or mapped
+     */
+    MappedOutput(Path path, long size) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.size = size;
+
+        try {
+            map(0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map the region of the file starting at a position, flushing the previous region.
+     *
+     * @param start the position of the first byte of the region
+     *
+     * @throws IOException if the region cannot be mapped
+     */
+    private void map(long start) throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+
+        regionStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(REGION_SIZE, size - start));
+    }
+
+    /**
+     * Map the next region, once the current one is full.
+     *
+     * @throws IOException if the next region cannot be mapped or the file is already full
+     */
+    private void next() throws IOException {
+        long start = regionStart + buffer.capacity();
+        if (start >= size) {
+            throw new IOException("Snapshot is larger than the expected " + size + " bytes");
+        }
+        map(start);
+    }
+
+    /**
+     * Write the value in the scratch buffer, crossing to the next region when the current one is full.
+     *
+     * @throws IOException if the next region cannot be mapped
+     */
+    private void spill() throws IOException {
+        scratch.flip();
+        while (scratch.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                next();
+            }
+            buffer.put(scratch.get());
+        }
+        scratch.clear();
+    }
+
+    /**
+     * Write a byte.
+     *
+     * @param value the byte
+     *
+     * @throws IOException if the next region cannot be mapped
+     */
+    void putByte(int value) throws IOException {
+        if (!buffer.hasRemaining()) {
+            next();
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Write an int.
+     *
+     * @param value the int
+     *
+     * @throws IOException if the next region cannot be mapped
+     */
+    void putInt(int value) throws IOException {
+        if (buffer.remaining() >= Integer.BYTES) {
+            buffer.putInt(value);
+        } else {
+            scratch.putInt(value);
+            spill();
+        }
+    }
+
+    /**
+     * Write a long.
+     *
+     * @param value the long
+     *
+     * @throws IOException if the next region cannot be mapped
+     */
+    void putLong(long value) throws IOException {
+        if (buffer.remaining() >= Long.BYTES) {
+            buffer.putLong(value);
+        } else {
+            scratch.putLong(value);
+            spill();
+        }
+    }
+
+    /**
+     * Write a String as its length and its UTF-8 bytes.
+     *
+     * @param value the String
+     *
+     * @throws IOException if the next region cannot be mapped
+     */
+    void putString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                next();
+            }
+
+            int count = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Get the number of bytes written.
+     *
+     * @return the position in the file of the next byte
+     */
+    long position() {
+        return regionStart + buffer.position();
+    }
+
+    /**
+     * Get the size of a String written with {@code putString}.
+     *
+     * @param value the String
+     * @return the number of bytes of its length and its UTF-8 bytes
+     */
+    static int sizeOf(String value) {
+        return Integer.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Flush the last region to the file and close it.
+     *
+     * @throws IOException if the file cannot be flushed or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            buffer.force();
+            buffer = null;
+        } finally {
+            channel.close();
+        }
+    }
+}
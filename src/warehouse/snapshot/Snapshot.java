@@ -0,0 +1,438 @@
+package warehouse.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import warehouse.Color;
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.pieces.ColoredPiece;
+import warehouse.pieces.Piece;
+import warehouse.pieces.builder.PieceBuilder;
+import warehouse.pieces.compact.CompactPieces;
+import warehouse.storage.PieceStorage;
+import warehouse.storage.Storage;
+import warehouse.vehicle.AGVS;
+
+/**
+ * Binary snapshot of the state of a warehouse, written and read through a memory-mapped file.
+ *
+ * The file starts with a header, with the journal sequence of the state, and a table of the storages
+ * of every piece, and then has the pieces of each storage, each conveyor and each vehicle. Every piece takes 12 bytes: its compact code,
+ * with its reference, shape, colors and the index of its storage in the table,
+ * and the order its colors were painted, one color ordinal in each 4 bits starting from the lowest ones.
+ * So a restored piece has the same color decorations, in the same order, as the original piece.
+ *
+ * The size of the file is computed before writing it, so it is mapped once and filled without any system call
+ * per value. A warehouse of millions of pieces is written and read in a few seconds.
+ *
+ * Taking a snapshot copies the pieces of each storage, conveyor and vehicle, so the warehouse should not be
+ * changing while it is taken, like when every vehicle has stopped. Restoring adds the pieces to new storages
+ * and conveyors, which publishes their events, so large snapshots should be restored with the events disabled.
+ */
+public final class Snapshot {
+
+    /**
+     * Number identifying a snapshot file, the characters "WHS1".
+     */
+    private static final int MAGIC = 0x57485331;
+
+    /**
+     * Version of the format of the file, 2 adds the journal sequence of the state to the header.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Number of bytes of a piece.
+     */
+    private static final int PIECE_SIZE = Long.BYTES + Integer.BYTES;
+
+    /**
+     * Number of bits of each color of the painting order of a piece.
+     */
+    private static final int PAINT_BITS = 4;
+
+    /**
+     * All the colors, indexed by ordinal.
+     */
+    private static final Color[] COLORS = Color.values();
+
+    static {
+        if (COLORS.length >= (1 << PAINT_BITS)) {
+            throw new IllegalStateException("Too many colors to keep the painting order of pieces");
+        }
+    }
+
+    /**
+     * This class only has static methods, so it cannot be instantiated.
+     */
+    private Snapshot() {}
+
+    /**
+     * Write a snapshot of the state of a warehouse to a file, replacing the file if it exists.
+     *
+     * @param path the path of the file
+     * @param state the state of the warehouse
+     *
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if there are too many storages or a piece is painted too many times
+     */
+    public static void write(Path path, WarehouseState state) throws IOException, IllegalArgumentException {
+        // Copy the pieces once, so the size computed is the size written
+        List<List<Piece>> stored = new ArrayList<>();
+        for (PieceStorage storage : state.getStorages()) {
+            stored.add(storage.getObjects());
+        }
+        List<List<Piece>> conveyed = new ArrayList<>();
+        for (Conveyor conveyor : state.getConveyors()) {
+            conveyed.add(conveyor.getPieces());
+        }
+        List<List<Piece>> loaded = new ArrayList<>();
+        for (AGVS vehicle : state.getVehicles()) {
+            loaded.add(vehicle.getLoad());
+        }
+
+        // Table of storages, with the storages of the state first and then any other storage of some piece
+        Map<Storage<Piece>, Integer> ids = new IdentityHashMap<>();
+        List<Storage<Piece>> table = new ArrayList<>();
+        for (PieceStorage storage : state.getStorages()) {
+            storageId(storage, ids, table);
+        }
+        for (List<List<Piece>> lists : List.of(stored, conveyed, loaded)) {
+            for (List<Piece> pieces : lists) {
+                for (Piece piece : pieces) {
+                    storageId(piece.getStorage(), ids, table);
+                }
+            }
+        }
+
+        long size = 2 * Integer.BYTES + Long.BYTES;
+
+        size += Integer.BYTES;
+        for (Storage<Piece> storage : table) {
+            size += MappedOutput.sizeOf(name(storage)) + Long.BYTES;
+        }
+
+        size += Integer.BYTES;
+        for (List<Piece> pieces : stored) {
+            size += Integer.BYTES + (long) pieces.size() * PIECE_SIZE;
+        }
+
+        size += Integer.BYTES;
+        for (List<Piece> pieces : conveyed) {
+            size += Long.BYTES + Byte.BYTES + 2 * Integer.BYTES + (long) pieces.size() * PIECE_SIZE;
+        }
+
+        size += Integer.BYTES;
+        for (List<Piece> pieces : loaded) {
+            size += Integer.BYTES + Long.BYTES + 3 * Integer.BYTES + (long) pieces.size() * PIECE_SIZE;
+        }
+
+        try (MappedOutput out = new MappedOutput(path, size)) {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(state.getJournalSequence());
+
+            out.putInt(table.size());
+            for (Storage<Piece> storage : table) {
+                out.putString(name(storage));
+                out.putLong(storage.getPosition().pack());
+            }
+
+            out.putInt(stored.size());
+            for (List<Piece> pieces : stored) {
+                writePieces(out, pieces, ids);
+            }
+
+            out.putInt(conveyed.size());
+            for (int i = 0; i < conveyed.size(); i++) {
+                Conveyor conveyor = state.getConveyors().get(i);
+
+                out.putLong(conveyor.getPickingPointPosition().pack());
+                out.putByte(conveyor.isConcurrent() ? 1 : 0);
+                out.putInt(conveyor.getCapacity());
+                writePieces(out, conveyed.get(i), ids);
+            }
+
+            out.putInt(loaded.size());
+            for (int i = 0; i < loaded.size(); i++) {
+                AGVS vehicle = state.getVehicles().get(i);
+
+                out.putInt(vehicle.getId());
+                out.putLong(vehicle.getPosition().pack());
+                out.putInt(vehicle.getCurrentBattery());
+                out.putInt(vehicle.getCapacity());
+                writePieces(out, loaded.get(i), ids);
+            }
+
+            if (out.position() != size) {
+                throw new IOException("Snapshot has " + out.position() + " bytes instead of " + size);
+            }
+        }
+    }
+
+    /**
+     * Read a snapshot, restoring vehicles without a map.
+     *
+     * @param path the path of the file
+     * @return the restored state of the warehouse
+     *
+     * @throws IOException if the file cannot be read or it is not a valid snapshot
+     */
+    public static WarehouseState read(Path path) throws IOException {
+        return read(path, AGVS::new);
+    }
+
+    /**
+     * Read a snapshot, creating new storages, conveyors and vehicles with the pieces they had.
+     *
+     * Vehicles are created by a factory, so they can use a map or reservations not kept in the snapshot,
+     * and then get the battery and the pieces they had.
+     *
+     * With metrics enabled the restored components replace the metrics of the components with the same names.
+     * A copy read next to a live warehouse should be read while {@code Metrics.suspend} is in effect.
+     *
+     * @param path the path of the file
+     * @param vehicles the factory creating the vehicles
+     * @return the restored state of the warehouse
+     *
+     * @throws IOException if the file cannot be read or it is not a valid snapshot
+     */
+    public static WarehouseState read(Path path, VehicleFactory vehicles) throws IOException {
+        try (MappedInput in = new MappedInput(path)) {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(path + " is not a warehouse snapshot");
+            }
+            int version = in.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            long journalSequence = version >= 2 ? in.getLong() : 0;
+
+            int tableSize = readCount(in);
+            List<PieceStorage> table = new ArrayList<>(tableSize);
+            for (int i = 0; i < tableSize; i++) {
+                String name = in.getString();
+                table.add(new PieceStorage(name, Position.unpack(in.getLong())));
+            }
+
+            int storageCount = readCount(in);
+            if (storageCount > tableSize) {
+                throw new IOException("Invalid number of storages in snapshot: " + storageCount);
+            }
+            List<PieceStorage> storages = table.subList(0, storageCount);
+            for (PieceStorage storage : storages) {
+                storage.storeAll(readPieces(in, table));
+            }
+
+            int conveyorCount = readCount(in);
+            List<Conveyor> conveyors = new ArrayList<>(conveyorCount);
+            for (int i = 0; i < conveyorCount; i++) {
+                Position position = Position.unpack(in.getLong());
+                boolean concurrent = in.getByte() != 0;
+                int capacity = in.getInt();
+
+                Conveyor conveyor = concurrent ? new Conveyor(position, capacity) : new Conveyor(position);
+                for (Piece piece : readPieces(in, table)) {
+                    conveyor.add(piece);
+                }
+                conveyors.add(conveyor);
+            }
+
+            int vehicleCount = readCount(in);
+            List<AGVS> fleet = new ArrayList<>(vehicleCount);
+            for (int i = 0; i < vehicleCount; i++) {
+                int id = in.getInt();
+                Position position = Position.unpack(in.getLong());
+                int battery = in.getInt();
+                int capacity = in.getInt();
+
+                AGVS vehicle = vehicles.create(id, position, capacity);
+                vehicle.restore(battery, readPieces(in, table));
+                fleet.add(vehicle);
+            }
+
+            return new WarehouseState(storages, conveyors, fleet, journalSequence);
+        } catch (IllegalArgumentException | IllegalStateException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid snapshot " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the index of a storage in the table of storages, adding it if it is not there.
+     *
+     * @param storage the storage
+     * @param ids the index of each storage in the table
+     * @param table the storages in index order
+     *
+     * @throws IllegalArgumentException if there are too many storages
+     */
+    private static void storageId(Storage<Piece> storage, Map<Storage<Piece>, Integer> ids,
+            List<Storage<Piece>> table) throws IllegalArgumentException {
+        if (ids.containsKey(storage)) {
+            return;
+        }
+        if (table.size() >= CompactPieces.MAX_STORAGES) {
+            throw new IllegalArgumentException("Too many storages for a snapshot: " + table.size());
+        }
+
+        ids.put(storage, table.size());
+        table.add(storage);
+    }
+
+    /**
+     * Get the name of a storage.
+     *
+     * @param storage the storage
+     * @return the name of a piece storage, or an empty String for other storages
+     */
+    private static String name(Storage<Piece> storage) {
+        return storage instanceof PieceStorage ? ((PieceStorage) storage).getName() : "";
+    }
+
+    /**
+     * Write some pieces with their number.
+     *
+     * @param out the snapshot file
+     * @param pieces the pieces
+     * @param ids the index of each storage in the table
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private static void writePieces(MappedOutput out, List<Piece> pieces, Map<Storage<Piece>, Integer> ids)
+            throws IOException {
+        out.putInt(pieces.size());
+
+        for (Piece piece : pieces) {
+            out.putLong(CompactPieces.encode(piece, ids.get(piece.getStorage())));
+            out.putInt(paintOrder(piece));
+        }
+    }
+
+    /**
+     * Get the order the colors of a piece were painted.
+     *
+     * Each color decorator wraps the piece painted before, so the outermost decorator has the last color.
+     *
+     * @param piece the piece
+     * @return the ordinal plus one of each color, the first painted in the lowest 4 bits, 0 if there are no more
+     *
+     * @throws IllegalArgumentException if the piece is painted more than 8 times
+     */
+    static int paintOrder(Piece piece) throws IllegalArgumentException {
+        int order = 0;
+
+        Piece current = piece;
+        while (current instanceof ColoredPiece) {
+            ColoredPiece colored = (ColoredPiece) current;
+
+            if ((order >>> (Integer.SIZE - PAINT_BITS)) != 0) {
+                throw new IllegalArgumentException(piece + " is painted too many times for a snapshot");
+            }
+            order = (order << PAINT_BITS) | (colored.getColor().ordinal() + 1);
+
+            current = colored.getDecoratedPiece();
+        }
+
+        return order;
+    }
+
+    /**
+     * Read a number of pieces and then the pieces.
+     *
+     * @param in the snapshot file
+     * @param table the storages in index order
+     * @return the pieces
+     *
+     * @throws IOException if the file ends or it has an invalid piece
+     */
+    private static List<Piece> readPieces(MappedInput in, List<PieceStorage> table) throws IOException {
+        int count = readCount(in);
+
+        List<Piece> pieces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long code = in.getLong();
+            int order = in.getInt();
+
+            int storageId = CompactPieces.storageId(code);
+            if (storageId >= table.size()) {
+                throw new IOException("Invalid storage in snapshot: " + storageId);
+            }
+            pieces.add(buildPiece(code, order, table.get(storageId)));
+        }
+        return pieces;
+    }
+
+    /**
+     * Build a piece again from its code and painting order.
+     *
+     * @param code the compact code of the piece
+     * @param order the order its colors were painted
+     * @param storage the storage of the piece
+     * @return a new piece like the one written
+     *
+     * @throws IOException if the piece is not valid
+     */
+    static Piece buildPiece(long code, int order, Storage<Piece> storage) throws IOException {
+        PieceBuilder.TypeStep type = Piece.newBuilder()
+                .withReference(CompactPieces.reference(code))
+                .shouldStoreAt(storage);
+
+        PieceBuilder.LastStep<?> builder;
+        switch (CompactPieces.shape(code)) {
+            case ROUND:
+                builder = type.round();
+                break;
+            case SQUARE:
+                builder = type.square();
+                break;
+            case CYLINDRICAL:
+                builder = type.cylindrical();
+                break;
+            default:
+                throw new IOException("Invalid shape in snapshot: " + CompactPieces.shape(code));
+        }
+
+        // Paint the colors of the decorators in the same order
+        int painted = 0;
+        for (; order != 0; order >>>= PAINT_BITS) {
+            int ordinal = (order & ((1 << PAINT_BITS) - 1)) - 1;
+            if (ordinal < 0 || ordinal >= COLORS.length) {
+                throw new IOException("Invalid color in snapshot: " + ordinal);
+            }
+
+            builder = builder.paint(COLORS[ordinal]);
+            painted |= 1 << ordinal;
+        }
+
+        // Colors of a piece that were not painted with a decorator, like the colors of a compact piece
+        int colors = CompactPieces.colors(code) & ~painted;
+        for (Color color : COLORS) {
+            if ((colors & (1 << color.ordinal())) != 0) {
+                builder = builder.paint(color);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Read a number of elements.
+     *
+     * @param in the snapshot file
+     * @return the number read
+     *
+     * @throws IOException if the file ends or the number is negative
+     */
+    private static int readCount(MappedInput in) throws IOException {
+        int count = in.getInt();
+        if (count < 0) {
+            throw new IOException("Invalid count in snapshot: " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,502 @@
+package warehouse.snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.event.Event;
+import warehouse.event.EventSink;
+import warehouse.event.EventType;
+import warehouse.pieces.Piece;
+import warehouse.storage.PieceStorage;
+import warehouse.storage.Storage;
+import warehouse.vehicle.AGVS;
+
+/**
+ * An event sink that records a run of the warehouse in a compact binary trace, so it can be replayed later
+ * by a {@code TraceReplayer} in a single thread.
+ *
+ * The trace starts with the vehicles of the initial state, and the pieces already in its storages
+ * and conveyors. Then each vehicle move, wait, load, charge and battery depletion, each piece stored,
+ * and each piece added to or unloaded from a conveyor, which is how a conveyor advances, is a record
+ * in the order the event bus delivers them.
+ *
+ * Every number is written as a variable length integer, and each record has the time since the previous one
+ * instead of its time, so most records take less than 8 bytes. Storages and conveyors are written once,
+ * the first time they appear, and then referred to by their index.
+ *
+ * Records are written in a buffer by the consumer thread of the event bus, and the buffer is written
+ * to the file when it is full or the bus has no more events, so recording does not slow down the vehicles.
+ *
+ * Only the events the bus publishes are recorded. Every record is an INFO event except the waits of the vehicles,
+ * which are DEBUG events, so a trace recorded with the default INFO level has no waits and its replay counts none.
+ * A complete trace needs a bus with the DEBUG level, whose DEBUG events also reach the next sink:
+ *
+ * <pre>
+ * TraceRecorder recorder = new TraceRecorder(path, new WarehouseState(storages, conveyors, fleet), EventSink.NONE);
+ * EventBus.setDefault(new EventBus(EventBus.DEFAULT_CAPACITY, EventLevel.DEBUG, recorder));
+ * </pre>
+ */
+public class TraceRecorder implements EventSink {
+
+    /**
+     * Magic number at the start of a trace file.
+     */
+    static final int MAGIC = 0x57485431; // "WHT1"
+
+    /**
+     * Record types. The end of the trace is a 0 type, and the records of the initial state end with a start record.
+     */
+    static final int END = 0, VEHICLE = 1, STORAGE = 2, CONVEYOR = 3, MOVED = 4, WAITING = 5, LOADED = 6,
+            STORED = 7, ADDED = 8, UNLOADED = 9, CHARGING = 10, CHARGED = 11, DEPLETED = 12, START = 13;
+
+    /**
+     * Size of the buffer of records.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Maximum size of a record, except for the names of storages.
+     */
+    private static final int MAX_RECORD_SIZE = 64;
+
+    /**
+     * The trace file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Records not written to the file yet.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * The sink receiving every event after it is recorded, like the console.
+     */
+    private final EventSink next;
+
+    /**
+     * Index of each storage written.
+     */
+    private final Map<Storage<?>, Integer> storages = new IdentityHashMap<>();
+
+    /**
+     * Index of each conveyor written.
+     */
+    private final Map<Conveyor, Integer> conveyors = new IdentityHashMap<>();
+
+    /**
+     * Time of the last record, from {@code System.nanoTime}.
+     */
+    private long time;
+
+    /**
+     * Number of event records written, read by other threads.
+     */
+    private volatile long recordCount;
+
+    /**
+     * Create a recorder writing a new trace, replacing the file if it already exists.
+     *
+     * The initial state is written at once, so the vehicles should not be moving yet.
+     * The recorder must be the sink of a bus with the DEBUG level to record the waits of the vehicles.
+     *
+     * @param path the path of the trace file
+     * @param initial the state of the warehouse when the recording starts
+     * @param next the sink receiving every event after it is recorded, or {@code EventSink.NONE}
+     *
+     * @throws IOException if the trace cannot be written
+     */
+    public TraceRecorder(Path path, WarehouseState initial, EventSink next) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.next = next;
+        this.time = System.nanoTime();
+
+        try {
+            buffer.putInt(MAGIC);
+            buffer.putLong(time);
+
+            for (PieceStorage storage : initial.getStorages()) {
+                storageIndex(storage);
+            }
+            for (Conveyor conveyor : initial.getConveyors()) {
+                conveyorIndex(conveyor);
+            }
+
+            for (AGVS vehicle : initial.getVehicles()) {
+                ensure(MAX_RECORD_SIZE);
+                buffer.put((byte) VEHICLE);
+                putVarInt(vehicle.getId());
+                putPosition(vehicle.getPosition());
+                putVarInt(vehicle.getCapacity());
+                putVarInt(vehicle.getCurrentBattery());
+            }
+
+            // Pieces already in the warehouse come first, at the start time
+            for (PieceStorage storage : initial.getStorages()) {
+                for (Piece piece : storage.getObjects()) {
+                    storageIndex(piece.getStorage());
+
+                    record(STORED, time);
+                    putVarInt(storageIndex(storage));
+                    putPiece(piece);
+                }
+            }
+            for (Conveyor conveyor : initial.getConveyors()) {
+                for (Piece piece : conveyor.getPieces()) {
+                    storageIndex(piece.getStorage());
+
+                    record(ADDED, time);
+                    putVarInt(conveyorIndex(conveyor));
+                    putPiece(piece);
+                }
+            }
+            for (AGVS vehicle : initial.getVehicles()) {
+                for (Piece piece : vehicle.getLoad()) {
+                    storageIndex(piece.getStorage());
+
+                    record(LOADED, time);
+                    putVarInt(vehicle.getId());
+                    buffer.put((byte) vehicle.getRemainingBattery());
+                    putPiece(piece);
+                }
+            }
+
+            ensure(1);
+            buffer.put((byte) START);
+            recordCount = 0;
+
+            drain();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of event records written since the start, without the pieces of the initial state.
+     *
+     * @return the number of records
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Record an event, if it is an event of a vehicle, a storage of pieces or a conveyor,
+     * and pass it to the next sink.
+     *
+     * @param event the event to record
+     *
+     * @throws UncheckedIOException if the trace cannot be written
+     */
+    @Override
+    public void accept(Event event) throws UncheckedIOException {
+        try {
+            write(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        next.accept(event);
+    }
+
+    /**
+     * Write the record of an event.
+     *
+     * @param event the event
+     *
+     * @throws IOException if the trace cannot be written
+     */
+    private void write(Event event) throws IOException {
+        Object source = event.getSource();
+
+        switch (event.getType()) {
+            case VEHICLE_MOVED:
+                if (source instanceof AGVS) {
+                    vehicleRecord(MOVED, event);
+                    putPosition(event.getPosition());
+                    buffer.put((byte) event.getValue());
+                }
+                break;
+            case VEHICLE_WAITING:
+                if (source instanceof AGVS) {
+                    vehicleRecord(WAITING, event);
+                }
+                break;
+            case VEHICLE_LOADED:
+                if (source instanceof AGVS && event.getSubject() instanceof Piece) {
+                    Piece piece = (Piece) event.getSubject();
+                    storageIndex(piece.getStorage());
+
+                    vehicleRecord(LOADED, event);
+                    buffer.put((byte) event.getValue());
+                    putPiece(piece);
+                }
+                break;
+            case VEHICLE_CHARGING:
+                if (source instanceof AGVS) {
+                    vehicleRecord(CHARGING, event);
+                }
+                break;
+            case VEHICLE_CHARGED:
+                if (source instanceof AGVS) {
+                    vehicleRecord(CHARGED, event);
+                    buffer.put((byte) event.getValue());
+                }
+                break;
+            case BATTERY_DEPLETED:
+                if (source instanceof AGVS) {
+                    vehicleRecord(DEPLETED, event);
+                }
+                break;
+            case PIECE_STORED:
+                // Storages of vehicles publish the same event, only pieces are recorded
+                if (source instanceof Storage && event.getSubject() instanceof Piece) {
+                    Piece piece = (Piece) event.getSubject();
+                    int storage = storageIndex((Storage<?>) source);
+                    storageIndex(piece.getStorage());
+
+                    record(STORED, event.getTime());
+                    putVarInt(storage);
+                    putPiece(piece);
+                }
+                break;
+            case PIECE_ADDED:
+            case PIECE_UNLOADED:
+                if (source instanceof Conveyor && event.getSubject() instanceof Piece) {
+                    Piece piece = (Piece) event.getSubject();
+                    int conveyor = conveyorIndex((Conveyor) source);
+                    storageIndex(piece.getStorage());
+
+                    record(event.getType() == EventType.PIECE_ADDED ? ADDED : UNLOADED, event.getTime());
+                    putVarInt(conveyor);
+                    putPiece(piece);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Write the records waiting in the buffer and pass the flush to the next sink.
+     *
+     * Called when the event bus has no more events, so the trace is complete up to the last event.
+     *
+     * @throws UncheckedIOException if the trace cannot be written
+     */
+    @Override
+    public void flush() throws UncheckedIOException {
+        try {
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        next.flush();
+    }
+
+    /**
+     * Write the end of the trace and close the file, and then close the next sink.
+     *
+     * @throws UncheckedIOException if the trace cannot be written
+     */
+    @Override
+    public void close() throws UncheckedIOException {
+        try {
+            ensure(1);
+            buffer.put((byte) END);
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                next.close();
+            }
+        }
+    }
+
+    /**
+     * Start the record of an event of a vehicle, with the identifier of the vehicle.
+     *
+     * @param type the type of the record
+     * @param event the event of the vehicle
+     *
+     * @throws IOException if the buffer cannot be written to the file
+     */
+    private void vehicleRecord(int type, Event event) throws IOException {
+        record(type, event.getTime());
+        putVarInt(((AGVS) event.getSource()).getId());
+    }
+
+    /**
+     * Start an event record with its type and the time since the previous record.
+     *
+     * @param type the type of the record
+     * @param eventTime the time of the event, from {@code System.nanoTime}
+     *
+     * @throws IOException if the buffer cannot be written to the file
+     */
+    private void record(int type, long eventTime) throws IOException {
+        ensure(MAX_RECORD_SIZE);
+
+        buffer.put((byte) type);
+
+        // Threads can publish events a bit out of time order, so the difference can be negative
+        long delta = eventTime - time;
+        putVarLong((delta << 1) ^ (delta >> 63));
+        time = eventTime;
+
+        recordCount++;
+    }
+
+    /**
+     * Get the index of a storage, writing its definition the first time.
+     *
+     * @param storage the storage
+     * @return the index of the storage in the trace
+     *
+     * @throws IOException if the buffer cannot be written to the file
+     */
+    private int storageIndex(Storage<?> storage) throws IOException {
+        Integer index = storages.get(storage);
+        if (index != null) {
+            return index;
+        }
+
+        index = storages.size();
+        storages.put(storage, index);
+
+        String name = storage instanceof PieceStorage ? ((PieceStorage) storage).getName() : "";
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+        ensure(MAX_RECORD_SIZE);
+        buffer.put((byte) STORAGE);
+        putVarInt(index);
+        putPosition(storage.getPosition());
+        putVarInt(bytes.length);
+
+        for (int offset = 0; offset < bytes.length; ) {
+            ensure(1);
+            int count = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+
+        return index;
+    }
+
+    /**
+     * Get the index of a conveyor, writing its definition the first time.
+     *
+     * @param conveyor the conveyor
+     * @return the index of the conveyor in the trace
+     *
+     * @throws IOException if the buffer cannot be written to the file
+     */
+    private int conveyorIndex(Conveyor conveyor) throws IOException {
+        Integer index = conveyors.get(conveyor);
+        if (index != null) {
+            return index;
+        }
+
+        index = conveyors.size();
+        conveyors.put(conveyor, index);
+
+        ensure(MAX_RECORD_SIZE);
+        buffer.put((byte) CONVEYOR);
+        putVarInt(index);
+        putPosition(conveyor.getPickingPointPosition());
+        putVarInt(conveyor.isConcurrent() ? conveyor.getCapacity() : 0);
+
+        return index;
+    }
+
+    /**
+     * Write a piece: the index of its storage, its shape, its reference and the order of its colors.
+     *
+     * The storage of the piece must have been written before.
+     *
+     * @param piece the piece
+     */
+    private void putPiece(Piece piece) {
+        putVarInt(storages.get(piece.getStorage()));
+        buffer.put((byte) piece.getShape().ordinal());
+        putVarInt(piece.getReference());
+        putVarLong(Integer.toUnsignedLong(Snapshot.paintOrder(piece)));
+    }
+
+    /**
+     * Write a position.
+     *
+     * @param position the position
+     */
+    private void putPosition(Position position) {
+        putVarInt(position.getX());
+        putVarInt(position.getY());
+    }
+
+    /**
+     * Write an integer that is not negative, 7 bits in each byte, lowest bits first.
+     *
+     * @param value the integer
+     */
+    private void putVarInt(int value) {
+        putVarLong(Integer.toUnsignedLong(value));
+    }
+
+    /**
+     * Write a long as an unsigned number, 7 bits in each byte, lowest bits first.
+     *
+     * The highest bit of each byte is set if there are more bytes.
+     *
+     * @param value the long
+     */
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Make room in the buffer for some bytes, writing the buffer to the file if needed.
+     *
+     * @param bytes the number of bytes
+     *
+     * @throws IOException if the buffer cannot be written to the file
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    /**
+     * Write the buffer to the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
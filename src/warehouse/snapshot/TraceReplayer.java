@@ -0,0 +1,1275 @@
+package warehouse.snapshot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.fleet.VehicleTask;
+import warehouse.metrics.Metrics;
+import warehouse.pieces.Piece;
+import warehouse.pieces.Shape;
+import warehouse.pieces.compact.CompactPieces;
+import warehouse.simulation.Simulation;
+import warehouse.storage.PieceStorage;
+import warehouse.vehicle.AGVS;
+import warehouse.vehicle.CannotMoveException;
+
+/**
+ * Replays a trace written by a {@code TraceRecorder}, in a single thread and as fast as the records can be read.
+ *
+ * A trace can be used in two ways:
+ * <ul>
+ * <li>{@code replay} applies every record to new storages, conveyors and vehicles, so the same run is reproduced
+ * without its threads and waits, and the final state and the counts of the recorded run can be inspected.
+ * The waits are only counted if the trace was recorded with the DEBUG level.</li>
+ * <li>{@code simulate} only takes the initial state and the pieces added to the conveyors at their recorded times,
+ * and lets the vehicles of the current code move them in a discrete-event {@code Simulation}. Simulating the same
+ * trace before and after a change in the routing or in how vehicles take their pieces compares both
+ * on identical inputs, and always gives the same result.</li>
+ * </ul>
+ *
+ * The storages and conveyors of a replay publish their events like the ones of a run,
+ * so the default event bus should be silenced for long traces. They do not register metrics,
+ * so a trace can be replayed next to a live warehouse with the same names.
+ */
+public class TraceReplayer {
+
+    /**
+     * Steps a simulated vehicle can wait for a cell before it is considered blocked and stopped.
+     */
+    static final int STALL_STEPS = 1000;
+
+    /**
+     * All the shapes, indexed by ordinal.
+     */
+    private static final Shape[] SHAPES = Shape.values();
+
+    /**
+     * The path of the trace file.
+     */
+    private final Path path;
+
+    /**
+     * Create a replayer of a trace file.
+     *
+     * @param path the path of the trace file
+     */
+    public TraceReplayer(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Reproduce the recorded run, creating vehicles without a map.
+     *
+     * @return the final state and the counts of the recorded run
+     *
+     * @throws IOException if the trace cannot be read or it is not valid
+     */
+    public TraceSummary replay() throws IOException {
+        return replay(AGVS::new);
+    }
+
+    /**
+     * Reproduce the recorded run, applying each record in order.
+     *
+     * Vehicles are created by a factory at the end, at their last recorded position and with the pieces
+     * they were carrying. Their battery is the last percentage recorded.
+     *
+     * @param vehicles the factory creating the vehicles
+     * @return the final state and the counts of the recorded run
+     *
+     * @throws IOException if the trace cannot be read or it is not valid
+     */
+    public TraceSummary replay(VehicleFactory vehicles) throws IOException {
+        // The replayed components have the names of the recorded ones, they must not replace their metrics
+        Metrics.Suspension suspension = Metrics.suspend();
+        try {
+            Playback playback = new Playback();
+            read(playback);
+            return playback.finish(vehicles);
+        } finally {
+            suspension.close();
+        }
+    }
+
+    /**
+     * Simulate the recorded inputs with the current code: the initial state of the trace, and each piece
+     * added to a conveyor at its recorded time.
+     *
+     * Vehicles are created by a factory, which should give them a reservation table using the clock
+     * of the simulation, and each vehicle takes the pieces of a conveyor, in turns in the order of the trace.
+     * A piece arriving at a full conveyor waits for room, like a producer does.
+     * Vehicles move without a dispatcher, so they do not charge and stop when their battery runs out.
+     *
+     * @param simulation the simulation running the vehicles
+     * @param vehicles the factory creating the vehicles
+     * @param tickNanos the recorded nanoseconds of each virtual time unit of the simulation
+     * @return the final state and the counts of the simulation, with the virtual time of its last event
+     *
+     * @throws IOException if the trace cannot be read or it is not valid
+     * @throws CannotMoveException if another task of the simulation could not move, other failures are added
+     *                             as suppressed exceptions
+     * @throws IllegalArgumentException if tickNanos is not positive
+     */
+    public TraceSummary simulate(Simulation simulation, VehicleFactory vehicles, long tickNanos)
+            throws IOException, CannotMoveException, IllegalArgumentException {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("Invalid tick: " + tickNanos);
+        }
+
+        Metrics.Suspension suspension = Metrics.suspend();
+        try {
+            Arrivals arrivals = new Arrivals(tickNanos);
+            read(arrivals);
+            return arrivals.run(simulation, vehicles);
+        } finally {
+            suspension.close();
+        }
+    }
+
+    /**
+     * Read every record of the trace and apply it to a model.
+     *
+     * A trace cut by a crash ends at its last complete record.
+     *
+     * @param model the model applying the records
+     *
+     * @throws IOException if the trace cannot be read or it is not valid
+     */
+    private void read(Model model) throws IOException {
+        try (MappedInput in = new MappedInput(path)) {
+            if (in.size() < Integer.BYTES + Long.BYTES || in.getInt() != TraceRecorder.MAGIC) {
+                throw new IOException(path + " is not a warehouse trace");
+            }
+            long time = in.getLong();
+            model.start = time;
+
+            try {
+                loop:
+                while (in.position() < in.size()) {
+                    int type = in.getByte() & 0xFF;
+
+                    switch (type) {
+                        case TraceRecorder.END:
+                            break loop;
+                        case TraceRecorder.VEHICLE:
+                            model.vehicle(getVarInt(in), getPosition(in), getVarInt(in), getVarInt(in));
+                            continue;
+                        case TraceRecorder.STORAGE:
+                            model.storage(getVarInt(in), getPosition(in), getName(in));
+                            continue;
+                        case TraceRecorder.CONVEYOR:
+                            model.conveyor(getVarInt(in), getPosition(in), getVarInt(in));
+                            continue;
+                        case TraceRecorder.START:
+                            model.started = true;
+                            continue;
+                        default:
+                            break;
+                    }
+
+                    long delta = getVarLong(in);
+                    time += (delta >>> 1) ^ -(delta & 1);
+                    model.time = time;
+
+                    switch (type) {
+                        case TraceRecorder.MOVED:
+                            model.moved(getVarInt(in), getPosition(in), in.getByte());
+                            break;
+                        case TraceRecorder.WAITING:
+                            model.waiting(getVarInt(in));
+                            break;
+                        case TraceRecorder.LOADED:
+                            model.loaded(getVarInt(in), in.getByte(), getPiece(in, model));
+                            break;
+                        case TraceRecorder.STORED:
+                            model.stored(getVarInt(in), getPiece(in, model));
+                            break;
+                        case TraceRecorder.ADDED:
+                            model.added(getVarInt(in), getPiece(in, model));
+                            break;
+                        case TraceRecorder.UNLOADED:
+                            model.unloaded(getVarInt(in), getPiece(in, model));
+                            break;
+                        case TraceRecorder.CHARGING:
+                            model.charging(getVarInt(in));
+                            break;
+                        case TraceRecorder.CHARGED:
+                            model.charged(getVarInt(in), in.getByte());
+                            break;
+                        case TraceRecorder.DEPLETED:
+                            model.depleted(getVarInt(in));
+                            break;
+                        default:
+                            throw new IOException("Invalid record in trace: " + type);
+                    }
+                }
+            } catch (EOFException e) {
+                // The last record was not completely written
+            }
+        } catch (IllegalArgumentException | IllegalStateException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid trace " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read a piece: the index of its storage, its shape, its reference and the order of its colors.
+     *
+     * @param in the trace file
+     * @param model the model with the storages
+     * @return a new piece like the one recorded
+     *
+     * @throws IOException if the piece is not valid
+     */
+    private static Piece getPiece(MappedInput in, Model model) throws IOException {
+        PieceStorage storage = model.storage(getVarInt(in));
+
+        int shape = in.getByte() & 0xFF;
+        if (shape >= SHAPES.length) {
+            throw new IOException("Invalid shape in trace: " + shape);
+        }
+        int reference = getVarInt(in);
+        int order = (int) getVarLong(in);
+
+        return Snapshot.buildPiece(CompactPieces.encode(SHAPES[shape], 0, reference, 0), order, storage);
+    }
+
+    /**
+     * Read a position.
+     *
+     * @param in the trace file
+     * @return the position
+     *
+     * @throws IOException if the file ends
+     */
+    private static Position getPosition(MappedInput in) throws IOException {
+        int x = getVarInt(in);
+        return Position.of(x, getVarInt(in));
+    }
+
+    /**
+     * Read the name of a storage.
+     *
+     * @param in the trace file
+     * @return the name
+     *
+     * @throws IOException if the file ends
+     */
+    private static String getName(MappedInput in) throws IOException {
+        byte[] bytes = new byte[getVarInt(in)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = in.getByte();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read an integer written with 7 bits in each byte.
+     *
+     * @param in the trace file
+     * @return the integer
+     *
+     * @throws IOException if the file ends or the integer is too large
+     */
+    private static int getVarInt(MappedInput in) throws IOException {
+        long value = getVarLong(in);
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Invalid integer in trace: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Read a long written with 7 bits in each byte, lowest bits first.
+     *
+     * @param in the trace file
+     * @return the long
+     *
+     * @throws IOException if the file ends or the long is too large
+     */
+    private static long getVarLong(MappedInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = in.getByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid number in trace");
+    }
+
+    /**
+     * The storages, conveyors and vehicles defined by a trace, and what to do with each record.
+     */
+    private abstract static class Model {
+
+        /**
+         * Time of the start of the trace, from {@code System.nanoTime} of the recorded run.
+         */
+        long start;
+
+        /**
+         * Time of the record being applied.
+         */
+        long time;
+
+        /**
+         * Whether the records of the initial state have been read.
+         */
+        boolean started;
+
+        /**
+         * The storages, in index order.
+         */
+        final List<PieceStorage> storages = new ArrayList<>();
+
+        /**
+         * Index of each storage, so the storage of a piece is found without searching the list.
+         */
+        final Map<PieceStorage, Integer> storageIndexes = new IdentityHashMap<>();
+
+        /**
+         * Picking point position of each conveyor, in index order.
+         */
+        final List<Position> conveyorPositions = new ArrayList<>();
+
+        /**
+         * Capacity of each conveyor, in index order, 0 for an unbounded conveyor.
+         */
+        final List<Integer> conveyorCapacities = new ArrayList<>();
+
+        /**
+         * The vehicles, in the order of the trace.
+         */
+        final List<Track> tracks = new ArrayList<>();
+
+        /**
+         * The vehicles by identifier.
+         */
+        final Map<Integer, Track> vehicles = new HashMap<>();
+
+        /**
+         * Define a vehicle of the initial state.
+         *
+         * @param id the identifier of the vehicle
+         * @param position the initial position
+         * @param capacity the maximum number of pieces it carries
+         * @param battery the initial battery in mAh
+         */
+        void vehicle(int id, Position position, int capacity, int battery) {
+            Track track = new Track(id, position, capacity, battery);
+            tracks.add(track);
+            vehicles.put(id, track);
+        }
+
+        /**
+         * Define the storage of an index.
+         *
+         * @param index the index of the storage
+         * @param position the position of the storage
+         * @param name the name of the storage
+         *
+         * @throws IOException if the index is not the next one
+         */
+        void storage(int index, Position position, String name) throws IOException {
+            if (index != storages.size()) {
+                throw new IOException("Invalid storage in trace: " + index);
+            }
+            PieceStorage storage = new PieceStorage(name, position);
+            storages.add(storage);
+            storageIndexes.put(storage, index);
+        }
+
+        /**
+         * Define the conveyor of an index.
+         *
+         * @param index the index of the conveyor
+         * @param position the picking point position
+         * @param capacity the capacity of the conveyor, 0 if it is unbounded
+         *
+         * @throws IOException if the index is not the next one
+         */
+        void conveyor(int index, Position position, int capacity) throws IOException {
+            if (index != conveyorPositions.size()) {
+                throw new IOException("Invalid conveyor in trace: " + index);
+            }
+            conveyorPositions.add(position);
+            conveyorCapacities.add(capacity);
+        }
+
+        /**
+         * Get the storage of an index.
+         *
+         * @param index the index of the storage
+         * @return the storage
+         *
+         * @throws IOException if the storage is not defined
+         */
+        PieceStorage storage(int index) throws IOException {
+            if (index >= storages.size()) {
+                throw new IOException("Undefined storage in trace: " + index);
+            }
+            return storages.get(index);
+        }
+
+        /**
+         * Get a vehicle by its identifier.
+         *
+         * @param id the identifier of the vehicle
+         * @return the vehicle
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        Track track(int id) throws IOException {
+            Track track = vehicles.get(id);
+            if (track == null) {
+                throw new IOException("Undefined vehicle in trace: " + id);
+            }
+            return track;
+        }
+
+        /**
+         * Check that a conveyor is defined.
+         *
+         * @param index the index of the conveyor
+         *
+         * @throws IOException if the conveyor is not defined
+         */
+        void checkConveyor(int index) throws IOException {
+            if (index >= conveyorPositions.size()) {
+                throw new IOException("Undefined conveyor in trace: " + index);
+            }
+        }
+
+        /**
+         * Create a conveyor of the trace.
+         *
+         * @param index the index of the conveyor
+         * @param size the number of pieces it must hold
+         * @return a new empty conveyor
+         */
+        Conveyor newConveyor(int index, int size) {
+            Position position = conveyorPositions.get(index);
+            int capacity = conveyorCapacities.get(index);
+            return capacity > 0 ? new Conveyor(position, Math.max(capacity, size)) : new Conveyor(position);
+        }
+
+        /**
+         * Apply a vehicle move.
+         *
+         * @param id the identifier of the vehicle
+         * @param position the new position of the vehicle
+         * @param battery the remaining battery percentage
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        abstract void moved(int id, Position position, int battery) throws IOException;
+
+        /**
+         * Apply a vehicle step without moving.
+         *
+         * @param id the identifier of the vehicle
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        abstract void waiting(int id) throws IOException;
+
+        /**
+         * Apply a piece loaded into a vehicle.
+         *
+         * @param id the identifier of the vehicle
+         * @param battery the remaining battery percentage
+         * @param piece the piece
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        abstract void loaded(int id, int battery, Piece piece) throws IOException;
+
+        /**
+         * Apply a piece stored.
+         *
+         * @param index the index of the storage
+         * @param piece the piece
+         *
+         * @throws IOException if the storage is not defined
+         */
+        abstract void stored(int index, Piece piece) throws IOException;
+
+        /**
+         * Apply a piece added to a conveyor.
+         *
+         * @param index the index of the conveyor
+         * @param piece the piece
+         *
+         * @throws IOException if the conveyor is not defined
+         */
+        abstract void added(int index, Piece piece) throws IOException;
+
+        /**
+         * Apply a piece unloaded from a conveyor.
+         *
+         * @param index the index of the conveyor
+         * @param piece the piece
+         *
+         * @throws IOException if the conveyor is not defined
+         */
+        abstract void unloaded(int index, Piece piece) throws IOException;
+
+        /**
+         * Apply a vehicle starting to charge.
+         *
+         * @param id the identifier of the vehicle
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        abstract void charging(int id) throws IOException;
+
+        /**
+         * Apply a vehicle with its battery charged.
+         *
+         * @param id the identifier of the vehicle
+         * @param battery the remaining battery percentage
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        abstract void charged(int id, int battery) throws IOException;
+
+        /**
+         * Apply a vehicle running out of battery.
+         *
+         * @param id the identifier of the vehicle
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        abstract void depleted(int id) throws IOException;
+    }
+
+    /**
+     * A vehicle of the trace: its position, battery and load while the records are applied.
+     */
+    private static final class Track {
+
+        /**
+         * The identifier of the vehicle.
+         */
+        private final int id;
+
+        /**
+         * The current position.
+         */
+        private Position position;
+
+        /**
+         * The maximum number of pieces it carries.
+         */
+        private final int capacity;
+
+        /**
+         * The initial battery in mAh.
+         */
+        private final int battery;
+
+        /**
+         * The last battery percentage recorded, or -1 if none.
+         */
+        private int percentage = -1;
+
+        /**
+         * The pieces carried.
+         */
+        private final List<Piece> load = new ArrayList<>();
+
+        /**
+         * Create a vehicle of the trace.
+         *
+         * @param id the identifier of the vehicle
+         * @param position the initial position
+         * @param capacity the maximum number of pieces it carries
+         * @param battery the initial battery in mAh
+         */
+        private Track(int id, Position position, int capacity, int battery) {
+            this.id = id;
+            this.position = position;
+            this.capacity = capacity;
+            this.battery = battery;
+        }
+
+        /**
+         * Create the vehicle, with its battery and load.
+         *
+         * @param vehicles the factory creating the vehicles
+         * @return a new vehicle
+         */
+        private AGVS create(VehicleFactory vehicles) {
+            AGVS vehicle = vehicles.create(id, position, capacity);
+
+            int charge = percentage < 0 ? battery : percentage * vehicle.getMaxBattery() / 100;
+            vehicle.restore(Math.min(charge, vehicle.getMaxBattery()), load);
+            return vehicle;
+        }
+    }
+
+    /**
+     * Applies every record to reproduce the recorded run.
+     *
+     * Threads publish their events right after each change, so two changes of a conveyor can be recorded
+     * in the other order, like a piece unloaded before it was added. Conveyors and vehicles identify
+     * their pieces by their storage, shape and reference, so these records still find the right piece.
+     */
+    private static final class Playback extends Model {
+
+        /**
+         * Pieces of each conveyor, in order, by their key.
+         */
+        private final List<LinkedHashMap<Long, Piece>> belts = new ArrayList<>();
+
+        /**
+         * Pieces of each conveyor unloaded before the record of their addition.
+         */
+        private final List<Set<Long>> early = new ArrayList<>();
+
+        /**
+         * Vehicle carrying each piece, by the key of the piece.
+         */
+        private final Map<Long, Track> carriers = new HashMap<>();
+
+        /**
+         * Number of moves, waits, loads, stores, additions, charges and depletions after the start.
+         */
+        private long moves, waits, loads, stores, adds, charges, depletions;
+
+        /**
+         * Define the conveyor of an index, without pieces.
+         *
+         * @param index the index of the conveyor
+         * @param position the picking point position
+         * @param capacity the capacity of the conveyor, 0 if it is unbounded
+         *
+         * @throws IOException if the index is not the next one
+         */
+        @Override
+        void conveyor(int index, Position position, int capacity) throws IOException {
+            super.conveyor(index, position, capacity);
+
+            belts.add(new LinkedHashMap<>());
+            early.add(new HashSet<>());
+        }
+
+        /**
+         * Move the vehicle.
+         *
+         * @param id the identifier of the vehicle
+         * @param position the new position of the vehicle
+         * @param battery the remaining battery percentage
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        @Override
+        void moved(int id, Position position, int battery) throws IOException {
+            Track track = track(id);
+            track.position = position;
+            track.percentage = battery;
+            moves++;
+        }
+
+        /**
+         * Count the wait.
+         *
+         * @param id the identifier of the vehicle
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        @Override
+        void waiting(int id) throws IOException {
+            track(id);
+            waits++;
+        }
+
+        /**
+         * Load the piece into the vehicle.
+         *
+         * @param id the identifier of the vehicle
+         * @param battery the remaining battery percentage
+         * @param piece the piece
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        @Override
+        void loaded(int id, int battery, Piece piece) throws IOException {
+            Track track = track(id);
+            track.load.add(piece);
+            track.percentage = battery;
+            carriers.put(key(piece), track);
+
+            if (started) {
+                loads++;
+            }
+        }
+
+        /**
+         * Store the piece, taking it out of the vehicle carrying it.
+         *
+         * @param index the index of the storage
+         * @param piece the piece
+         *
+         * @throws IOException if the storage is not defined
+         */
+        @Override
+        void stored(int index, Piece piece) throws IOException {
+            storage(index).store(piece);
+
+            long key = key(piece);
+            Track track = carriers.remove(key);
+            if (track != null) {
+                Iterator<Piece> load = track.load.iterator();
+                while (load.hasNext()) {
+                    if (key(load.next()) == key) {
+                        load.remove();
+                        break;
+                    }
+                }
+            }
+
+            if (started) {
+                stores++;
+            }
+        }
+
+        /**
+         * Add the piece to the conveyor, unless it was already unloaded.
+         *
+         * @param index the index of the conveyor
+         * @param piece the piece
+         *
+         * @throws IOException if the conveyor is not defined
+         */
+        @Override
+        void added(int index, Piece piece) throws IOException {
+            checkConveyor(index);
+
+            long key = key(piece);
+            if (!early.get(index).remove(key)) {
+                belts.get(index).put(key, piece);
+            }
+
+            if (started) {
+                adds++;
+            }
+        }
+
+        /**
+         * Take the piece out of the conveyor, or remember it if it has not been added yet.
+         *
+         * @param index the index of the conveyor
+         * @param piece the piece
+         *
+         * @throws IOException if the conveyor is not defined
+         */
+        @Override
+        void unloaded(int index, Piece piece) throws IOException {
+            checkConveyor(index);
+
+            long key = key(piece);
+            if (belts.get(index).remove(key) == null) {
+                early.get(index).add(key);
+            }
+        }
+
+        /**
+         * Count the charge.
+         *
+         * @param id the identifier of the vehicle
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        @Override
+        void charging(int id) throws IOException {
+            track(id);
+            charges++;
+        }
+
+        /**
+         * Update the battery of the vehicle.
+         *
+         * @param id the identifier of the vehicle
+         * @param battery the remaining battery percentage
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        @Override
+        void charged(int id, int battery) throws IOException {
+            track(id).percentage = battery;
+        }
+
+        /**
+         * Empty the battery of the vehicle.
+         *
+         * @param id the identifier of the vehicle
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        @Override
+        void depleted(int id) throws IOException {
+            track(id).percentage = 0;
+            depletions++;
+        }
+
+        /**
+         * Build the final state.
+         *
+         * @param vehicles the factory creating the vehicles
+         * @return the summary of the replay
+         */
+        private TraceSummary finish(VehicleFactory vehicles) {
+            List<Conveyor> conveyors = new ArrayList<>(belts.size());
+            for (int i = 0; i < belts.size(); i++) {
+                Conveyor conveyor = newConveyor(i, belts.get(i).size());
+                for (Piece piece : belts.get(i).values()) {
+                    conveyor.add(piece);
+                }
+                conveyors.add(conveyor);
+            }
+
+            List<AGVS> fleet = new ArrayList<>(tracks.size());
+            for (Track track : tracks) {
+                fleet.add(track.create(vehicles));
+            }
+
+            WarehouseState state = new WarehouseState(storages, conveyors, fleet);
+            return new TraceSummary(state, time - start, moves, waits, loads, stores, adds, charges, depletions);
+        }
+
+        /**
+         * Get the key of a piece, with its storage, shape and reference.
+         *
+         * @param piece the piece
+         * @return the key
+         */
+        private long key(Piece piece) {
+            int storage = storageIndexes.getOrDefault(piece.getStorage(), -1);
+            return CompactPieces.encode(piece.getShape(), 0, piece.getReference(), storage);
+        }
+    }
+
+    /**
+     * Collects the initial state and the pieces added to each conveyor with their time, to simulate them.
+     */
+    private static final class Arrivals extends Model {
+
+        /**
+         * The recorded nanoseconds of each virtual time unit.
+         */
+        private final long tickNanos;
+
+        /**
+         * Pieces of each conveyor in the initial state.
+         */
+        private final List<List<Piece>> initial = new ArrayList<>();
+
+        /**
+         * Pieces added to each conveyor after the start, in order.
+         */
+        private final List<List<Piece>> pieces = new ArrayList<>();
+
+        /**
+         * Virtual time of each piece added to each conveyor after the start.
+         */
+        private final List<long[]> ticks = new ArrayList<>();
+
+        /**
+         * Number of moves, waits, loads and depletions of the simulated vehicles.
+         */
+        private long moves, waits, loads, depletions;
+
+        /**
+         * Prepare to collect the inputs of a trace.
+         *
+         * @param tickNanos the recorded nanoseconds of each virtual time unit
+         */
+        private Arrivals(long tickNanos) {
+            this.tickNanos = tickNanos;
+        }
+
+        /**
+         * Define the conveyor of an index, without pieces.
+         *
+         * @param index the index of the conveyor
+         * @param position the picking point position
+         * @param capacity the capacity of the conveyor, 0 if it is unbounded
+         *
+         * @throws IOException if the index is not the next one
+         */
+        @Override
+        void conveyor(int index, Position position, int capacity) throws IOException {
+            super.conveyor(index, position, capacity);
+
+            initial.add(new ArrayList<>());
+            pieces.add(new ArrayList<>());
+            ticks.add(new long[16]);
+        }
+
+        /**
+         * Ignore the move, the simulated vehicles find their own routes.
+         *
+         * @param id the identifier of the vehicle
+         * @param position the new position of the vehicle
+         * @param battery the remaining battery percentage
+         */
+        @Override
+        void moved(int id, Position position, int battery) {}
+
+        /**
+         * Ignore the wait.
+         *
+         * @param id the identifier of the vehicle
+         */
+        @Override
+        void waiting(int id) {}
+
+        /**
+         * Load a piece of the initial state into its vehicle, later loads are ignored.
+         *
+         * @param id the identifier of the vehicle
+         * @param battery the remaining battery percentage
+         * @param piece the piece
+         *
+         * @throws IOException if the vehicle is not defined
+         */
+        @Override
+        void loaded(int id, int battery, Piece piece) throws IOException {
+            if (!started) {
+                track(id).load.add(piece);
+            }
+        }
+
+        /**
+         * Store a piece of the initial state, later pieces are stored by the simulated vehicles.
+         *
+         * @param index the index of the storage
+         * @param piece the piece
+         *
+         * @throws IOException if the storage is not defined
+         */
+        @Override
+        void stored(int index, Piece piece) throws IOException {
+            if (!started) {
+                storage(index).store(piece);
+            }
+        }
+
+        /**
+         * Keep a piece added to a conveyor, with its virtual time if it was added after the start.
+         *
+         * @param index the index of the conveyor
+         * @param piece the piece
+         *
+         * @throws IOException if the conveyor is not defined
+         */
+        @Override
+        void added(int index, Piece piece) throws IOException {
+            checkConveyor(index);
+
+            if (!started) {
+                initial.get(index).add(piece);
+                return;
+            }
+
+            List<Piece> conveyorPieces = pieces.get(index);
+            long[] conveyorTicks = ticks.get(index);
+            if (conveyorPieces.size() == conveyorTicks.length) {
+                conveyorTicks = Arrays.copyOf(conveyorTicks, conveyorTicks.length * 2);
+                ticks.set(index, conveyorTicks);
+            }
+
+            // Threads can publish events a bit out of time order, pieces keep their order
+            int size = conveyorPieces.size();
+            long tick = Math.max(0, (time - start) / tickNanos);
+            conveyorTicks[size] = size > 0 ? Math.max(tick, conveyorTicks[size - 1]) : tick;
+            conveyorPieces.add(piece);
+        }
+
+        /**
+         * Ignore the unload, the simulated vehicles unload the conveyors.
+         *
+         * @param index the index of the conveyor
+         * @param piece the piece
+         */
+        @Override
+        void unloaded(int index, Piece piece) {}
+
+        /**
+         * Ignore the charge.
+         *
+         * @param id the identifier of the vehicle
+         */
+        @Override
+        void charging(int id) {}
+
+        /**
+         * Ignore the charge.
+         *
+         * @param id the identifier of the vehicle
+         * @param battery the remaining battery percentage
+         */
+        @Override
+        void charged(int id, int battery) {}
+
+        /**
+         * Ignore the depletion.
+         *
+         * @param id the identifier of the vehicle
+         */
+        @Override
+        void depleted(int id) {}
+
+        /**
+         * Simulate the vehicles moving the pieces of the conveyors, adding each piece at its time.
+         *
+         * @param simulation the simulation running the vehicles
+         * @param vehicles the factory creating the vehicles
+         * @return the summary of the simulation
+         *
+         * @throws IOException if the trace has no conveyors
+         * @throws CannotMoveException if another task of the simulation could not move
+         */
+        private TraceSummary run(Simulation simulation, VehicleFactory vehicles)
+                throws IOException, CannotMoveException {
+            if (conveyorPositions.isEmpty()) {
+                throw new IOException("The trace has no conveyors");
+            }
+
+            long stored = 0;
+            for (PieceStorage storage : storages) {
+                stored += storage.getSize();
+            }
+
+            List<Conveyor> conveyors = new ArrayList<>(conveyorPositions.size());
+            List<Feeder> feeders = new ArrayList<>(conveyorPositions.size());
+            for (int i = 0; i < conveyorPositions.size(); i++) {
+                Conveyor conveyor = newConveyor(i, initial.get(i).size());
+                for (Piece piece : initial.get(i)) {
+                    conveyor.add(piece);
+                }
+                conveyors.add(conveyor);
+
+                Feeder feeder = new Feeder(conveyor, pieces.get(i), ticks.get(i));
+                feeders.add(feeder);
+
+                if (!feeder.isDone()) {
+                    simulation.schedule(feeder.ticks[0], Simulation.STEP_TIME, feeder);
+                }
+            }
+
+            List<AGVS> fleet = new ArrayList<>(tracks.size());
+            for (int i = 0; i < tracks.size(); i++) {
+                AGVS vehicle = tracks.get(i).create(vehicles);
+                fleet.add(vehicle);
+
+                Conveyor conveyor = conveyors.get(i % conveyors.size());
+                Feeder feeder = feeders.get(i % feeders.size());
+
+                simulation.schedule(0, Simulation.STEP_TIME, new Driver(vehicle, conveyor, feeder));
+            }
+
+            long end = simulation.run();
+
+            for (PieceStorage storage : storages) {
+                stored -= storage.getSize();
+            }
+            long adds = 0;
+            for (Feeder feeder : feeders) {
+                adds += feeder.next;
+            }
+
+            WarehouseState state = new WarehouseState(storages, conveyors, fleet);
+            return new TraceSummary(state, end, moves, waits, loads, -stored, adds, 0, depletions);
+        }
+
+        /**
+         * Steps a simulated vehicle, counting what it does.
+         *
+         * Vehicles do not charge without a dispatcher, so a vehicle without battery stops where it is.
+         * A vehicle also stops when it is empty and its conveyor has no more pieces,
+         * or when it waits too long for a cell, blocked by a stopped vehicle.
+         */
+        private final class Driver implements VehicleTask {
+
+            /**
+             * The vehicle.
+             */
+            private final AGVS vehicle;
+
+            /**
+             * The conveyor of the vehicle.
+             */
+            private final Conveyor conveyor;
+
+            /**
+             * The feeder of the conveyor.
+             */
+            private final Feeder feeder;
+
+            /**
+             * Number of steps waiting since the last move.
+             */
+            private int stalled;
+
+            /**
+             * Create the task of a vehicle.
+             *
+             * @param vehicle the vehicle
+             * @param conveyor the conveyor of the vehicle
+             * @param feeder the feeder of the conveyor
+             */
+            private Driver(AGVS vehicle, Conveyor conveyor, Feeder feeder) {
+                this.vehicle = vehicle;
+                this.conveyor = conveyor;
+                this.feeder = feeder;
+                feeder.drivers++;
+            }
+
+            /**
+             * Stop the vehicle, and the feeder of its conveyor if it was the last vehicle of the conveyor.
+             *
+             * @return false, so the vehicle is not stepped anymore
+             */
+            private boolean stop() {
+                feeder.drivers--;
+                return false;
+            }
+
+            /**
+             * Do a step of the vehicle.
+             *
+             * @return true while the vehicle has pieces to move
+             */
+            @Override
+            public boolean step() {
+                Position position = vehicle.getPosition();
+                int load = vehicle.getLoadSize();
+
+                boolean stepped;
+                try {
+                    stepped = vehicle.step(conveyor);
+                } catch (CannotMoveException e) {
+                    depletions++;
+                    return stop();
+                }
+
+                if (vehicle.getLoadSize() > load) {
+                    loads += vehicle.getLoadSize() - load;
+                }
+                if (!vehicle.getPosition().equals(position)) {
+                    moves++;
+                    stalled = 0;
+                } else if (stepped) {
+                    waits++;
+                    if (++stalled > STALL_STEPS) {
+                        return stop();
+                    }
+                }
+
+                if (feeder.isDone() && (!stepped || vehicle.isEmpty() && conveyor.pickingPointIsEmpty())) {
+                    return stop();
+                }
+
+                // Vehicles wait at the picking point while pieces are still to come
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Adds the pieces of a conveyor at their virtual time, waiting while the conveyor is full.
+     *
+     * Every vehicle of the conveyor keeps waiting for pieces until its feeder is done.
+     */
+    private static final class Feeder implements VehicleTask {
+
+        /**
+         * The conveyor.
+         */
+        private final Conveyor conveyor;
+
+        /**
+         * The pieces to add, in order.
+         */
+        private final List<Piece> pieces;
+
+        /**
+         * Virtual time of each piece.
+         */
+        private final long[] ticks;
+
+        /**
+         * Index of the next piece to add.
+         */
+        private int next;
+
+        /**
+         * Virtual time of the next step of the feeder, from the start of the simulation.
+         */
+        private long now;
+
+        /**
+         * Number of vehicles taking the pieces of the conveyor.
+         */
+        private int drivers;
+
+        /**
+         * Create a feeder of a conveyor.
+         *
+         * @param conveyor the conveyor
+         * @param pieces the pieces to add, in order
+         * @param ticks the virtual time of each piece, the feeder is scheduled at the first one
+         */
+        private Feeder(Conveyor conveyor, List<Piece> pieces, long[] ticks) {
+            this.conveyor = conveyor;
+            this.pieces = pieces;
+            this.ticks = ticks;
+            this.now = pieces.isEmpty() ? 0 : ticks[0];
+        }
+
+        /**
+         * Check if every piece has been added.
+         *
+         * @return true if there are no more pieces to add
+         */
+        private boolean isDone() {
+            return next == pieces.size();
+        }
+
+        /**
+         * Add the pieces whose time has come while there is room for them.
+         *
+         * The pieces not added yet are dropped when every vehicle of the conveyor has stopped.
+         *
+         * @return true while there are pieces to add
+         */
+        @Override
+        public boolean step() {
+            if (drivers == 0) {
+                return false;
+            }
+            while (!isDone() && ticks[next] <= now && conveyor.tryAdd(pieces.get(next))) {
+                next++;
+            }
+            now++;
+            return !isDone();
+        }
+    }
+}
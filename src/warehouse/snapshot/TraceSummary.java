@@ -0,0 +1,179 @@
+package warehouse.snapshot;
+
+/**
+ * What happened when a trace was replayed or simulated: the state of the warehouse at the end,
+ * and how many moves, loads and other operations the vehicles did.
+ *
+ * Two summaries of the same trace can be compared to measure a change in the dispatch or the routing
+ * of the vehicles with exactly the same pieces arriving at the same times.
+ */
+public class TraceSummary {
+
+    /**
+     * The state of the warehouse at the end.
+     */
+    private final WarehouseState state;
+
+    /**
+     * Time from the start to the last operation.
+     */
+    private final long elapsed;
+
+    /**
+     * Number of vehicle moves.
+     */
+    private final long moveCount;
+
+    /**
+     * Number of vehicle steps waiting for a cell or at their target.
+     */
+    private final long waitCount;
+
+    /**
+     * Number of pieces loaded into vehicles.
+     */
+    private final long loadCount;
+
+    /**
+     * Number of pieces stored.
+     */
+    private final long storeCount;
+
+    /**
+     * Number of pieces added to conveyors.
+     */
+    private final long addCount;
+
+    /**
+     * Number of times vehicles charged their battery.
+     */
+    private final long chargeCount;
+
+    /**
+     * Number of vehicles that run out of battery.
+     */
+    private final long depletedCount;
+
+    /**
+     * Create the summary of a replay.
+     *
+     * @param state the state of the warehouse at the end
+     * @param elapsed the time from the start to the last operation
+     * @param moveCount the number of vehicle moves
+     * @param waitCount the number of vehicle steps without moving
+     * @param loadCount the number of pieces loaded into vehicles
+     * @param storeCount the number of pieces stored
+     * @param addCount the number of pieces added to conveyors
+     * @param chargeCount the number of times vehicles charged their battery
+     * @param depletedCount the number of vehicles that run out of battery
+     */
+    TraceSummary(WarehouseState state, long elapsed, long moveCount, long waitCount, long loadCount,
+            long storeCount, long addCount, long chargeCount, long depletedCount) {
+        this.state = state;
+        this.elapsed = elapsed;
+        this.moveCount = moveCount;
+        this.waitCount = waitCount;
+        this.loadCount = loadCount;
+        this.storeCount = storeCount;
+        this.addCount = addCount;
+        this.chargeCount = chargeCount;
+        this.depletedCount = depletedCount;
+    }
+
+    /**
+     * Get the state of the warehouse at the end: the storages and conveyors with their pieces,
+     * and the vehicles with their position, battery and load.
+     *
+     * @return the final state
+     */
+    public WarehouseState getState() {
+        return state;
+    }
+
+    /**
+     * Get the time from the start to the last operation: nanoseconds of the recorded run for a replay,
+     * or the virtual time of the last event for a simulation.
+     *
+     * @return the elapsed time
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Get the number of vehicle moves, one for each cell.
+     *
+     * @return the number of moves
+     */
+    public long getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Get the number of vehicle steps without moving, waiting for a reserved cell or for pieces.
+     *
+     * A replay only has the waits recorded with the DEBUG level.
+     *
+     * @return the number of waits
+     */
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    /**
+     * Get the number of pieces loaded into vehicles.
+     *
+     * @return the number of loads
+     */
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * Get the number of pieces stored.
+     *
+     * @return the number of stores
+     */
+    public long getStoreCount() {
+        return storeCount;
+    }
+
+    /**
+     * Get the number of pieces added to the conveyors after the start.
+     *
+     * @return the number of pieces added
+     */
+    public long getAddCount() {
+        return addCount;
+    }
+
+    /**
+     * Get the number of times vehicles started charging their battery.
+     *
+     * @return the number of charges
+     */
+    public long getChargeCount() {
+        return chargeCount;
+    }
+
+    /**
+     * Get the number of times vehicles run out of battery.
+     *
+     * @return the number of battery depletions
+     */
+    public long getDepletedCount() {
+        return depletedCount;
+    }
+
+    /**
+     * Get a line with the counts of this summary.
+     *
+     * @return a description of this summary
+     */
+    @Override
+    public String toString() {
+        return "elapsed " + elapsed + ", " + moveCount + " moves, " + waitCount + " waits, " + loadCount + " loads, "
+                + storeCount + " stores, " + addCount + " added, " + chargeCount + " charges, "
+                + depletedCount + " depleted";
+    }
+}
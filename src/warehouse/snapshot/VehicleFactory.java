@@ -0,0 +1,22 @@
+package warehouse.snapshot;
+
+import warehouse.Position;
+import warehouse.vehicle.AGVS;
+
+/**
+ * Creates the vehicles of a restored warehouse, so they can follow a map or share a reservation table
+ * that is not part of the snapshot.
+ */
+@FunctionalInterface
+public interface VehicleFactory {
+
+    /**
+     * Create a vehicle, without any piece loaded.
+     *
+     * @param id the identifier of the vehicle
+     * @param position the position of the vehicle
+     * @param capacity the maximum number of pieces the vehicle can carry
+     * @return a new vehicle
+     */
+    AGVS create(int id, Position position, int capacity);
+}
@@ -0,0 +1,101 @@
+package warehouse.snapshot;
+
+import java.util.List;
+
+import warehouse.Conveyor;
+import warehouse.storage.PieceStorage;
+import warehouse.vehicle.AGVS;
+
+/**
+ * The state of a warehouse that a snapshot keeps: the storages with their pieces,
+ * the conveyors with their queues of pieces, and the vehicles with their position, battery and load.
+ *
+ * The map of the warehouse floor, the charging stations and the dispatchers are configuration,
+ * created again by the program, so they are not part of the state.
+ */
+public class WarehouseState {
+
+    /**
+     * The storages of pieces.
+     */
+    private final List<PieceStorage> storages;
+
+    /**
+     * The conveyors bringing pieces into the warehouse.
+     */
+    private final List<Conveyor> conveyors;
+
+    /**
+     * The vehicles moving the pieces.
+     */
+    private final List<AGVS> vehicles;
+
+    /**
+     * Number of journal records whose changes are included in this state.
+     */
+    private final long journalSequence;
+
+    /**
+     * Create the state of a warehouse.
+     *
+     * @param storages the storages of pieces
+     * @param conveyors the conveyors bringing pieces into the warehouse
+     * @param vehicles the vehicles moving the pieces
+     */
+    public WarehouseState(List<PieceStorage> storages, List<Conveyor> conveyors, List<AGVS> vehicles) {
+        this(storages, conveyors, vehicles, 0);
+    }
+
+    /**
+     * Create the state of a warehouse that includes the changes of some journal records.
+     *
+     * @param storages the storages of pieces
+     * @param conveyors the conveyors bringing pieces into the warehouse
+     * @param vehicles the vehicles moving the pieces
+     * @param journalSequence the number of journal records whose changes are included in this state
+     */
+    public WarehouseState(List<PieceStorage> storages, List<Conveyor> conveyors, List<AGVS> vehicles,
+            long journalSequence) {
+        this.storages = List.copyOf(storages);
+        this.conveyors = List.copyOf(conveyors);
+        this.vehicles = List.copyOf(vehicles);
+        this.journalSequence = journalSequence;
+    }
+
+    /**
+     * Get the storages of pieces.
+     *
+     * @return an unmodifiable list of the storages
+     */
+    public List<PieceStorage> getStorages() {
+        return storages;
+    }
+
+    /**
+     * Get the conveyors bringing pieces into the warehouse.
+     *
+     * @return an unmodifiable list of the conveyors
+     */
+    public List<Conveyor> getConveyors() {
+        return conveyors;
+    }
+
+    /**
+     * Get the vehicles moving the pieces.
+     *
+     * @return an unmodifiable list of the vehicles
+     */
+    public List<AGVS> getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Get the number of journal records whose changes are included in this state,
+     * so recovery only replays the records after them.
+     *
+     * @return the journal sequence of this state
+     */
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+}
@@ -0,0 +1,80 @@
+package warehouse.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import warehouse.Position;
+import warehouse.concurrent.DrainableQueue;
+import warehouse.concurrent.StripedQueue;
+
+/**
+ * A storage that many vehicles can use at the same time.
+ *
+ * Objects are kept in a striped queue, so vehicles in different threads storing objects
+ * at the same time rarely wait for each other. Objects are not removed in the order they were stored.
+ * Children classes can keep the objects in another thread-safe queue, like a queue indexed by key.
+ *
+ * @param <E> generic type of the objects that this storage can store
+ */
+public class ConcurrentStorage<E> extends Storage<E> {
+
+    /**
+     * The thread-safe queue of objects, the same queue as {@code objects}.
+     */
+    private final DrainableQueue<E> queue;
+
+    /**
+     * Create an empty concurrent storage.
+     *
+     * @param position the position of this storage in the warehouse
+     */
+    public ConcurrentStorage(Position position) {
+        this(position, new StripedQueue<>());
+    }
+
+    /**
+     * Create an empty concurrent storage keeping its objects in a specific thread-safe queue.
+     *
+     * @param position the position of this storage in the warehouse
+     * @param queue the empty queue where objects are stored
+     */
+    protected ConcurrentStorage(Position position, DrainableQueue<E> queue) {
+        super(position, queue);
+
+        this.queue = queue;
+    }
+
+    /**
+     * Adds many objects to this storage, locking a striped queue only once.
+     *
+     * @param objects the objects to store
+     */
+    @Override
+    public void storeAll(Collection<? extends E> objects) {
+        queue.addAll(objects);
+
+        for (E object : objects) {
+            stored(object);
+        }
+    }
+
+    /**
+     * Removes every object of this storage, locking each stripe only once.
+     *
+     * @param target the collection where removed objects are added
+     * @return the number of objects removed
+     */
+    @Override
+    public int drainTo(Collection<? super E> target) {
+        List<E> drained = new ArrayList<>(queue.size());
+        queue.drainTo(drained);
+
+        for (E object : drained) {
+            removed(object);
+        }
+        target.addAll(drained);
+
+        return drained.size();
+    }
+}
@@ -0,0 +1,634 @@
+package warehouse.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import warehouse.Color;
+import warehouse.pieces.Piece;
+import warehouse.pieces.Shape;
+import warehouse.pieces.compact.CompactPieces;
+
+/**
+ * An inverted index of the pieces of many storages, to find pieces by color, shape and price
+ * without going through every piece.
+ *
+ * Each piece takes a slot, and there is a bitset over the slots for each color. Slots are grouped in pages of 64,
+ * one word of each bitset, and every page only has pieces of one price and one shape. A sorted price index
+ * keeps the pages of each price and shape, so a query only reads the pages of the prices and the shape it asks for,
+ * and combines the colors of 64 pieces at once with a single AND of their words. A query takes time proportional
+ * to the pieces found, plus one word for each 64 pieces of its shape in its price range, whatever the size
+ * of the inventory.
+ *
+ * The index is updated each time a tracked storage stores or removes a piece. Slots of removed pieces
+ * are reused, and pages left empty are given to other prices. The slot of each piece is found in a hash table
+ * of open addressing over the slots, so updating the index creates no object.
+ *
+ * Many vehicles can store pieces and many threads can query the index at the same time. The index is split
+ * in a stripe for each shape, with its own pages, price index and lock: updates of a shape are serialized
+ * by the write lock of its stripe, so vehicles storing pieces of different shapes don't wait for each other,
+ * and queries share a read lock. A query of any shape reads the stripes one after the other, so it may see
+ * the updates of some shapes and not of others.
+ */
+public class InventoryIndex {
+
+    /**
+     * All the colors, cached because {@code Color.values()} creates a new array each time.
+     */
+    private static final Color[] COLORS = Color.values();
+
+    /**
+     * All the shapes, cached because {@code Shape.values()} creates a new array each time.
+     */
+    private static final Shape[] SHAPES = Shape.values();
+
+    /**
+     * Initial number of pages of each stripe before the bitsets grow.
+     */
+    private static final int INITIAL_PAGES = 16;
+
+    /**
+     * The stripe of each shape, indexed by shape ordinal.
+     */
+    private final Stripe[] stripes = new Stripe[SHAPES.length];
+
+    /**
+     * Create an empty index, without any tracked storage.
+     */
+    public InventoryIndex() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Index the pieces of a storage, and every piece it stores or removes from now on.
+     *
+     * Storages should be tracked before vehicles start using them,
+     * so no piece is removed while the pieces already stored are indexed.
+     *
+     * @param storage the storage to track
+     */
+    public void track(PieceStorage storage) {
+        storage.setIndex(this);
+
+        for (Piece piece : storage.getObjects()) {
+            add(piece);
+        }
+    }
+
+    /**
+     * Stop indexing the pieces of a storage, removing its pieces from this index.
+     *
+     * @param storage the storage to stop tracking
+     */
+    public void untrack(PieceStorage storage) {
+        storage.setIndex(null);
+
+        for (Piece piece : storage.getObjects()) {
+            remove(piece);
+        }
+    }
+
+    /**
+     * Get the number of indexed pieces.
+     *
+     * @return the number of pieces in the tracked storages
+     */
+    public int getSize() {
+        int size = 0;
+
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Find the pieces of a shape, painted with a color, with a price in a range.
+     *
+     * @param shape the shape of the pieces, or null for any shape
+     * @param color a color the pieces must be painted with, or null for any colors
+     * @param minPrice the lowest price, inclusive
+     * @param maxPrice the highest price, inclusive
+     * @return the pieces found, in no particular order
+     */
+    public List<Piece> find(Shape shape, Color color, int minPrice, int maxPrice) {
+        List<Piece> found = new ArrayList<>();
+
+        if (minPrice > maxPrice) {
+            return found;
+        }
+
+        if (shape != null) {
+            stripes[shape.ordinal()].find(color, minPrice, maxPrice, found);
+        } else {
+            for (Stripe stripe : stripes) {
+                stripe.find(color, minPrice, maxPrice, found);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Count the pieces of a shape, painted with a color, with a price in a range.
+     *
+     * @param shape the shape of the pieces, or null for any shape
+     * @param color a color the pieces must be painted with, or null for any colors
+     * @param minPrice the lowest price, inclusive
+     * @param maxPrice the highest price, inclusive
+     * @return the number of pieces found
+     */
+    public long count(Shape shape, Color color, int minPrice, int maxPrice) {
+        if (minPrice > maxPrice) {
+            return 0;
+        }
+
+        if (shape != null) {
+            return stripes[shape.ordinal()].count(color, minPrice, maxPrice);
+        }
+
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.count(color, minPrice, maxPrice);
+        }
+        return count;
+    }
+
+    /**
+     * Add a piece stored in a tracked storage.
+     *
+     * @param piece the stored piece
+     */
+    void add(Piece piece) {
+        stripes[piece.getShape().ordinal()].add(piece);
+    }
+
+    /**
+     * Remove a piece removed from a tracked storage.
+     *
+     * @param piece the removed piece
+     */
+    void remove(Piece piece) {
+        stripes[piece.getShape().ordinal()].remove(piece);
+    }
+
+    /**
+     * Hash of a piece, with the bits of its identity hash code spread over the buckets of a hash table.
+     *
+     * @param piece the piece
+     * @return the hash of the piece
+     */
+    private static int hash(Piece piece) {
+        int h = System.identityHashCode(piece) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Set a value of an array, growing it if it is full.
+     *
+     * @param array the array
+     * @param index the index of the value
+     * @param value the value
+     * @return the array, or a larger copy of it
+     */
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, Math.max(4, array.length * 2));
+        }
+        array[index] = value;
+        return array;
+    }
+
+    /**
+     * The index of the pieces of a shape: slots of pieces grouped in pages, a bitset of the slots of each color,
+     * the pages of each price, and a hash table from the pieces to their slots.
+     */
+    private static final class Stripe {
+
+        /**
+         * Lock guarding every structure of this stripe.
+         */
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * Piece of each slot, null if the slot is free.
+         */
+        private Piece[] pieces = new Piece[INITIAL_PAGES * Long.SIZE];
+
+        /**
+         * Hash of the piece of each slot, kept so the hash table can be rebuilt without hashing the pieces again.
+         */
+        private int[] hashes = new int[INITIAL_PAGES * Long.SIZE];
+
+        /**
+         * Hash table of open addressing with linear probing, holding the slot of each piece plus one,
+         * or 0 in empty buckets.
+         */
+        private int[] table = new int[INITIAL_PAGES * Long.SIZE];
+
+        /**
+         * Number of indexed pieces.
+         */
+        private int size;
+
+        /**
+         * Bitset of the slots with a piece.
+         */
+        private long[] used = new long[INITIAL_PAGES];
+
+        /**
+         * Bitset of the slots of each color, indexed by color ordinal.
+         */
+        private long[][] colorBits = new long[COLORS.length][INITIAL_PAGES];
+
+        /**
+         * Position of each page in the list of pages of its price.
+         */
+        private int[] pagePosition = new int[INITIAL_PAGES];
+
+        /**
+         * Position of each page in the list of open pages of its price, or -1 if the page is full.
+         */
+        private int[] openPosition = new int[INITIAL_PAGES];
+
+        /**
+         * Number of pages ever used.
+         */
+        private int pageCount;
+
+        /**
+         * Pages left empty that can be used again.
+         */
+        private int[] freePages = new int[INITIAL_PAGES];
+
+        /**
+         * Number of empty pages that can be used again.
+         */
+        private int freePageCount;
+
+        /**
+         * Pages of each price, sorted by price.
+         */
+        private final NavigableMap<Integer, PricePages> prices = new TreeMap<>();
+
+        /**
+         * Add the pieces painted with a color, with a price in a range, to a list.
+         *
+         * @param color a color the pieces must be painted with, or null for any colors
+         * @param minPrice the lowest price, inclusive
+         * @param maxPrice the highest price, inclusive, not lower than the lowest price
+         * @param found the list where the pieces found are added
+         */
+        private void find(Color color, int minPrice, int maxPrice, List<Piece> found) {
+            lock.readLock().lock();
+            try {
+                for (PricePages price : prices.subMap(minPrice, true, maxPrice, true).values()) {
+                    for (int i = 0; i < price.count; i++) {
+                        int page = price.pages[i];
+
+                        // Go through the slots of the pieces matching every condition, lowest first
+                        for (long bits = match(page, color); bits != 0; bits &= bits - 1) {
+                            found.add(pieces[page * Long.SIZE + Long.numberOfTrailingZeros(bits)]);
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Count the pieces painted with a color, with a price in a range.
+         *
+         * @param color a color the pieces must be painted with, or null for any colors
+         * @param minPrice the lowest price, inclusive
+         * @param maxPrice the highest price, inclusive, not lower than the lowest price
+         * @return the number of pieces found
+         */
+        private long count(Color color, int minPrice, int maxPrice) {
+            long count = 0;
+
+            lock.readLock().lock();
+            try {
+                for (PricePages price : prices.subMap(minPrice, true, maxPrice, true).values()) {
+                    for (int i = 0; i < price.count; i++) {
+                        count += Long.bitCount(match(price.pages[i], color));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            return count;
+        }
+
+        /**
+         * Get the slots of a page with a piece of a color.
+         *
+         * Must be called with the lock held.
+         *
+         * @param page the page
+         * @param color a color of the pieces, or null for any colors
+         * @return a word with the bit of each matching slot of the page
+         */
+        private long match(int page, Color color) {
+            long bits = used[page];
+            if (color != null) {
+                bits &= colorBits[color.ordinal()][page];
+            }
+            return bits;
+        }
+
+        /**
+         * Add a piece, if it is not indexed yet.
+         *
+         * @param piece the piece
+         */
+        private void add(Piece piece) {
+            int price = piece.getPrice();
+            int colors = CompactPieces.colorMask(piece);
+            int hash = hash(piece);
+
+            lock.writeLock().lock();
+            try {
+                if (find(piece, hash) >= 0) {
+                    return;
+                }
+
+                PricePages pages = prices.computeIfAbsent(price, p -> new PricePages());
+                int page = pages.openCount > 0 ? pages.open[pages.openCount - 1] : newPage(pages);
+
+                int bit = Long.numberOfTrailingZeros(~used[page]);
+                long mask = 1L << bit;
+
+                used[page] |= mask;
+                for (int c = 0; c < COLORS.length; c++) {
+                    if ((colors & (1 << c)) != 0) {
+                        colorBits[c][page] |= mask;
+                    }
+                }
+
+                // The table may be rebuilt from the pieces of the slots, so the slot is filled after inserting it
+                int slot = page * Long.SIZE + bit;
+                insert(slot, hash);
+                pieces[slot] = piece;
+                hashes[slot] = hash;
+
+                if (used[page] == -1L) {
+                    close(pages, page);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Remove a piece, if it is indexed.
+         *
+         * @param piece the piece
+         */
+        private void remove(Piece piece) {
+            int price = piece.getPrice();
+            int hash = hash(piece);
+
+            lock.writeLock().lock();
+            try {
+                int bucket = find(piece, hash);
+                if (bucket < 0) {
+                    return;
+                }
+
+                int slot = table[bucket] - 1;
+                delete(bucket);
+
+                int page = slot / Long.SIZE;
+                long mask = ~(1L << slot);
+                boolean wasFull = used[page] == -1L;
+
+                used[page] &= mask;
+                for (long[] bits : colorBits) {
+                    bits[page] &= mask;
+                }
+                pieces[slot] = null;
+
+                PricePages pages = prices.get(price);
+                if (used[page] == 0) {
+                    release(pages, page);
+                    if (pages.count == 0) {
+                        prices.remove(price);
+                    }
+                } else if (wasFull) {
+                    open(pages, page);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Find the bucket of a piece in the hash table.
+         *
+         * @param piece the piece
+         * @param hash the hash of the piece
+         * @return the bucket of the slot of the piece, or -1 if the piece is not indexed
+         */
+        private int find(Piece piece, int hash) {
+            int tableMask = table.length - 1;
+
+            for (int bucket = hash & tableMask; table[bucket] != 0; bucket = (bucket + 1) & tableMask) {
+                if (pieces[table[bucket] - 1] == piece) {
+                    return bucket;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Add a slot to the hash table, growing it if it becomes half full.
+         *
+         * @param slot the slot
+         * @param hash the hash of its piece
+         */
+        private void insert(int slot, int hash) {
+            if ((size + 1) * 2 > table.length) {
+                rehash(table.length * 2);
+            }
+
+            int tableMask = table.length - 1;
+            int bucket = hash & tableMask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & tableMask;
+            }
+            table[bucket] = slot + 1;
+            size++;
+        }
+
+        /**
+         * Empty a bucket of the hash table, moving back the next slots of its probe sequence,
+         * so every slot can still be found without marks of deleted buckets.
+         *
+         * @param bucket the bucket
+         */
+        private void delete(int bucket) {
+            int tableMask = table.length - 1;
+            int hole = bucket;
+
+            for (int i = (bucket + 1) & tableMask; table[i] != 0; i = (i + 1) & tableMask) {
+                int ideal = hashes[table[i] - 1] & tableMask;
+
+                // Move the slot to the hole if the hole is between its ideal bucket and its bucket
+                if (((i - ideal) & tableMask) >= ((i - hole) & tableMask)) {
+                    table[hole] = table[i];
+                    hole = i;
+                }
+            }
+            table[hole] = 0;
+            size--;
+        }
+
+        /**
+         * Build the hash table again with another size.
+         *
+         * @param capacity the number of buckets, a power of two
+         */
+        private void rehash(int capacity) {
+            table = new int[capacity];
+            int tableMask = capacity - 1;
+
+            for (int slot = 0; slot < pageCount * Long.SIZE; slot++) {
+                if (pieces[slot] != null) {
+                    int bucket = hashes[slot] & tableMask;
+                    while (table[bucket] != 0) {
+                        bucket = (bucket + 1) & tableMask;
+                    }
+                    table[bucket] = slot + 1;
+                }
+            }
+        }
+
+        /**
+         * Give a page to a price, reusing an empty page if there is one.
+         *
+         * @param pages the pages of the price
+         * @return the new page, which is open
+         */
+        private int newPage(PricePages pages) {
+            int page;
+            if (freePageCount > 0) {
+                page = freePages[--freePageCount];
+            } else {
+                if (pageCount == used.length) {
+                    grow(pageCount * 2);
+                }
+                page = pageCount++;
+            }
+
+            pages.pages = append(pages.pages, pages.count, page);
+            pagePosition[page] = pages.count++;
+
+            openPosition[page] = -1;
+            open(pages, page);
+            return page;
+        }
+
+        /**
+         * Give back an empty page of a price, so it can be used by any price.
+         *
+         * @param pages the pages of the price
+         * @param page the empty page
+         */
+        private void release(PricePages pages, int page) {
+            close(pages, page);
+
+            // Move the last page of the price to the place of the released one
+            int position = pagePosition[page];
+            int last = pages.pages[--pages.count];
+            pages.pages[position] = last;
+            pagePosition[last] = position;
+
+            freePages = append(freePages, freePageCount++, page);
+        }
+
+        /**
+         * Add a page with a free slot to the open pages of its price.
+         *
+         * @param pages the pages of the price
+         * @param page the page
+         */
+        private void open(PricePages pages, int page) {
+            pages.open = append(pages.open, pages.openCount, page);
+            openPosition[page] = pages.openCount++;
+        }
+
+        /**
+         * Remove a page from the open pages of its price, if it is there.
+         *
+         * @param pages the pages of the price
+         * @param page the page
+         */
+        private void close(PricePages pages, int page) {
+            int position = openPosition[page];
+            if (position < 0) {
+                return;
+            }
+
+            int last = pages.open[--pages.openCount];
+            pages.open[position] = last;
+            openPosition[last] = position;
+            openPosition[page] = -1;
+        }
+
+        /**
+         * Grow the bitsets and the arrays of slots and pages.
+         *
+         * @param capacity the new number of pages
+         */
+        private void grow(int capacity) {
+            pieces = Arrays.copyOf(pieces, capacity * Long.SIZE);
+            hashes = Arrays.copyOf(hashes, capacity * Long.SIZE);
+            used = Arrays.copyOf(used, capacity);
+            for (int i = 0; i < colorBits.length; i++) {
+                colorBits[i] = Arrays.copyOf(colorBits[i], capacity);
+            }
+            pagePosition = Arrays.copyOf(pagePosition, capacity);
+            openPosition = Arrays.copyOf(openPosition, capacity);
+        }
+    }
+
+    /**
+     * The pages of the pieces of a price in a stripe.
+     */
+    private static final class PricePages {
+
+        /**
+         * Every page of the price.
+         */
+        private int[] pages = new int[4];
+
+        /**
+         * Number of pages of the price.
+         */
+        private int count;
+
+        /**
+         * Pages of the price with some free slot.
+         */
+        private int[] open = new int[4];
+
+        /**
+         * Number of pages with some free slot.
+         */
+        private int openCount;
+    }
+}
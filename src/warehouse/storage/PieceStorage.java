@@ -1,44 +1,316 @@
 package warehouse.storage;
 
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import warehouse.Color;
 import warehouse.Position;
+import warehouse.concurrent.KeyedStripedQueue;
+import warehouse.metrics.Metrics;
+import warehouse.metrics.StorageMetrics;
 import warehouse.pieces.Piece;
+import warehouse.pieces.Shape;
+import warehouse.snapshot.Journal;
 
 /**
  * A Storage of pieces with a name.
+ *
+ * Many vehicles can deliver pieces to the same piece storage at the same time.
+ *
+ * Totals of the stored pieces are updated each time a piece is stored or removed,
+ * so they can be read at any moment without going through every piece.
+ *
+ * Pieces are kept in a queue indexed by their reference, so a piece can be found and removed by its reference
+ * in constant time, without creating any object, however many pieces this storage has.
  */
-public class PieceStorage extends Storage<Piece> {
-    
+public class PieceStorage extends ConcurrentStorage<Piece> {
+
+    /**
+     * All the colors, cached because {@code Color.values()} creates a new array each time.
+     */
+    private static final Color[] COLORS = Color.values();
+
     /**
      * Name of this storage.
      */
     private String name;
 
+    /**
+     * The queue of pieces indexed by reference, the same queue as {@code objects}.
+     */
+    private final KeyedStripedQueue<Piece> pieces;
+
+    /**
+     * Sum of the prices of the stored pieces.
+     *
+     * LongAdder counters are used for every total so vehicles storing pieces at the same time
+     * don't compete to update the same value.
+     */
+    private final LongAdder totalPrice = new LongAdder();
+
+    /**
+     * Number of stored pieces of each shape, indexed by shape ordinal.
+     */
+    private final LongAdder[] countByShape = newCounters(Shape.values().length);
+
+    /**
+     * Number of stored pieces painted with each color, indexed by color ordinal.
+     */
+    private final LongAdder[] countByColor = newCounters(COLORS.length);
+
+    /**
+     * Number of stored pieces with each price, sorted by price.
+     *
+     * There are only a few different prices, so finding the lowest and highest price with some piece is fast.
+     */
+    private final ConcurrentSkipListMap<Integer, LongAdder> countByPrice = new ConcurrentSkipListMap<>();
+
+    /**
+     * Metrics of this storage, or null if metrics are disabled.
+     */
+    private final StorageMetrics metrics;
+
+    /**
+     * Journal recording the pieces stored and removed, or null if changes are not journaled.
+     */
+    private volatile Journal journal;
+
+    /**
+     * Inventory index of the pieces of this storage, or null if this storage is not tracked by an index.
+     */
+    private volatile InventoryIndex index;
+
     /**
      * Create a new storage of pieces.
-     * 
+     *
      * @param name the name of this storage
      * @param position the position of this storage in the warehouse
      */
     public PieceStorage(String name, Position position) {
-        super(position);
-        
+        this(name, position, new KeyedStripedQueue<>(Piece::getReference));
+    }
+
+    /**
+     * Create a new storage of pieces using a queue indexed by reference.
+     *
+     * @param name the name of this storage
+     * @param position the position of this storage in the warehouse
+     * @param pieces the empty queue where pieces are stored
+     */
+    private PieceStorage(String name, Position position, KeyedStripedQueue<Piece> pieces) {
+        super(position, pieces);
+
         this.name = name;
+        this.pieces = pieces;
+
+        metrics = Metrics.isEnabled() ? Metrics.register("Storage", name, new StorageMetrics(this)) : null;
+    }
+
+    /**
+     * Create some counters.
+     *
+     * @param count the number of counters
+     * @return an array of new counters
+     */
+    private static LongAdder[] newCounters(int count) {
+        LongAdder[] counters = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
     }
-    
+
+    /**
+     * Get the name of this storage.
+     *
+     * @return the name of this storage
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks if this storage has a piece with a reference.
+     *
+     * @param reference the reference of the piece
+     * @return true if some stored piece has that reference, false otherwise
+     */
+    public boolean contains(int reference) {
+        return pieces.containsKey(reference);
+    }
+
+    /**
+     * Removes a piece by its reference, like for an outbound order.
+     *
+     * If many pieces have the same reference, like pieces of different shapes,
+     * the one stored first is removed.
+     *
+     * @param reference the reference of the piece
+     * @return the removed piece, or null if no stored piece has that reference
+     */
+    public Piece remove(int reference) {
+        Piece piece = pieces.removeKey(reference);
+
+        if (piece != null) {
+            removed(piece);
+        }
+
+        return piece;
+    }
+
+    /**
+     * Record every piece stored in and removed from this storage in a journal, so the changes
+     * after the last snapshot can be recovered.
+     *
+     * With a synchronous journal, storing or removing a piece returns once its record is durable.
+     *
+     * @param journal the journal, or null to stop recording changes
+     */
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Set the inventory index updated with each piece stored and removed, called by the index when it tracks
+     * this storage.
+     *
+     * @param index the index, or null to stop updating it
+     */
+    void setIndex(InventoryIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Add a stored piece to the totals of this storage.
+     *
+     * @param piece the stored piece
+     */
+    @Override
+    protected void stored(Piece piece) {
+        update(piece, 1);
+
+        if (metrics != null) {
+            metrics.stored();
+        }
+
+        InventoryIndex index = this.index;
+        if (index != null) {
+            index.add(piece);
+        }
+
+        Journal journal = this.journal;
+        if (journal != null) {
+            journal.stored(this, piece);
+        }
+
+        super.stored(piece);
+    }
+
+    /**
+     * Subtract a removed piece from the totals of this storage.
+     *
+     * @param piece the removed piece
+     */
+    @Override
+    protected void removed(Piece piece) {
+        update(piece, -1);
+
+        InventoryIndex index = this.index;
+        if (index != null) {
+            index.remove(piece);
+        }
+
+        Journal journal = this.journal;
+        if (journal != null) {
+            journal.removed(this, piece);
+        }
+
+        super.removed(piece);
+    }
+
+    /**
+     * Update the totals of this storage with a piece.
+     *
+     * @param piece the piece stored or removed
+     * @param count 1 if the piece has been stored, -1 if the piece has been removed
+     */
+    private void update(Piece piece, int count) {
+        int price = piece.getPrice();
+
+        totalPrice.add(count * price);
+        countByShape[piece.getShape().ordinal()].add(count);
+
+        for (Color color : COLORS) {
+            if (piece.hasColor(color)) {
+                countByColor[color.ordinal()].add(count);
+            }
+        }
+
+        countByPrice.computeIfAbsent(price, p -> new LongAdder()).add(count);
+    }
+
     /**
      * Calculate the total price of this storage of pieces.
-     * 
+     *
      * @return sum of prices for all pieces in this storage
      */
-    public int getTotalPrice() {
-        // create a list of prices for each piece in this storage using the getPrice method reference from Piece
-        // then sum every number in the list to get the total price of the pieces stored in this storage
-        return objects.stream().mapToInt(Piece::getPrice).sum();
+    public long getTotalPrice() {
+        return totalPrice.sum();
+    }
+
+    /**
+     * Number of pieces of a shape in this storage.
+     *
+     * @param shape the shape of the pieces to count
+     * @return the number of stored pieces with that shape
+     */
+    public long getCount(Shape shape) {
+        return countByShape[shape.ordinal()].sum();
     }
-    
+
+    /**
+     * Number of pieces painted with a color in this storage.
+     *
+     * @param color the color of the pieces to count
+     * @return the number of stored pieces painted with that color
+     */
+    public long getCount(Color color) {
+        return countByColor[color.ordinal()].sum();
+    }
+
+    /**
+     * Get the price of the cheapest piece in this storage.
+     *
+     * @return the lowest price of a stored piece, or an empty value if this storage is empty
+     */
+    public OptionalInt getMinPrice() {
+        for (Map.Entry<Integer, LongAdder> entry : countByPrice.entrySet()) {
+            if (entry.getValue().sum() > 0) {
+                return OptionalInt.of(entry.getKey());
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+    /**
+     * Get the price of the most expensive piece in this storage.
+     *
+     * @return the highest price of a stored piece, or an empty value if this storage is empty
+     */
+    public OptionalInt getMaxPrice() {
+        for (Map.Entry<Integer, LongAdder> entry : countByPrice.descendingMap().entrySet()) {
+            if (entry.getValue().sum() > 0) {
+                return OptionalInt.of(entry.getKey());
+            }
+        }
+        return OptionalInt.empty();
+    }
+
     /**
      * Get a String representation of this storage.
-     * 
+     *
      * @return a String representation of this storage with its name, list of pieces and total price
      */
     @Override
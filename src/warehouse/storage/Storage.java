@@ -1,22 +1,29 @@
 package warehouse.storage;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 
 import warehouse.Position;
 import warehouse.Positionable;
+import warehouse.event.EventBus;
+import warehouse.event.EventType;
 
 /**
  * A storage bin located in a position in the warehouse that can store objects of type E.
  * 
+ * This storage is not thread-safe, {@code ConcurrentStorage} can be used by many threads at the same time.
+ * 
  * @param <E> generic type of the objects that this storage can store
  */
 public class Storage<E> implements Positionable {
 
     /**
-     * List of objects of type E stored in this storage.
+     * Queue of objects of type E stored in this storage.
      */
-    protected List<E> objects;
+    protected Queue<E> objects;
 
     /**
      * Position of this storage in the warehouse.
@@ -29,8 +36,22 @@ public class Storage<E> implements Positionable {
      * @param position the position of this storage in the warehouse
      */
     public Storage(Position position) {
+        // LinkedList implements the Java interface Queue
+        this(position, new LinkedList<>());
+    }
+
+    /**
+     * Create an empty storage keeping its objects in a specific queue.
+     * 
+     * This constructor is called from children classes,
+     * that's why this constructor has a protected visibility.
+     * 
+     * @param position the position of this storage in the warehouse
+     * @param objects the empty queue where objects are stored
+     */
+    protected Storage(Position position, Queue<E> objects) {
         this.position = position;
-        objects = new LinkedList<>();
+        this.objects = objects;
     }
 
     /**
@@ -41,23 +62,91 @@ public class Storage<E> implements Positionable {
     public void store(E object) {
         objects.add(object);
 
-        System.out.println(object + " stored at " + position);
+        stored(object);
+    }
+
+    /**
+     * Adds many objects to this storage.
+     * 
+     * @param objects the objects to store
+     */
+    public void storeAll(Collection<? extends E> objects) {
+        for (E object : objects) {
+            store(object);
+        }
     }
     
     /**
-     * Removes an object from this storage.
+     * Removes an object from this storage, the one at the head of its queue.
      * 
-     * @return the first object stored at this storage
+     * A storage removes its objects in the order they were stored, but a concurrent storage keeping them in
+     * a striped queue removes the oldest object of one of its stripes, not always the first object stored.
+     * 
+     * @return the object at the head of the queue of this storage
      * 
      * @throws IllegalStateException if this storage is empty
      */
     public E remove() throws IllegalStateException {
-        if (isEmpty()) {
+        E object = objects.poll();
+
+        if (object == null) {
             throw new IllegalStateException("Storage is empty!");
         }
-        return objects.remove(0);
+
+        removed(object);
+
+        return object;
+    }
+
+    /**
+     * Removes every object of this storage.
+     * 
+     * @param target the collection where removed objects are added
+     * @return the number of objects removed
+     */
+    public int drainTo(Collection<? super E> target) {
+        int count = 0;
+
+        E object;
+        while ((object = objects.poll()) != null) {
+            removed(object);
+            target.add(object);
+            count++;
+        }
+
+        return count;
     }
 
+    /**
+     * Get the objects of this storage without removing them.
+     * 
+     * @return a copy of the objects stored, in the order they would be removed
+     */
+    public List<E> getObjects() {
+        return new ArrayList<>(objects);
+    }
+
+    /**
+     * Called after an object has been added to this storage.
+     * 
+     * Children classes can override this method to keep track of the stored objects,
+     * calling this implementation that publishes the event of the stored object.
+     * 
+     * @param object the stored object
+     */
+    protected void stored(E object) {
+        EventBus.getDefault().publish(EventType.PIECE_STORED, this, object, position, 0);
+    }
+
+    /**
+     * Called after an object has been removed from this storage.
+     * 
+     * Children classes can override this method to keep track of the stored objects.
+     * 
+     * @param object the removed object
+     */
+    protected void removed(E object) {}
+
     /**
      * Number of objects stored in this storage.
      * 
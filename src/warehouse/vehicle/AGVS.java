@@ -1,13 +1,35 @@
 package warehouse.vehicle;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import warehouse.ChargingStation;
 import warehouse.Conveyor;
 import warehouse.Position;
+import warehouse.event.EventBus;
+import warehouse.event.EventType;
+import warehouse.fleet.Assignment;
+import warehouse.fleet.Dispatcher;
+import warehouse.map.ReservationTable;
+import warehouse.map.TourPlanner;
+import warehouse.map.WarehouseMap;
+import warehouse.metrics.Metrics;
+import warehouse.metrics.VehicleMetrics;
 import warehouse.pieces.Piece;
 
 /**
- * An Automated Guided Vehicle System that can load one piece from a conveyor
- * picking point and then, autonomously, go to the storage where the piece needs
- * to be stored, storing it and returning back to the picking point to process the next piece.
+ * An Automated Guided Vehicle System that can load pieces from a conveyor
+ * picking point and then, autonomously, go to the storage where each piece needs
+ * to be stored, storing them and returning back to the picking point to process the next pieces.
+ *
+ * By default an AGVS carries one piece at a time. An AGVS with more capacity loads as many pieces as it can
+ * in one visit to the picking point and plans a route visiting the storages of all of them.
  */
 public class AGVS extends ElectricVehicle {
     
@@ -22,11 +44,37 @@ public class AGVS extends ElectricVehicle {
      * Each move costs this amount of charge from the battery of the AGVS.
      */
     private static final int MOVE_BATTERY_CONSUMPTION = 100;
+
+    /**
+     * Number of moves of an AGVS with a full battery.
+     */
+    public static final int RANGE = MAX_BATTERY / MOVE_BATTERY_CONSUMPTION;
     
     /**
      * Time is simulated stopping the current thread for this amount of milliseconds.
+     * 
+     * With 0 the current thread is not stopped at all, so a simulation with a virtual clock
+     * can do millions of moves per second.
      */
     private static final int MOVE_TIME = 0;
+
+    /**
+     * Ticks this AGVS waits for a reserved cell before trying to go around it.
+     */
+    private static final int MAX_WAIT_TICKS = 3;
+
+    /**
+     * Milliseconds an AGVS at a full charging station waits for a free slot in each step.
+     *
+     * The wait is bounded, so a scheduler running several vehicles in the same thread
+     * still advances the vehicle that will free the slot.
+     */
+    private static final int SLOT_WAIT_TIME = 1;
+
+    /**
+     * Number of pieces this AGVS can carry if no capacity is given.
+     */
+    public static final int DEFAULT_CAPACITY = 1;
     
     /**
      * An identifier for this AGVS.
@@ -39,9 +87,71 @@ public class AGVS extends ElectricVehicle {
     private Position position;
 
     /**
-     * Current piece loaded into this vehicle.
+     * Maximum number of pieces loaded into this vehicle at the same time.
+     */
+    private int capacity = DEFAULT_CAPACITY;
+
+    /**
+     * Current pieces loaded into this vehicle.
+     */
+    private final List<Piece> load = new ArrayList<>();
+
+    /**
+     * Storage positions still to visit with the loaded pieces, in route order.
+     */
+    private final Deque<Position> stops = new ArrayDeque<>();
+
+    /**
+     * Pieces assigned to this vehicle by a dispatcher, waiting to be loaded at the picking point.
+     */
+    private Assignment assignment = Assignment.NONE;
+
+    /**
+     * Whether this vehicle is charging in a slot of a charging station.
+     */
+    private boolean charging;
+
+    /**
+     * Whether this vehicle is at a charging station waiting for a free slot.
+     */
+    private boolean queued;
+
+    /**
+     * Map of the warehouse floor used to find routes around obstacles, or null to move straight to the target.
+     */
+    private WarehouseMap map;
+
+    /**
+     * Reservations of the cells of the map shared by all vehicles, or null if vehicles can go through each other.
+     */
+    private ReservationTable reservations;
+
+    /**
+     * Plans the order to visit the storages of the loaded pieces.
+     */
+    private TourPlanner planner;
+
+    /**
+     * Steps this AGVS can still move off its route going around other vehicles, without running out of battery
+     * before it reaches a charging station after its work. Only limited for the assignments of a dispatcher.
+     */
+    private int spare = Integer.MAX_VALUE;
+
+    /**
+     * Tick when this AGVS started waiting for a reserved cell, or -1 if it is not waiting.
+     */
+    private long waitingSince = -1;
+
+    /**
+     * Metrics of this AGVS, or null if metrics are disabled.
      */
-    private Piece load;
+    private final VehicleMetrics metrics;
+
+    /**
+     * Time when this AGVS got its current work from a dispatcher, from {@code System.nanoTime},
+     * or -1 if it has not got any. Only measured with metrics.
+     */
+    private long busySince = -1;
 
     /**
      * Create a new Automated Guided Vehicle System (AGVS) located in an initial position.
@@ -55,6 +165,91 @@ public class AGVS extends ElectricVehicle {
         
         this.id = id;
         position = initialPosition;
+        planner = new TourPlanner(null);
+
+        metrics = Metrics.isEnabled()
+                ? Metrics.register("Vehicle", "AGVS " + id, new VehicleMetrics(this::getCurrentBattery))
+                : null;
+    }
+
+    /**
+     * Create a new Automated Guided Vehicle System (AGVS) that follows the routes of a warehouse map.
+     * This AGVS has a battery of {@code MAX_BATTERY} mAh.
+     * 
+     * @param id an identifier for this vehicle
+     * @param initialPosition the initial position for this vehicle
+     * @param map the map of the warehouse floor
+     */
+    public AGVS(int id, Position initialPosition, WarehouseMap map) {
+        this(id, initialPosition);
+
+        this.map = map;
+        planner = new TourPlanner(map);
+    }
+
+    /**
+     * Create a new Automated Guided Vehicle System (AGVS) that follows the routes of a map
+     * reserving each cell before moving into it, so it never collides with other vehicles.
+     * This AGVS has a battery of {@code MAX_BATTERY} mAh.
+     * 
+     * @param id an identifier for this vehicle
+     * @param initialPosition the initial position for this vehicle
+     * @param reservations the reservations of the cells of the map, shared by all vehicles
+     */
+    public AGVS(int id, Position initialPosition, ReservationTable reservations) {
+        this(id, initialPosition, reservations.getMap());
+
+        this.reservations = reservations;
+    }
+
+    /**
+     * Create a new Automated Guided Vehicle System (AGVS) that carries many pieces at the same time,
+     * following the routes of a map and reserving each cell before moving into it.
+     * This AGVS has a battery of {@code MAX_BATTERY} mAh.
+     * 
+     * @param id an identifier for this vehicle
+     * @param initialPosition the initial position for this vehicle
+     * @param reservations the reservations of the cells of the map, shared by all vehicles
+     * @param capacity the maximum number of pieces loaded at the same time
+     * 
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public AGVS(int id, Position initialPosition, ReservationTable reservations, int capacity)
+            throws IllegalArgumentException {
+        this(id, initialPosition, reservations);
+
+        setCapacity(capacity);
+    }
+
+    /**
+     * Create a new Automated Guided Vehicle System (AGVS) located in an initial position
+     * that carries many pieces at the same time.
+     * This AGVS has a battery of {@code MAX_BATTERY} mAh.
+     * 
+     * @param id an identifier for this vehicle
+     * @param initialPosition the initial position for this vehicle
+     * @param capacity the maximum number of pieces loaded at the same time
+     * 
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public AGVS(int id, Position initialPosition, int capacity) throws IllegalArgumentException {
+        this(id, initialPosition);
+
+        setCapacity(capacity);
+    }
+
+    /**
+     * Set the maximum number of pieces loaded at the same time.
+     * 
+     * @param capacity the capacity of this AGVS
+     * 
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    private void setCapacity(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
     }
 
     /**
@@ -68,49 +263,349 @@ public class AGVS extends ElectricVehicle {
     public void consume(Conveyor conveyor) throws CannotMoveException {
         // Loop until no more moves are needed, when this AGVS is located at the picking point
         // and no more pieces are available at the conveyor picking point
-        while (shouldMove(conveyor)) {
-            // Check if this AGVS should move to the picking point or to a storage
-            if (isEmpty()) {
-                // There is no piece in the AGVS, so this AGVS should return back to the picking point
-                Position target = conveyor.getPickingPointPosition();
+        while (step(conveyor)) {
+            // Each step moves this AGVS one position closer to its target, loading or storing a piece when it arrives
+        }
+    }
 
-                move(target);
+    /**
+     * Advance this AGVS one step in the process of moving pieces from the picking point to their storage.
+     *
+     * A step moves this AGVS one position closer to its target,
+     * loading pieces or storing the pieces of a storage if the target is reached.
+     *
+     * This method allows a scheduler to interleave the steps of many vehicles in the same thread.
+     *
+     * @param conveyor the conveyor that provides pieces into a picking point
+     * @return true if this AGVS has done a step, false if no more moves are needed
+     *
+     * @throws CannotMoveException when this AGVS don't have enough remaining battery to move
+     */
+    public boolean step(Conveyor conveyor) throws CannotMoveException {
+        // No more moves are needed when this AGVS is located at the picking point
+        // and no more pieces are available at the conveyor picking point
+        if (!shouldMove(conveyor)) {
+            return false;
+        }
 
-                // Load a piece into the AGVS from the conveyor if AGVS is at the picking point
-                if (position.equals(target)) {
-                    // Lock the conveyor for this AGVS until piece is loaded
-                    // to ensure no other AGVS (in another thread) tries to pick a piece from the picking point at the same time
-                    synchronized (conveyor) {
-                        if (!conveyor.pickingPointIsEmpty()) {
-                            // Get the current piece from the picking point
-                            Piece piece = conveyor.unloadPieceFromPickingPoint();
-
-                            // Load the piece into this AGVS
-                            load = piece;
-
-                            notify("load " + piece);
-                            notify(piece + " should be stored at " + piece.getStoragePosition());
-                        }
+        // Check if this AGVS should move to the picking point or to a storage
+        if (isEmpty()) {
+            // There is no piece in the AGVS, so this AGVS should return back to the picking point
+            Position target = conveyor.getPickingPointPosition();
+
+            move(target);
+
+            // Load pieces into the AGVS from the conveyor if AGVS is at the picking point
+            if (position.equals(target)) {
+                while (load.size() < capacity) {
+                    // Get the current piece from the picking point
+                    // The conveyor ensures no other AGVS (in another thread) gets the same piece
+                    Piece piece = conveyor.unloadPieceFromPickingPoint();
+
+                    if (piece == null) {
+                        break;
                     }
+
+                    // Load the piece into this AGVS
+                    load(piece);
                 }
-            } else {
-                // There is a piece in the AGVS, so this AGVS should go to its storage position
-                Position target = load.getStoragePosition();
 
+                planRoute(target);
+            }
+        } else {
+            // There are pieces in the AGVS, so this AGVS should go to their storage positions
+            deliver();
+        }
+
+        return true;
+    }
+
+    /**
+     * Start this AGVS to take the pieces a dispatcher assigns to it and move each one to its storage.
+     *
+     * This AGVS waits without moving while it has no piece assigned.
+     *
+     * @param dispatcher the dispatcher assigning the pieces of the picking point
+     *
+     * @throws CannotMoveException when this AGVS don't have enough remaining battery to move
+     *                             or it is interrupted while waiting for a piece
+     */
+    public void consume(Dispatcher dispatcher) throws CannotMoveException {
+        while (step(dispatcher)) {
+            // Each step moves this AGVS one position closer to its target, loading or storing a piece when it arrives
+        }
+    }
+
+    /**
+     * Advance this AGVS one step in the process of moving the pieces assigned by a dispatcher.
+     *
+     * When this AGVS is empty and has no piece assigned it waits until the dispatcher assigns some pieces,
+     * then it moves to the picking point of their conveyor line to load them, and then to the storages of the pieces.
+     * 
+     * When the dispatcher sends this AGVS to a charging station it moves there,
+     * waits for a free slot and charges until its battery is full.
+     *
+     * @param dispatcher the dispatcher assigning the pieces of the picking point
+     * @return true if this AGVS has done a step, false if the dispatcher has no more pieces for this AGVS
+     *
+     * @throws CannotMoveException when this AGVS don't have enough remaining battery to move
+     *                             or it is interrupted while waiting for a piece
+     */
+    public boolean step(Dispatcher dispatcher) throws CannotMoveException {
+        if (!isEmpty()) {
+            deliver();
+            return true;
+        }
+
+        if (assignment == Assignment.NONE) {
+            // The previous work is done when this AGVS asks for more
+            long idleSince = metrics != null ? System.nanoTime() : 0;
+            if (metrics != null && busySince >= 0) {
+                metrics.travelled(idleSince - busySince);
+            }
+
+            // Wait until the dispatcher assigns some work to this AGVS
+            try {
+                assignment = dispatcher.take(this);
+            } catch (InterruptedException e) {
+                throw new CannotMoveException(e.getMessage());
+            }
+
+            if (metrics != null) {
+                busySince = System.nanoTime();
+                metrics.idle(busySince - idleSince);
+            }
+
+            if (assignment == Assignment.NONE) {
+                return false;
+            }
+
+            spare = assignment.getSpareSteps();
+        }
+
+        if (assignment.isCharge()) {
+            charge(assignment.getChargingStation());
+            return true;
+        }
+
+        Position target = assignment.getPickingPointPosition();
+
+        move(target);
+
+        // The assigned pieces are already out of the conveyor, load them when this AGVS is at the picking point
+        if (position.equals(target)) {
+            for (Piece piece : assignment.getPieces()) {
+                load(piece);
+            }
+            assignment = Assignment.NONE;
+
+            // Follow the route the dispatcher checked against the battery, ending at the last storage
+            planRoute(null);
+        }
+
+        return true;
+    }
+
+    /**
+     * Advance one step in charging this AGVS at a charging station.
+     * 
+     * This AGVS moves to the station, waits there until a slot is free, and then recharges at each step
+     * the charge of the station until its battery is full, freeing the slot.
+     * While every slot is in use each step waits up to {@code SLOT_WAIT_TIME} for a vehicle to free one.
+     * 
+     * @param station the charging station
+     * 
+     * @throws CannotMoveException if this AGVS don't have enough remaining battery to reach the station
+     */
+    private void charge(ChargingStation station) throws CannotMoveException {
+        if (!charging) {
+            Position target = station.getPosition();
+
+            if (!position.equals(target)) {
                 move(target);
 
-                // Store the piece if AGVS is at the storage position
-                if (position.equals(target)) {
+                if (!position.equals(target)) {
+                    return;
+                }
+            }
+
+            // Wait at the station until a slot is freed instead of trying again at every step
+            boolean occupied;
+            try {
+                occupied = station.occupy(SLOT_WAIT_TIME, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new CannotMoveException(e.getMessage());
+            }
+
+            if (!occupied) {
+                // Waiting for a slot is only published once
+                if (!queued) {
+                    queued = true;
+
+                    notify(EventType.VEHICLE_WAITING, null, position);
+                }
+                return;
+            }
+
+            queued = false;
+            charging = true;
+
+            notify(EventType.VEHICLE_CHARGING, null, position);
+            return;
+        }
+
+        recharge(station.getChargePerStep());
+
+        // Charging takes time like moving does
+        try {
+            pause();
+        } catch (InterruptedException e) {
+            station.release();
+            charging = false;
+            assignment = Assignment.NONE;
+            throw new CannotMoveException(e.getMessage());
+        }
+
+        if (getCurrentBattery() >= getMaxBattery()) {
+            station.release();
+            charging = false;
+            assignment = Assignment.NONE;
+
+            notify(EventType.VEHICLE_CHARGED, null, position);
+        }
+    }
+
+    /**
+     * Load a piece into this AGVS.
+     *
+     * @param piece the piece to load
+     */
+    private void load(Piece piece) {
+        load.add(piece);
+
+        notify(EventType.VEHICLE_LOADED, piece, piece.getStoragePosition());
+    }
+
+    /**
+     * Plan the order to visit the storages of the loaded pieces from the current position.
+     *
+     * @param end the position where this AGVS goes back after the last storage, like the picking point,
+     *            or null if the route ends at the last storage
+     */
+    private void planRoute(Position end) {
+        List<Position> storages = new ArrayList<>(load.size());
+        for (Piece piece : load) {
+            storages.add(piece.getStoragePosition());
+        }
+
+        stops.clear();
+        stops.addAll(planner.plan(position, storages, end));
+    }
+
+    /**
+     * Move the loaded pieces one step closer to the next storage of the route,
+     * storing the pieces of that storage if this AGVS is at the storage position.
+     *
+     * @throws CannotMoveException when this AGVS don't have enough remaining battery to move
+     */
+    private void deliver() throws CannotMoveException {
+        Position target = stops.peek();
+
+        move(target);
+
+        // Store the pieces of this storage if AGVS is at the storage position
+        if (position.equals(target)) {
+            stops.poll();
+
+            Iterator<Piece> pieces = load.iterator();
+            while (pieces.hasNext()) {
+                Piece piece = pieces.next();
+
+                if (piece.getStoragePosition().equals(target)) {
                     // AGVS is at storage position, so it can store the piece
-                    load.store();
+                    piece.store();
+
+                    if (metrics != null) {
+                        metrics.delivered();
+                    }
 
                     // Remove the piece from this AGVS
-                    load = null;
+                    pieces.remove();
                 }
             }
         }
     }
 
+    /**
+     * Get the maximum number of pieces this AGVS can carry at the same time.
+     *
+     * @return the capacity of this AGVS
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the pieces loaded into this AGVS.
+     *
+     * @return an unmodifiable copy of the loaded pieces
+     */
+    public List<Piece> getLoad() {
+        return Collections.unmodifiableList(new ArrayList<>(load));
+    }
+
+    /**
+     * Restore the battery and the loaded pieces of this AGVS, like they were when a snapshot was taken.
+     *
+     * The route to the storages of the pieces is planned again from the current position.
+     * This AGVS should not be moving while it is restored.
+     *
+     * @param battery the remaining battery in mAh
+     * @param pieces the pieces loaded
+     *
+     * @throws IllegalArgumentException if the battery is not between 0 and the maximum battery,
+     *                                  or there are more pieces than the capacity
+     */
+    public void restore(int battery, Collection<Piece> pieces) throws IllegalArgumentException {
+        if (battery < 0 || battery > getMaxBattery()) {
+            throw new IllegalArgumentException("Invalid battery: " + battery);
+        }
+        if (pieces.size() > capacity) {
+            throw new IllegalArgumentException("Too many pieces for " + this + ": " + pieces.size());
+        }
+
+        this.battery = battery;
+
+        load.clear();
+        load.addAll(pieces);
+
+        List<Position> storages = new ArrayList<>(load.size());
+        for (Piece piece : load) {
+            storages.add(piece.getStoragePosition());
+        }
+
+        stops.clear();
+        stops.addAll(planner.plan(position, storages, null));
+    }
+
+    /**
+     * Get the number of pieces loaded into this AGVS.
+     *
+     * @return the number of pieces this AGVS is carrying
+     */
+    public int getLoadSize() {
+        return load.size();
+    }
+
+    /**
+     * Get the battery drained by each move of this AGVS.
+     *
+     * @return the consumption in mAh of a move
+     */
+    public int getMoveBatteryConsumption() {
+        return MOVE_BATTERY_CONSUMPTION;
+    }
+
     /**
      * Retrieves the position of this AGVS in the warehouse.
      * 
@@ -125,10 +620,10 @@ public class AGVS extends ElectricVehicle {
      * Check if this AGVS is empty, so no piece is loaded to it
      * 
      * @return true if this AGVS has no piece loaded, false if this AGVS already has
-     *         a piece loaded into it
+     *         some piece loaded into it
      */
     public boolean isEmpty() {
-        return load == null;
+        return load.isEmpty();
     }
 
     /**
@@ -146,6 +641,12 @@ public class AGVS extends ElectricVehicle {
      * Moves this AGVS one step closer to the target position.
      *
      * This AGVS can move up (y + 1), down (y - 1), right (x + 1) or left (x - 1).
+     * 
+     * With a warehouse map this AGVS follows a shortest route avoiding blocked cells,
+     * otherwise it moves vertically first and then horizontally.
+     * 
+     * With reservations this AGVS waits while the next position is reserved by another vehicle,
+     * and after waiting {@code MAX_WAIT_TICKS} ticks it tries to go around it.
      *
      * If target position is the same as this AGVS position then this AGVS won't
      * move.
@@ -155,54 +656,179 @@ public class AGVS extends ElectricVehicle {
      * @param target the target position
      * 
      * @throws CannotMoveException if this AGVS don't have enough remaining battery to move
+     *                             or the target cannot be reached
      */
     private void move(Position target) throws CannotMoveException {
         // Calculate the next position of this AGVS
         Position next;
-        if (position.getY() < target.getY()) {
-            next = new Position(position.getX(), position.getY() + 1); // up
+        if (map != null) {
+            // Look up the next step of a shortest route in the map
+            next = map.nextStep(position, target);
+
+            if (next == null) {
+                throw new CannotMoveException(this + " cannot reach " + target + " from " + position);
+            }
+        } else if (position.getY() < target.getY()) {
+            next = Position.of(position.getX(), position.getY() + 1); // up
         } else if (position.getY() > target.getY()) {
-            next = new Position(position.getX(), position.getY() - 1); // down
+            next = Position.of(position.getX(), position.getY() - 1); // down
         } else if (position.getX() < target.getX()) {
-            next = new Position(position.getX() + 1, position.getY()); // right
+            next = Position.of(position.getX() + 1, position.getY()); // right
         } else if (position.getX() > target.getX()) {
-            next = new Position(position.getX() - 1, position.getY()); // left
+            next = Position.of(position.getX() - 1, position.getY()); // left
         } else {
             // AGVS is at target position
             next = position; // don't move
         }
 
+        if (reservations != null && !next.equals(position)) {
+            next = reserve(next, target);
+        }
+
         if (next.equals(position)) {
-            notify(" is at " + position);
+            notify(EventType.VEHICLE_WAITING, null, position);
         } else if (hasEnoughBattery(MOVE_BATTERY_CONSUMPTION)) {
+            if (reservations != null) {
+                // Free the position left for the next tick
+                reservations.release(position, reservations.now() + 1, id);
+            }
+
             position = next;
             
             // Moving drains some battery
             battery -= MOVE_BATTERY_CONSUMPTION;
+
+            if (metrics != null) {
+                metrics.moved(MOVE_BATTERY_CONSUMPTION);
+            }
             
-            notify("moves to " + position);
+            notify(EventType.VEHICLE_MOVED, null, position);
             
             // Simulate some time spent moving stopping the current thread for an amount of time
             try {
-                Thread.sleep(MOVE_TIME);
+                pause();
             } catch (InterruptedException e) {
                 throw new CannotMoveException(e.getMessage());
             }
         } else {
             battery = 0;
-            
+
+            notify(EventType.BATTERY_DEPLETED, null, position);
+
             // Throw an exception when this AGVS runs out of battery
             throw new CannotMoveException(this + " has run out of battery!");
         }
     }
     
     /**
-     * Sends a message.
+     * Stop the current thread {@code MOVE_TIME} milliseconds, if it is not 0.
      * 
-     * @param message the message to send
+     * {@code Thread.sleep(0)} still gives the processor to other threads, which is too slow for a simulation.
+     * 
+     * @throws InterruptedException if the current thread is interrupted while stopped
      */
-    private void notify(String message) {
-        System.out.println(this + ": " + message);
+    private static void pause() throws InterruptedException {
+        if (MOVE_TIME > 0) {
+            Thread.sleep(MOVE_TIME);
+        }
+    }
+
+    /**
+     * Reserve the next position of this AGVS for the current and the next tick.
+     * 
+     * If the next position is reserved by another vehicle then this AGVS keeps its current position,
+     * or after waiting {@code MAX_WAIT_TICKS} ticks for a vehicle with a lower identifier,
+     * it tries to move to any free neighbour position whose extra steps fit in its spare battery.
+     * A vehicle without spare battery waits instead, so after twice as many ticks the vehicle in the way
+     * gives way too, even if its identifier is lower.
+     * 
+     * @param next the next position of the route to the target
+     * @param target the target position
+     * @return the position reserved to move to, or the current position if this AGVS has to wait
+     */
+    private Position reserve(Position next, Position target) {
+        long tick = reservations.now();
+
+        if (claim(next, tick)) {
+            waitingSince = -1;
+            return next;
+        }
+
+        // Keep the current position reserved while waiting
+        claim(position, tick);
+
+        if (waitingSince < 0) {
+            waitingSince = tick;
+        } else if (tick - waitingSince >= 2 * MAX_WAIT_TICKS
+                || (tick - waitingSince >= MAX_WAIT_TICKS && reservations.owner(next, tick) < id)) {
+            // Re-plan going around the vehicle in the way
+            // Only the vehicle with the highest identifier gives way, so two vehicles waiting for each other
+            // don't go around each other at the same time, unless it has no battery to spare
+            int remaining = map.distance(position, target);
+            for (Position neighbour : map.neighbours(position)) {
+                if (neighbour.equals(next)) {
+                    continue;
+                }
+
+                // Going around costs the step to the neighbour and the steps it adds to the route
+                int detour = 1 + map.distance(neighbour, target) - remaining;
+                if (detour <= spare && claim(neighbour, tick)) {
+                    spare -= detour;
+                    waitingSince = -1;
+                    return neighbour;
+                }
+            }
+        }
+
+        Thread.yield(); // let the vehicle in the way move
+        return position;
+    }
+
+    /**
+     * Reserve a position for this AGVS for a tick and the next tick.
+     * 
+     * @param next the position to reserve
+     * @param tick the first tick to reserve
+     * @return true if both ticks have been reserved, false otherwise
+     */
+    private boolean claim(Position next, long tick) {
+        if (reservations.claim(next, tick, id)) {
+            if (reservations.claim(next, tick + 1, id)) {
+                return true;
+            }
+            reservations.release(next, tick, id);
+        }
+        return false;
+    }
+
+    /**
+     * Publishes an event of this AGVS with its current battery.
+     * 
+     * @param type the type of the event
+     * @param piece the piece involved in the event, if any
+     * @param position the position involved in the event
+     */
+    private void notify(EventType type, Piece piece, Position position) {
+        EventBus.getDefault().publish(type, this, piece, position, getRemainingBattery());
+    }
+
+    /**
+     * Get the identifier of this AGVS.
+     * 
+     * @return the identifier of this AGVS
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the name of this AGVS.
+     * 
+     * @return the name of this AGVS with its identifier
+     */
+    @Override
+    public String getName() {
+        return "AGVS " + id;
     }
     
     /**
@@ -212,6 +838,6 @@ public class AGVS extends ElectricVehicle {
      */
     @Override
     public String toString() {
-        return "AGVS " + id + " (" + getRemainingBattery() + "%)";
+        return getName() + " (" + getRemainingBattery() + "%)";
     }
 }
@@ -48,5 +48,14 @@ public abstract class ElectricVehicle implements Vehicle, WithBattery {
     public int getMaxBattery() {
         return maxBattery;
     }
+
+    /**
+     * Add some charge to the battery of this electric vehicle, without going over its maximum amount.
+     * 
+     * @param charge the charge to add in mAh
+     */
+    public void recharge(int charge) {
+        battery = Math.min(maxBattery, battery + charge);
+    }
     
 }
@@ -5,4 +5,13 @@ import warehouse.Positionable;
 /**
  * Represents a vehicle with a position in the warehouse.
  */
-public interface Vehicle extends Positionable {}
+public interface Vehicle extends Positionable {
+
+    /**
+     * Get a name identifying this vehicle.
+     *
+     * @return the name of this vehicle
+     */
+    String getName();
+
+}
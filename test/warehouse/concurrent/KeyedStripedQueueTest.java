@@ -0,0 +1,168 @@
+package warehouse.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Behaviour of the keyed striped queue checked against a simple model of a queue for each key.
+ */
+class KeyedStripedQueueTest {
+
+    /**
+     * Random operations on keys from a small range, so many elements share a key and the hash tables
+     * have long probe sequences, give the same results as a first in first out queue for each key.
+     */
+    @Test
+    void matchesModel() {
+        Random random = new Random(7);
+        KeyedStripedQueue<Element> queue = new KeyedStripedQueue<>(4, Element::getKey);
+        Map<Integer, Deque<Element>> model = new HashMap<>();
+        int size = 0;
+
+        for (int id = 0; id < 2_000_000; id++) {
+            int key = random.nextInt(5000);
+            int operation = random.nextInt(10);
+
+            if (operation < 5) {
+                Element element = new Element(key, id);
+                queue.add(element);
+                model.computeIfAbsent(key, k -> new ArrayDeque<>()).add(element);
+                size++;
+            } else if (operation < 8) {
+                Deque<Element> elements = model.get(key);
+                Element expected = elements == null ? null : elements.poll();
+                assertTrue(queue.removeKey(key) == expected);
+                if (expected != null) {
+                    size--;
+                }
+            } else if (operation < 9) {
+                Deque<Element> elements = model.get(key);
+                assertEquals(elements != null && !elements.isEmpty(), queue.containsKey(key));
+            } else {
+                // Polling takes the oldest element of a stripe, so the oldest element of its key
+                Element element = queue.poll();
+                if (element != null) {
+                    assertTrue(model.get(element.getKey()).poll() == element);
+                    size--;
+                }
+            }
+
+            assertEquals(size, queue.size());
+        }
+
+        List<Element> drained = new ArrayList<>();
+        assertEquals(size, queue.drainTo(drained));
+        assertEquals(size, drained.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Removing elements from the middle of probe sequences moves back the elements after them,
+     * so every element left is still found by its key.
+     */
+    @Test
+    void backwardShiftDeletion() {
+        KeyedStripedQueue<Element> queue = new KeyedStripedQueue<>(1, Element::getKey);
+        int count = 10_000;
+
+        for (int key = 0; key < count; key++) {
+            queue.add(new Element(key, key));
+        }
+        for (int key = 0; key < count; key += 3) {
+            assertEquals(key, queue.removeKey(key).getId());
+        }
+
+        for (int key = 0; key < count; key++) {
+            assertEquals(key % 3 != 0, queue.containsKey(key));
+        }
+        for (int key = 1; key < count; key += 3) {
+            assertEquals(key, queue.removeKey(key).getId());
+            assertEquals(key + 1, queue.removeKey(key + 1).getId());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Elements with the same key are removed in the order they were added,
+     * even when the stripe grows and its hash table is built again between them.
+     */
+    @Test
+    void sameKeyOrderAcrossGrowth() {
+        KeyedStripedQueue<Element> queue = new KeyedStripedQueue<>(1, Element::getKey);
+        int sameKey = -1;
+        List<Integer> added = new ArrayList<>();
+
+        for (int id = 0; added.size() < 12; id++) {
+            queue.add(new Element(sameKey, id));
+            added.add(id);
+
+            // Double the elements of the stripe, so its arrays grow and its table is rehashed
+            int others = queue.size();
+            for (int i = 0; i < others; i++) {
+                id++;
+                queue.add(new Element(id, id));
+            }
+        }
+
+        List<Integer> removed = new ArrayList<>();
+        while (queue.containsKey(sameKey)) {
+            removed.add(queue.removeKey(sameKey).getId());
+        }
+        assertEquals(added, removed);
+    }
+
+    /**
+     * An element of the queue, with a key and the order it was created.
+     */
+    private static final class Element {
+
+        /**
+         * Key of the element.
+         */
+        private final int key;
+
+        /**
+         * Identifier of the element, increasing in the order elements are created.
+         */
+        private final int id;
+
+        /**
+         * Create an element.
+         *
+         * @param key the key of the element
+         * @param id the identifier of the element
+         */
+        private Element(int key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        /**
+         * Get the key of this element.
+         *
+         * @return the key
+         */
+        private int getKey() {
+            return key;
+        }
+
+        /**
+         * Get the identifier of this element.
+         *
+         * @return the identifier
+         */
+        private int getId() {
+            return id;
+        }
+    }
+}
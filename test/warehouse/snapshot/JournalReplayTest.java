@@ -0,0 +1,138 @@
+package warehouse.snapshot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import warehouse.Conveyor;
+import warehouse.Position;
+import warehouse.pieces.Piece;
+import warehouse.storage.PieceStorage;
+import warehouse.vehicle.AGVS;
+
+/**
+ * Recovery of journals whose records were appended in a different order than the changes were made.
+ */
+class JournalReplayTest {
+
+    /**
+     * Directory of the journal files of each test.
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * A piece unloaded and stored before its addition is appended is not put back on the conveyor.
+     *
+     * @throws IOException if the journal cannot be written or read
+     */
+    @Test
+    void unloadBeforeAdd() throws IOException {
+        PieceStorage storage = new PieceStorage("ROUND", Position.of(0, 1));
+        Conveyor conveyor = new Conveyor(Position.of(3, 2), 4);
+        Piece piece = Piece.newBuilder().withReference(1).shouldStoreAt(storage).round().build();
+
+        Path path = directory.resolve("journal");
+        try (Journal journal = new Journal(path, 0)) {
+            // A vehicle polled the piece and delivered it before the producer appended its addition
+            journal.unloaded(conveyor, piece);
+            journal.stored(storage, piece);
+            journal.added(conveyor, piece);
+        }
+
+        WarehouseState state = Journal.recover(directory.resolve("snapshot"), path, AGVS::new);
+
+        assertEquals(1, state.getStorages().size());
+        assertEquals(List.of(1), references(state.getStorages().get(0).getObjects()));
+        assertEquals(1, state.getConveyors().size());
+        assertTrue(state.getConveyors().get(0).getPieces().isEmpty());
+    }
+
+    /**
+     * A piece unloaded before its addition is appended, and not stored yet, goes back to the front of the conveyor.
+     *
+     * @throws IOException if the journal cannot be written or read
+     */
+    @Test
+    void unloadBeforeAddNotStored() throws IOException {
+        PieceStorage storage = new PieceStorage("ROUND", Position.of(0, 1));
+        Conveyor conveyor = new Conveyor(Position.of(3, 2), 4);
+        Piece first = Piece.newBuilder().withReference(1).shouldStoreAt(storage).round().build();
+        Piece second = Piece.newBuilder().withReference(2).shouldStoreAt(storage).round().build();
+
+        Path path = directory.resolve("journal");
+        try (Journal journal = new Journal(path, 0)) {
+            journal.unloaded(conveyor, first);
+            journal.added(conveyor, first);
+            journal.added(conveyor, second);
+        }
+
+        WarehouseState state = Journal.recover(directory.resolve("snapshot"), path, AGVS::new);
+
+        assertEquals(List.of(1, 2), references(state.getConveyors().get(0).getPieces()));
+    }
+
+    /**
+     * A piece removed from a storage before its store is appended is not left in the storage.
+     *
+     * @throws IOException if the journal cannot be written or read
+     */
+    @Test
+    void removeBeforeStore() throws IOException {
+        PieceStorage storage = new PieceStorage("ROUND", Position.of(0, 1));
+        Piece removed = Piece.newBuilder().withReference(1).shouldStoreAt(storage).round().build();
+        Piece kept = Piece.newBuilder().withReference(2).shouldStoreAt(storage).round().build();
+
+        Path path = directory.resolve("journal");
+        try (Journal journal = new Journal(path, 0)) {
+            journal.removed(storage, removed);
+            journal.stored(storage, removed);
+            journal.stored(storage, kept);
+        }
+
+        WarehouseState state = Journal.recover(directory.resolve("snapshot"), path, AGVS::new);
+
+        assertEquals(List.of(2), references(state.getStorages().get(0).getObjects()));
+    }
+
+    /**
+     * A piece of the snapshot removed and then stored again is still in its storage.
+     *
+     * @throws IOException if the snapshot or the journal cannot be written or read
+     */
+    @Test
+    void removeFromSnapshotThenStore() throws IOException {
+        PieceStorage storage = new PieceStorage("ROUND", Position.of(0, 1));
+        Piece piece = Piece.newBuilder().withReference(1).shouldStoreAt(storage).round().build();
+        storage.store(piece);
+
+        Path snapshot = directory.resolve("snapshot");
+        Snapshot.write(snapshot, new WarehouseState(List.of(storage), List.of(), List.of()));
+
+        Path path = directory.resolve("journal");
+        try (Journal journal = new Journal(path, 0)) {
+            journal.removed(storage, piece);
+            journal.stored(storage, piece);
+        }
+
+        WarehouseState state = Journal.recover(snapshot, path, AGVS::new);
+
+        assertEquals(List.of(1), references(state.getStorages().get(0).getObjects()));
+    }
+
+    /**
+     * Get the references of some pieces, in their order.
+     *
+     * @param pieces the pieces
+     * @return their references
+     */
+    private static List<Integer> references(List<Piece> pieces) {
+        return pieces.stream().map(Piece::getReference).toList();
+    }
+}
@@ -0,0 +1,150 @@
+package warehouse.snapshot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import warehouse.Position;
+import warehouse.pieces.Piece;
+import warehouse.storage.PieceStorage;
+import warehouse.vehicle.AGVS;
+
+/**
+ * Opening journals with the sequence of a snapshot, and taking checkpoints.
+ */
+class JournalTest {
+
+    /**
+     * Directory of the journal files of each test.
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * A journal starting after the sequence of the snapshot is not emptied, its records were never in a snapshot.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Test
+    void startsAfterSequence() throws IOException {
+        PieceStorage storage = new PieceStorage("ROUND", Position.of(0, 1));
+        Piece piece = Piece.newBuilder().withReference(1).shouldStoreAt(storage).round().build();
+
+        Path path = directory.resolve("journal");
+        try (Journal journal = new Journal(path, 10)) {
+            journal.stored(storage, piece);
+        }
+        long size = Files.size(path);
+
+        assertThrows(IOException.class, () -> new Journal(path, 5));
+        assertEquals(size, Files.size(path));
+    }
+
+    /**
+     * A journal with the records after the sequence of the snapshot is appended to.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Test
+    void appendsAfterSequence() throws IOException {
+        PieceStorage storage = new PieceStorage("ROUND", Position.of(0, 1));
+        Piece piece = Piece.newBuilder().withReference(1).shouldStoreAt(storage).round().build();
+
+        Path path = directory.resolve("journal");
+        try (Journal journal = new Journal(path, 10)) {
+            journal.stored(storage, piece);
+        }
+
+        try (Journal journal = new Journal(path, 10)) {
+            assertEquals(12, journal.getSequence());
+        }
+    }
+
+    /**
+     * Records appended while a checkpoint is taken go after the new header, with their storages defined again,
+     * so recovery finds every piece stored after the checkpoint and none before it.
+     *
+     * @throws Exception if the journal cannot be written or read, or a storing thread fails
+     */
+    @Test
+    void checkpointWhileStoring() throws Exception {
+        int threads = 4;
+        List<PieceStorage> storages = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            storages.add(new PieceStorage("ROUND-" + (i + 1), Position.of(i, 1)));
+        }
+
+        Path path = directory.resolve("journal");
+        Path snapshot = directory.resolve("snapshot");
+        AtomicInteger[] counts = new AtomicInteger[threads];
+        List<Thread> storing = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+
+        try (Journal journal = new Journal(path, 0, false)) {
+            // Each thread keeps storing until the checkpoint is done, and then stores some more pieces
+            boolean[] done = new boolean[1];
+            for (int i = 0; i < threads; i++) {
+                PieceStorage storage = storages.get(i);
+                AtomicInteger count = counts[i] = new AtomicInteger();
+                Thread thread = new Thread(() -> {
+                    try {
+                        int after = 0;
+                        while (after < 1000) {
+                            int reference = count.incrementAndGet();
+                            journal.stored(storage,
+                                    Piece.newBuilder().withReference(reference).shouldStoreAt(storage).round().build());
+                            synchronized (done) {
+                                if (done[0]) {
+                                    after++;
+                                }
+                            }
+                        }
+                    } catch (RuntimeException | Error e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                });
+                storing.add(thread);
+                thread.start();
+            }
+
+            while (journal.getSequence() < 10_000) {
+                Thread.onSpinWait();
+            }
+            // The storages are not changed, only their records are appended
+            journal.checkpoint(snapshot, new WarehouseState(storages, List.of(), List.of()));
+            synchronized (done) {
+                done[0] = true;
+            }
+
+            for (Thread thread : storing) {
+                thread.join();
+            }
+        }
+        assertEquals(List.of(), failures);
+
+        WarehouseState state = Journal.recover(snapshot, path, AGVS::new);
+
+        // Each storage has the last pieces its thread stored, in order and without gaps
+        assertEquals(threads, state.getStorages().size());
+        for (int i = 0; i < threads; i++) {
+            List<Piece> pieces = state.getStorages().get(i).getObjects();
+            int last = counts[i].get();
+            assertTrue(pieces.size() >= 1000 && pieces.size() < last);
+            for (int j = 0; j < pieces.size(); j++) {
+                assertEquals(last - pieces.size() + j + 1, pieces.get(j).getReference());
+            }
+        }
+    }
+}